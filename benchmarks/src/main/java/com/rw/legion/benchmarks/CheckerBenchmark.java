@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.benchmarks;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rw.legion.columncheck.BoolChecker;
+import com.rw.legion.columncheck.BooleanChecker;
+import com.rw.legion.columncheck.ColumnChecker;
+import com.rw.legion.columncheck.DateTimeChecker;
+import com.rw.legion.columncheck.FloatChecker;
+import com.rw.legion.columncheck.IntegerChecker;
+import com.rw.legion.columncheck.RegexChecker;
+import com.rw.legion.columncheck.SetChecker;
+import com.rw.legion.columncheck.StringChecker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every shipped <code>ColumnChecker</code>, on values that pass and values
+ * that fail, one at a time with <code>validates</code> and all together with
+ * <code>validateAll</code>.
+ *
+ * Setup first runs <code>validateAll</code> on every checker, as a job with
+ * columns of several types would, so checkers that rely on the default
+ * <code>validateAll</code> are measured with its call to
+ * <code>validates</code> seeing many classes.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CheckerBenchmark {
+    private static final int VALUES = 8;
+    
+    private static final String[] CHECKERS = {"bool", "boolean", "dateTime",
+            "float", "integer", "regex", "linearRegex", "set", "string"};
+    
+    @Param({"bool", "boolean", "dateTime", "float", "integer", "regex",
+            "linearRegex", "set", "string"})
+    public String checker;
+    
+    private ColumnChecker columnChecker;
+    private String[] valid;
+    private String[] invalid;
+    private String[] mixed;
+    private BitSet results = new BitSet();
+    
+    @Setup
+    public void setup() throws Exception {
+        for (String other : CHECKERS) {
+            if (! other.equals(checker)) {
+                load(other);
+                
+                for (int i = 0; i < 20000; i++) {
+                    results.clear();
+                    columnChecker.validateAll(mixed, 0, mixed.length, results);
+                }
+            }
+        }
+        
+        load(checker);
+    }
+    
+    private void load(String name) throws Exception {
+        if (name.equals("bool")) {
+            columnChecker = new BoolChecker(options("{}"));
+            valid = values("true", "false", "t", "f", "1", "0", "TRUE", "F");
+            invalid = values("yes", "no", "2", "", "tru", "falsey", "-1", "x");
+        } else if (name.equals("boolean")) {
+            columnChecker = new BooleanChecker(options("{}"));
+            valid = values("true", "false", "t", "f", "1", "0", "TRUE", "F");
+            invalid = values("yes", "no", "2", "", "tru", "falsey", "-1", "x");
+        } else if (name.equals("dateTime")) {
+            columnChecker = new DateTimeChecker(options("{\"formats\": " +
+                    "[\"yyyy-MM-dd HH:mm:ss\", \"epochSeconds\"]}"));
+            valid = values("2017-06-01 13:45:12", "2016-02-29 00:00:00",
+                    "1496324712", "1999-12-31 23:59:59", "2017-01-01 01:02:03",
+                    "0", "2020-10-10 10:10:10", "2017-06-01 00:00:59");
+            invalid = values("2017-02-29 13:45:12", "2017-13-01 00:00:00",
+                    "yesterday", "2017-06-01T13:45:12", "1496324712.5",
+                    "2017-06-01", "2017-06-01 24:00:00", "");
+        } else if (name.equals("float")) {
+            columnChecker = new FloatChecker(options("{}"));
+            valid = values("125.5", "-0.25", "1e10", "3", "+7.0", ".5",
+                    "6.02214076E23", "-1234567.890");
+            invalid = values("1.2.3", "abc", "1e", "--1", "1,5", "NaN?",
+                    "", "0x1F");
+        } else if (name.equals("integer")) {
+            columnChecker = new IntegerChecker(options(
+                    "{\"intType\": \"int\"}"));
+            valid = values("184467", "-1", "0", "2147483647", "-2147483648",
+                    "+42", "007", "31337");
+            invalid = values("2147483648", "12a", "1.0", "", "-", "abc",
+                    "99999999999", " 1");
+        } else if (name.equals("regex") || name.equals("linearRegex")) {
+            columnChecker = new RegexChecker(options("{\"regex\": " +
+                    "\"\\\\+1[0-9]{10}\", \"engine\": \"" +
+                    (name.equals("regex") ? "jdk" : "linear") + "\"}"));
+            valid = values("+19195551234", "+19195554321", "+12125550000",
+                    "+14155551111", "+13035559999", "+17045552222",
+                    "+18005550199", "+19195550000");
+            invalid = values("19195551234", "+1919555123", "+191955512345",
+                    "+44207946000", "+1919555123x", "", "+1", "nope");
+        } else if (name.equals("set")) {
+            columnChecker = new SetChecker(options("{\"values\": " +
+                    "[\"Sprint\", \"T-Mobile\", \"Verizon\", \"AT&T\", " +
+                    "\"US Cellular\", \"Cricket\", \"Boost\", \"Republic\"]}"));
+            valid = values("Sprint", "T-Mobile", "Verizon", "AT&T",
+                    "US Cellular", "Cricket", "Boost", "Republic");
+            invalid = values("sprint", "Vodafone", "O2", "", "AT&T ",
+                    "Cricket Wireless", "Metro", "Ting");
+        } else if (name.equals("string")) {
+            columnChecker = new StringChecker(options("{}"));
+            valid = values("Sprint", "a", "", "said \"hi\"", "x,y", "123",
+                    "\u00e9t\u00e9", "long enough to be a sentence");
+            invalid = valid;
+        } else {
+            throw new IllegalArgumentException("Unknown checker " + name);
+        }
+        
+        mixed = new String[VALUES * 2];
+        
+        for (int i = 0; i < VALUES; i++) {
+            mixed[i * 2] = valid[i];
+            mixed[i * 2 + 1] = invalid[i];
+        }
+    }
+    
+    private static JsonObject options(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+    
+    private static String[] values(String... values) {
+        if (values.length != VALUES) {
+            throw new IllegalArgumentException("Expected " + VALUES +
+                    " values");
+        }
+        
+        return values;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int validValues() {
+        int passed = 0;
+        
+        for (String value : valid) {
+            passed += columnChecker.validates(value) ? 1 : 0;
+        }
+        
+        return passed;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int invalidValues() {
+        int passed = 0;
+        
+        for (String value : invalid) {
+            passed += columnChecker.validates(value) ? 1 : 0;
+        }
+        
+        return passed;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(VALUES * 2)
+    public BitSet validateAll() {
+        results.clear();
+        columnChecker.validateAll(mixed, 0, mixed.length, results);
+        return results;
+    }
+}
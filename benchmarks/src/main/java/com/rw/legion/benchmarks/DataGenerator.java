@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes synthetic, deliberately messy input data for
+ * <code>ThroughputHarness</code>, along with an objective to apply to it.
+ * Each profile stresses a different part of the ingest path:
+ *
+ * <ul>
+ *   <li>"nested-json": records with arrays nested "depth" levels deep, each
+ *       "width" elements wide, unrolled with one index per level.</li>
+ *   <li>"wide-csv": a CSV with "columns" columns, alternately integers and
+ *       strings.</li>
+ *   <li>"corrupt-json": flat records, "corrupt" percent of which are
+ *       truncated or garbage lines.</li>
+ *   <li>"misnamed-gzip": gzipped JSON in files named ".json", read with a
+ *       codec override.</li>
+ *   <li>"tiny-files": flat records spread over "tinyFiles" files, combined
+ *       into splits by <code>CombineJsonInputFormat</code>.</li>
+ * </ul>
+ *
+ * Around one in twenty values is invalid (a misspelled status, a
+ * non-numeric ID, a missing key), so rejections are exercised too. The same
+ * seed always generates the same data.
+ */
+
+public class DataGenerator {
+    public static final String[] PROFILES = {"nested-json", "wide-csv",
+            "corrupt-json", "misnamed-gzip", "tiny-files"};
+    
+    private static final String[] TYPES = {"call", "sms", "mms", "data"};
+    private static final String[] STATUSES = {"ok", "fail", "OK", "Fail"};
+    
+    private int records = 100000;
+    private int depth = 2;
+    private int width = 3;
+    private int columns = 100;
+    private int corruptPercent = 5;
+    private int tinyFiles = 1000;
+    private Random random;
+    
+    public DataGenerator(long seed) {
+        random = new Random(seed);
+    }
+    
+    public void setRecords(int records) {
+        this.records = records;
+    }
+    
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+    
+    public void setWidth(int width) {
+        this.width = width;
+    }
+    
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+    
+    public void setCorruptPercent(int corruptPercent) {
+        this.corruptPercent = corruptPercent;
+    }
+    
+    public void setTinyFiles(int tinyFiles) {
+        this.tinyFiles = tinyFiles;
+    }
+    
+    /**
+     * Write a profile's input files.
+     * 
+     * @param profile  One of <code>PROFILES</code>.
+     * @param input  The directory to write into, which must not exist yet.
+     * @return  The JSON for an objective to apply to the input.
+     */
+    public String generate(String profile, File input) throws IOException {
+        if (! input.mkdirs()) {
+            throw new IOException("Couldn't create " + input);
+        }
+        
+        if (profile.equals("nested-json")) {
+            return nestedJson(input);
+        } else if (profile.equals("wide-csv")) {
+            return wideCsv(input);
+        } else if (profile.equals("corrupt-json")) {
+            return corruptJson(input);
+        } else if (profile.equals("misnamed-gzip")) {
+            return misnamedGzip(input);
+        } else if (profile.equals("tiny-files")) {
+            return tinyFiles(input);
+        }
+        
+        throw new IllegalArgumentException("Unknown profile: " + profile);
+    }
+    
+    private String nestedJson(File input) throws IOException {
+        try (Writer out = open(new File(input, "nested.json"), false)) {
+            for (int i = 0; i < records; i++) {
+                JsonObject record = flatRecord(i);
+                record.add("a", nestedArray(depth));
+                out.write(record.toString());
+                out.write('\n');
+            }
+        }
+        
+        JsonObject objective = objective("com.rw.legion.input.JsonInputFormat");
+        JsonArray indexes = new JsonArray();
+        StringBuilder key = new StringBuilder("$");
+        
+        for (int level = 0; level < depth; level++) {
+            indexes.add(new JsonPrimitive("i" + level));
+            key.append(".a[<i").append(level).append(">]");
+        }
+        
+        JsonObject nested = table("nested");
+        nested.add("indexes", indexes);
+        nested.getAsJsonArray("columns").add(column("$.id", "IntegerChecker"));
+        nested.getAsJsonArray("columns").add(column(key + ".v",
+                "IntegerChecker"));
+        nested.getAsJsonArray("columns").add(column(key + ".s",
+                "StringChecker"));
+        objective.getAsJsonArray("outputTables").add(nested);
+        objective.getAsJsonArray("outputTables").add(flatTable());
+        return objective.toString();
+    }
+    
+    private JsonArray nestedArray(int levels) {
+        JsonArray array = new JsonArray();
+        
+        for (int i = 0; i < width; i++) {
+            JsonObject element = new JsonObject();
+            
+            if (levels > 1) {
+                element.add("a", nestedArray(levels - 1));
+            }
+            
+            element.addProperty("v", messyInteger(i));
+            element.addProperty("s", "value " + random.nextInt(1000));
+            array.add(element);
+        }
+        
+        return array;
+    }
+    
+    private String wideCsv(File input) throws IOException {
+        JsonObject objective = objective("com.rw.legion.input.CsvInputFormat");
+        JsonObject wide = table("wide");
+        
+        try (Writer out = open(new File(input, "wide.csv"), false)) {
+            for (int c = 0; c < columns; c++) {
+                out.write(c == 0 ? "c0" : ",c" + c);
+                wide.getAsJsonArray("columns").add(column("c" + c,
+                        c % 2 == 0 ? "IntegerChecker" : "StringChecker"));
+            }
+            
+            out.write('\n');
+            
+            for (int i = 0; i < records; i++) {
+                for (int c = 0; c < columns; c++) {
+                    if (c > 0) {
+                        out.write(',');
+                    }
+                    
+                    if (c % 2 == 0) {
+                        out.write(messyInteger(i + c));
+                    } else if (random.nextInt(50) == 0) {
+                        out.write("\"quoted, with a comma\"");
+                    } else {
+                        out.write("text" + random.nextInt(100));
+                    }
+                }
+                
+                out.write('\n');
+            }
+        }
+        
+        objective.getAsJsonArray("outputTables").add(wide);
+        return objective.toString();
+    }
+    
+    private String corruptJson(File input) throws IOException {
+        try (Writer out = open(new File(input, "corrupt.json"), false)) {
+            for (int i = 0; i < records; i++) {
+                String line = flatRecord(i).toString();
+                
+                if (random.nextInt(100) < corruptPercent) {
+                    line = random.nextBoolean()
+                            ? line.substring(0, random.nextInt(line.length()))
+                            : "\u0000\u0001garbage{" + line;
+                }
+                
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        
+        return flatObjective("com.rw.legion.input.JsonInputFormat").toString();
+    }
+    
+    private String misnamedGzip(File input) throws IOException {
+        int files = 4;
+        
+        for (int f = 0; f < files; f++) {
+            try (Writer out = open(new File(input, "part-" + f + ".json"),
+                    true)) {
+                for (int i = f; i < records; i += files) {
+                    out.write(flatRecord(i).toString());
+                    out.write('\n');
+                }
+            }
+        }
+        
+        JsonObject objective =
+                flatObjective("com.rw.legion.input.JsonInputFormat");
+        objective.addProperty("codecOverride",
+                "org.apache.hadoop.io.compress.GzipCodec");
+        return objective.toString();
+    }
+    
+    private String tinyFiles(File input) throws IOException {
+        for (int f = 0; f < tinyFiles; f++) {
+            try (Writer out = open(new File(input, "tiny-" + f + ".json"),
+                    false)) {
+                for (int i = f; i < records; i += tinyFiles) {
+                    out.write(flatRecord(i).toString());
+                    out.write('\n');
+                }
+            }
+        }
+        
+        JsonObject objective =
+                flatObjective("com.rw.legion.input.CombineJsonInputFormat");
+        objective.addProperty("maxCombinedSize", 64 * 1024 * 1024);
+        return objective.toString();
+    }
+    
+    private JsonObject flatRecord(int i) {
+        JsonObject record = new JsonObject();
+        record.addProperty("id", messyInteger(i));
+        record.addProperty("type", TYPES[random.nextInt(TYPES.length)]);
+        
+        int status = random.nextInt(20);
+        
+        if (status < STATUSES.length) {
+            record.add("status", null);
+        } else if (status > STATUSES.length) {
+            record.addProperty("status", STATUSES[status % STATUSES.length]);
+        }
+        
+        record.addProperty("ts", String.format("2017-%02d-%02d %02d:%02d:%02d",
+                1 + random.nextInt(12), 1 + random.nextInt(28),
+                random.nextInt(24), random.nextInt(60), random.nextInt(60)));
+        return record;
+    }
+    
+    private String messyInteger(int value) {
+        return random.nextInt(20) == 0 ? "x" + value : Integer.toString(value);
+    }
+    
+    private JsonObject flatObjective(String inputFormat) {
+        JsonObject objective = objective(inputFormat);
+        objective.getAsJsonArray("outputTables").add(flatTable());
+        return objective;
+    }
+    
+    private JsonObject flatTable() {
+        JsonObject flat = table("flat");
+        JsonArray columns = flat.getAsJsonArray("columns");
+        columns.add(column("$.id", "IntegerChecker"));
+        columns.add(column("$.type", "StringChecker"));
+        
+        JsonObject status = column("$.status", "SetChecker");
+        JsonObject options = new JsonObject();
+        JsonArray values = new JsonArray();
+        values.add(new JsonPrimitive("ok"));
+        values.add(new JsonPrimitive("fail"));
+        options.add("values", values);
+        options.addProperty("ignoreCase", true);
+        status.getAsJsonObject("validate").add("options", options);
+        status.addProperty("failOnNull", true);
+        columns.add(status);
+        
+        JsonObject ts = column("$.ts", "DateTimeChecker");
+        options = new JsonObject();
+        JsonArray formats = new JsonArray();
+        formats.add(new JsonPrimitive("yyyy-MM-dd HH:mm:ss"));
+        options.add("formats", formats);
+        ts.getAsJsonObject("validate").add("options", options);
+        columns.add(ts);
+        return flat;
+    }
+    
+    private static JsonObject objective(String inputFormat) {
+        JsonObject objective = new JsonObject();
+        objective.addProperty("inputFormat", inputFormat);
+        objective.add("outputTables", new JsonArray());
+        return objective;
+    }
+    
+    private static JsonObject table(String title) {
+        JsonObject table = new JsonObject();
+        table.addProperty("title", title);
+        table.add("columns", new JsonArray());
+        return table;
+    }
+    
+    private static JsonObject column(String key, String checker) {
+        JsonObject validate = new JsonObject();
+        validate.addProperty("class", "com.rw.legion.columncheck." + checker);
+        
+        JsonObject column = new JsonObject();
+        column.addProperty("key", key);
+        column.add("validate", validate);
+        return column;
+    }
+    
+    private static Writer open(File file, boolean gzip) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        
+        return new BufferedWriter(new OutputStreamWriter(out,
+                StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.benchmarks;
+
+import com.rw.legion.LegionObjective;
+import com.rw.legion.LegionRecord;
+import com.rw.legion.ObjectiveDeserializer;
+import com.rw.legion.OutputTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding index values in a record with <code>findIndexValues</code>, for
+ * every table of an objective. Each table normalizes its own array of the
+ * record, so the record's keys grow with both the array size and the number
+ * of tables.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IndexBenchmark {
+    @Param({"1", "10", "100"})
+    public int arraySize;
+    
+    @Param({"1", "10"})
+    public int tables;
+    
+    private LegionRecord record;
+    private OutputTable[] outputTables;
+    
+    @Setup
+    public void setup() {
+        StringBuilder json = new StringBuilder("{\"inputFormat\": " +
+                "\"com.rw.legion.input.JsonInputFormat\", \"outputTables\": [");
+        record = new LegionRecord();
+        record.setField("$.id", "184467");
+        
+        for (int t = 0; t < tables; t++) {
+            json.append(t == 0 ? "" : ", ").append("{\"title\": \"t")
+                    .append(t).append("\", \"indexes\": [\"i\"], ")
+                    .append("\"columns\": [{\"key\": \"$.id\"}, ")
+                    .append("{\"key\": \"$.a").append(t)
+                    .append("[<i>].id\"}, {\"key\": \"$.a").append(t)
+                    .append("[<i>].signal\"}]}");
+            
+            for (int i = 0; i < arraySize; i++) {
+                record.setField("$.a" + t + "[" + i + "].id",
+                        Integer.toString(3000 + i));
+                record.setField("$.a" + t + "[" + i + "].signal",
+                        Integer.toString(-70 - i));
+            }
+        }
+        
+        LegionObjective objective = ObjectiveDeserializer.deserialize(
+                json.append("]}").toString());
+        outputTables = objective.getOutputTables().toArray(
+                new OutputTable[tables]);
+    }
+    
+    @Benchmark
+    public int findIndexValues() {
+        int combos = 0;
+        
+        for (OutputTable table : outputTables) {
+            combos += record.findIndexValues(table).getSize();
+        }
+        
+        return combos;
+    }
+}
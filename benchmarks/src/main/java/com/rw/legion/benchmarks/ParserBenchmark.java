@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.benchmarks;
+
+import com.rw.legion.LegionRecord;
+import com.rw.legion.input.CsvRecordParser;
+import com.rw.legion.input.JsonRecordParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing single lines into <code>LegionRecord</code>s, as the JSON and CSV
+ * record readers' <code>makeRecord</code> methods do (they hand each line to
+ * these parsers).
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+    static final String JSON_LINE = "{\"id\": 184467, \"type\": \"call\", " +
+            "\"ts\": \"2017-06-01 13:45:12\", \"duration\": 125.5, " +
+            "\"from\": {\"number\": \"+19195551234\", \"carrier\": " +
+            "\"Sprint\", \"roaming\": false}, \"to\": {\"number\": " +
+            "\"+19195554321\", \"carrier\": \"T-Mobile\", \"roaming\": " +
+            "true}, \"towers\": [{\"id\": 3112, \"signal\": -71}, {\"id\": " +
+            "3113, \"signal\": -84}, {\"id\": 3120, \"signal\": -90}], " +
+            "\"tags\": [\"wifi\", \"hd\"], \"note\": null}";
+    
+    static final String CSV_HEADER = "id,type,ts,duration,from_number," +
+            "from_carrier,to_number,to_carrier,roaming,tower,signal,note";
+    
+    static final String CSV_LINE = "184467,call,2017-06-01 13:45:12,125.5," +
+            "+19195551234,Sprint,+19195554321,T-Mobile,false,3112,-71,";
+    
+    private JsonRecordParser jsonParser;
+    private CsvRecordParser csvParser;
+    private long lineNumber;
+    
+    @Setup
+    public void setup() {
+        jsonParser = new JsonRecordParser();
+        csvParser = new CsvRecordParser();
+        csvParser.parse(CSV_HEADER, "in.csv", 1);
+        lineNumber = 1;
+    }
+    
+    @Benchmark
+    public LegionRecord json() {
+        return jsonParser.parse(JSON_LINE, "in.json", ++lineNumber);
+    }
+    
+    @Benchmark
+    public LegionRecord csv() {
+        return csvParser.parse(CSV_LINE, "in.csv", ++lineNumber);
+    }
+}
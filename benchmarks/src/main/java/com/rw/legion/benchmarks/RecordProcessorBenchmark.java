@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.benchmarks;
+
+import com.rw.legion.LegionRecord;
+import com.rw.legion.ObjectiveDeserializer;
+import com.rw.legion.OutputColumn;
+import com.rw.legion.OutputTable;
+import com.rw.legion.RecordProcessor;
+import com.rw.legion.input.JsonRecordParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating, transforming and CSV-encoding records into rows with a
+ * <code>RecordProcessor</code> (the core of <code>DefaultMapper</code>),
+ * with the rows going to a <code>Blackhole</code> instead of
+ * <code>MultipleOutputs</code>. Some values need escaping, and one record in
+ * eight is rejected for one of the tables.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordProcessorBenchmark {
+    private static final int RECORDS = 256;
+    
+    private static final String OBJECTIVE = "{\"inputFormat\": " +
+            "\"com.rw.legion.input.JsonInputFormat\", \"outputTables\": [" +
+            "{\"title\": \"calls\", \"columns\": [" +
+            "{\"key\": \"$.id\", \"failOnValidation\": true, \"validate\": " +
+            "{\"class\": \"com.rw.legion.columncheck.IntegerChecker\", " +
+            "\"options\": {\"intType\": \"long\"}}}, " +
+            "{\"key\": \"$.ts\", \"validate\": {\"class\": " +
+            "\"com.rw.legion.columncheck.DateTimeChecker\", \"options\": " +
+            "{\"formats\": [\"yyyy-MM-dd HH:mm:ss\"]}}}, " +
+            "{\"key\": \"$.duration\", \"validate\": {\"class\": " +
+            "\"com.rw.legion.columncheck.FloatChecker\"}}, " +
+            "{\"key\": \"$.from.carrier\", \"transform\": [" +
+            "{\"class\": \"com.rw.legion.columntransform.TrimTransformer\"}, " +
+            "{\"class\": \"com.rw.legion.columntransform." +
+            "LowerCaseTransformer\"}]}, " +
+            "{\"key\": \"$.note\"}]}, " +
+            "{\"title\": \"towers\", \"indexes\": [\"t\"], \"columns\": [" +
+            "{\"key\": \"$.id\"}, " +
+            "{\"key\": \"$.towers[<t>].id\", \"validate\": {\"class\": " +
+            "\"com.rw.legion.columncheck.IntegerChecker\", \"options\": " +
+            "{\"intType\": \"int\"}}}, " +
+            "{\"key\": \"$.towers[<t>].signal\"}]}]}";
+    
+    @Param({"1", "64"})
+    public int batchSize;
+    
+    private RecordProcessor processor;
+    private LegionRecord[] records = new LegionRecord[RECORDS];
+    
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        String objective = OBJECTIVE.replaceFirst("\\{", "{\"batchSize\": " +
+                batchSize + ", ");
+        processor = new RecordProcessor(
+                ObjectiveDeserializer.deserialize(objective),
+                new RecordProcessor.Output() {
+                    public void write(OutputTable table, String row) {
+                        blackhole.consume(row);
+                    }
+                    
+                    public void skip(OutputTable table, OutputColumn column,
+                            String row) {
+                        blackhole.consume(row);
+                    }
+                });
+        
+        JsonRecordParser parser = new JsonRecordParser();
+        
+        for (int i = 0; i < RECORDS; i++) {
+            String line = ParserBenchmark.JSON_LINE
+                    .replace("184467", i % 8 == 7 ? "x" + i : "1844" + i)
+                    .replace("null", "\"said \\\"hi\\\", then left\"");
+            records[i] = parser.parse(line, "in.json", i + 1);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void process() throws Exception {
+        for (LegionRecord record : records) {
+            processor.process(record);
+        }
+        
+        processor.flush();
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.benchmarks;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.rw.legion.DefaultJob;
+import com.rw.legion.LegionCounter;
+import com.rw.legion.TaskCounters;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs whole Legion jobs, through <code>DefaultJob</code> and Hadoop's local
+ * job runner, over synthetic data from <code>DataGenerator</code>, and
+ * reports records per second, bytes per second and time spent in garbage
+ * collection for each profile as JSON.
+ *
+ * Usage: <code>ThroughputHarness workDir results.json [name=value ...]
+ * </code>, where the options are "profiles" (comma separated, all by
+ * default), "records", "depth", "width", "columns", "corrupt" (percent),
+ * "tinyFiles", "seed", "maps" (concurrent map tasks), "warmups" and "runs".
+ * The work directory is emptied first.
+ *
+ * Each profile's data is generated once, then the job is run "warmups"
+ * times unmeasured and "runs" times measured; the medians of the measured
+ * runs are reported alongside each run. If any run fails, the harness
+ * stops with an exception rather than report it. The local runner shares
+ * the harness's JVM, so its collector times cover the whole job.
+ */
+
+public class ThroughputHarness {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ThroughputHarness workDir results.json "
+                    + "[name=value ...]");
+            System.exit(2);
+        }
+        
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        options.put("profiles", String.join(",", DataGenerator.PROFILES));
+        options.put("records", "100000");
+        options.put("depth", "2");
+        options.put("width", "3");
+        options.put("columns", "100");
+        options.put("corrupt", "5");
+        options.put("tinyFiles", "1000");
+        options.put("seed", "42");
+        options.put("maps", "1");
+        options.put("warmups", "1");
+        options.put("runs", "3");
+        
+        for (int i = 2; i < args.length; i++) {
+            int equals = args[i].indexOf('=');
+            
+            if (equals < 0 || ! options.containsKey(
+                    args[i].substring(0, equals))) {
+                throw new IllegalArgumentException("Unknown option: " +
+                        args[i]);
+            }
+            
+            options.put(args[i].substring(0, equals),
+                    args[i].substring(equals + 1));
+        }
+        
+        File workDir = new File(args[0]);
+        delete(workDir);
+        
+        JsonObject results = new JsonObject();
+        results.addProperty("timestamp", Instant.now().toString());
+        results.addProperty("javaVersion", System.getProperty("java.version"));
+        results.addProperty("processors",
+                Runtime.getRuntime().availableProcessors());
+        results.addProperty("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        
+        JsonObject parameters = new JsonObject();
+        
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            parameters.addProperty(option.getKey(), option.getValue());
+        }
+        
+        results.add("parameters", parameters);
+        JsonArray profiles = new JsonArray();
+        
+        for (String profile : options.get("profiles").split(",")) {
+            profiles.add(runProfile(profile, new File(workDir, profile),
+                    options));
+        }
+        
+        results.add("profiles", profiles);
+        
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(args[1]), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(results, out);
+            out.write('\n');
+        }
+    }
+    
+    private static JsonObject runProfile(String profile, File dir,
+            Map<String, String> options) throws Exception {
+        DataGenerator generator = new DataGenerator(
+                Long.parseLong(options.get("seed")));
+        generator.setRecords(Integer.parseInt(options.get("records")));
+        generator.setDepth(Integer.parseInt(options.get("depth")));
+        generator.setWidth(Integer.parseInt(options.get("width")));
+        generator.setColumns(Integer.parseInt(options.get("columns")));
+        generator.setCorruptPercent(Integer.parseInt(options.get("corrupt")));
+        generator.setTinyFiles(Integer.parseInt(options.get("tinyFiles")));
+        
+        File input = new File(dir, "in");
+        String objective = generator.generate(profile, input);
+        
+        JsonObject result = new JsonObject();
+        result.addProperty("profile", profile);
+        result.addProperty("inputFiles", input.listFiles().length);
+        result.addProperty("inputBytes", size(input));
+        
+        int warmups = Integer.parseInt(options.get("warmups"));
+        int runCount = Integer.parseInt(options.get("runs"));
+        double[] recordRates = new double[runCount];
+        double[] byteRates = new double[runCount];
+        double[] gcMillis = new double[runCount];
+        JsonArray runs = new JsonArray();
+        
+        for (int i = 0; i < warmups + runCount; i++) {
+            JsonObject run = runJob(objective, input, new File(dir, "out" + i),
+                    options);
+            
+            System.out.println(profile + (i < warmups ? " (warm-up): " : ": ")
+                    + run);
+            
+            if (i >= warmups) {
+                int r = i - warmups;
+                recordRates[r] = run.get("recordsPerSecond").getAsDouble();
+                byteRates[r] = run.get("bytesPerSecond").getAsDouble();
+                gcMillis[r] = run.get("gcMillis").getAsDouble();
+                runs.add(run);
+            }
+        }
+        
+        JsonObject median = new JsonObject();
+        median.addProperty("recordsPerSecond", median(recordRates));
+        median.addProperty("bytesPerSecond", median(byteRates));
+        median.addProperty("gcMillis", median(gcMillis));
+        result.add("median", median);
+        result.add("runs", runs);
+        return result;
+    }
+    
+    private static JsonObject runJob(String objective, File input, File output,
+            Map<String, String> options) throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("fs.defaultFS", "file:///");
+        
+        // The client otherwise only checks on the job every five seconds.
+        conf.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, 50);
+        conf.setInt("mapreduce.local.map.tasks.maximum",
+                Integer.parseInt(options.get("maps")));
+        
+        Job job = DefaultJob.createJob(conf, objective,
+                new Path(input.getAbsolutePath()),
+                new Path(output.getAbsolutePath()));
+        
+        long gcStartMillis = gcMillis();
+        long gcStartCount = gcCount();
+        long start = System.nanoTime();
+        boolean succeeded = job.waitForCompletion(false);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long gcTime = gcMillis() - gcStartMillis;
+        long gcRuns = gcCount() - gcStartCount;
+        
+        // A failed run's rate says nothing about throughput. Its output is
+        // left in place to look into.
+        if (! succeeded) {
+            throw new IllegalStateException("Job failed on " + input + ": "
+                    + job.getStatus().getFailureInfo());
+        }
+        
+        Counters counters = job.getCounters();
+        long records = counters.findCounter(TaskCounter.MAP_INPUT_RECORDS)
+                .getValue();
+        long bytes = size(input);
+        
+        JsonObject run = new JsonObject();
+        run.addProperty("seconds", seconds);
+        run.addProperty("records", records);
+        run.addProperty("recordsPerSecond", records / seconds);
+        run.addProperty("bytesPerSecond", bytes / seconds);
+        run.addProperty("gcMillis", gcTime);
+        run.addProperty("gcCount", gcRuns);
+        run.addProperty("rowsWritten", sum(counters,
+                TaskCounters.WRITTEN_GROUP));
+        run.addProperty("rejections", sum(counters,
+                TaskCounters.REJECTED_GROUP));
+        run.addProperty("parseFailures",
+                counters.findCounter(LegionCounter.PARSE_FAILURES).getValue());
+        run.addProperty("linesTooLong",
+                counters.findCounter(LegionCounter.LINES_TOO_LONG).getValue());
+        run.addProperty("brokenFiles",
+                counters.findCounter(LegionCounter.BROKEN_FILES).getValue());
+        
+        // Output is only kept long enough to check on it by hand.
+        delete(output);
+        return run;
+    }
+    
+    private static long sum(Counters counters, String group) {
+        long total = 0;
+        
+        for (Counter counter : counters.getGroup(group)) {
+            total += counter.getValue();
+        }
+        
+        return total;
+    }
+    
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        
+        return sorted.length % 2 == 1 ? sorted[middle]
+                : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+    
+    private static long gcMillis() {
+        long total = 0;
+        
+        for (GarbageCollectorMXBean gc :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        
+        return total;
+    }
+    
+    private static long gcCount() {
+        long total = 0;
+        
+        for (GarbageCollectorMXBean gc :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        
+        return total;
+    }
+    
+    private static long size(File file) {
+        if (! file.isDirectory()) {
+            return file.length();
+        }
+        
+        long total = 0;
+        
+        for (File child : file.listFiles()) {
+            total += size(child);
+        }
+        
+        return total;
+    }
+    
+    private static void delete(File file) throws IOException {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                delete(child);
+            }
+        }
+        
+        if (file.exists() && ! file.delete()) {
+            throw new IOException("Couldn't delete " + file);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+/**
+ * Settings for writing output on background threads, from the objective's
+ * "asyncOutput" (see <code>AsyncWriters</code>). The mapper encodes rows into
+ * blocks of "blockSize" bytes (256KB by default), one for each output file,
+ * and hands full blocks to one of "threads" writer threads (1 by default),
+ * which compress and write them. Each writer queues at most "queuedBlocks"
+ * blocks (8 by default) before the mapper has to wait for it.
+ *
+ * Contents are de-serialized from JSON using GSON.
+ */
+
+public class AsyncOutput {
+    public Integer threads;
+    public Integer blockSize;
+    public Integer queuedBlocks;
+    
+    /**
+     * Constructor required by Gson.
+     */
+    public AsyncOutput() {
+        
+    }
+    
+    /**
+     * @return  The number of writer threads.
+     */
+    public int getThreads() {
+        return threads == null ? 1 : Math.max(1, threads);
+    }
+    
+    /**
+     * @return  The size in bytes of the blocks handed to writers.
+     */
+    public int getBlockSize() {
+        return blockSize == null ? 256 * 1024 : Math.max(1, blockSize);
+    }
+    
+    /**
+     * @return  The most blocks each writer holds before the mapper waits.
+     */
+    public int getQueuedBlocks() {
+        return queuedBlocks == null ? 8 : Math.max(1, queuedBlocks);
+    }
+}
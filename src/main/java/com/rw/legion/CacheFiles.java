@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.rw.legion;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Gives an objective's <code>cacheFiles</code> the names their fragments
+ * promise when there's no distributed cache to do it, as under
+ * <code>LocalRunner</code>, <code>StreamRunner</code> and
+ * <code>ObjectiveFunction</code>, or while <code>DefaultJob</code> sets up a
+ * job. Each file whose name isn't already in the working directory is copied
+ * to a local temporary file once per JVM, and checkers look their files up
+ * with <code>resolve</code>. In a Hadoop task, the distributed cache has
+ * already linked every file into the working directory, so nothing is copied.
+ */
+
+public class CacheFiles {
+    // Local copies by the name the objective gives them.
+    private static final HashMap<String, String> localCopies =
+            new HashMap<String, String>();
+    
+    /**
+     * Make sure every one of <code>cacheFiles</code> can be opened by its
+     * name, copying it to local disk if need be.
+     * 
+     * @param cacheFiles  URIs of files, each optionally with a fragment
+     *                    naming it.
+     * @throws IOException  If a file couldn't be read or copied.
+     */
+    public static void localize(List<String> cacheFiles) throws IOException {
+        Configuration conf = null;
+        
+        for (String cacheFile : cacheFiles) {
+            URI uri;
+            
+            try {
+                uri = new URI(cacheFile);
+            } catch (URISyntaxException e) {
+                throw new IOException("Bad cache file URI " + cacheFile, e);
+            }
+            
+            // Named as the distributed cache would name it.
+            String name = uri.getFragment() != null ? uri.getFragment()
+                    : new Path(uri.getPath()).getName();
+            
+            synchronized (localCopies) {
+                if (localCopies.containsKey(name) || new File(name).exists()) {
+                    continue;
+                }
+                
+                if (conf == null) {
+                    conf = new Configuration();
+                }
+                
+                Path source = new Path(uri.getScheme(), uri.getAuthority(),
+                        uri.getPath());
+                FileSystem fs = source.getFileSystem(conf);
+                File copy = File.createTempFile("legion-cache-", "-" +
+                        source.getName());
+                copy.deleteOnExit();
+                
+                if (! FileUtil.copy(fs, source, copy, false, conf)) {
+                    throw new IOException("Couldn't copy cache file " +
+                            cacheFile);
+                }
+                
+                localCopies.put(name, copy.getPath());
+            }
+        }
+    }
+    
+    /**
+     * @param file  A file name, as given in the objective.
+     * @return  The path of the local copy of the cache file with this name,
+     *          or the name itself if it isn't one.
+     */
+    public static String resolve(String file) {
+        synchronized (localCopies) {
+            String copy = localCopies.get(file);
+            return copy == null ? file : copy;
+        }
+    }
+}
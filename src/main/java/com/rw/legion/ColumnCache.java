@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import java.util.HashMap;
+
+/**
+ * Remembers the results of validating, transforming and escaping an
+ * <code>OutputColumn</code>'s raw values, so columns that repeat a small
+ * number of values (status codes, carrier names and the like) only check
+ * each distinct value once.
+ *
+ * The cache holds a limited number of values, and once full only serves the
+ * values it already has. Its hit ratio is checked regularly: if too few
+ * lookups are hits, as for columns with many distinct values, the cache is
+ * emptied and goes dormant for a while before trying again, so those columns
+ * pay for little more than a counter.
+ */
+
+public class ColumnCache {
+    // How many lookups make up a window, after which the hit ratio is checked.
+    static final int WINDOW = 1024;
+
+    // How many windows the cache stays dormant for after a poor window.
+    static final int DORMANT_WINDOWS = 64;
+
+    private static final double MIN_HIT_RATIO = 0.5;
+
+    private int capacity;
+    private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private int lookups;
+    private int hits;
+    private int dormantLookups;
+    private boolean warmingUp = true;
+
+    /**
+     * The result of evaluating a column for one raw value.
+     */
+    public static class Entry {
+        private boolean valid;
+        private String value;
+        private String output;
+        private FailureReason failureReason;
+
+        Entry(boolean valid, String value, String output,
+                FailureReason failureReason) {
+            this.valid = valid;
+            this.value = value;
+            this.output = output;
+            this.failureReason = failureReason;
+        }
+
+        /**
+         * @return  Whether the value passed validation.
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return  The value the record held after validation and
+         *          transformation.
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return  The CSV-escaped output, or null if the value failed
+         *          validation.
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * @return  Why the value failed validation, or null if it passed.
+         */
+        public FailureReason getFailureReason() {
+            return failureReason;
+        }
+    }
+
+    /**
+     * @param capacity  The most distinct values to hold.
+     */
+    public ColumnCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Look up the result for a raw value.
+     *
+     * @param raw  The raw value, or null if the column's key was absent.
+     * @return  The cached result, or null if there isn't one (including while
+     *          the cache is dormant).
+     */
+    public Entry get(String raw) {
+        if (dormantLookups > 0) {
+            dormantLookups--;
+            return null;
+        }
+
+        Entry entry = entries.get(raw);
+        lookups++;
+
+        if (entry != null) {
+            hits++;
+        }
+
+        if (lookups == WINDOW) {
+            // The first window after starting up is mostly misses anyway.
+            if (! warmingUp && hits < WINDOW * MIN_HIT_RATIO) {
+                entries.clear();
+                dormantLookups = WINDOW * DORMANT_WINDOWS;
+                warmingUp = true;
+            } else {
+                warmingUp = false;
+            }
+
+            lookups = 0;
+            hits = 0;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Remember the result for a raw value, if there's room for it.
+     *
+     * @param raw  The raw value, or null if the column's key was absent.
+     * @param valid  Whether the value passed validation.
+     * @param value  The value the record held afterwards.
+     * @param output  The CSV-escaped output, or null if it failed.
+     * @param failureReason  Why the value failed, or null if it passed.
+     */
+    public void put(String raw, boolean valid, String value, String output,
+            FailureReason failureReason) {
+        if (dormantLookups > 0 || entries.size() >= capacity) {
+            return;
+        }
+
+        entries.put(raw, new Entry(valid, value, output, failureReason));
+    }
+
+    /**
+     * @return  Whether the cache is currently dormant.
+     */
+    public boolean isDormant() {
+        return dormantLookups > 0;
+    }
+
+    /**
+     * @return  The number of values held.
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -17,28 +17,30 @@
 package com.rw.legion;
 
 import com.google.gson.JsonParseException;
+import com.rw.legion.input.FileManifest;
+import com.rw.legion.output.LegionTextOutputFormat;
 import org.apache.hadoop.conf.*;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.*;
-import org.apache.hadoop.io.compress.*;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
-import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 
 /**
 * Default Legion job which can be used to run Legion without any custom code.
 * Reads a Legion JSON objective file, identifies target output tables and
 * columns, cleans incoming data, structures it appropriately, and writes the
-* results in gzip format.
+* results, gzipped unless the objective chooses other compression.
 */
 
 public class DefaultJob {
@@ -47,34 +49,108 @@ public class DefaultJob {
      * Main method.
      * 
      * @param args  Arguments should be: 1) input path, 2) output path, 3)
-     * location of Legion objective file.
+     * location of Legion objective file, and optionally 4) location of a
+     * manifest of processed files, to only process new and changed files.
      */
     public static void main(String[] args) throws Exception {
         Configuration conf = new Configuration();
         
         // Load the Legion objective from the JSON doc.
-        Path path = new Path(args[2]);
-        FileSystem fs = FileSystem.get(new URI(args[2]), conf);
-        BufferedReader br
-            = new BufferedReader(new InputStreamReader(fs.open(path)));
-        String json = "";
+        String json = readObjective(args[2], conf);
         
-        String line = br.readLine();
+        // De-serialize the objective so we can access the settings here.
+        LegionObjective legionObjective =
+                ObjectiveDeserializer.deserialize(json);
         
-        while (line != null){
-            json += line;
-            line = br.readLine();
+        Job hadoopJob = createJob(conf, json, new Path(args[0]),
+                new Path(args[1]));
+        
+        /*
+         * In incremental mode, list the input against the manifest here, and
+         * give the input format only the files that haven't been processed.
+         */
+        Path manifestPath = null;
+        Path inputList = null;
+        FileManifest nextManifest = null;
+        
+        if (args.length > 3) {
+            manifestPath = new Path(args[3]);
+            FileSystem manifestFs = manifestPath.getFileSystem(conf);
+            Path inputPath = new Path(args[0]);
+            String objectiveHash = FileManifest.hash(json);
+            
+            nextManifest = new FileManifest();
+            FileManifest changes = new FileManifest();
+            
+            FileManifest manifest = FileManifest.read(manifestFs,
+                    manifestPath);
+            manifest.setTrustDirectoryTimes(conf.getBoolean(
+                    FileManifest.TRUST_DIRECTORY_TIMES, false));
+            
+            for (FileStatus file : manifest.findChanges(
+                    inputPath.getFileSystem(conf), inputPath, objectiveHash,
+                    nextManifest)) {
+                changes.add(file, objectiveHash);
+            }
+            
+            if (changes.size() == 0) {
+                System.out.println("No new or changed input files.");
+                nextManifest.write(manifestFs, manifestPath);
+                return;
+            }
+            
+            System.out.println(changes.size() + " new or changed input files.");
+            inputList = manifestPath.suffix(".input");
+            changes.write(manifestFs, inputList);
+            hadoopJob.getConfiguration().set(FileManifest.INPUT_LIST,
+                    manifestFs.makeQualified(inputList).toString());
         }
         
-        br.close();
+        boolean timed = conf.getBoolean(Timings.ENABLED,
+                legionObjective.isTimed());
+        
+        if (manifestPath == null) {
+            if (run(hadoopJob, legionObjective) && timed) {
+                reportTimings(new Path(args[1]), conf);
+            }
+            
+            return;
+        }
+        
+        FileSystem manifestFs = manifestPath.getFileSystem(conf);
         
+        try {
+            // Only record files as processed once the job has succeeded.
+            if (run(hadoopJob, legionObjective)) {
+                nextManifest.write(manifestFs, manifestPath);
+                
+                if (timed) {
+                    reportTimings(new Path(args[1]), conf);
+                }
+            }
+        } finally {
+            manifestFs.delete(inputList, false);
+        }
+    }
+    
+    /**
+     * Configure, but don't submit, a job that applies an objective to
+     * everything under an input location.
+     * 
+     * @param conf  Hadoop configuration to base the job's on.
+     * @param json  The JSON for the Legion objective.
+     * @param input  The input location.
+     * @param output  The output location, which must not exist yet.
+     * @return  The job, ready to submit.
+     */
+    public static Job createJob(Configuration conf, String json, Path input,
+            Path output) throws Exception {
         /*
          *  Save the JSON for the Legion objective to the Hadoop configuration,
          *  so we can access it in other containers.
          */
         conf.setStrings("legion_objective", json);
         
-        // De-serialize the objective so we can access the settings here.
         LegionObjective legionObjective =
                 ObjectiveDeserializer.deserialize(json);
         
@@ -84,11 +160,11 @@ public class DefaultJob {
         hadoopJob.setJarByClass(DefaultJob.class);
         hadoopJob.setMapperClass(DefaultMapper.class);
         LazyOutputFormat.setOutputFormatClass(hadoopJob,
-                TextOutputFormat.class);
+                LegionTextOutputFormat.class);
         
-        // Compress the output to speed things up.
-        TextOutputFormat.setCompressOutput(hadoopJob, true);
-        TextOutputFormat.setOutputCompressorClass(hadoopJob, GzipCodec.class);
+        // Compress the output (with gzip, unless the objective says not).
+        LegionTextOutputFormat.setDefaultCompression(hadoopJob,
+                legionObjective.getCompression());
         
         // What input format do we use?
 
@@ -112,24 +188,189 @@ public class DefaultJob {
                     legionObjective.getMaxCombinedSize());
         }
     
+        // Ship any files the objective's checkers need to every task.
+        if (legionObjective.getCacheFiles() != null) {
+            for (String cacheFile : legionObjective.getCacheFiles()) {
+                hadoopJob.addCacheFile(new URI(cacheFile));
+            }
+        }
+    
         /* 
          * These are just static convenience methods, so it doesn't matter if
          * they come from the wrong class.
          */
         FileInputFormat.setInputDirRecursive(hadoopJob, true);
-        FileInputFormat.addInputPath(hadoopJob, new Path(args[0]));
+        FileInputFormat.addInputPath(hadoopJob, input);
         
-        FileOutputFormat.setOutputPath(hadoopJob, new Path(args[1]));
+        FileOutputFormat.setOutputPath(hadoopJob, output);
         
         // Since a Legion objective can specify multiple output tables.
         for (OutputTable outputTable : legionObjective.getOutputTables()) {
             MultipleOutputs.addNamedOutput(hadoopJob, outputTable.getTitle(),
-                    TextOutputFormat.class, NullWritable.class, Text.class);
+                    LegionTextOutputFormat.class, NullWritable.class,
+                    Text.class);
+            LegionTextOutputFormat.setCompression(hadoopJob,
+                    outputTable.getTitle(),
+                    legionObjective.getCompression(outputTable));
         }
         
         MultipleOutputs.addNamedOutput(hadoopJob, "skipped",
-                TextOutputFormat.class, NullWritable.class, Text.class);
+                LegionTextOutputFormat.class, NullWritable.class, Text.class);
+        
+        return hadoopJob;
+    }
+    
+    /**
+     * Run a job to completion, printing its progress. If the objective has a
+     * <code>RejectionBudget</code>, the job's counters are checked against it
+     * while it runs, and the job is killed as soon as it's over.
+     * 
+     * @param hadoopJob  The job, configured but not yet submitted.
+     * @param objective  The objective it applies.
+     * @return  Whether the job succeeded.
+     * @throws RejectionBudgetException  If the job went over budget.
+     */
+    public static boolean run(Job hadoopJob, LegionObjective objective)
+            throws Exception {
+        RejectionBudget budget = objective.getRejectionBudget();
+        System.out.print("Rejection counters:\n" + TaskCounters.legend(
+                objective, hadoopJob.getConfiguration()));
+        
+        if (budget == null) {
+            return hadoopJob.waitForCompletion(true);
+        }
+        
+        long pollInterval = hadoopJob.getConfiguration().getLong(
+                RejectionBudget.POLL_INTERVAL, 10000);
+        
+        hadoopJob.submit();
+        System.out.println("Running job " + hadoopJob.getJobID() + ": " +
+                hadoopJob.getTrackingURL());
+        
+        while (! hadoopJob.isComplete()) {
+            Thread.sleep(pollInterval);
+            checkBudget(hadoopJob, objective, budget);
+        }
+        
+        if (! hadoopJob.isSuccessful()) {
+            System.err.println("Job failed: " +
+                    hadoopJob.getStatus().getFailureInfo());
+            
+            // Say why, e.g. if a task went over budget by itself.
+            for (TaskCompletionEvent event :
+                    hadoopJob.getTaskCompletionEvents(0, 100)) {
+                if (event.getStatus() == TaskCompletionEvent.Status.FAILED) {
+                    for (String diagnostic : hadoopJob.getTaskDiagnostics(
+                            event.getTaskAttemptId())) {
+                        System.err.println(diagnostic);
+                    }
+                    
+                    break;
+                }
+            }
+            
+            return false;
+        }
+        
+        // The final counters may still push the job over.
+        checkBudget(hadoopJob, objective, budget);
+        System.out.println(hadoopJob.getCounters());
+        return true;
+    }
+    
+    /**
+     * Kill a job that's over its rejection budget.
+     */
+    private static void checkBudget(Job hadoopJob, LegionObjective objective,
+            RejectionBudget budget) throws Exception {
+        Counters counters = hadoopJob.getCounters();
+        
+        // Counters aren't available until the job's running.
+        if (counters == null) {
+            return;
+        }
+        
+        String breach = budget.check(counters, objective);
+        
+        if (breach != null) {
+            if (! hadoopJob.isComplete()) {
+                hadoopJob.killJob();
+            }
+            
+            throw new RejectionBudgetException("Job over rejection budget: " +
+                    breach + ". Most rejections:" +
+                    RejectionBudget.topRejections(counters, 10, objective));
+        }
+    }
+    
+    /**
+     * Merge the timings written by each map task into a report for the whole
+     * job, which is printed and saved as "_timings.txt" in the output
+     * location.
+     * 
+     * @param output  The job's output location.
+     * @param conf  Hadoop configuration used to access the file system.
+     */
+    public static void reportTimings(Path output, Configuration conf)
+            throws Exception {
+        FileSystem fs = output.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(new Path(output, "_timings-m-*"));
+        Timings timings = new Timings();
+        
+        if (files == null || files.length == 0) {
+            return;
+        }
+        
+        for (FileStatus file : files) {
+            BufferedReader br = new BufferedReader(
+                    new InputStreamReader(fs.open(file.getPath()), "UTF-8"));
+            
+            try {
+                timings.read(br);
+            } finally {
+                br.close();
+            }
+        }
+        
+        String report = timings.report();
+        System.out.println("Timings from " + files.length + " tasks:");
+        System.out.print(report);
+        
+        Writer out = new OutputStreamWriter(
+                fs.create(new Path(output, "_timings.txt"), true), "UTF-8");
+        
+        try {
+            out.write(report);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Read the JSON for a Legion objective file.
+     * 
+     * @param location  Location of the objective file, on any file system
+     *                  Hadoop can read.
+     * @param conf  Hadoop configuration used to access the file system.
+     * @return  The contents of the objective file.
+     */
+    public static String readObjective(String location, Configuration conf)
+            throws Exception {
+        Path path = new Path(location);
+        FileSystem fs = FileSystem.get(new URI(location), conf);
+        BufferedReader br
+            = new BufferedReader(new InputStreamReader(fs.open(path)));
+        String json = "";
+        
+        String line = br.readLine();
+        
+        while (line != null){
+            json += line;
+            line = br.readLine();
+        }
+        
+        br.close();
         
-        hadoopJob.waitForCompletion(true);
-    } 
+        return json;
+    }
 }
\ No newline at end of file
@@ -16,15 +16,22 @@
 
 package com.rw.legion;
 
-import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.StringUtils;
+import com.rw.legion.output.AsyncWriters;
+import com.rw.legion.output.CompressedStreams;
+import com.rw.legion.output.LegionTextOutputFormat;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Default Mapper class used by Legion. Takes a <code>NullWritable</code> key
@@ -32,7 +39,13 @@ import java.io.IOException;
  * columns specified by the current <code>LegionObjective</code>, validates and
  * cleans the data, and yields a <code>NullWritable</code> key and a
  * CSV-formatted <code>Text</code> value, which will be written to a file by
- * the TextOutputFormat.
+ * the TextOutputFormat. Rows written and rejected are counted with
+ * <code>TaskCounters</code>, and the task fails if they're over the
+ * objective's <code>RejectionBudget</code>. If timings are on, they're
+ * written to a "_timings-m-NNNNN" file alongside the output. If the objective
+ * has an <code>AsyncOutput</code>, rows are written to the same files by
+ * <code>AsyncWriters</code> instead, so compressing and writing them runs on
+ * other threads while this one carries on parsing.
  */
 
 public class DefaultMapper
@@ -40,6 +53,11 @@ public class DefaultMapper
     
     protected LegionObjective objective;
     protected MultipleOutputs<NullWritable, Text> outputWriters;
+    private AsyncWriters asyncWriters;
+    private RecordProcessor processor;
+    private TaskCounters counters;
+    private SkippedOutput skipped;
+    private Timings timings;
     private Text outputLine = new Text();
     private NullWritable nothing = NullWritable.get();
     
@@ -52,7 +70,27 @@ public class DefaultMapper
         Configuration config = context.getConfiguration();
         this.objective = ObjectiveDeserializer.deserialize(
                 config.get("legion_objective"));
+        skipped = objective.getSkipped();
         outputWriters = new MultipleOutputs(context);
+        AsyncOutput async = objective.getAsyncOutput();
+        
+        if (async == null) {
+            processor = new RecordProcessor(objective, new NamedOutputs());
+        } else {
+            asyncWriters = new AsyncWriters(new WorkFiles(context),
+                    async.getThreads(), async.getBlockSize(),
+                    async.getQueuedBlocks());
+            processor = new RecordProcessor(objective, new AsyncOutputs());
+        }
+        
+        counters = new TaskCounters(context, objective);
+        processor.setTally(counters);
+        
+        // The record reader has already started timing, in this thread.
+        if (config.getBoolean(Timings.ENABLED, objective.isTimed())) {
+            timings = Timings.forCurrentThread();
+            processor.setTimings(timings);
+        }
     }
     
     /**
@@ -69,110 +107,117 @@ public class DefaultMapper
      */
     public void map(NullWritable key, LegionRecord value, Context context)
             throws IOException, InterruptedException {
+        processor.process(value);
+        counters.checkBudget();
+    }
+    
+    /**
+     * Standard Hadoop cleanup.
+     */
+    public void cleanup(Context context)
+            throws IOException, InterruptedException {
+        processor.finish();
+        counters.checkFinalBudget();
+        outputWriters.close();
         
-        for (OutputTable outputTable : objective.getOutputTables()) {
-            if (outputTable.hasIndexes()) {
-                IndexComboEnumerator enumerator =
-                        value.findIndexValues(outputTable);
-                
-                // No need to output this table if there were no index values
-                if (enumerator.getSize() > 0) {
-                    for (IndexCombo indexCombo : enumerator) {
-                        /*
-                         * Generate a list of keys to extract from the
-                         * LegionRecord by replacing index names with current
-                         * index values. Then try to extract data for those keys
-                         * and output.
-                         */
-                        String[] modifiedKeys
-                            = outputTable.getColumnKeys().clone();
-                        
-                        for (int i = 0; i < modifiedKeys.length; i++) {
-                            for (String name : outputTable.getIndexNames()) {
-                                name = "<" + name + ">";
-                                
-                                modifiedKeys[i] = modifiedKeys[i].replace(name,
-                                        indexCombo.getValue(name));
-                            }
-                        }
-                        
-                        tryOutput(outputTable, value, modifiedKeys);
-                    }
-                }
-            } else {
-                
-                /*
-                 *  We don't have any indexes, so just try to extract data and
-                 *  output!
-                 */
-                tryOutput(outputTable, value);
-            }
+        if (asyncWriters != null) {
+            asyncWriters.close();
+        }
+        
+        if (timings != null) {
+            writeTimings(context);
+            Timings.clearCurrentThread();
         }
     }
     
     /**
-     * Validates the data flowing to each output column, and writes output.
-     * 
-     * @param output  The current <code>OutputTable</code>.
-     * @param value  The current <code>LegionRecord</code>.
+     * Write this task's timings to the task's output directory, to be
+     * committed with the rest of its output.
      */
-    private void tryOutput(OutputTable output, LegionRecord value)
+    private void writeTimings(Context context)
             throws IOException, InterruptedException {
+        Path file = new Path(FileOutputFormat.getWorkOutputPath(context),
+                String.format("_timings-m-%05d",
+                        context.getTaskAttemptID().getTaskID().getId()));
+        FileSystem fs = file.getFileSystem(context.getConfiguration());
+        Writer out = new OutputStreamWriter(fs.create(file, true), "UTF-8");
         
-        // We're not overriding column keys, so just use the standard ones.
-        tryOutput(output, value, output.getColumnKeys());
+        try {
+            timings.write(out);
+        } finally {
+            out.close();
+        }
     }
     
     /**
-     * Validates the data flowing to each output column, and writes output.
-     * 
-     * @param output  The current <code>OutputTable</code>.
-     * @param value  The current <code>LegionRecord</code>.
-     * @param keyList  A list of data keys to extract from the <code>
-     *                 LegionRecord</code>.
+     * Sends rows from the <code>RecordProcessor</code> to the named output for
+     * each table, or to the "skipped" named output (under "skipped/" for each
+     * table, if the objective asks for that).
      */
-    private void tryOutput(OutputTable outputTable, LegionRecord value,
-                           String[] keyList) throws IOException, InterruptedException {
-        int i = 0;
-        boolean validates = true;
-        
-        String[] dataToWrite = new String[outputTable.getColumns().size()];
-        
-        for (OutputColumn column : outputTable.getColumns()) {
-            if (column.validates(keyList[i], value)) {
-                column.transform(keyList[i], value);
-                
-                dataToWrite[i]
-                    = StringEscapeUtils.escapeCsv(value.getData(keyList[i]));
-            } else {
-                dataToWrite = new String[4];
-                dataToWrite[0] = value.getData("file_name");
-                dataToWrite[1] = value.getData("file_line");
-                dataToWrite[2] = column.getKey();
-                dataToWrite[3] = column.getFailureReason();
-                        
-                validates = false;
-                break;
-            }
-            
-            i++;
+    private class NamedOutputs implements RecordProcessor.Output {
+        public void write(OutputTable table, String row)
+                throws IOException, InterruptedException {
+            outputLine.set(row);
+            outputWriters.write(table.getTitle(), nothing, outputLine,
+                    table.getTitle());
         }
         
-        outputLine.set(StringUtils.join(dataToWrite, ","));
+        public void skip(OutputTable table, OutputColumn column, String row)
+                throws IOException, InterruptedException {
+            outputLine.set(row);
+            outputWriters.write("skipped", nothing, outputLine,
+                    skipped == null ? "skipped" : skipped.getBaseName(table));
+        }
+    }
+    
+    /**
+     * Sends rows from the <code>RecordProcessor</code> to
+     * <code>AsyncWriters</code>, under the same names as
+     * <code>NamedOutputs</code> uses for their files.
+     */
+    private class AsyncOutputs implements RecordProcessor.Output {
+        public void write(OutputTable table, String row)
+                throws IOException, InterruptedException {
+            asyncWriters.write(table.getTitle(), row);
+        }
         
-        if (validates) {
-            outputWriters.write(outputTable.getTitle(), nothing, outputLine,
-                    outputTable.getTitle());
-        } else {
-            outputWriters.write("skipped", nothing, outputLine, "skipped");
+        public void skip(OutputTable table, OutputColumn column, String row)
+                throws IOException, InterruptedException {
+            asyncWriters.write(skipped == null ? "skipped"
+                    : skipped.getBaseName(table), row);
         }
     }
     
     /**
-     * Standard Hadoop cleanup.
+     * Opens the task's file for an output, named and compressed as
+     * <code>LegionTextOutputFormat</code> would for a named output, so it's
+     * committed with the rest of the task's output.
      */
-    public void cleanup(Context context)
-            throws IOException, InterruptedException {
-        outputWriters.close();
+    private static class WorkFiles implements AsyncWriters.StreamFactory {
+        private Context context;
+        
+        WorkFiles(Context context) {
+            this.context = context;
+        }
+        
+        public OutputStream open(String name) throws IOException {
+            Configuration conf = context.getConfiguration();
+            OutputCompression compression =
+                    LegionTextOutputFormat.getCompression(conf, name);
+            Path file;
+            
+            try {
+                file = new Path(FileOutputFormat.getWorkOutputPath(context),
+                        FileOutputFormat.getUniqueFile(context, name,
+                                CompressedStreams.getExtension(compression,
+                                        conf)));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            
+            FileSystem fs = file.getFileSystem(conf);
+            return CompressedStreams.open(fs.create(file, false), compression,
+                    conf);
+        }
     }
 }
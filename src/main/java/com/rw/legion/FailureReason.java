@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+/**
+ * Why a record was rejected for an output table by one of its columns.
+ */
+
+public enum FailureReason {
+    ABSENT("key absent"),
+    NULL("null not allowed"),
+    VALIDATION("data validation failed");
+    
+    private String description;
+    
+    FailureReason(String description) {
+        this.description = description;
+    }
+    
+    /**
+     * @return  The description written to the "skipped" output.
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+/**
+ * Hadoop counters for problems reading input. Rows written and rejections
+ * are counted per table and column by <code>TaskCounters</code>, in the
+ * "Legion rows written" and "Legion rejections" groups.
+ */
+
+public enum LegionCounter {
+    // Files (or splits) that stopped being read because of an IOException.
+    BROKEN_FILES,
+    
+    // Lines skipped for being longer than the maximum line length.
+    LINES_TOO_LONG,
+    
+    // Lines that couldn't be parsed as CSV or JSON.
+    PARSE_FAILURES
+}
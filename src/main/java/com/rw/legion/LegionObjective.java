@@ -33,6 +33,14 @@ public class LegionObjective {
     public String inputFormat;
     public String codecOverride;
     public Integer maxCombinedSize;
+    public String routingKey;
+    public ArrayList<String> cacheFiles;
+    public Integer batchSize;
+    public Boolean timings;
+    public RejectionBudget rejectionBudget;
+    public SkippedOutput skipped;
+    public OutputCompression compression;
+    public AsyncOutput asyncOutput;
     public ArrayList<OutputTable> outputTables;
     
     /**
@@ -65,6 +73,28 @@ public class LegionObjective {
         return outputTables;
     }
     
+    /**
+     * @param tables  Output tables, usually some of this objective's.
+     * @return  A copy of this objective with only the given output tables.
+     * This objective is left as it is; the copy shares everything else.
+     */
+    public LegionObjective withOutputTables(ArrayList<OutputTable> tables) {
+        LegionObjective copy = new LegionObjective();
+        copy.inputFormat = inputFormat;
+        copy.codecOverride = codecOverride;
+        copy.maxCombinedSize = maxCombinedSize;
+        copy.routingKey = routingKey;
+        copy.cacheFiles = cacheFiles;
+        copy.batchSize = batchSize;
+        copy.timings = timings;
+        copy.rejectionBudget = rejectionBudget;
+        copy.skipped = skipped;
+        copy.compression = compression;
+        copy.asyncOutput = asyncOutput;
+        copy.outputTables = tables;
+        return copy;
+    }
+    
     /**
      * @return  Maximum size of an input split to create by combining input
      * files with <code>CombineLegionInputFormat</code>.
@@ -72,4 +102,84 @@ public class LegionObjective {
     public Integer getMaxCombinedSize() {
         return maxCombinedSize;
     }
-}
\ No newline at end of file
+    
+    /**
+     * @return  Either null (every record is checked against every table) or
+     * a key whose value decides which tables a record is written to. Tables
+     * with an equals or in condition on the key only see records with those
+     * values; other tables see every record.
+     */
+    public String getRoutingKey() {
+        return routingKey;
+    }
+    
+    /**
+     * @return  Either null or a list of URIs of files (e.g., lists of values
+     * for <code>SetChecker</code>) to copy to every task with Hadoop's
+     * distributed cache. A fragment (e.g., <code>#values.txt</code>) names the
+     * link to the file in the task's working directory.
+     */
+    public ArrayList<String> getCacheFiles() {
+        return cacheFiles;
+    }
+    
+    /**
+     * @return  Either null (records are processed one at a time) or the
+     * number of records to process together, validating each column across
+     * all of them at once.
+     */
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+    
+    /**
+     * @return  Whether to record sampled timings of each stage of processing
+     * (see <code>Timings</code>).
+     */
+    public boolean isTimed() {
+        return timings != null && timings;
+    }
+    
+    /**
+     * @return  Either null (the job runs whatever it finds) or limits on how
+     * many rows may be rejected and files fail to be read before the job is
+     * failed.
+     */
+    public RejectionBudget getRejectionBudget() {
+        return rejectionBudget;
+    }
+    
+    /**
+     * @return  Either null (every rejection is written to "skipped") or how
+     * to write rejections (see <code>SkippedOutput</code>).
+     */
+    public SkippedOutput getSkipped() {
+        return skipped;
+    }
+    
+    /**
+     * @return  How to compress output files, for tables that don't say
+     * otherwise and for skipped rows. Gzip at the default level if the
+     * objective doesn't say.
+     */
+    public OutputCompression getCompression() {
+        return compression == null ? new OutputCompression() : compression;
+    }
+    
+    /**
+     * @param table  One of the objective's tables.
+     * @return  How to compress the table's files.
+     */
+    public OutputCompression getCompression(OutputTable table) {
+        return table.getCompression() == null ? getCompression()
+                : table.getCompression();
+    }
+    
+    /**
+     * @return  Either null (rows are written by the mapper's own thread) or
+     * how to write them on background threads.
+     */
+    public AsyncOutput getAsyncOutput() {
+        return asyncOutput;
+    }
+}
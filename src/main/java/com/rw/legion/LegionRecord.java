@@ -77,6 +77,13 @@ public class LegionRecord implements Writable{
         contents.put(key, value);
     }
     
+    /**
+     * @return  The number of keys in this record.
+     */
+    public int size() {
+        return contents.size();
+    }
+    
     /**
      * Look up the data value associated with a particular key.
      * 
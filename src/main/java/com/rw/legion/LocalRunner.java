@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.google.gson.JsonParseException;
+import com.rw.legion.output.CompressedStreams;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileAlreadyExistsException;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a Legion objective on a single machine, without submitting a Hadoop
+ * job. Input splits are computed and read with the objective's input format
+ * and record readers, and records are processed by the same
+ * <code>RecordProcessor</code> that <code>DefaultMapper</code> uses, on a
+ * work-stealing pool with one thread per core by default.
+ *
+ * Output uses the same layout as <code>DefaultJob</code>: compressed CSV files
+ * named after each table (plus "skipped"), with one file per worker thread
+ * in place of one file per map task. Each worker keeps its own Hadoop
+ * counters (and timings, if they're on), which are added up and logged at
+ * the end of the run. Each worker checks its own rows against the
+ * objective's <code>RejectionBudget</code> as it goes, and the whole run is
+ * checked before it's marked successful.
+ */
+
+public class LocalRunner {
+    private static final Log LOG = LogFactory.getLog(LocalRunner.class);
+
+    private Configuration conf;
+    private int threads;
+    private Path outputPath;
+    private FileSystem outputFs;
+    private InputFormat<NullWritable, LegionRecord> inputFormat;
+    private AtomicInteger workerIds = new AtomicInteger();
+    private AtomicLong recordCount = new AtomicLong();
+    private List<Worker> allWorkers =
+            Collections.synchronizedList(new ArrayList<Worker>());
+    private ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+
+    /**
+     * Main method.
+     *
+     * @param args  Arguments should be: 1) input path, 2) output path, 3)
+     * location of Legion objective file, and optionally 4) number of threads.
+     */
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("legion_objective", DefaultJob.readObjective(args[2], conf));
+
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+
+        new LocalRunner(conf, threads).run(new Path(args[0]),
+                new Path(args[1]));
+    }
+
+    /**
+     * @param conf  Hadoop configuration, with the objective JSON stored under
+     *              "legion_objective".
+     * @param threads  Number of worker threads.
+     */
+    public LocalRunner(Configuration conf, int threads) {
+        this.conf = conf;
+        this.threads = threads;
+    }
+
+    /**
+     * Process every file under an input path and write the results.
+     *
+     * @param input  The input location.
+     * @param output  The output location, which must not exist yet.
+     */
+    @SuppressWarnings("unchecked")
+    public void run(Path input, Path output) throws Exception {
+        long startTime = System.currentTimeMillis();
+        LegionObjective objective =
+                ObjectiveDeserializer.deserialize(conf.get("legion_objective"));
+
+        Job job = Job.getInstance(conf);
+
+        try {
+            inputFormat = (InputFormat<NullWritable, LegionRecord>)
+                ReflectionUtils.newInstance(
+                        Class.forName(objective.getInputFormat()), conf);
+        } catch (Exception e) {
+            throw new JsonParseException("Problem loading input format " +
+                    "class '" + objective.getInputFormat() + "'");
+        }
+
+        if (objective.getMaxCombinedSize() != null) {
+            CombineFileInputFormat.setMaxInputSplitSize(job,
+                    objective.getMaxCombinedSize());
+        }
+
+        FileInputFormat.setInputDirRecursive(job, true);
+        FileInputFormat.addInputPath(job, input);
+
+        outputPath = output;
+        outputFs = output.getFileSystem(conf);
+
+        if (outputFs.exists(output)) {
+            throw new FileAlreadyExistsException("Output directory " + output +
+                    " already exists");
+        }
+
+        outputFs.mkdirs(output);
+
+        List<InputSplit> splits = inputFormat.getSplits(job);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ArrayList<Future<Void>> results = new ArrayList<Future<Void>>();
+
+        for (final InputSplit split : splits) {
+            results.add(pool.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    readSplit(split);
+                    return null;
+                }
+            }));
+        }
+
+        IOException failure = null;
+
+        try {
+            for (Future<Void> result : results) {
+                result.get();
+            }
+
+            // Write any rejections the workers held back for sampling.
+            for (Worker worker : allWorkers) {
+                worker.processor.finish();
+            }
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            failure = new IOException("Legion local run failed.", e.getCause());
+        } finally {
+            pool.shutdown();
+
+            // Close every worker, even after one fails, and report the first
+            // failure with the rest suppressed.
+            for (Worker worker : allWorkers) {
+                try {
+                    worker.close();
+                } catch (IOException e) {
+                    failure = firstFailure(failure, e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        Counters counters = getCounters();
+        RejectionBudget budget = objective.getRejectionBudget();
+        String breach = budget == null ? null
+                : budget.check(counters, objective);
+
+        if (breach != null) {
+            throw new RejectionBudgetException("Run over rejection budget: " +
+                    breach + ". Most rejections:" +
+                    RejectionBudget.topRejections(counters, 10, objective));
+        }
+
+        outputFs.create(new Path(output, "_SUCCESS")).close();
+
+        LOG.info("Processed " + splits.size() + " splits and " +
+                recordCount.get() + " records in " +
+                (System.currentTimeMillis() - startTime) + " ms");
+
+        LOG.info("Rejection counters:\n" +
+                TaskCounters.legend(objective, conf));
+
+        for (CounterGroup group : counters) {
+            for (Counter counter : group) {
+                LOG.info(group.getDisplayName() + " - " +
+                        counter.getDisplayName() + ": " + counter.getValue());
+            }
+        }
+
+        if (conf.getBoolean(Timings.ENABLED, objective.isTimed())) {
+            Timings timings = new Timings();
+
+            synchronized (allWorkers) {
+                for (Worker worker : allWorkers) {
+                    timings.merge(worker.timings);
+                }
+            }
+
+            LOG.info("Timings:\n" + timings.report());
+        }
+    }
+
+    /**
+     * @return  The counters from every worker, added up.
+     */
+    public Counters getCounters() {
+        Counters counters = new Counters();
+
+        synchronized (allWorkers) {
+            for (Worker worker : allWorkers) {
+                counters.incrAllCounters(worker.counters);
+            }
+        }
+
+        return counters;
+    }
+
+    /**
+     * Read every record in a split and run it through the current thread's
+     * <code>RecordProcessor</code>.
+     */
+    private void readSplit(InputSplit split) throws Exception {
+        Worker worker = workers.get();
+
+        if (worker == null) {
+            worker = new Worker(workerIds.getAndIncrement());
+            workers.set(worker);
+            allWorkers.add(worker);
+        }
+
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf,
+                new TaskAttemptID(), worker.reporter);
+        RecordReader<NullWritable, LegionRecord> reader =
+                inputFormat.createRecordReader(split, context);
+        long records = 0;
+
+        try {
+            reader.initialize(split, context);
+
+            while (reader.nextKeyValue()) {
+                worker.processor.process(reader.getCurrentValue());
+                worker.tally.checkBudget();
+                records++;
+            }
+
+            worker.processor.flush();
+            worker.tally.checkFinalBudget();
+        } finally {
+            reader.close();
+            recordCount.addAndGet(records);
+        }
+    }
+
+    /**
+     * @return  The first failure seen, with any later one suppressed by it.
+     */
+    private static IOException firstFailure(IOException first,
+            IOException next) {
+        if (first == null) {
+            return next;
+        }
+
+        first.addSuppressed(next);
+        return first;
+    }
+
+    /**
+     * Per-thread state: a <code>RecordProcessor</code> with its own copy of
+     * the objective, its own counters, and one compressed output file per
+     * table.
+     */
+    private class Worker implements RecordProcessor.Output {
+        private int id;
+        private RecordProcessor processor;
+        private LegionObjective objective;
+        private TaskCounters tally;
+        private SkippedOutput skipped;
+        private HashMap<String, Writer> writers = new HashMap<String, Writer>();
+        private Counters counters = new Counters();
+        private Timings timings;
+        private StatusReporter reporter = new StatusReporter() {
+            public Counter getCounter(Enum<?> name) {
+                return counters.findCounter(name);
+            }
+
+            public Counter getCounter(String group, String name) {
+                return counters.findCounter(group, name);
+            }
+
+            public void progress() {
+            }
+
+            public float getProgress() {
+                return 0;
+            }
+
+            public void setStatus(String status) {
+            }
+        };
+
+        Worker(int id) {
+            this.id = id;
+            objective = ObjectiveDeserializer.deserialize(
+                    conf.get("legion_objective"));
+            skipped = objective.getSkipped();
+            processor = new RecordProcessor(objective, this);
+            tally = new TaskCounters(new TaskAttemptContextImpl(conf,
+                    new TaskAttemptID(), reporter), objective);
+            processor.setTally(tally);
+
+            // Shared with the record readers, which run in the same thread.
+            if (conf.getBoolean(Timings.ENABLED, objective.isTimed())) {
+                timings = Timings.forCurrentThread();
+                processor.setTimings(timings);
+            }
+        }
+
+        public void write(OutputTable table, String row) throws IOException {
+            writeLine(table.getTitle(), objective.getCompression(table), row);
+        }
+
+        public void skip(OutputTable table, OutputColumn column, String row)
+                throws IOException {
+            writeLine(skipped == null ? "skipped"
+                    : skipped.getBaseName(table), objective.getCompression(),
+                    row);
+        }
+
+        private void writeLine(String name, OutputCompression compression,
+                String row) throws IOException {
+            Writer writer = writers.get(name);
+
+            // Files are only created once there's something to write to them.
+            if (writer == null) {
+                Path file = new Path(outputPath, String.format("%s-m-%05d%s",
+                        name, id, CompressedStreams.getExtension(compression,
+                                conf)));
+
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        CompressedStreams.open(outputFs.create(file, false),
+                                compression, conf), "UTF-8"), 65536);
+                writers.put(name, writer);
+            }
+
+            writer.write(row);
+            writer.write('\n');
+        }
+
+        void close() throws IOException {
+            IOException failure = null;
+
+            for (Writer writer : writers.values()) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    failure = firstFailure(failure, e);
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
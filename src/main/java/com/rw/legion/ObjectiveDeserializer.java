@@ -20,8 +20,11 @@ import com.google.gson.*;
 import com.rw.legion.columncheck.ColumnChecker;
 import com.rw.legion.columncheck.StringChecker;
 import com.rw.legion.columntransform.ColumnTransformer;
+import com.rw.legion.columntransform.FusedTransformer;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 
 /**
  * Handles deserializing Legion Objectives from JSON. Most of the work is
@@ -44,8 +47,32 @@ public class ObjectiveDeserializer {
         builder.registerTypeAdapter(OutputColumn.class,
                 new ColumnDeserializer());
         
+        JsonObject tree = new JsonParser().parse(json).getAsJsonObject();
+        
+        /*
+         * Checkers open their files as they're built, so any cache files must
+         * be in place first.
+         */
+        if (tree.has("cacheFiles")) {
+            ArrayList<String> cacheFiles = new ArrayList<String>();
+            
+            for (JsonElement cacheFile : tree.getAsJsonArray("cacheFiles")) {
+                cacheFiles.add(cacheFile.getAsString());
+            }
+            
+            try {
+                CacheFiles.localize(cacheFiles);
+            } catch (IOException e) {
+                throw new JsonParseException("Couldn't copy cache files", e);
+            }
+        }
+        
         LegionObjective objective = builder.create().
-                fromJson(json, LegionObjective.class);
+                fromJson(tree, LegionObjective.class);
+        
+        for (OutputTable outputTable : objective.getOutputTables()) {
+            outputTable.initialize();
+        }
         
         return objective;
     }
@@ -102,33 +129,57 @@ public class ObjectiveDeserializer {
             ColumnTransformer transformer = null;
             
             if (obj.has("transform")) {
-                JsonObject transform = obj.getAsJsonObject("transform");
-                
-                String transformerName = transform.get("class").getAsString();
-                
-                JsonObject checkerProps = new JsonObject();
+                JsonElement transform = obj.get("transform");
                 
-                if (transform.has("options")) {
-                    checkerProps = transform.getAsJsonObject("options");
-                }
-                
-                try {
-                    @SuppressWarnings("rawtypes")
-                    Class[] argFormat = new Class[]{JsonObject.class};
+                /*
+                 * A list of transformers is applied in order, with simple
+                 * character-level steps fused into a single pass.
+                 */
+                if (transform.isJsonArray()) {
+                    ArrayList<ColumnTransformer> steps =
+                            new ArrayList<ColumnTransformer>();
                     
-                    transformer = (ColumnTransformer) Class
-                            .forName(transformerName)
-                            .getDeclaredConstructor(argFormat)
-                            .newInstance(checkerProps);
-                } catch (Exception e) {
-                    throw new JsonParseException("Problem loading column " +
-                            "transform class '" + transformerName + "'");
+                    for (JsonElement step : transform.getAsJsonArray()) {
+                        steps.add(buildTransformer(step.getAsJsonObject()));
+                    }
+                    
+                    transformer = new FusedTransformer(steps);
+                } else {
+                    transformer = buildTransformer(transform.getAsJsonObject());
                 }
             }
             
-            column.initialize(checker, transformer);
+            column.initialize(checker, transformer,
+                    obj.get("validate") + "|" + obj.get("transform"));
             
             return column;
         }
+        
+        /**
+         * Instantiate a <code>ColumnTransformer</code> from its JSON.
+         */
+        private ColumnTransformer buildTransformer(JsonObject transform)
+                throws JsonParseException {
+            String transformerName = transform.get("class").getAsString();
+            
+            JsonObject checkerProps = new JsonObject();
+            
+            if (transform.has("options")) {
+                checkerProps = transform.getAsJsonObject("options");
+            }
+            
+            try {
+                @SuppressWarnings("rawtypes")
+                Class[] argFormat = new Class[]{JsonObject.class};
+                
+                return (ColumnTransformer) Class
+                        .forName(transformerName)
+                        .getDeclaredConstructor(argFormat)
+                        .newInstance(checkerProps);
+            } catch (Exception e) {
+                throw new JsonParseException("Problem loading column " +
+                        "transform class '" + transformerName + "'");
+            }
+        }
     }
 }
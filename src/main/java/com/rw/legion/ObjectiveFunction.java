@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Applies a Legion objective to a single <code>LegionRecord</code>, returning
+ * the CSV-formatted rows it produces for each output table, keyed by table
+ * title. Rows for records that failed validation are returned under
+ * "skipped", as in the output of <code>DefaultJob</code>.
+ *
+ * The objective is parsed once up front, to catch errors early, and then
+ * once more for each thread that uses the function, so a single instance
+ * can be shared by a parallel stream.
+ *
+ * If the objective samples its skipped rows (see <code>SkippedOutput</code>),
+ * each thread's first rejections for each column are returned with their
+ * records, and the random sample of the rest is held back until
+ * <code>finish()</code> is called, once every record has been applied.
+ */
+
+public class ObjectiveFunction
+        implements Function<LegionRecord, Map<String, List<String>>> {
+    private String objectiveJson;
+    private ThreadLocal<Collector> collectors = new ThreadLocal<Collector>();
+    private ArrayList<Collector> allCollectors = new ArrayList<Collector>();
+
+    /**
+     * @param objectiveJson  JSON text of a Legion objective.
+     */
+    public ObjectiveFunction(String objectiveJson) {
+        ObjectiveDeserializer.deserialize(objectiveJson);
+        this.objectiveJson = objectiveJson;
+    }
+
+    /**
+     * @param record  The record to process.
+     * @return  Rows produced by the record, keyed by table title. Tables
+     *          without any rows are left out.
+     */
+    public Map<String, List<String>> apply(LegionRecord record) {
+        Collector collector = collectors.get();
+
+        if (collector == null) {
+            collector = new Collector();
+            collectors.set(collector);
+
+            synchronized (allCollectors) {
+                allCollectors.add(collector);
+            }
+        }
+
+        return collector.collect(record);
+    }
+
+    /**
+     * Return the skipped rows held back for sampling by every thread, and
+     * start sampling afresh. Call once every record has been applied.
+     *
+     * @return  Sampled skipped rows, under "skipped", or an empty map if
+     *          there aren't any.
+     */
+    public Map<String, List<String>> finish() {
+        LinkedHashMap<String, List<String>> rows =
+                new LinkedHashMap<String, List<String>>();
+
+        synchronized (allCollectors) {
+            for (Collector collector : allCollectors) {
+                collector.drain(rows);
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Per-thread state: a <code>RecordProcessor</code> with its own copy of
+     * the objective.
+     */
+    private class Collector implements RecordProcessor.Output {
+        private RecordProcessor processor;
+        private LinkedHashMap<String, List<String>> rows;
+
+        Collector() {
+            processor = new RecordProcessor(
+                    ObjectiveDeserializer.deserialize(objectiveJson), this);
+        }
+
+        Map<String, List<String>> collect(LegionRecord record) {
+            rows = new LinkedHashMap<String, List<String>>();
+
+            try {
+                processor.process(record);
+                processor.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+
+            return rows;
+        }
+
+        void drain(LinkedHashMap<String, List<String>> target) {
+            rows = target;
+
+            try {
+                processor.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void write(OutputTable table, String row) {
+            add(table.getTitle(), row);
+        }
+
+        public void skip(OutputTable table, OutputColumn column, String row) {
+            add("skipped", row);
+        }
+
+        private void add(String name, String row) {
+            List<String> list = rows.get(name);
+
+            if (list == null) {
+                list = new ArrayList<String>();
+                rows.put(name, list);
+            }
+
+            list.add(row);
+        }
+    }
+}
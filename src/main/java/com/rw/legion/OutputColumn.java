@@ -34,11 +34,19 @@ import java.util.regex.Pattern;
  */
 
 public class OutputColumn {
+    /**
+     * Results of <code>prepare</code>.
+     */
+    public static final int PASS = 0;
+    public static final int FAIL = 1;
+    public static final int CHECK = 2;
+    
     // These will be automatically de-serialized by Gson.
     private String key;
     private Boolean failOnAbsent = false;
     private Boolean failOnNull = false;
     private Boolean failOnValidation = true;
+    private Integer cacheSize;
     
     // These will get set up when initialize() is called.
     private ColumnChecker checker;
@@ -46,7 +54,10 @@ public class OutputColumn {
     private ArrayList<String> indexes;
     private boolean hasIndexes;
     private Pattern keyPattern;
-    private String failureReason;
+    private FailureReason failure;
+    private String signature;
+    private int memoSlot = -1;
+    private ColumnCache cache;
     
     /**
      * Empty constructor for GSON.
@@ -63,11 +74,15 @@ public class OutputColumn {
      * @param checker The ColumnChecker that will be used for this column.
      * @param transformer The ColumnTransformer that will be used for this
      *                    column.
+     * @param definition The JSON defining the checker and transformer, used to
+     *                   recognize identical columns in different tables.
      */
     public void initialize(ColumnChecker checker,
-            ColumnTransformer transformer) {
+            ColumnTransformer transformer, String definition) {
         this.checker = checker;
         this.transformer = transformer;
+        signature = key + "|" + failOnAbsent + "|" + failOnNull + "|" +
+                failOnValidation + "|" + definition;
         indexes = new ArrayList<String>();
         hasIndexes = false;
         String keyRegex = "^\\Q" + key + "\\E$";
@@ -80,6 +95,11 @@ public class OutputColumn {
         }
         
         keyPattern = Pattern.compile(keyRegex);
+        
+        // Columns with indexes look up a different key for each index value.
+        if (cacheSize != null && cacheSize > 0 && ! hasIndexes) {
+            cache = new ColumnCache(cacheSize);
+        }
     }
     
     /**
@@ -119,6 +139,40 @@ public class OutputColumn {
         return keyPattern;
     }
     
+    /**
+     * @return  A string that is the same for columns with the same key,
+     *          validation settings, checker and transformer, which will
+     *          always produce the same results for the same record.
+     */
+    public String getSignature() {
+        return signature;
+    }
+    
+    /**
+     * @return  Where <code>RecordProcessor</code> keeps this column's result
+     *          for the current record, so identical columns in other tables
+     *          can reuse it, or -1 if the result isn't shared.
+     */
+    public int getMemoSlot() {
+        return memoSlot;
+    }
+    
+    /**
+     * @param memoSlot  Where <code>RecordProcessor</code> keeps this column's
+     *                  result for the current record, or -1.
+     */
+    public void setMemoSlot(int memoSlot) {
+        this.memoSlot = memoSlot;
+    }
+    
+    /**
+     * @return  The cache of results for this column's raw values, or null if
+     *          the column doesn't cache them.
+     */
+    public ColumnCache getCache() {
+        return cache;
+    }
+    
     /**
      * @return  A list of all indexes used in this column key.
      */
@@ -146,7 +200,32 @@ public class OutputColumn {
      *          the supplied <code>LegionRecord</code>.
      */
     public boolean validates(String keyOverride, LegionRecord value) {
-        failureReason = null;
+        int state = prepare(keyOverride, value);
+        
+        if (state != CHECK) {
+            return state == PASS;
+        }
+        
+        return finish(keyOverride, value,
+                checker.validates(value.getData(keyOverride)));
+    }
+    
+    /**
+     * The first half of <code>validates</code>, for validating many records
+     * at once: handles absent and null (blank) values, which don't need the
+     * <code>ColumnChecker</code>.
+     * 
+     * @param keyOverride  Override the key to look up in the
+     *                     <code>LegionRecord</code>.
+     * @param value  The <code>LegionRecord</code> in which to look for this
+     *               column's key.
+     * @return  <code>PASS</code> or <code>FAIL</code> if the value has been
+     *          dealt with, or <code>CHECK</code> if the value must be checked
+     *          by the <code>ColumnChecker</code> and passed to
+     *          <code>finish</code>.
+     */
+    public int prepare(String keyOverride, LegionRecord value) {
+        failure = null;
 	
         /*
          *  If the key is absent, either fail the record or set it to null
@@ -154,8 +233,8 @@ public class OutputColumn {
          */
         if (value.getData(keyOverride) == null) {
             if (failOnAbsent) {
-                failureReason = "key absent";
-                return false;
+                failure = FailureReason.ABSENT;
+                return FAIL;
             } else {
                 value.setField(keyOverride, "");
             }
@@ -164,33 +243,57 @@ public class OutputColumn {
         // If the value is null (blank), either fail the record or do nothing.
         if (value.getData(keyOverride).equals("")) {
             if (failOnNull) {
-                failureReason = "null not allowed";
-                return false;
+                failure = FailureReason.NULL;
+                return FAIL;
             }
+            
+            return PASS;
         }
         
         /*
          * Unless this is a null (blank) value, validate the data using the
          * <code>ColumnCheck</code> for this column.
          */
-        if (! value.getData(keyOverride).equals("")) {
-            if (! checker.validates(value.getData(keyOverride))) {
-                /*
-                 * Fail the record if necessary (including if failOnNull is
-                 * true, because then we can't replace with null.
-                 */
-                if (failOnValidation || failOnNull) {
-                    failureReason = "data validation failed";
-                    return false;
-                } else {
-                    value.setField(keyOverride,  "");
-                }
+        return CHECK;
+    }
+    
+    /**
+     * The second half of <code>validates</code>, for values
+     * <code>prepare</code> left to the <code>ColumnChecker</code>.
+     * 
+     * @param keyOverride  Override the key to look up in the
+     *                     <code>LegionRecord</code>.
+     * @param value  The <code>LegionRecord</code> in which to look for this
+     *               column's key.
+     * @param checked  Whether the <code>ColumnChecker</code> accepted the
+     *                 value.
+     * @return  Whether or not the column passes validation.
+     */
+    public boolean finish(String keyOverride, LegionRecord value,
+            boolean checked) {
+        if (! checked) {
+            /*
+             * Fail the record if necessary (including if failOnNull is
+             * true, because then we can't replace with null.
+             */
+            if (failOnValidation || failOnNull) {
+                failure = FailureReason.VALIDATION;
+                return false;
+            } else {
+                value.setField(keyOverride,  "");
             }
         }
         
         return true;
     }
     
+    /**
+     * @return  The <code>ColumnChecker</code> for this column.
+     */
+    public ColumnChecker getChecker() {
+        return checker;
+    }
+    
     /**
      * Look this column up in a <code>LegionRecord</code> and apply the
      * appropriate <code>ColumnTransformer</code>, if there is one.
@@ -212,6 +315,14 @@ public class OutputColumn {
      *          or null if it passed validation.
      */
     public String getFailureReason() {
-        return failureReason;
+        return failure == null ? null : failure.getDescription();
+    }
+    
+    /**
+     * @return  Why the most recently validated value failed validation, or
+     *          null if it passed validation.
+     */
+    public FailureReason getFailure() {
+        return failure;
     }
 }
\ No newline at end of file
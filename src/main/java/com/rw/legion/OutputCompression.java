@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.google.gson.JsonParseException;
+import org.apache.hadoop.io.compress.CompressionCodec;
+
+/**
+ * How to compress an output table's files, from the "compression" of the
+ * objective (for every table, and skipped rows) or of an
+ * <code>OutputTable</code>. The "codec" is one of:
+ *
+ * <ul>
+ *   <li>"gzip" (the default), at "level" 0 to 9.</li>
+ *   <li>"none".</li>
+ *   <li>"bzip2", for output that needs to be splittable downstream. The
+ *       level is the block size, 1 to 9 (in units of 100KB), where the
+ *       native library is used.</li>
+ *   <li>"lz4", which needs Hadoop's native library. Any level above 1 uses
+ *       LZ4HC.</li>
+ *   <li>"snappy", which needs Hadoop's native library.</li>
+ *   <li>"zstd", at "level" 1 to 22, which needs Hadoop 2.9 or later.</li>
+ *   <li>The class name of any other Hadoop <code>CompressionCodec</code>.
+ *       </li>
+ * </ul>
+ *
+ * Contents are de-serialized from JSON using GSON.
+ */
+
+public class OutputCompression {
+    public String codec;
+    public Integer level;
+    
+    /**
+     * Constructor required by Gson.
+     */
+    public OutputCompression() {
+        
+    }
+    
+    /**
+     * @param codec  The codec's name.
+     * @param level  The level, or null for the codec's default.
+     */
+    public OutputCompression(String codec, Integer level) {
+        this.codec = codec;
+        this.level = level;
+    }
+    
+    /**
+     * @return  The codec's name.
+     */
+    public String getCodec() {
+        return codec == null ? "gzip" : codec;
+    }
+    
+    /**
+     * @return  The compression level, or null for the codec's default.
+     */
+    public Integer getLevel() {
+        return level;
+    }
+    
+    /**
+     * @return  Whether files are compressed at all.
+     */
+    public boolean isCompressed() {
+        return ! getCodec().equals("none");
+    }
+    
+    /**
+     * @return  Whether files are gzipped, which Legion does itself.
+     */
+    public boolean isGzip() {
+        return getCodec().equals("gzip");
+    }
+    
+    /**
+     * @return  The Hadoop codec class for codecs other than "gzip" and
+     *          "none".
+     * @throws JsonParseException  If the codec isn't available.
+     */
+    public Class<? extends CompressionCodec> getCodecClass()
+            throws JsonParseException {
+        String name = getCodec();
+        String className;
+        
+        if (name.equals("bzip2")) {
+            className = "org.apache.hadoop.io.compress.BZip2Codec";
+        } else if (name.equals("lz4")) {
+            className = "org.apache.hadoop.io.compress.Lz4Codec";
+        } else if (name.equals("snappy")) {
+            className = "org.apache.hadoop.io.compress.SnappyCodec";
+        } else if (name.equals("zstd")) {
+            // Only in newer versions of Hadoop.
+            className = "org.apache.hadoop.io.compress.ZStandardCodec";
+        } else {
+            className = name;
+        }
+        
+        try {
+            return Class.forName(className).asSubclass(CompressionCodec.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new JsonParseException("Compression codec '" + name +
+                    "' isn't available");
+        }
+    }
+}
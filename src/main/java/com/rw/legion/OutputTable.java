@@ -17,6 +17,7 @@
 package com.rw.legion;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An <code>OutputTable</code> defines the structure of a table that Legion will
@@ -26,12 +27,16 @@ import java.util.ArrayList;
  * isn't appropriately normalized (e.g., id, value1, value2, value3). Finally,
  * it contains a list of <code>OutputColumn</code>s, which specify the order and
  * contents of the columns that will be written in this file as output.
+ * Optionally, a list of <code>WhereCondition</code>s limits which records are
+ * written to the table at all.
  */
 
 public class OutputTable {
     private String title;
     private ArrayList<String> indexes;
     private ArrayList<OutputColumn> columns;
+    private ArrayList<WhereCondition> where;
+    private OutputCompression compression;
     
     public OutputTable() {
         // Empty constructor requested by GSON.
@@ -85,4 +90,72 @@ public class OutputTable {
     public ArrayList<String> getIndexNames() {
         return indexes;
     }
+    
+    /**
+     * Initial setup work for this table. Called after de-serialization.
+     */
+    public void initialize() {
+        if (where != null) {
+            for (WhereCondition condition : where) {
+                condition.initialize();
+            }
+        }
+    }
+    
+    /**
+     * @return  The conditions records must meet to be written to this table,
+     *          or null if all records are considered.
+     */
+    public ArrayList<WhereCondition> getWhere() {
+        return where;
+    }
+    
+    /**
+     * @return Either null (the objective's compression is used) or how to
+     * compress this table's files.
+     */
+    public OutputCompression getCompression() {
+        return compression;
+    }
+    
+    /**
+     * Find the values of a key that records must have to be written to this
+     * table, for routing records straight to the tables that want them.
+     * 
+     * @param key  The routing key.
+     * @return  The values from this table's first equals or in condition on
+     *          the key, or null if the table has no such condition.
+     */
+    public List<String> getRouteValues(String key) {
+        if (where != null) {
+            for (WhereCondition condition : where) {
+                if (condition.getKey().equals(key)
+                        && condition.getLiterals() != null) {
+                    return condition.getLiterals();
+                }
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Check a record against this table's "where" conditions. This is done
+     * before any index discovery or column validation, so records that
+     * don't belong in the table cost as little as possible.
+     * 
+     * @param record  The record to check.
+     * @return  Whether the record meets all of this table's conditions.
+     */
+    public boolean accepts(LegionRecord record) {
+        if (where != null) {
+            for (WhereCondition condition : where) {
+                if (! condition.matches(record)) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
 }
@@ -0,0 +1,740 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.rw.legion.columncheck.ColumnChecker;
+import com.rw.legion.jfr.LegionEvents;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Applies a <code>LegionObjective</code> to <code>LegionRecord</code>s: loops
+ * through all output tables and columns, validates and cleans the data, and
+ * hands CSV-formatted rows to an <code>Output</code>. This is the core of
+ * <code>DefaultMapper</code>, kept free of Hadoop types so that it can be
+ * driven by other runners as well.
+ *
+ * Records can be processed in batches (see the objective's "batchSize"), in
+ * which case each table's columns are validated a column at a time across
+ * the batch, with one call to <code>ColumnChecker.validateAll</code> per
+ * column. Rows are still produced in record order within each table, and
+ * each record sees the same changes made by earlier tables and columns as it
+ * would on its own. Callers must <code>finish()</code> once they've run out
+ * of records. If the objective asks for only a sample of rejections to be
+ * written (see <code>SkippedOutput</code>), unsampled rejections are counted
+ * but their rows are never built. While a flight recording is running, the
+ * work done for each table in each batch is reported as an event (see
+ * <code>LegionEvents</code>).
+ *
+ * A <code>RecordProcessor</code> keeps per-record state in the objective's
+ * columns, so each thread needs its own (with its own de-serialized
+ * objective).
+ */
+
+public class RecordProcessor {
+    private LegionObjective objective;
+    private Output output;
+    private Tally tally;
+    private Timings timings;
+    private SkipSampler sampler;
+    private boolean reasonCodes;
+    private int[] unroutedTables;
+    private int[] allTables;
+    private HashMap<String, int[]> routes;
+
+    // Records waiting to be processed.
+    private int batchSize;
+    private LegionRecord[] batch;
+    private int batchCount;
+    private long[] generations;
+
+    // The records in the batch visiting each table, by table index.
+    private int[][] tableRecords;
+    private int[] tableRecordCounts;
+    private int[] touchedTables;
+
+    // Rows produced for the table being processed.
+    private long tableWritten;
+    private long tableSkipped;
+
+    // Per-record results for the table being processed.
+    private int[] live;
+    private String[][] rowData;
+    private OutputColumn[] failedColumns;
+    private int[] failedColumnIndexes;
+    private FailureReason[] failureReasons;
+    private String[] rawValues;
+
+    // Values waiting for the current column's checker.
+    private int[] pending;
+    private String[] pendingValues;
+    private BitSet checked = new BitSet();
+
+    /*
+     * Results of columns that appear in several tables, for the records in
+     * the batch, at [slot * batchSize + record], with the raw values they
+     * were evaluated from. A result is only valid while its generation
+     * matches its record's.
+     */
+    private long generation;
+    private long[] memoGenerations;
+    private boolean[] memoValid;
+    private String[] memoValues;
+    private String[] memoOutputs;
+    private FailureReason[] memoFailures;
+
+    /**
+     * Receives the rows produced by a <code>RecordProcessor</code>.
+     */
+    public interface Output {
+        /**
+         * Write a row that passed validation.
+         *
+         * @param table  The table the row belongs to.
+         * @param row  A CSV-formatted row.
+         */
+        void write(OutputTable table, String row)
+                throws IOException, InterruptedException;
+
+        /**
+         * Write a row describing a record that failed validation for a table.
+         *
+         * @param table  The table the record was being written to.
+         * @param column  The column that failed validation.
+         * @param row  A CSV-formatted row with the file name, line number,
+         *             column key and failure reason.
+         */
+        void skip(OutputTable table, OutputColumn column, String row)
+                throws IOException, InterruptedException;
+    }
+
+    /**
+     * Counts the rows produced by a <code>RecordProcessor</code>, by table
+     * and column index in the objective.
+     */
+    public interface Tally {
+        /**
+         * A row was written to a table.
+         *
+         * @param table  Index of the table.
+         */
+        void written(int table);
+
+        /**
+         * A record was rejected for a table.
+         *
+         * @param table  Index of the table.
+         * @param column  Index of the column that failed, within the table.
+         * @param reason  Why it failed.
+         */
+        void rejected(int table, int column, FailureReason reason);
+    }
+
+    /**
+     * @param objective  The objective to apply.
+     * @param output  Where to send rows.
+     */
+    public RecordProcessor(LegionObjective objective, Output output) {
+        this.objective = objective;
+        this.output = output;
+
+        int tableCount = objective.getOutputTables().size();
+        allTables = new int[tableCount];
+
+        for (int i = 0; i < tableCount; i++) {
+            allTables[i] = i;
+        }
+
+        if (objective.getRoutingKey() != null) {
+            buildRoutes(objective.getRoutingKey());
+        }
+
+        batchSize = objective.getBatchSize() == null ? 1
+                : Math.max(1, objective.getBatchSize());
+        batch = new LegionRecord[batchSize];
+        generations = new long[batchSize];
+        tableRecords = new int[tableCount][];
+        tableRecordCounts = new int[tableCount];
+        touchedTables = new int[tableCount];
+        live = new int[batchSize];
+        rowData = new String[batchSize][];
+        failedColumns = new OutputColumn[batchSize];
+        failedColumnIndexes = new int[batchSize];
+        failureReasons = new FailureReason[batchSize];
+        rawValues = new String[batchSize];
+        pending = new int[batchSize];
+        pendingValues = new String[batchSize];
+
+        SkippedOutput skipped = objective.getSkipped();
+
+        if (skipped != null) {
+            reasonCodes = skipped.hasReasonCodes();
+
+            if (skipped.isSampled()) {
+                sampler = new SkipSampler(skipped, objective);
+            }
+        }
+
+        buildMemos();
+    }
+
+    /**
+     * Give each column definition that appears more than once (e.g., the
+     * same key with the same checker in several tables) a shared slot, so
+     * it's only validated, transformed and escaped once per record. Columns
+     * with indexes look up different keys for each index value, so they
+     * aren't shared.
+     */
+    private void buildMemos() {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+
+        for (OutputTable outputTable : objective.getOutputTables()) {
+            for (OutputColumn column : outputTable.getColumns()) {
+                if (! column.hasIndexes()) {
+                    Integer count = counts.get(column.getSignature());
+                    counts.put(column.getSignature(),
+                            count == null ? 1 : count + 1);
+                }
+            }
+        }
+
+        HashMap<String, Integer> slots = new HashMap<String, Integer>();
+
+        for (OutputTable outputTable : objective.getOutputTables()) {
+            for (OutputColumn column : outputTable.getColumns()) {
+                if (column.hasIndexes()
+                        || counts.get(column.getSignature()) < 2) {
+                    continue;
+                }
+
+                Integer slot = slots.get(column.getSignature());
+
+                if (slot == null) {
+                    slot = slots.size();
+                    slots.put(column.getSignature(), slot);
+                }
+
+                column.setMemoSlot(slot);
+            }
+        }
+
+        int size = slots.size() * batchSize;
+        memoGenerations = new long[size];
+        memoValid = new boolean[size];
+        memoValues = new String[size];
+        memoOutputs = new String[size];
+        memoFailures = new FailureReason[size];
+    }
+
+    /**
+     * Work out, for each value of the routing key, which tables a record
+     * with that value can be written to, so each record only visits those
+     * tables. Tables that don't route on the key are included for every
+     * value, and objective order is kept.
+     */
+    private void buildRoutes(String routingKey) {
+        ArrayList<OutputTable> tables = objective.getOutputTables();
+        routes = new HashMap<String, int[]>();
+        ArrayList<Integer> unrouted = new ArrayList<Integer>();
+        HashSet<String> allValues = new HashSet<String>();
+
+        for (int i = 0; i < tables.size(); i++) {
+            List<String> values = tables.get(i).getRouteValues(routingKey);
+
+            if (values == null) {
+                unrouted.add(i);
+            } else {
+                allValues.addAll(values);
+            }
+        }
+
+        unroutedTables = toArray(unrouted);
+
+        for (String routeValue : allValues) {
+            ArrayList<Integer> routed = new ArrayList<Integer>();
+
+            for (int i = 0; i < tables.size(); i++) {
+                List<String> values = tables.get(i).getRouteValues(routingKey);
+
+                if (values == null || values.contains(routeValue)) {
+                    routed.add(i);
+                }
+            }
+
+            routes.put(routeValue, toArray(routed));
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+
+        return array;
+    }
+
+    /**
+     * @param value  The current <code>LegionRecord</code>.
+     * @return  Indexes of the tables the record could be written to.
+     */
+    private int[] tablesFor(LegionRecord value) {
+        if (routes == null) {
+            return allTables;
+        }
+
+        int[] tables = routes.get(value.getData(objective.getRoutingKey()));
+        return tables == null ? unroutedTables : tables;
+    }
+
+    /**
+     * @param tally  Where to count rows written and rejected, or null.
+     */
+    public void setTally(Tally tally) {
+        this.tally = tally;
+    }
+
+    /**
+     * @param timings  Where to record sampled timings of finding index
+     *                 values, validating, building rows and writing them, or
+     *                 null.
+     */
+    public void setTimings(Timings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * @return  The objective being applied.
+     */
+    public LegionObjective getObjective() {
+        return objective;
+    }
+
+    /**
+     * Validate and clean the data in a record, and write the results. With a
+     * routing key, only the tables routed to by the record's value for the
+     * key are visited. With a batch size over one, the record is held until
+     * the batch is full, or until <code>flush()</code> is called.
+     *
+     * @param value  The current <code>LegionRecord</code>.
+     */
+    public void process(LegionRecord value)
+            throws IOException, InterruptedException {
+        batch[batchCount++] = value;
+
+        if (batchCount == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Process any records still held in the current batch.
+     */
+    public void flush() throws IOException, InterruptedException {
+        if (batchCount == 0) {
+            return;
+        }
+
+        try {
+            processBatch();
+        } finally {
+            Arrays.fill(batch, 0, batchCount, null);
+            batchCount = 0;
+        }
+    }
+
+    /**
+     * Process any records still held in the current batch, and write any
+     * rejections held back for sampling. Call once there are no more
+     * records.
+     */
+    public void finish() throws IOException, InterruptedException {
+        flush();
+
+        if (sampler != null) {
+            sampler.drain(output);
+        }
+    }
+
+    /**
+     * Loop through the output tables specified by the objective, in order,
+     * and process the records in the batch that visit each one.
+     */
+    private void processBatch() throws IOException, InterruptedException {
+        int touched = 0;
+
+        for (int r = 0; r < batchCount; r++) {
+            generations[r] = ++generation;
+
+            for (int table : tablesFor(batch[r])) {
+                if (tableRecordCounts[table] == 0) {
+                    touchedTables[touched++] = table;
+
+                    if (tableRecords[table] == null) {
+                        tableRecords[table] = new int[batchSize];
+                    }
+                }
+
+                tableRecords[table][tableRecordCounts[table]++] = r;
+            }
+        }
+
+        Arrays.sort(touchedTables, 0, touched);
+
+        try {
+            for (int t = 0; t < touched; t++) {
+                int table = touchedTables[t];
+                OutputTable outputTable = objective.getOutputTables().get(table);
+                Object event = LegionEvents.tableBatchStarted();
+                tableWritten = 0;
+                tableSkipped = 0;
+                processTable(table, outputTable, tableRecords[table],
+                        tableRecordCounts[table]);
+
+                if (event != null) {
+                    LegionEvents.tableBatchFlushed(event,
+                            outputTable.getTitle(), tableRecordCounts[table],
+                            tableWritten, tableSkipped);
+                }
+            }
+        } finally {
+            for (int t = 0; t < touched; t++) {
+                tableRecordCounts[touchedTables[t]] = 0;
+            }
+        }
+    }
+
+    /**
+     * Process the records in the batch that visit a table.
+     *
+     * @param table  Index of the table.
+     * @param outputTable  The table.
+     * @param records  Positions in the batch of the records.
+     * @param count  The number of records.
+     */
+    private void processTable(int table, OutputTable outputTable,
+            int[] records, int count) throws IOException, InterruptedException {
+        int liveCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (outputTable.accepts(batch[records[i]])) {
+                live[liveCount++] = records[i];
+            }
+        }
+
+        if (liveCount == 0) {
+            return;
+        }
+
+        if (! outputTable.hasIndexes()) {
+
+            /*
+             *  We don't have any indexes, so just try to extract data and
+             *  output!
+             */
+            tryOutput(table, outputTable, outputTable.getColumnKeys(), live,
+                    liveCount);
+            return;
+        }
+
+        int[] single = new int[1];
+
+        for (int i = 0; i < liveCount; i++) {
+            single[0] = live[i];
+            long start = timings == null ? 0
+                    : timings.start(Timings.Stage.INDEXES);
+            IndexComboEnumerator enumerator =
+                    batch[single[0]].findIndexValues(outputTable);
+
+            if (timings != null) {
+                timings.stop(Timings.Stage.INDEXES, start);
+            }
+
+            // No need to output this table if there were no index values
+            if (enumerator.getSize() > 0) {
+                for (IndexCombo indexCombo : enumerator) {
+                    /*
+                     * Generate a list of keys to extract from the
+                     * LegionRecord by replacing index names with current
+                     * index values. Then try to extract data for those keys
+                     * and output.
+                     */
+                    String[] modifiedKeys
+                        = outputTable.getColumnKeys().clone();
+
+                    for (int k = 0; k < modifiedKeys.length; k++) {
+                        for (String name : outputTable.getIndexNames()) {
+                            name = "<" + name + ">";
+
+                            modifiedKeys[k] = modifiedKeys[k].replace(name,
+                                    indexCombo.getValue(name));
+                        }
+                    }
+
+                    tryOutput(table, outputTable, modifiedKeys, single, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates the data flowing to each output column, a column at a time
+     * across the given records, and writes output.
+     *
+     * @param table  Index of the table.
+     * @param outputTable  The current <code>OutputTable</code>.
+     * @param keyList  A list of data keys to extract from each <code>
+     *                 LegionRecord</code>.
+     * @param records  Positions in the batch of the records to output.
+     * @param count  The number of records.
+     */
+    private void tryOutput(int table, OutputTable outputTable,
+            String[] keyList, int[] records, int count)
+            throws IOException, InterruptedException {
+        int columnCount = outputTable.getColumns().size();
+        long start = timings == null ? 0
+                : timings.start(Timings.Stage.VALIDATE);
+
+        for (int i = 0; i < count; i++) {
+            rowData[i] = new String[columnCount];
+            failedColumns[i] = null;
+        }
+
+        int c = 0;
+
+        for (OutputColumn column : outputTable.getColumns()) {
+            String key = keyList[c];
+            int slot = column.getMemoSlot();
+            ColumnCache cache = column.getCache();
+            int pendingCount = 0;
+
+            for (int i = 0; i < count; i++) {
+                if (failedColumns[i] != null) {
+                    continue;
+                }
+
+                int r = records[i];
+                LegionRecord value = batch[r];
+                int memo = slot * batchSize + r;
+
+                /*
+                 * Reuse the result of an identical column in an earlier
+                 * table, as long as the value is still the one it started
+                 * from. If a transform changed it, the value is evaluated
+                 * again, as it would be without sharing.
+                 */
+                if (slot >= 0 && memoGenerations[memo] == generations[r]
+                        && StringUtils.equals(memoValues[memo],
+                                value.getData(key))) {
+                    setResult(i, c, column, memoValid[memo], memoOutputs[memo],
+                            memoFailures[memo]);
+                    continue;
+                }
+
+                String raw = value.getData(key);
+                ColumnCache.Entry cached = cache == null ? null : cache.get(raw);
+
+                if (cached != null) {
+                    // Leave the record as evaluating the column would have.
+                    if (! StringUtils.equals(raw, cached.getValue())) {
+                        value.setField(key, cached.getValue());
+                    }
+
+                    remember(slot, r, cached.isValid(), raw,
+                            cached.getOutput(), cached.getFailureReason());
+                    setResult(i, c, column, cached.isValid(),
+                            cached.getOutput(), cached.getFailureReason());
+                    continue;
+                }
+
+                rawValues[i] = raw;
+                int state = column.prepare(key, value);
+
+                if (state == OutputColumn.CHECK) {
+                    pending[pendingCount] = i;
+                    pendingValues[pendingCount++] = value.getData(key);
+                } else {
+                    complete(i, c, column, key, r, state == OutputColumn.PASS);
+                }
+            }
+
+            if (pendingCount > 0) {
+                ColumnChecker checker = column.getChecker();
+                checked.clear();
+
+                if (pendingCount == 1) {
+                    checked.set(0, checker.validates(pendingValues[0]));
+                } else {
+                    checker.validateAll(pendingValues, 0, pendingCount,
+                            checked);
+                }
+
+                for (int p = 0; p < pendingCount; p++) {
+                    int i = pending[p];
+                    int r = records[i];
+                    boolean valid = column.finish(key, batch[r],
+                            checked.get(p));
+                    complete(i, c, column, key, r, valid);
+                }
+
+                Arrays.fill(pendingValues, 0, pendingCount, null);
+            }
+
+            c++;
+        }
+
+        if (timings != null) {
+            timings.stop(Timings.Stage.VALIDATE, start);
+        }
+
+        for (int i = 0; i < count; i++) {
+            LegionRecord value = batch[records[i]];
+            start = timings == null ? 0 : timings.start(Timings.Stage.ENCODE);
+            String row = null;
+            int sample = SkipSampler.WRITE;
+
+            if (failedColumns[i] != null) {
+                if (sampler != null) {
+                    sample = sampler.admit(table, failedColumnIndexes[i],
+                            failureReasons[i]);
+                }
+
+                if (sample != SkipSampler.DROP) {
+                    row = skippedRow(value, outputTable, i);
+                }
+            } else {
+                row = StringUtils.join(rowData[i], ",");
+            }
+
+            if (timings != null) {
+                timings.stop(Timings.Stage.ENCODE, start);
+                start = timings.start(Timings.Stage.WRITE);
+            }
+
+            if (failedColumns[i] != null) {
+                if (sample == SkipSampler.WRITE) {
+                    output.skip(outputTable, failedColumns[i], row);
+                } else if (sample >= 0) {
+                    sampler.hold(sample, outputTable, failedColumns[i], row);
+                }
+
+                tableSkipped++;
+
+                if (tally != null) {
+                    tally.rejected(table, failedColumnIndexes[i],
+                            failureReasons[i]);
+                }
+            } else {
+                output.write(outputTable, row);
+                tableWritten++;
+
+                if (tally != null) {
+                    tally.written(table);
+                }
+            }
+
+            if (timings != null) {
+                timings.stop(Timings.Stage.WRITE, start);
+            }
+
+            rowData[i] = null;
+            rawValues[i] = null;
+        }
+    }
+
+    /**
+     * Build the row recording why a record was rejected.
+     */
+    private String skippedRow(LegionRecord value, OutputTable outputTable,
+            int i) {
+        if (reasonCodes) {
+            return StringEscapeUtils.escapeCsv(value.getData("file_name")) +
+                    "," + StringEscapeUtils.escapeCsv(
+                            value.getData("file_line")) +
+                    "," + StringEscapeUtils.escapeCsv(outputTable.getTitle()) +
+                    "," + StringEscapeUtils.escapeCsv(
+                            failedColumns[i].getKey()) +
+                    "," + failureReasons[i].name();
+        }
+
+        String[] dataToWrite = new String[4];
+        dataToWrite[0] = value.getData("file_name");
+        dataToWrite[1] = value.getData("file_line");
+        dataToWrite[2] = failedColumns[i].getKey();
+        dataToWrite[3] = failureReasons[i].getDescription();
+        return StringUtils.join(dataToWrite, ",");
+    }
+
+    /**
+     * Finish evaluating a column for a record once it's been validated:
+     * transform and escape the value if it passed, and remember the result.
+     */
+    private void complete(int i, int c, OutputColumn column, String key,
+            int r, boolean valid) {
+        LegionRecord value = batch[r];
+        FailureReason failureReason = column.getFailure();
+        String escaped = null;
+
+        if (valid) {
+            column.transform(key, value);
+            escaped = StringEscapeUtils.escapeCsv(value.getData(key));
+        }
+
+        if (column.getCache() != null) {
+            column.getCache().put(rawValues[i], valid, value.getData(key),
+                    escaped, failureReason);
+        }
+
+        remember(column.getMemoSlot(), r, valid, rawValues[i], escaped,
+                failureReason);
+        setResult(i, c, column, valid, escaped, failureReason);
+    }
+
+    private void remember(int slot, int r, boolean valid, String value,
+            String escaped, FailureReason failureReason) {
+        if (slot < 0) {
+            return;
+        }
+
+        int memo = slot * batchSize + r;
+        memoGenerations[memo] = generations[r];
+        memoValid[memo] = valid;
+        memoValues[memo] = value;
+        memoOutputs[memo] = escaped;
+        memoFailures[memo] = failureReason;
+    }
+
+    private void setResult(int i, int c, OutputColumn column, boolean valid,
+            String escaped, FailureReason failureReason) {
+        if (valid) {
+            rowData[i][c] = escaped;
+        } else {
+            failedColumns[i] = column;
+            failedColumnIndexes[i] = c;
+            failureReasons[i] = failureReason;
+        }
+    }
+}
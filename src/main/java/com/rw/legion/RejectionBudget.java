@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Limits on how much bad data a job may see before it's given up on, from
+ * the objective's "rejectionBudget". Each table may reject at most
+ * "maxRejectedRows" rows, and at most "maxRejectedFraction" of the rows it
+ * sees once it's seen "minRows" of them (1000 by default, so a few early
+ * rejections don't count for too much). At most "maxBrokenFiles" files may
+ * stop being read because of I/O errors. Any limit left out isn't checked.
+ *
+ * Each map task checks its own rows against the budget as it goes, and fails
+ * once it's over. <code>DefaultJob</code> also checks the whole job's
+ * counters every so often ("legion.budget.poll.ms", ten seconds by default),
+ * and kills the job if it's over.
+ *
+ * Contents are de-serialized from JSON using GSON.
+ */
+
+public class RejectionBudget {
+    public static final String POLL_INTERVAL = "legion.budget.poll.ms";
+    
+    public Double maxRejectedFraction;
+    public Long maxRejectedRows;
+    public Long maxBrokenFiles;
+    public Long minRows;
+    
+    /**
+     * Constructor required by Gson.
+     */
+    public RejectionBudget() {
+        
+    }
+    
+    /**
+     * @return  The number of rows a table must see before the fraction it
+     * rejects is checked.
+     */
+    public long getMinRows() {
+        return minRows == null ? 1000 : minRows;
+    }
+    
+    /**
+     * Check a table's rows against the budget.
+     * 
+     * @param title  The table's title.
+     * @param written  Rows written to the table.
+     * @param rejected  Rows rejected by the table.
+     * @return  How the table is over budget, or null if it isn't.
+     */
+    public String checkTable(String title, long written, long rejected) {
+        if (maxRejectedRows != null && rejected > maxRejectedRows) {
+            return "table " + title + " rejected " + rejected +
+                    " rows (budget " + maxRejectedRows + ")";
+        }
+        
+        long rows = written + rejected;
+        
+        if (maxRejectedFraction != null && rows >= getMinRows()
+                && rejected > maxRejectedFraction * rows) {
+            return "table " + title + " rejected " + rejected + " of " +
+                    rows + " rows (budget " + maxRejectedFraction + ")";
+        }
+        
+        return null;
+    }
+    
+    /**
+     * @param brokenFiles  The number of files that stopped being read.
+     * @return  How that's over budget, or null if it isn't.
+     */
+    public String checkBrokenFiles(long brokenFiles) {
+        if (maxBrokenFiles != null && brokenFiles > maxBrokenFiles) {
+            return brokenFiles + " files couldn't be read (budget " +
+                    maxBrokenFiles + ")";
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Check a job's counters against the budget.
+     * 
+     * @param counters  Counters reported by <code>TaskCounters</code> and the
+     *                  record readers.
+     * @param objective  The objective being applied.
+     * @return  How the job is over budget, or null if it isn't.
+     */
+    public String check(Counters counters, LegionObjective objective) {
+        String breach = checkBrokenFiles(
+                counters.findCounter(LegionCounter.BROKEN_FILES).getValue());
+        ArrayList<String> names = new ArrayList<String>();
+        
+        for (OutputTable table : objective.getOutputTables()) {
+            names.add(table.getTitle());
+        }
+        
+        /*
+         * Tables past TaskCounters' limit share counters, so here they're
+         * judged as one table. Each task still checks every table.
+         */
+        names.add(TaskCounters.OTHER_TABLES);
+        CounterGroup written = counters.getGroup(TaskCounters.WRITTEN_GROUP);
+        CounterGroup rejected =
+                counters.getGroup(TaskCounters.REJECTED_ROWS_GROUP);
+        
+        for (String name : names) {
+            if (breach != null) {
+                break;
+            }
+            
+            Counter tableWritten = written.findCounter(name, false);
+            Counter tableRejected = rejected.findCounter(name, false);
+            
+            if (tableWritten != null && tableRejected != null) {
+                breach = checkTable(name, tableWritten.getValue(),
+                        tableRejected.getValue());
+            }
+        }
+        
+        return breach;
+    }
+    
+    /**
+     * Describe the columns that rejected the most records.
+     * 
+     * @param counters  Counters reported by <code>TaskCounters</code>.
+     * @param limit  The most columns to list.
+     * @param objective  The objective being applied.
+     * @return  One line per column, most rejections first.
+     */
+    public static String topRejections(Counters counters, int limit,
+            LegionObjective objective) {
+        CounterGroup group = counters.getGroup(TaskCounters.REJECTED_GROUP);
+        ArrayList<Counter> list = new ArrayList<Counter>();
+        
+        for (Counter counter : group) {
+            list.add(counter);
+        }
+        
+        return topRejections(list, limit, objective);
+    }
+    
+    /**
+     * Describe the columns that rejected the most records.
+     * 
+     * @param rejections  Counters from the "Legion rejections" group.
+     * @param limit  The most columns to list.
+     * @param objective  The objective being applied.
+     * @return  One line per column, most rejections first.
+     */
+    static String topRejections(List<Counter> rejections, int limit,
+            LegionObjective objective) {
+        ArrayList<Counter> sorted = new ArrayList<Counter>(rejections);
+        
+        Collections.sort(sorted, new Comparator<Counter>() {
+            public int compare(Counter a, Counter b) {
+                return Long.compare(b.getValue(), a.getValue());
+            }
+        });
+        
+        StringBuilder summary = new StringBuilder();
+        
+        for (int i = 0; i < sorted.size() && i < limit; i++) {
+            summary.append("\n    ").append(TaskCounters.describe(
+                    objective, sorted.get(i).getName()))
+                    .append(": ").append(sorted.get(i).getValue());
+        }
+        
+        return summary.toString();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses which rejections a <code>RecordProcessor</code> writes, when the
+ * objective's <code>SkippedOutput</code> asks for a sample. The first few
+ * rejections for each table, column and reason are written straight away;
+ * after that, rejections compete for a fixed number of reservoir slots, so
+ * that every one has the same chance of being kept, and the reservoir is
+ * written at the end.
+ *
+ * Deciding costs a counter and, past the first few, a random number, so rows
+ * that won't be written are never built.
+ */
+
+public class SkipSampler {
+    /** Write the rejection now. */
+    public static final int WRITE = -1;
+    
+    /** Don't write the rejection. */
+    public static final int DROP = -2;
+    
+    private int firstPerColumn;
+    
+    // By table, then column, then reason.
+    private int[][][] written;
+    
+    private long seen;
+    private OutputTable[] heldTables;
+    private OutputColumn[] heldColumns;
+    private String[] heldRows;
+    private int held;
+    
+    // Seeded, so the same input gives the same sample.
+    private SplittableRandom random = new SplittableRandom(0x5EEDL);
+    
+    /**
+     * @param settings  How to sample.
+     * @param objective  The objective being applied.
+     */
+    public SkipSampler(SkippedOutput settings, LegionObjective objective) {
+        firstPerColumn = settings.getFirstPerColumn();
+        written = new int[objective.getOutputTables().size()][][];
+        
+        for (int t = 0; t < written.length; t++) {
+            written[t] = new int[objective.getOutputTables().get(t)
+                    .getColumns().size()][FailureReason.values().length];
+        }
+        
+        int reservoir = settings.getReservoir();
+        heldTables = new OutputTable[reservoir];
+        heldColumns = new OutputColumn[reservoir];
+        heldRows = new String[reservoir];
+    }
+    
+    /**
+     * Decide what to do with a rejection.
+     * 
+     * @param table  Index of the table.
+     * @param column  Index of the column that failed, within the table.
+     * @param reason  Why it failed.
+     * @return  <code>WRITE</code>, <code>DROP</code>, or a reservoir slot to
+     *          <code>hold()</code> the row in.
+     */
+    public int admit(int table, int column, FailureReason reason) {
+        int[] count = written[table][column];
+        
+        if (count[reason.ordinal()] < firstPerColumn) {
+            count[reason.ordinal()]++;
+            return WRITE;
+        }
+        
+        if (heldRows.length == 0) {
+            return DROP;
+        }
+        
+        seen++;
+        
+        if (seen <= heldRows.length) {
+            return (int) seen - 1;
+        }
+        
+        long slot = random.nextLong(seen);
+        return slot < heldRows.length ? (int) slot : DROP;
+    }
+    
+    /**
+     * Keep a row in the reservoir, replacing whatever was in its slot.
+     */
+    public void hold(int slot, OutputTable table, OutputColumn column,
+            String row) {
+        if (heldRows[slot] == null) {
+            held++;
+        }
+        
+        heldTables[slot] = table;
+        heldColumns[slot] = column;
+        heldRows[slot] = row;
+    }
+    
+    /**
+     * Write the rows in the reservoir, and empty it.
+     */
+    public void drain(RecordProcessor.Output output)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < heldRows.length; i++) {
+            if (heldRows[i] != null) {
+                output.skip(heldTables[i], heldColumns[i], heldRows[i]);
+                heldTables[i] = null;
+                heldColumns[i] = null;
+                heldRows[i] = null;
+            }
+        }
+        
+        held = 0;
+        seen = 0;
+    }
+    
+    /**
+     * @return  The number of rows in the reservoir.
+     */
+    public int getHeld() {
+        return held;
+    }
+}
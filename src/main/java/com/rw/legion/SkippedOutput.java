@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+/**
+ * How rejected records are written, from the objective's "skipped". By
+ * default, every rejection is written to the "skipped" output as
+ * <code>file_name,file_line,key,description</code>.
+ *
+ * <ul>
+ *   <li>"perTable": write each table's rejections to its own files, under
+ *       "skipped/" in the output location.</li>
+ *   <li>"reasonCodes": write <code>file_name,file_line,table,key,code</code>,
+ *       CSV-escaped, where the code is a <code>FailureReason</code> name
+ *       (ABSENT, NULL or VALIDATION).</li>
+ *   <li>"firstPerColumn" and "reservoir": if either is set, only sample the
+ *       rejections: each task writes the first "firstPerColumn" rejections
+ *       for each table, column and reason, plus a uniform random sample of
+ *       "reservoir" of the rest, written when the task finishes.</li>
+ * </ul>
+ *
+ * Rejections are counted exactly either way (see <code>TaskCounters</code>).
+ *
+ * Contents are de-serialized from JSON using GSON.
+ */
+
+public class SkippedOutput {
+    public Boolean perTable;
+    public Boolean reasonCodes;
+    public Integer firstPerColumn;
+    public Integer reservoir;
+    
+    /**
+     * Constructor required by Gson.
+     */
+    public SkippedOutput() {
+        
+    }
+    
+    /**
+     * @return  Whether each table's rejections go to their own files.
+     */
+    public boolean isPerTable() {
+        return perTable != null && perTable;
+    }
+    
+    /**
+     * @return  Whether rows carry the table and a reason code, rather than a
+     * description.
+     */
+    public boolean hasReasonCodes() {
+        return reasonCodes != null && reasonCodes;
+    }
+    
+    /**
+     * @return  Whether only a sample of rejections are written.
+     */
+    public boolean isSampled() {
+        return firstPerColumn != null || reservoir != null;
+    }
+    
+    /**
+     * @return  How many rejections to write for each table, column and
+     * reason before sampling.
+     */
+    public int getFirstPerColumn() {
+        return firstPerColumn == null ? 0 : firstPerColumn;
+    }
+    
+    /**
+     * @return  How many of the remaining rejections to sample.
+     */
+    public int getReservoir() {
+        return reservoir == null ? 0 : reservoir;
+    }
+    
+    /**
+     * @param table  The table that rejected a record.
+     * @return  The base name of the files to write the rejection to.
+     */
+    public String getBaseName(OutputTable table) {
+        return isPerTable() ? "skipped/" + table.getTitle() : "skipped";
+    }
+}
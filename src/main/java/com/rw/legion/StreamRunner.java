@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.rw.legion.input.StreamRecordReader;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Runs a Legion objective as a Unix filter. Records are read from standard
+ * input in the format of the objective's input format (JSON lines or CSV),
+ * rows for a single output table are written to standard output, and skipped
+ * rows are written to standard error or a file.
+ *
+ * Usage:
+ * <pre>
+ * java -cp legion.jar:... com.rw.legion.StreamRunner objective.json table
+ *     [skipped-file] &lt; in &gt; out
+ * </pre>
+ */
+
+public class StreamRunner {
+
+    /**
+     * Main method.
+     *
+     * @param args  Arguments should be: 1) location of a local Legion
+     * objective file, 2) title of the table to output, and optionally 3) a
+     * file to write skipped rows to.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: StreamRunner <objective file> " +
+                    "<table> [skipped file]");
+            System.exit(2);
+        }
+
+        String json = new String(Files.readAllBytes(Paths.get(args[0])),
+                StandardCharsets.UTF_8);
+        LegionObjective objective = ObjectiveDeserializer.deserialize(json);
+
+        if (args.length > 2) {
+            try (OutputStream skipped = new FileOutputStream(args[2])) {
+                run(objective, args[1], System.in, System.out, skipped);
+            }
+        } else {
+            run(objective, args[1], System.in, System.out, System.err);
+        }
+    }
+
+    /**
+     * Apply one table of an objective to a stream of records.
+     *
+     * @param objective  The objective to apply.
+     * @param table  Title of the table to output.
+     * @param in  Input records, in the objective's input format.
+     * @param out  Where to write rows for the table.
+     * @param skipped  Where to write skipped rows.
+     * @return  Number of records read.
+     */
+    public static long run(LegionObjective objective, String table,
+            InputStream in, OutputStream out, OutputStream skipped)
+            throws IOException, InterruptedException {
+        OutputTable selected = null;
+
+        for (OutputTable outputTable : objective.getOutputTables()) {
+            if (outputTable.getTitle().equals(table)) {
+                selected = outputTable;
+            }
+        }
+
+        if (selected == null) {
+            throw new IllegalArgumentException("Objective has no table '" +
+                    table + "'");
+        }
+
+        // Don't spend any time on tables that aren't being written.
+        ArrayList<OutputTable> tables = new ArrayList<OutputTable>();
+        tables.add(selected);
+
+        final Writer rows = new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+        final Writer skips = new BufferedWriter(
+                new OutputStreamWriter(skipped, StandardCharsets.UTF_8), 65536);
+
+        RecordProcessor processor = new RecordProcessor(
+                objective.withOutputTables(tables),
+                new RecordProcessor.Output() {
+                    public void write(OutputTable outputTable, String row)
+                            throws IOException {
+                        rows.write(row);
+                        rows.write('\n');
+                    }
+
+                    public void skip(OutputTable outputTable,
+                            OutputColumn column, String row)
+                            throws IOException {
+                        skips.write(row);
+                        skips.write('\n');
+                    }
+                });
+
+        StreamRecordReader reader = new StreamRecordReader(in,
+                StreamRecordReader.parserFor(objective.getInputFormat()),
+                "-", StreamRecordReader.DEFAULT_MAX_LINE_LENGTH);
+        long count = 0;
+        LegionRecord record;
+
+        while ((record = reader.next()) != null) {
+            processor.process(record);
+            count++;
+        }
+
+        processor.finish();
+
+        rows.flush();
+        skips.flush();
+
+        return count;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.util.ArrayList;
+
+/**
+ * Publishes a <code>RecordProcessor</code>'s activity as Hadoop counters:
+ * rows written and rejected per table, in the "Legion rows written" and
+ * "Legion rows rejected" groups, and rejections per table, column and
+ * reason, in the "Legion rejections" group.
+ *
+ * Counters for rows written and rejected are looked up when the task starts.
+ * Hadoop allows few counters (120 by default, across every group) and cuts
+ * their names short, so rejections are counted under short names made of
+ * table and column indexes (e.g., "t0.c3.VALIDATION"), which
+ * <code>legend()</code> explains and <code>describe()</code> spells out.
+ * Only the first tables get counters of their own: as many as
+ * <code>MAX_TABLES</code> in the job's configuration (20 by default). The
+ * rest share the "(other tables)" row counters and one "other" rejection
+ * counter. Likewise, only the first columns of those tables, in the
+ * objective's order, get their own counters: as many as
+ * <code>MAX_COLUMNS</code> (10 by default). Rejections by any other column
+ * are counted in one "t0.other" counter for each table. Each rejection
+ * counter is only looked up (and created) the first time it's needed, and
+ * kept from then on.
+ *
+ * If the objective has a <code>RejectionBudget</code>, the task's own rows
+ * are checked against it as they're counted, and
+ * <code>checkBudget()</code> throws once the task is over.
+ */
+
+public class TaskCounters implements RecordProcessor.Tally {
+    public static final String WRITTEN_GROUP = "Legion rows written";
+    public static final String REJECTED_ROWS_GROUP = "Legion rows rejected";
+    public static final String REJECTED_GROUP = "Legion rejections";
+    public static final String MAX_COLUMNS = "legion.counters.columns.max";
+    public static final String MAX_TABLES = "legion.counters.tables.max";
+    public static final String OTHER_TABLES = "(other tables)";
+    
+    private static final int DEFAULT_MAX_COLUMNS = 10;
+    private static final int DEFAULT_MAX_TABLES = 20;
+    private static final String OTHER = "other";
+    
+    private TaskAttemptContext context;
+    private LegionObjective objective;
+    private Counter[] written;
+    private Counter[] rejectedRows;
+    
+    // By table, then column, then reason.
+    private Counter[][][] rejected;
+    private Counter[] rejectedOther;
+    private int countedTables;
+    private int[] countedColumns;
+    
+    private RejectionBudget budget;
+    private long[] taskWritten;
+    private long[] taskRejected;
+    private String breach;
+    
+    /**
+     * @param context  The task's context, for looking up counters.
+     * @param objective  The objective being applied.
+     */
+    public TaskCounters(TaskAttemptContext context,
+            LegionObjective objective) {
+        this.context = context;
+        this.objective = objective;
+        
+        ArrayList<OutputTable> tables = objective.getOutputTables();
+        written = new Counter[tables.size()];
+        rejectedRows = new Counter[tables.size()];
+        rejected = new Counter[tables.size()][][];
+        rejectedOther = new Counter[tables.size()];
+        Configuration conf = context.getConfiguration();
+        countedTables = countedTables(objective, conf);
+        countedColumns = countedColumns(objective, conf);
+        
+        for (int t = 0; t < tables.size(); t++) {
+            String name = t < countedTables ? tables.get(t).getTitle()
+                    : OTHER_TABLES;
+            written[t] = context.getCounter(WRITTEN_GROUP, name);
+            rejectedRows[t] = context.getCounter(REJECTED_ROWS_GROUP, name);
+            rejected[t] = new Counter[countedColumns[t]]
+                    [FailureReason.values().length];
+        }
+        
+        budget = objective.getRejectionBudget();
+        
+        if (budget != null) {
+            taskWritten = new long[tables.size()];
+            taskRejected = new long[tables.size()];
+        }
+    }
+    
+    public void written(int table) {
+        written[table].increment(1);
+        
+        if (budget != null) {
+            taskWritten[table]++;
+        }
+    }
+    
+    public void rejected(int table, int column, FailureReason reason) {
+        Counter counter;
+        
+        if (column < countedColumns[table]) {
+            counter = rejected[table][column][reason.ordinal()];
+            
+            if (counter == null) {
+                counter = context.getCounter(REJECTED_GROUP,
+                        "t" + table + ".c" + column + "." + reason.name());
+                rejected[table][column][reason.ordinal()] = counter;
+            }
+        } else {
+            counter = rejectedOther[table];
+            
+            if (counter == null) {
+                counter = context.getCounter(REJECTED_GROUP,
+                        table < countedTables ? "t" + table + "." + OTHER
+                                : OTHER);
+                rejectedOther[table] = counter;
+            }
+        }
+        
+        counter.increment(1);
+        rejectedRows[table].increment(1);
+        
+        // Rejections are the only thing that can push a table over budget.
+        if (budget != null && breach == null) {
+            taskRejected[table]++;
+            breach = budget.checkTable(
+                    objective.getOutputTables().get(table).getTitle(),
+                    taskWritten[table], taskRejected[table]);
+        }
+    }
+    
+    /**
+     * Fail if this task's rows so far are over the objective's rejection
+     * budget. Cheap enough to call after every record.
+     * 
+     * @throws RejectionBudgetException  If the task is over budget.
+     */
+    public void checkBudget() throws RejectionBudgetException {
+        if (breach != null) {
+            throw new RejectionBudgetException("Task over rejection budget: " +
+                    breach + ". Most rejections:" + topRejections());
+        }
+    }
+    
+    /**
+     * Fail if this task's rows, or the files it couldn't read, are over the
+     * objective's rejection budget.
+     * 
+     * @throws RejectionBudgetException  If the task is over budget.
+     */
+    public void checkFinalBudget() throws RejectionBudgetException {
+        if (budget != null && breach == null) {
+            breach = budget.checkBrokenFiles(context.getCounter(
+                    LegionCounter.BROKEN_FILES).getValue());
+        }
+        
+        checkBudget();
+    }
+    
+    private String topRejections() {
+        ArrayList<Counter> counters = new ArrayList<Counter>();
+        
+        for (int t = 0; t < rejected.length; t++) {
+            for (Counter[] column : rejected[t]) {
+                for (Counter counter : column) {
+                    if (counter != null) {
+                        counters.add(counter);
+                    }
+                }
+            }
+            
+            // Tables without counters of their own all share one.
+            if (rejectedOther[t] != null
+                    && ! counters.contains(rejectedOther[t])) {
+                counters.add(rejectedOther[t]);
+            }
+        }
+        
+        return RejectionBudget.topRejections(counters, 5, objective);
+    }
+    
+    /**
+     * @return  How many of the first tables get counters of their own.
+     */
+    private static int countedTables(LegionObjective objective,
+            Configuration conf) {
+        return Math.max(0, Math.min(objective.getOutputTables().size(),
+                conf.getInt(MAX_TABLES, DEFAULT_MAX_TABLES)));
+    }
+    
+    /**
+     * @return  How many of each table's first columns get their own
+     *          counters, so the first <code>MAX_COLUMNS</code> of all the
+     *          tables with their own counters do.
+     */
+    private static int[] countedColumns(LegionObjective objective,
+            Configuration conf) {
+        ArrayList<OutputTable> tables = objective.getOutputTables();
+        int[] counted = new int[tables.size()];
+        int left = Math.max(0, conf.getInt(MAX_COLUMNS, DEFAULT_MAX_COLUMNS));
+        int countedTables = countedTables(objective, conf);
+        
+        for (int t = 0; t < countedTables; t++) {
+            counted[t] = Math.min(left, tables.get(t).getColumns().size());
+            left -= counted[t];
+        }
+        
+        return counted;
+    }
+    
+    /**
+     * Explain the names of the "Legion rejections" counters.
+     * 
+     * @param objective  The objective being applied.
+     * @param conf  The job's configuration.
+     * @return  One line for each table and each column with its own
+     *          counters (e.g., "t0.c3 = calls: $.ts"), and one listing the
+     *          tables that share counters.
+     */
+    public static String legend(LegionObjective objective,
+            Configuration conf) {
+        ArrayList<OutputTable> tables = objective.getOutputTables();
+        int countedTables = countedTables(objective, conf);
+        int[] counted = countedColumns(objective, conf);
+        StringBuilder legend = new StringBuilder();
+        
+        for (int t = 0; t < countedTables; t++) {
+            OutputTable table = tables.get(t);
+            legend.append("t").append(t).append(" = ")
+                    .append(table.getTitle()).append("\n");
+            
+            for (int c = 0; c < counted[t]; c++) {
+                legend.append("t").append(t).append(".c").append(c)
+                        .append(" = ").append(table.getTitle()).append(": ")
+                        .append(table.getColumns().get(c).getKey())
+                        .append("\n");
+            }
+        }
+        
+        if (countedTables < tables.size()) {
+            legend.append(OTHER).append(" = ").append(OTHER_TABLES)
+                    .append(":");
+            
+            for (int t = countedTables; t < tables.size(); t++) {
+                legend.append(" ").append(tables.get(t).getTitle());
+            }
+            
+            legend.append("\n");
+        }
+        
+        return legend.toString();
+    }
+    
+    /**
+     * Spell out the name of a "Legion rejections" counter.
+     * 
+     * @param objective  The objective being applied.
+     * @param name  The counter's name (e.g., "t0.c3.VALIDATION").
+     * @return  What it counts (e.g., "calls: $.ts (data validation
+     *          failed)"), or the name itself if it isn't one of ours.
+     */
+    public static String describe(LegionObjective objective, String name) {
+        if (name.equals(OTHER)) {
+            return OTHER_TABLES;
+        }
+        
+        String[] parts = name.split("\\.");
+        
+        try {
+            OutputTable table = objective.getOutputTables().get(
+                    Integer.parseInt(parts[0].substring(1)));
+            
+            if (parts.length == 2 && parts[1].equals(OTHER)) {
+                return table.getTitle() + ": other columns";
+            }
+            
+            OutputColumn column = table.getColumns().get(
+                    Integer.parseInt(parts[1].substring(1)));
+            return table.getTitle() + ": " + column.getKey() + " (" +
+                    FailureReason.valueOf(parts[2]).getDescription() + ")";
+        } catch (RuntimeException e) {
+            return name;
+        }
+    }
+}
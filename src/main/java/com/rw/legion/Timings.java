@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Sampled timings of the stages of a Legion task: reading lines, parsing
+ * them, finding index values, validating columns, building rows and writing
+ * them. Every call to a stage is counted, but only one in
+ * <code>SAMPLE_EVERY</code> is timed, into a histogram with a bucket per
+ * power of two nanoseconds. Histograms from different threads and tasks can
+ * be merged, and are written as a short text summary.
+ *
+ * Timings are off unless the objective's "timings" or the configuration's
+ * "legion.timings" is true. When they're off, the code being timed only
+ * checks for a null <code>Timings</code>.
+ *
+ * A <code>Timings</code> isn't thread-safe. The record reader and the mapper
+ * of a task run in the same thread, and share the thread's
+ * <code>Timings</code> through <code>forCurrentThread()</code>.
+ */
+
+public class Timings {
+    public static final String ENABLED = "legion.timings";
+    
+    // Time one call in this many (a power of two).
+    static final int SAMPLE_EVERY = 64;
+    
+    private static final int BUCKETS = 64;
+    private static final ThreadLocal<Timings> current =
+            new ThreadLocal<Timings>();
+    
+    /**
+     * The stages that are timed.
+     */
+    public enum Stage {
+        READ,
+        PARSE,
+        INDEXES,
+        VALIDATE,
+        ENCODE,
+        WRITE
+    }
+    
+    private long[] calls = new long[Stage.values().length];
+    private long[] samples = new long[Stage.values().length];
+    private long[] sampledNanos = new long[Stage.values().length];
+    private long[][] buckets = new long[Stage.values().length][BUCKETS];
+    
+    /**
+     * @return  The current thread's <code>Timings</code>, created if need be.
+     */
+    public static Timings forCurrentThread() {
+        Timings timings = current.get();
+        
+        if (timings == null) {
+            timings = new Timings();
+            current.set(timings);
+        }
+        
+        return timings;
+    }
+    
+    /**
+     * Forget the current thread's <code>Timings</code>, once it's been
+     * written out.
+     */
+    public static void clearCurrentThread() {
+        current.remove();
+    }
+    
+    /**
+     * Count a call to a stage, and start timing it if it's sampled.
+     * 
+     * @param stage  The stage.
+     * @return  The start time to pass to <code>stop</code>, or 0 if the call
+     *          isn't sampled.
+     */
+    public long start(Stage stage) {
+        if ((calls[stage.ordinal()]++ & (SAMPLE_EVERY - 1)) != 0) {
+            return 0;
+        }
+        
+        return System.nanoTime();
+    }
+    
+    /**
+     * Finish timing a sampled call.
+     * 
+     * @param stage  The stage.
+     * @param start  What <code>start</code> returned. Does nothing if 0.
+     */
+    public void stop(Stage stage, long start) {
+        if (start == 0) {
+            return;
+        }
+        
+        long nanos = Math.max(0, System.nanoTime() - start);
+        int s = stage.ordinal();
+        samples[s]++;
+        sampledNanos[s] += nanos;
+        buckets[s][bucketOf(nanos)]++;
+    }
+    
+    /**
+     * @return  The bucket for a duration: 0 for 0 or 1 ns, otherwise the
+     *          number of bits needed to hold it, less one.
+     */
+    static int bucketOf(long nanos) {
+        return Math.max(0, 63 - Long.numberOfLeadingZeros(nanos));
+    }
+    
+    /**
+     * Add another <code>Timings</code>' counts to this one.
+     */
+    public void merge(Timings other) {
+        for (int s = 0; s < calls.length; s++) {
+            calls[s] += other.calls[s];
+            samples[s] += other.samples[s];
+            sampledNanos[s] += other.sampledNanos[s];
+            
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets[s][b] += other.buckets[s][b];
+            }
+        }
+    }
+    
+    /**
+     * @return  The number of calls to a stage.
+     */
+    public long getCalls(Stage stage) {
+        return calls[stage.ordinal()];
+    }
+    
+    /**
+     * @return  The number of calls to a stage that were timed.
+     */
+    public long getSamples(Stage stage) {
+        return samples[stage.ordinal()];
+    }
+    
+    /**
+     * @return  The estimated total time spent in a stage, in nanoseconds:
+     *          the sampled time, scaled up to all calls.
+     */
+    public long estimateNanos(Stage stage) {
+        int s = stage.ordinal();
+        
+        if (samples[s] == 0) {
+            return 0;
+        }
+        
+        return (long) ((double) sampledNanos[s] * calls[s] / samples[s]);
+    }
+    
+    /**
+     * @param stage  The stage.
+     * @param fraction  The fraction of sampled calls (e.g., 0.99).
+     * @return  An upper bound on the time taken by that fraction of sampled
+     *          calls, in nanoseconds: the top of the bucket it falls in.
+     */
+    public long percentile(Stage stage, double fraction) {
+        int s = stage.ordinal();
+        long wanted = (long) Math.ceil(samples[s] * fraction);
+        long seen = 0;
+        
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[s][b];
+            
+            if (seen >= wanted && seen > 0) {
+                return b == 62 ? Long.MAX_VALUE : (2L << b) - 1;
+            }
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Write the counts, one line per stage: its name, calls, samples and
+     * sampled nanoseconds, then the count in each bucket.
+     */
+    public void write(Writer out) throws IOException {
+        for (Stage stage : Stage.values()) {
+            int s = stage.ordinal();
+            out.write(stage.name() + "\t" + calls[s] + "\t" + samples[s] +
+                    "\t" + sampledNanos[s]);
+            
+            for (int b = 0; b < BUCKETS; b++) {
+                out.write(b == 0 ? "\t" : ",");
+                out.write(Long.toString(buckets[s][b]));
+            }
+            
+            out.write('\n');
+        }
+    }
+    
+    /**
+     * Read counts written by <code>write</code>, adding them to this
+     * <code>Timings</code>. Stages that aren't known are ignored.
+     */
+    public void read(BufferedReader in) throws IOException {
+        String line;
+        
+        while ((line = in.readLine()) != null) {
+            String[] fields = line.split("\t");
+            Stage stage;
+            
+            try {
+                stage = Stage.valueOf(fields[0]);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            
+            if (fields.length != 5) {
+                throw new IOException("Malformed timings: " + line);
+            }
+            
+            int s = stage.ordinal();
+            String[] counts = fields[4].split(",");
+            
+            try {
+                calls[s] += Long.parseLong(fields[1]);
+                samples[s] += Long.parseLong(fields[2]);
+                sampledNanos[s] += Long.parseLong(fields[3]);
+                
+                for (int b = 0; b < BUCKETS && b < counts.length; b++) {
+                    buckets[s][b] += Long.parseLong(counts[b]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed timings: " + line, e);
+            }
+        }
+    }
+    
+    /**
+     * @return  A table of each stage's calls, estimated total time, share of
+     *          the total, and 50th, 90th and 99th percentiles.
+     */
+    public String report() {
+        long total = 0;
+        
+        for (Stage stage : Stage.values()) {
+            total += estimateNanos(stage);
+        }
+        
+        StringBuilder report = new StringBuilder(String.format(
+                "%-10s %14s %12s %7s %10s %10s %10s%n", "stage", "calls",
+                "est. ms", "share", "p50 us", "p90 us", "p99 us"));
+        
+        for (Stage stage : Stage.values()) {
+            long nanos = estimateNanos(stage);
+            report.append(String.format(
+                    "%-10s %14d %12.1f %6.1f%% %10s %10s %10s%n",
+                    stage.name().toLowerCase(), getCalls(stage), nanos / 1e6,
+                    total == 0 ? 0.0 : 100.0 * nanos / total,
+                    micros(percentile(stage, 0.5)),
+                    micros(percentile(stage, 0.9)),
+                    micros(percentile(stage, 0.99))));
+        }
+        
+        return report.toString();
+    }
+    
+    private static String micros(long nanos) {
+        return nanos == Long.MAX_VALUE ? "-" : String.format("%.1f",
+                nanos / 1e3);
+    }
+}
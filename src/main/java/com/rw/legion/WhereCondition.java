@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * One condition in an <code>OutputTable</code>'s "where" clause. A condition
+ * names a key and exactly one test for the key's value: that it equals a
+ * string, that it's in a list of strings, that it exists (or doesn't), or
+ * that it matches a regex. Records that fail any of a table's conditions are
+ * not written to that table, and aren't counted as skipped.
+ */
+
+public class WhereCondition {
+    // These will be automatically de-serialized by Gson.
+    private String key;
+    private String equals;
+    private ArrayList<String> in;
+    private Boolean exists;
+    private String regex;
+
+    // These will get set up when initialize() is called.
+    private HashSet<String> inSet;
+    private Pattern pattern;
+
+    /**
+     * Empty constructor for GSON.
+     */
+    public WhereCondition() {
+
+    }
+
+    /**
+     * Check that the condition is complete, and prepare it for use.
+     */
+    public void initialize() throws JsonParseException {
+        if (key == null) {
+            throw new JsonParseException("Where conditions require a key!");
+        }
+
+        int tests = (equals != null ? 1 : 0) + (in != null ? 1 : 0)
+                + (exists != null ? 1 : 0) + (regex != null ? 1 : 0);
+
+        if (tests != 1) {
+            throw new JsonParseException("Where condition on '" + key +
+                    "' needs exactly one of equals, in, exists or regex!");
+        }
+
+        if (in != null) {
+            inSet = new HashSet<String>(in);
+        }
+
+        if (regex != null) {
+            pattern = Pattern.compile(regex);
+        }
+    }
+
+    /**
+     * @return  The key this condition tests.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return  The values the key must have for a record to pass this
+     *          condition, or null if the condition doesn't test for specific
+     *          values (i.e., it's an exists or regex condition).
+     */
+    public List<String> getLiterals() {
+        if (equals != null) {
+            ArrayList<String> literals = new ArrayList<String>();
+            literals.add(equals);
+            return literals;
+        }
+
+        return in;
+    }
+
+    /**
+     * @param record  The record to test.
+     * @return  Whether the record passes this condition.
+     */
+    public boolean matches(LegionRecord record) {
+        String value = record.getData(key);
+
+        if (exists != null) {
+            return exists == (value != null);
+        } else if (value == null) {
+            return false;
+        } else if (equals != null) {
+            return equals.equals(value);
+        } else if (inSet != null) {
+            return inSet.contains(value);
+        } else {
+            return pattern.matcher(value).matches();
+        }
+    }
+}
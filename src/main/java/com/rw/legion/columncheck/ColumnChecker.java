@@ -16,12 +16,36 @@
 
 package com.rw.legion.columncheck;
 
+import java.util.BitSet;
+
 /**
  * Defines an interface for Legion "column checkers." A column checker must have
  * a "validates" method which accepts the string of data in the input and checks
  * to make sure it is in the expected format. Should return a boolean.
+ *
+ * Checkers may also validate many values at once, with "validateAll". By
+ * default it calls "validates" for each value; checkers that can share work
+ * between values may override it.
  */
 
 public interface ColumnChecker {
     public boolean validates(String str);
+
+    /**
+     * Validate a run of non-null values.
+     *
+     * @param values  The values.
+     * @param from  Index of the first value to check.
+     * @param to  Index after the last value to check.
+     * @param valid  Bit <code>i</code> is set for each valid
+     *               <code>values[i]</code>; other bits are left alone.
+     */
+    public default void validateAll(String[] values, int from, int to,
+            BitSet valid) {
+        for (int i = from; i < to; i++) {
+            if (validates(values[i])) {
+                valid.set(i);
+            }
+        }
+    }
 }
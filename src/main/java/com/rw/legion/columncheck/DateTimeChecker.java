@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columncheck;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * A column checker that validates a string is a timestamp in one of a list
+ * of formats. Requires a "formats" array in the objective JSON, and accepts
+ * an optional "zone" (see <code>DateTimeFormats</code>).
+ *
+ * Runs of values are checked with the default <code>validateAll</code>:
+ * <code>DateTimeFormats</code> already tries the format that matched the last
+ * value first, which is all a batch would gain.
+ */
+
+public class DateTimeChecker implements ColumnChecker {
+    private DateTimeFormats formats;
+    
+    public DateTimeChecker(JsonObject json) throws JsonParseException {
+        formats = new DateTimeFormats(json);
+    }
+    
+    public boolean validates(String str) {
+        return formats.parse(str) != null;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columncheck;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Parses timestamps that may arrive in any of several formats, for
+ * <code>DateTimeChecker</code> and <code>DateTimeTransformer</code>. Requires
+ * a "formats" array in the objective JSON, each either a
+ * <code>DateTimeFormatter</code> pattern (e.g., "yyyy-MM-dd HH:mm:ss") or
+ * "epochSeconds" or "epochMillis". Timestamps without an offset or zone are
+ * read in the "zone" property, which defaults to UTC.
+ *
+ * Dates are resolved strictly, so "2017-02-30" is rejected rather than moved
+ * to another day. Patterns made only of fixed-width numeric fields (yyyy, MM,
+ * dd, HH, mm, ss and S...) and literals are matched by hand, without the
+ * general parser or its exceptions; values must then be exactly as wide as
+ * the pattern. The format that matched last is tried first, as consecutive
+ * values in a column usually share a format. Like the column it belongs to,
+ * an instance is only used by one thread at a time.
+ */
+
+public class DateTimeFormats {
+    private Format[] formats;
+    private ZoneId zone;
+    private int lastMatched;
+
+    /**
+     * Parses values in one format.
+     */
+    private interface Format {
+        /**
+         * @return  The instant the value represents, or null if it isn't in
+         *          this format.
+         */
+        Instant parse(String str);
+    }
+
+    public DateTimeFormats(JsonObject json) throws JsonParseException {
+        if (! json.has("formats")) {
+            throw new JsonParseException("Date/time formats are required!");
+        }
+
+        try {
+            zone = json.has("zone") ? ZoneId.of(json.get("zone").getAsString())
+                    : ZoneId.of("UTC");
+        } catch (DateTimeException e) {
+            throw new JsonParseException("Invalid zone: " + json.get("zone"), e);
+        }
+
+        JsonArray array = json.getAsJsonArray("formats");
+        ArrayList<Format> list = new ArrayList<Format>();
+
+        for (JsonElement element : array) {
+            list.add(compile(element.getAsString()));
+        }
+
+        if (list.isEmpty()) {
+            throw new JsonParseException("Date/time formats are required!");
+        }
+
+        formats = list.toArray(new Format[list.size()]);
+    }
+
+    /**
+     * @param str  A timestamp, in any of the formats.
+     * @return  The instant it represents, or null if it doesn't match any of
+     *          the formats.
+     */
+    public Instant parse(String str) {
+        if (str == null) {
+            return null;
+        }
+
+        Instant instant = formats[lastMatched].parse(str);
+
+        if (instant != null) {
+            return instant;
+        }
+
+        for (int i = 0; i < formats.length; i++) {
+            if (i != lastMatched) {
+                instant = formats[i].parse(str);
+
+                if (instant != null) {
+                    lastMatched = i;
+                    return instant;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private Format compile(String pattern) throws JsonParseException {
+        if (pattern.equals("epochSeconds")) {
+            return new EpochFormat(1000);
+        } else if (pattern.equals("epochMillis")) {
+            return new EpochFormat(1);
+        }
+
+        FixedFormat fixed = FixedFormat.compile(pattern, zone);
+
+        if (fixed != null) {
+            return fixed;
+        }
+
+        try {
+            DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder()
+                    .appendPattern(pattern);
+
+            // Strict resolution needs an era to go with a year of era.
+            if (pattern.indexOf('y') >= 0) {
+                builder.parseDefaulting(ChronoField.ERA, 1);
+            }
+
+            return new GeneralFormat(builder.toFormatter(Locale.US)
+                    .withResolverStyle(ResolverStyle.STRICT), zone);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("Invalid date/time format: " +
+                    pattern, e);
+        }
+    }
+
+    /**
+     * Whole seconds or milliseconds since the epoch.
+     */
+    private static class EpochFormat implements Format {
+        private long millisPerUnit;
+
+        EpochFormat(long millisPerUnit) {
+            this.millisPerUnit = millisPerUnit;
+        }
+
+        public Instant parse(String str) {
+            int start = str.startsWith("-") ? 1 : 0;
+
+            // Short enough that neither the value nor the millis overflow.
+            if (str.length() == start || str.length() - start > 15) {
+                return null;
+            }
+
+            long value = 0;
+
+            for (int i = start; i < str.length(); i++) {
+                char c = str.charAt(i);
+
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+
+                value = value * 10 + (c - '0');
+            }
+
+            return Instant.ofEpochMilli(
+                    (start == 1 ? -value : value) * millisPerUnit);
+        }
+    }
+
+    /**
+     * A pattern handled by <code>DateTimeFormatter</code>.
+     */
+    private static class GeneralFormat implements Format {
+        private DateTimeFormatter formatter;
+        private ZoneId zone;
+
+        GeneralFormat(DateTimeFormatter formatter, ZoneId zone) {
+            this.formatter = formatter;
+            this.zone = zone;
+        }
+
+        public Instant parse(String str) {
+            try {
+                TemporalAccessor parsed = formatter.parse(str);
+
+                if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+                    return Instant.from(parsed);
+                }
+
+                LocalDate date = parsed.query(TemporalQueries.localDate());
+                LocalTime time = parsed.query(TemporalQueries.localTime());
+                ZoneId parsedZone = parsed.query(TemporalQueries.zone());
+
+                if (date == null) {
+                    return null;
+                }
+
+                return LocalDateTime.of(date,
+                        time == null ? LocalTime.MIDNIGHT : time)
+                        .atZone(parsedZone == null ? zone : parsedZone)
+                        .toInstant();
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A pattern of fixed-width numeric fields and literals, matched by hand.
+     */
+    private static class FixedFormat implements Format {
+        private static final int LITERAL = 0;
+        private static final int YEAR = 1;
+        private static final int MONTH = 2;
+        private static final int DAY = 3;
+        private static final int HOUR = 4;
+        private static final int MINUTE = 5;
+        private static final int SECOND = 6;
+        private static final int FRACTION = 7;
+
+        // One entry per character of a matching value.
+        private int[] fields;
+
+        // Field values of the value being parsed, by field.
+        private int[] values = new int[FRACTION + 1];
+        private char[] literals;
+        private boolean yearOfEra;
+        private ZoneId zone;
+
+        /**
+         * @return  The format, or null if the pattern isn't made only of
+         *          fixed-width numeric fields and literals.
+         */
+        static FixedFormat compile(String pattern, ZoneId zone) {
+            StringBuilder literals = new StringBuilder();
+            ArrayList<Integer> fields = new ArrayList<Integer>();
+            boolean yearOfEra = false;
+            int i = 0;
+
+            while (i < pattern.length()) {
+                char c = pattern.charAt(i);
+
+                if (c == '\'') {
+                    int end = pattern.indexOf('\'', i + 1);
+
+                    // Quoted quotes aren't worth handling here.
+                    if (end <= i + 1) {
+                        return null;
+                    }
+
+                    for (int j = i + 1; j < end; j++) {
+                        literals.append(pattern.charAt(j));
+                        fields.add(LITERAL);
+                    }
+
+                    i = end + 1;
+                    continue;
+                }
+
+                if (! Character.isLetter(c)) {
+                    if ("[]{}#".indexOf(c) >= 0) {
+                        return null;
+                    }
+
+                    literals.append(c);
+                    fields.add(LITERAL);
+                    i++;
+                    continue;
+                }
+
+                int count = 1;
+
+                while (i + count < pattern.length()
+                        && pattern.charAt(i + count) == c) {
+                    count++;
+                }
+
+                int field = fieldFor(c, count);
+
+                // Each field may only appear once.
+                if (field == LITERAL || fields.contains(field)) {
+                    return null;
+                }
+
+                if (c == 'y') {
+                    yearOfEra = true;
+                }
+
+                for (int j = 0; j < count; j++) {
+                    literals.append(' ');
+                    fields.add(field);
+                }
+
+                i += count;
+            }
+
+            if (! hasAll(fields, YEAR, MONTH, DAY)) {
+                return null;
+            }
+
+            FixedFormat format = new FixedFormat();
+            format.yearOfEra = yearOfEra;
+            format.literals = literals.toString().toCharArray();
+            format.fields = new int[fields.size()];
+            format.zone = zone;
+
+            for (int j = 0; j < format.fields.length; j++) {
+                format.fields[j] = fields.get(j);
+            }
+
+            return format;
+        }
+
+        private static int fieldFor(char letter, int count) {
+            switch (letter) {
+                case 'y':
+                case 'u':
+                    return count == 4 ? YEAR : LITERAL;
+                case 'M':
+                    return count == 2 ? MONTH : LITERAL;
+                case 'd':
+                    return count == 2 ? DAY : LITERAL;
+                case 'H':
+                    return count == 2 ? HOUR : LITERAL;
+                case 'm':
+                    return count == 2 ? MINUTE : LITERAL;
+                case 's':
+                    return count == 2 ? SECOND : LITERAL;
+                case 'S':
+                    return count <= 9 ? FRACTION : LITERAL;
+                default:
+                    return LITERAL;
+            }
+        }
+
+        private static boolean hasAll(ArrayList<Integer> fields, int... wanted) {
+            for (int field : wanted) {
+                if (! fields.contains(field)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        public Instant parse(String str) {
+            if (str.length() != fields.length) {
+                return null;
+            }
+
+            int[] values = this.values;
+            int fractionDigits = 0;
+            Arrays.fill(values, 0);
+
+            for (int i = 0; i < fields.length; i++) {
+                char c = str.charAt(i);
+                int field = fields[i];
+
+                if (field == LITERAL) {
+                    if (c != literals[i]) {
+                        return null;
+                    }
+                } else if (c < '0' || c > '9') {
+                    return null;
+                } else {
+                    values[field] = values[field] * 10 + (c - '0');
+
+                    if (field == FRACTION) {
+                        fractionDigits++;
+                    }
+                }
+            }
+
+            int month = values[MONTH];
+            int day = values[DAY];
+
+            // There's no year zero in years of the era.
+            if (yearOfEra && values[YEAR] == 0) {
+                return null;
+            }
+
+            if (month < 1 || month > 12 || day < 1
+                    || day > monthLength(values[YEAR], month)
+                    || values[HOUR] > 23 || values[MINUTE] > 59
+                    || values[SECOND] > 59) {
+                return null;
+            }
+
+            int nanos = values[FRACTION];
+
+            for (int i = fractionDigits; i < 9; i++) {
+                nanos *= 10;
+            }
+
+            return LocalDateTime.of(values[YEAR], month, day, values[HOUR],
+                    values[MINUTE], values[SECOND], nanos).atZone(zone)
+                    .toInstant();
+        }
+
+        private static int monthLength(int year, int month) {
+            switch (month) {
+                case 2:
+                    boolean leap = (year % 4 == 0 && year % 100 != 0)
+                            || year % 400 == 0;
+                    return leap ? 29 : 28;
+                case 4:
+                case 6:
+                case 9:
+                case 11:
+                    return 30;
+                default:
+                    return 31;
+            }
+        }
+    }
+}
@@ -22,10 +22,32 @@ import com.google.gson.JsonObject;
  * A column checker that validates a string is a valid float. The optional
  * property "floatType" in the objective JSON specifies what type of float to
  * check it against - float or double. Defaults to double.
+ *
+ * Strings are checked against the grammar accepted by
+ * <code>Double.parseDouble</code> without actually parsing them, so invalid
+ * values don't cost an exception. Whether a value is in range is decided
+ * from its decimal exponent, and only values right at the edge of the range
+ * need their digits compared with the exact overflow threshold.
  */
 
 public class FloatChecker implements ColumnChecker {
+    /*
+     * Decimal digits of the smallest values that round to infinity: halfway
+     * between the largest finite value and the next power of two.
+     */
+    private static final String DOUBLE_OVERFLOW =
+            "179769313486231580793728971405303415079934132710037826936173" +
+            "778980444968292764750946649017977587207096330286416692887910" +
+            "946555547851940402630657488671505820681908902000708383676273" +
+            "854845817711531764475730270069855571366959622842914819860834" +
+            "936475292719074168444365510704342711559699508093042880177904" +
+            "174497792";
+    private static final String FLOAT_OVERFLOW =
+            "340282356779733661637539395458142568448";
+
     private String floatType;
+    private boolean isFloat;
+    private String overflowDigits;
 
     public class FloatOutOfBoundsException extends Exception {
         public FloatOutOfBoundsException(String message) {
@@ -48,6 +70,9 @@ public class FloatChecker implements ColumnChecker {
                 throw new InvalidFloatTypeException(floatType + " is not a valid floatType.");
             }
         }
+
+        isFloat = floatType.equals("float");
+        overflowDigits = isFloat ? FLOAT_OVERFLOW : DOUBLE_OVERFLOW;
     }
 
     /**
@@ -58,24 +83,234 @@ public class FloatChecker implements ColumnChecker {
      * */
     
     public boolean validates(String str) {
-        try {
-            if (floatType.equals("float")) {
-                Float value = Float.parseFloat(str);
-                if (value.isInfinite()) {
-                    throw new FloatOutOfBoundsException("Float exceeded range.");
+        int start = 0;
+        int end = str.length();
+
+        // Leading and trailing whitespace is ignored, as by String.trim().
+        while (start < end && str.charAt(start) <= ' ') {
+            start++;
+        }
+
+        while (end > start && str.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+
+        if (i < end && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+            i++;
+        }
+
+        if (i == end) {
+            return false;
+        }
+
+        char c = str.charAt(i);
+
+        if (c == 'N') {
+            return end - i == 3 && str.startsWith("NaN", i);
+        } else if (c == 'I') {
+            // Either "Infinity", which is out of range, or not a number.
+            return false;
+        } else if (c == '0' && i + 1 < end
+                && (str.charAt(i + 1) == 'x' || str.charAt(i + 1) == 'X')) {
+            return validatesHex(str, start, i + 2, end);
+        }
+
+        return validatesDecimal(str, i, end);
+    }
+
+    /**
+     * Check a decimal number, with any sign already skipped.
+     */
+    private boolean validatesDecimal(String str, int i, int end) {
+        int mantissaStart = i;
+        int firstNonZero = -1;
+        int digits = 0;
+        boolean sawPoint = false;
+
+        /*
+         * The value is 0.ddd x 10^exponent, where ddd are the significant
+         * digits, starting with the first non-zero one.
+         */
+        long exponent = 0;
+
+        for (; i < end; i++) {
+            char c = str.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                digits++;
+
+                if (firstNonZero < 0) {
+                    if (c != '0') {
+                        firstNonZero = i;
+
+                        if (! sawPoint) {
+                            exponent++;
+                        }
+                    } else if (sawPoint) {
+                        exponent--;
+                    }
+                } else if (! sawPoint) {
+                    exponent++;
                 }
+            } else if (c == '.' && ! sawPoint) {
+                sawPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        if (digits == 0) {
+            return false;
+        }
+
+        int mantissaEnd = i;
+
+        if (i < end && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+            i++;
+            boolean negative = false;
+
+            if (i < end && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+                negative = str.charAt(i) == '-';
+                i++;
             }
-            if (floatType.equals("double")) {
-                Double value = Double.parseDouble(str);
-                if (value.isInfinite()) {
-                    throw new FloatOutOfBoundsException("Double exceeded range.");
+
+            int exponentStart = i;
+            long explicit = 0;
+
+            for (; i < end && str.charAt(i) >= '0' && str.charAt(i) <= '9';
+                    i++) {
+                // Saturate, since anything this big is out of range anyway.
+                if (explicit < 1000000000000L) {
+                    explicit = explicit * 10 + (str.charAt(i) - '0');
                 }
             }
-            
+
+            if (i == exponentStart) {
+                return false;
+            }
+
+            exponent += negative ? -explicit : explicit;
+        }
+
+        if (! endsProperly(str, i, end)) {
+            return false;
+        }
+
+        if (firstNonZero < 0) {
             return true;
-        } catch(NumberFormatException | FloatOutOfBoundsException e) {
+        }
+
+        long overflowExponent = overflowDigits.length();
+
+        if (exponent != overflowExponent) {
+            return exponent < overflowExponent;
+        }
+
+        return belowOverflow(str, firstNonZero, mantissaEnd);
+    }
+
+    /**
+     * Compare significant digits with the overflow threshold, when both have
+     * the same decimal exponent.
+     */
+    private boolean belowOverflow(String str, int i, int end) {
+        int k = 0;
+
+        for (; i < end; i++) {
+            char c = str.charAt(i);
+
+            if (c == '.') {
+                continue;
+            }
+
+            if (k == overflowDigits.length()) {
+                // Equal so far, so any further non-zero digit is above it.
+                if (c != '0') {
+                    return false;
+                }
+
+                continue;
+            }
+
+            char limit = overflowDigits.charAt(k++);
+
+            if (c != limit) {
+                return c < limit;
+            }
+        }
+
+        // Equal to the threshold, which rounds up to infinity.
+        return k < overflowDigits.length();
+    }
+
+    /**
+     * Check a hexadecimal number, starting after its "0x". Hex floats are
+     * rare enough that once the string is known to be well-formed, it's
+     * simply parsed to check its range.
+     */
+    private boolean validatesHex(String str, int start, int i, int end) {
+        int digits = 0;
+        boolean sawPoint = false;
+
+        for (; i < end; i++) {
+            char c = str.charAt(i);
+
+            if (Character.digit(c, 16) >= 0 && c < 128) {
+                digits++;
+            } else if (c == '.' && ! sawPoint) {
+                sawPoint = true;
+            } else {
+                break;
+            }
+        }
+
+        // Hex floats always need a binary exponent.
+        if (digits == 0 || i == end
+                || (str.charAt(i) != 'p' && str.charAt(i) != 'P')) {
+            return false;
+        }
+
+        i++;
+
+        if (i < end && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+            i++;
+        }
+
+        int exponentStart = i;
+
+        while (i < end && str.charAt(i) >= '0' && str.charAt(i) <= '9') {
+            i++;
+        }
+
+        if (i == exponentStart || ! endsProperly(str, i, end)) {
             return false;
         }
+
+        String number = str.substring(start, end);
+
+        if (isFloat) {
+            return ! Float.isInfinite(Float.parseFloat(number));
+        } else {
+            return ! Double.isInfinite(Double.parseDouble(number));
+        }
+    }
+
+    /**
+     * @return  Whether the number ends at <code>i</code>, apart from an
+     *          optional type suffix.
+     */
+    private static boolean endsProperly(String str, int i, int end) {
+        if (i < end) {
+            char c = str.charAt(i);
+
+            if (c == 'f' || c == 'F' || c == 'd' || c == 'D') {
+                i++;
+            }
+        }
+
+        return i == end;
     }
 
     public String getFloatType() {
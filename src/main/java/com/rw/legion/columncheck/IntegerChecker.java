@@ -18,15 +18,52 @@ package com.rw.legion.columncheck;
 
 import com.google.gson.JsonObject;
 
+import java.util.BitSet;
+
 /**
  * A column checker that validates a string is a valid integer. The optional
  * property "intType" in the objective JSON specifies what type of integer to
  * check it against - short, int, or long. Defaults to int.
+ *
+ * Accepts the same strings as the corresponding <code>parse</code> method
+ * (e.g., <code>Integer.parseInt</code>), but checks them in a single pass
+ * without parsing: the number of significant digits decides most values,
+ * and only values with as many digits as the type's bounds are compared
+ * with them digit by digit.
  */
 
 public class IntegerChecker implements ColumnChecker {
-    private int safeLength;
-    private String intType;
+    private IntType intType;
+
+    /**
+     * The integer types that can be checked, with the digits of their
+     * largest and (negated) smallest values.
+     */
+    public enum IntType {
+        SHORT("short", "32767", "32768", 4),
+        INT("int", "2147483647", "2147483648", 9),
+        LONG("long", "9223372036854775807", "9223372036854775808", 18);
+
+        private String name;
+        private String maxDigits;
+        private String minDigits;
+        private int safeLength;
+
+        IntType(String name, String maxDigits, String minDigits,
+                int safeLength) {
+            this.name = name;
+            this.maxDigits = maxDigits;
+            this.minDigits = minDigits;
+            this.safeLength = safeLength;
+        }
+
+        /**
+         * @return  The type's name, as used in objectives.
+         */
+        public String getName() {
+            return name;
+        }
+    }
 
     public class InvalidIntTypeException extends Exception {
         public InvalidIntTypeException(String message) {
@@ -36,23 +73,46 @@ public class IntegerChecker implements ColumnChecker {
     
     public IntegerChecker(JsonObject json) throws InvalidIntTypeException {
         if (! (json.has("intType"))) {
-            intType = "int";
-            safeLength = 9;
+            intType = IntType.INT;
         } else {
-            intType = json.get("intType").getAsString().toLowerCase();
+            String name = json.get("intType").getAsString().toLowerCase();
+            
+            for (IntType type : IntType.values()) {
+                if (type.name.equals(name)) {
+                    intType = type;
+                }
+            }
             
-            if (intType.equals("short")) safeLength = 4;
-            else if (intType.equals("int")) safeLength = 9;
-            else if (intType.equals("long")) safeLength = 18;
-            else {
-                throw new InvalidIntTypeException(intType + " is not a valid Integer Type.");
+            if (intType == null) {
+                throw new InvalidIntTypeException(name + " is not a valid Integer Type.");
             }
         }
     }
     
     public boolean validates(String str) {
-        // h/t Jonas Klemming on StackOverflow
+        return isInteger(str, intType.maxDigits, intType.minDigits);
+    }
+    
+    /**
+     * Checks a run of values with the type's bounds loaded once, and with a
+     * call that can be inlined, unlike the default's call to
+     * <code>validates</code> on whichever checker it's given.
+     */
+    @Override
+    public void validateAll(String[] values, int from, int to,
+            BitSet valid) {
+        String maxDigits = intType.maxDigits;
+        String minDigits = intType.minDigits;
         
+        for (int i = from; i < to; i++) {
+            if (isInteger(values[i], maxDigits, minDigits)) {
+                valid.set(i);
+            }
+        }
+    }
+    
+    private static boolean isInteger(String str, String maxDigits,
+            String minDigits) {
         if (str == null) {
             return false;
         }
@@ -61,45 +121,67 @@ public class IntegerChecker implements ColumnChecker {
         
         if (length == 0) {
             return false;
-        } else if (length > safeLength) {
-            // String is long enough that we need to worry about overflows.
-            try {
-                if (intType.equals("short")) Short.parseShort(str);
-                if (intType.equals("int")) Integer.parseInt(str);
-                if (intType.equals("long")) Long.parseLong(str);
-                
-                return true;
-            } catch(NumberFormatException e) {
-                return false;
-            }
         }
         
         int i = 0;
+        boolean negative = false;
+        char first = str.charAt(0);
         
-        if (str.charAt(0) == '-') {
+        if (first == '-' || first == '+') {
             if (length == 1) {
                 return false;
             }
             
+            negative = first == '-';
             i = 1;
         }
         
+        // Leading zeros don't count towards the number's size.
+        int significant = -1;
+        
         for (; i < length; i++) {
             char c = str.charAt(i);
             
             if (c < '0' || c > '9') {
                 return false;
             }
+            
+            if (significant < 0 && c != '0') {
+                significant = i;
+            }
+        }
+        
+        if (significant < 0) {
+            return true;
+        }
+        
+        String bound = negative ? minDigits : maxDigits;
+        int digits = length - significant;
+        
+        if (digits != bound.length()) {
+            return digits < bound.length();
+        }
+        
+        for (int j = 0; j < digits; j++) {
+            char c = str.charAt(significant + j);
+            char limit = bound.charAt(j);
+            
+            if (c != limit) {
+                return c < limit;
+            }
         }
         
         return true;
     }
 
     public String getIntType() {
-        return intType;
+        return intType.getName();
     }
 
+    /**
+     * @return  The number of digits that can never overflow the type.
+     */
     public int getSafeLength() {
-        return safeLength;
+        return intType.safeLength;
     }
 }
@@ -0,0 +1,828 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columncheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A regex that is matched in time linear in the length of the input, for
+ * patterns where a backtracking engine might take exponential time.
+ *
+ * The pattern is compiled to a Thompson NFA, and matched by a DFA whose
+ * states are built lazily as the input needs them. Only whole-string
+ * matching (as with <code>Matcher.matches()</code>) is supported, and only
+ * regular constructs: literals, escapes, character classes, groups,
+ * alternation and greedy or lazy quantifiers. Anything else, such as back
+ * references, lookaround, flags or possessive quantifiers, is rejected by
+ * <code>compile</code> so the caller can use <code>java.util.regex</code>
+ * instead.
+ */
+
+class LinearPattern {
+    private static final int SET = 0;
+    private static final int SPLIT = 1;
+    private static final int MATCH = 2;
+
+    // Limits on how large patterns and their cached DFAs may grow.
+    private static final int MAX_NFA_STATES = 10000;
+    private static final int MAX_DFA_STATES = 2000;
+
+    private static final int DEAD = 0;
+    private static final int START = 1;
+
+    // The NFA.
+    private int[] kinds = new int[16];
+    private int[] out1 = new int[16];
+    private int[] out2 = new int[16];
+    private List<int[]> sets = new ArrayList<int[]>();
+    private int nfaSize;
+    private int nfaStart;
+
+    // Input characters are mapped to classes that no set distinguishes.
+    private int[] boundaries;
+    private int[] asciiClasses = new int[128];
+    private int classCount;
+
+    // The DFA, built as it's needed.
+    private HashMap<StateSet, Integer> dfaIds = new HashMap<StateSet, Integer>();
+    private List<StateSet> dfaStates = new ArrayList<StateSet>();
+    private boolean[] accepting;
+    private int[] transitions;
+
+    private String literalPrefix;
+
+    /**
+     * Thrown for patterns that use constructs the linear engine doesn't
+     * support.
+     */
+    public static class UnsupportedPatternException extends Exception {
+        public UnsupportedPatternException(String message) {
+            super(message);
+        }
+    }
+
+    private LinearPattern() {
+
+    }
+
+    /**
+     * Compile a regex. The regex should already be known to be valid (e.g.,
+     * by compiling it with <code>Pattern.compile</code>).
+     *
+     * @param regex  The regex to compile.
+     * @return  The compiled pattern.
+     * @throws UnsupportedPatternException  If the regex uses anything other
+     *                                      than regular constructs.
+     */
+    static LinearPattern compile(String regex)
+            throws UnsupportedPatternException {
+        LinearPattern pattern = new LinearPattern();
+        Node root = new Parser(regex).parse();
+
+        pattern.literalPrefix = root.literalPrefix();
+        int match = pattern.addState(MATCH, -1, -1);
+        pattern.nfaStart = pattern.build(root, match);
+        pattern.buildClasses();
+        pattern.resetDfa();
+
+        return pattern;
+    }
+
+    /**
+     * @return  A string every match must start with, possibly empty.
+     */
+    String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    /**
+     * Find the literal prefix of a regex without compiling it, for patterns
+     * that are matched with <code>java.util.regex</code>.
+     *
+     * @param regex  The regex, already known to be valid.
+     * @return  A string every match must start with, possibly empty. Empty
+     *          for patterns the linear engine doesn't support.
+     */
+    static String literalPrefix(String regex) {
+        try {
+            return new Parser(regex).parse().literalPrefix();
+        } catch (UnsupportedPatternException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Check whether a whole string matches.
+     *
+     * @param str  The string to check.
+     * @return  Whether the string matches, or null if it contains characters
+     *          the engine can't match (surrogate pairs, which
+     *          <code>java.util.regex</code> matches as single code points).
+     */
+    Boolean matches(CharSequence str) {
+        int length = str.length();
+        int state = START;
+
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+
+            if (Character.isSurrogate(c)) {
+                return null;
+            }
+
+            int charClass = c < 128 ? asciiClasses[c] : classOf(c);
+            int next = transitions[state * classCount + charClass];
+
+            if (next < 0) {
+                next = step(state, charClass);
+            }
+
+            if (next == DEAD) {
+                return false;
+            }
+
+            state = next;
+        }
+
+        return accepting[state];
+    }
+
+    /**
+     * Work out, and cache, the DFA state reached from a state on a class of
+     * characters.
+     */
+    private int step(int state, int charClass) {
+        StateSet from = dfaStates.get(state);
+        int representative = boundaries[charClass];
+        ArrayList<Integer> targets = new ArrayList<Integer>();
+
+        for (int nfaState : from.states) {
+            if (kinds[nfaState] == SET
+                    && contains(sets.get(out2[nfaState]), representative)) {
+                targets.add(out1[nfaState]);
+            }
+        }
+
+        StateSet to = closure(targets);
+        Integer id = dfaIds.get(to);
+
+        if (id != null) {
+            transitions[state * classCount + charClass] = id;
+            return id;
+        }
+
+        if (dfaStates.size() >= MAX_DFA_STATES) {
+            // Start again rather than growing without bound. The old state's
+            // id is no longer valid, so its transition isn't recorded.
+            resetDfa();
+            return intern(to);
+        }
+
+        id = intern(to);
+        transitions[state * classCount + charClass] = id;
+        return id;
+    }
+
+    private void resetDfa() {
+        dfaIds.clear();
+        dfaStates.clear();
+        accepting = new boolean[16];
+        transitions = new int[16 * classCount];
+        Arrays.fill(transitions, -1);
+
+        intern(closure(new ArrayList<Integer>()));
+        ArrayList<Integer> start = new ArrayList<Integer>();
+        start.add(nfaStart);
+        intern(closure(start));
+    }
+
+    private int intern(StateSet set) {
+        Integer existing = dfaIds.get(set);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = dfaStates.size();
+
+        if (id == accepting.length) {
+            accepting = Arrays.copyOf(accepting, id * 2);
+            int oldSize = transitions.length;
+            transitions = Arrays.copyOf(transitions, oldSize * 2);
+            Arrays.fill(transitions, oldSize, transitions.length, -1);
+        }
+
+        dfaIds.put(set, id);
+        dfaStates.add(set);
+
+        for (int nfaState : set.states) {
+            if (kinds[nfaState] == MATCH) {
+                accepting[id] = true;
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Follow every epsilon transition from a list of NFA states, keeping the
+     * states that consume a character or match.
+     */
+    private StateSet closure(List<Integer> from) {
+        boolean[] seen = new boolean[nfaSize];
+        int[] stack = new int[nfaSize];
+        int top = 0;
+        int[] kept = new int[nfaSize];
+        int count = 0;
+
+        for (int state : from) {
+            if (! seen[state]) {
+                seen[state] = true;
+                stack[top++] = state;
+            }
+        }
+
+        while (top > 0) {
+            int state = stack[--top];
+
+            if (kinds[state] == SPLIT) {
+                for (int next : new int[] {out1[state], out2[state]}) {
+                    if (next >= 0 && ! seen[next]) {
+                        seen[next] = true;
+                        stack[top++] = next;
+                    }
+                }
+            } else {
+                kept[count++] = state;
+            }
+        }
+
+        int[] states = Arrays.copyOf(kept, count);
+        Arrays.sort(states);
+        return new StateSet(states);
+    }
+
+    /**
+     * Compile a node to NFA states that continue to <code>next</code>.
+     *
+     * @return  The first of the node's states.
+     */
+    private int build(Node node, int next) throws UnsupportedPatternException {
+        switch (node.type) {
+            case Node.CHARS:
+                sets.add(node.set);
+                return addState(SET, next, sets.size() - 1);
+            case Node.CONCAT:
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    next = build(node.children.get(i), next);
+                }
+
+                return next;
+            case Node.ALTERNATE:
+                int first = build(node.children.get(
+                        node.children.size() - 1), next);
+
+                for (int i = node.children.size() - 2; i >= 0; i--) {
+                    int branch = build(node.children.get(i), next);
+                    first = addState(SPLIT, branch, first);
+                }
+
+                return first;
+            default:
+                Node child = node.children.get(0);
+
+                if (node.max < 0) {
+                    // A loop back to a split that either repeats or leaves.
+                    int loop = addState(SPLIT, -1, next);
+                    // Building the body can grow out1, so build it first.
+                    int body = build(child, loop);
+                    out1[loop] = body;
+                    next = loop;
+                } else {
+                    for (int i = node.min; i < node.max; i++) {
+                        next = addState(SPLIT, build(child, next), next);
+                    }
+                }
+
+                for (int i = 0; i < node.min; i++) {
+                    next = build(child, next);
+                }
+
+                return next;
+        }
+    }
+
+    private int addState(int kind, int first, int second)
+            throws UnsupportedPatternException {
+        if (nfaSize == MAX_NFA_STATES) {
+            throw new UnsupportedPatternException("Pattern is too large.");
+        }
+
+        if (nfaSize == kinds.length) {
+            kinds = Arrays.copyOf(kinds, nfaSize * 2);
+            out1 = Arrays.copyOf(out1, nfaSize * 2);
+            out2 = Arrays.copyOf(out2, nfaSize * 2);
+        }
+
+        kinds[nfaSize] = kind;
+        out1[nfaSize] = first;
+        out2[nfaSize] = second;
+        return nfaSize++;
+    }
+
+    /**
+     * Split the characters into classes at every boundary of every set.
+     */
+    private void buildClasses() {
+        ArrayList<Integer> points = new ArrayList<Integer>();
+        points.add(0);
+
+        for (int[] set : sets) {
+            for (int i = 0; i < set.length; i += 2) {
+                points.add(set[i]);
+
+                if (set[i + 1] < Character.MAX_VALUE) {
+                    points.add(set[i + 1] + 1);
+                }
+            }
+        }
+
+        boundaries = points.stream().sorted().distinct()
+                .mapToInt(Integer::intValue).toArray();
+        classCount = boundaries.length;
+
+        for (char c = 0; c < 128; c++) {
+            asciiClasses[c] = classOf(c);
+        }
+    }
+
+    private int classOf(char c) {
+        int index = Arrays.binarySearch(boundaries, c);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @param set  Sorted, non-overlapping inclusive ranges, as pairs.
+     */
+    private static boolean contains(int[] set, int c) {
+        for (int i = 0; i < set.length && set[i] <= c; i += 2) {
+            if (c <= set[i + 1]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * A set of NFA states, making up one DFA state.
+     */
+    private static class StateSet {
+        final int[] states;
+        final int hash;
+
+        StateSet(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof StateSet
+                    && Arrays.equals(states, ((StateSet) other).states);
+        }
+    }
+
+    /**
+     * A node in a parsed regex.
+     */
+    private static class Node {
+        static final int CHARS = 0;
+        static final int CONCAT = 1;
+        static final int ALTERNATE = 2;
+        static final int REPEAT = 3;
+
+        int type;
+        int[] set;
+        int min;
+        int max;
+        List<Node> children = new ArrayList<Node>();
+
+        Node(int type) {
+            this.type = type;
+        }
+
+        /**
+         * @return  The literal characters every match of this node starts
+         *          with.
+         */
+        String literalPrefix() {
+            StringBuilder prefix = new StringBuilder();
+            appendPrefix(prefix);
+            return prefix.toString();
+        }
+
+        /**
+         * @return  Whether the whole node was a literal.
+         */
+        private boolean appendPrefix(StringBuilder prefix) {
+            if (type == CHARS) {
+                if (set.length == 2 && set[0] == set[1]) {
+                    prefix.append((char) set[0]);
+                    return true;
+                }
+
+                return false;
+            }
+
+            if (type == CONCAT) {
+                for (Node child : children) {
+                    if (! child.appendPrefix(prefix)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * A recursive descent parser for the supported subset of
+     * <code>java.util.regex</code> syntax.
+     */
+    private static class Parser {
+        private static final int[] DIGITS = {'0', '9'};
+        private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_',
+                'a', 'z'};
+        private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+        private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r',
+                '\u0085', '\u0085', '\u2028', '\u2029'};
+
+        private String regex;
+        private int position;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() throws UnsupportedPatternException {
+            // Anchors at the very ends are implied by whole-string matching.
+            if (regex.startsWith("^")) {
+                position = 1;
+            }
+
+            if (regex.endsWith("$") && regex.length() > position
+                    && ! escaped(regex.length() - 1)) {
+                regex = regex.substring(0, regex.length() - 1);
+            }
+
+            Node node = alternation();
+
+            if (position < regex.length()) {
+                throw unsupported();
+            }
+
+            return node;
+        }
+
+        private boolean escaped(int index) {
+            int backslashes = 0;
+
+            while (index - backslashes > 0
+                    && regex.charAt(index - backslashes - 1) == '\\') {
+                backslashes++;
+            }
+
+            return backslashes % 2 == 1;
+        }
+
+        private Node alternation() throws UnsupportedPatternException {
+            Node first = concatenation();
+
+            if (! peek('|')) {
+                return first;
+            }
+
+            Node node = new Node(Node.ALTERNATE);
+            node.children.add(first);
+
+            while (peek('|')) {
+                position++;
+                node.children.add(concatenation());
+            }
+
+            return node;
+        }
+
+        private Node concatenation() throws UnsupportedPatternException {
+            Node node = new Node(Node.CONCAT);
+
+            while (position < regex.length() && ! peek('|') && ! peek(')')) {
+                node.children.add(quantified(atom()));
+            }
+
+            return node;
+        }
+
+        private Node quantified(Node atom) throws UnsupportedPatternException {
+            while (position < regex.length()) {
+                char c = regex.charAt(position);
+                int min;
+                int max;
+
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    position++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    position++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    position++;
+                } else if (c == '{') {
+                    position++;
+                    min = number();
+                    max = min;
+
+                    if (peek(',')) {
+                        position++;
+                        max = peek('}') ? -1 : number();
+                    }
+
+                    expect('}');
+                } else {
+                    return atom;
+                }
+
+                // Laziness doesn't change whether a whole string matches.
+                if (peek('?')) {
+                    position++;
+                } else if (peek('+')) {
+                    throw unsupported();
+                }
+
+                Node repeat = new Node(Node.REPEAT);
+                repeat.min = min;
+                repeat.max = max;
+                repeat.children.add(atom);
+                atom = repeat;
+            }
+
+            return atom;
+        }
+
+        private int number() throws UnsupportedPatternException {
+            int start = position;
+
+            while (position < regex.length()
+                    && Character.isDigit(regex.charAt(position))) {
+                position++;
+            }
+
+            if (position == start || position - start > 4) {
+                throw unsupported();
+            }
+
+            return Integer.parseInt(regex.substring(start, position));
+        }
+
+        private Node atom() throws UnsupportedPatternException {
+            char c = regex.charAt(position++);
+
+            switch (c) {
+                case '(':
+                    if (peek('?')) {
+                        if (! regex.startsWith("?:", position)) {
+                            throw unsupported();
+                        }
+
+                        position += 2;
+                    }
+
+                    Node group = alternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    return chars(characterClass());
+                case '.':
+                    return chars(negate(LINE_TERMINATORS));
+                case '\\':
+                    return chars(escape(false));
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported();
+                default:
+                    return chars(new int[] {c, c});
+            }
+        }
+
+        private int[] characterClass() throws UnsupportedPatternException {
+            boolean negated = peek('^');
+
+            if (negated) {
+                position++;
+            }
+
+            ArrayList<int[]> parts = new ArrayList<int[]>();
+            boolean first = true;
+
+            while (first || ! peek(']')) {
+                if (position >= regex.length() || peek('[')
+                        || regex.startsWith("&&", position)) {
+                    throw unsupported();
+                }
+
+                first = false;
+                int[] part;
+                char c = regex.charAt(position++);
+
+                if (c == '\\') {
+                    part = escape(true);
+                } else {
+                    part = new int[] {c, c};
+                }
+
+                // A range, unless the dash is last in the class.
+                if (part.length == 2 && part[0] == part[1] && peek('-')
+                        && position + 1 < regex.length()
+                        && regex.charAt(position + 1) != ']') {
+                    position++;
+                    char end = regex.charAt(position++);
+                    int[] endPart;
+
+                    if (end == '\\') {
+                        endPart = escape(true);
+                    } else if (end == '[') {
+                        throw unsupported();
+                    } else {
+                        endPart = new int[] {end, end};
+                    }
+
+                    if (endPart.length != 2 || endPart[0] != endPart[1]) {
+                        throw unsupported();
+                    }
+
+                    part = new int[] {part[0], endPart[0]};
+                }
+
+                parts.add(part);
+            }
+
+            position++;
+            int[] set = union(parts);
+            return negated ? negate(set) : set;
+        }
+
+        /**
+         * Parse the escape sequence after a backslash.
+         */
+        private int[] escape(boolean inClass)
+                throws UnsupportedPatternException {
+            if (position >= regex.length()) {
+                throw unsupported();
+            }
+
+            char c = regex.charAt(position++);
+
+            switch (c) {
+                case 'd':
+                    return DIGITS;
+                case 'D':
+                    return negate(DIGITS);
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return negate(WORD);
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return negate(SPACE);
+                case 't':
+                    return new int[] {'\t', '\t'};
+                case 'n':
+                    return new int[] {'\n', '\n'};
+                case 'r':
+                    return new int[] {'\r', '\r'};
+                case 'f':
+                    return new int[] {'\f', '\f'};
+                case 'e':
+                    return new int[] {'\u001B', '\u001B'};
+                case 'a':
+                    return new int[] {'\u0007', '\u0007'};
+                default:
+                    // Escaped punctuation stands for itself; escaped letters
+                    // and digits are classes, references or anchors.
+                    if (c < 128 && ! Character.isLetterOrDigit(c)) {
+                        return new int[] {c, c};
+                    }
+
+                    throw unsupported();
+            }
+        }
+
+        private Node chars(int[] set) {
+            Node node = new Node(Node.CHARS);
+            node.set = set;
+            return node;
+        }
+
+        private boolean peek(char c) {
+            return position < regex.length() && regex.charAt(position) == c;
+        }
+
+        private void expect(char c) throws UnsupportedPatternException {
+            if (! peek(c)) {
+                throw unsupported();
+            }
+
+            position++;
+        }
+
+        private UnsupportedPatternException unsupported() {
+            return new UnsupportedPatternException("Unsupported construct at "
+                    + "index " + position + " of " + regex);
+        }
+
+        /**
+         * Combine ranges into sorted, non-overlapping ranges.
+         */
+        private static int[] union(List<int[]> parts) {
+            ArrayList<int[]> ranges = new ArrayList<int[]>();
+
+            for (int[] part : parts) {
+                for (int i = 0; i < part.length; i += 2) {
+                    ranges.add(new int[] {part[i], part[i + 1]});
+                }
+            }
+
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            ArrayList<Integer> merged = new ArrayList<Integer>();
+
+            for (int[] range : ranges) {
+                int last = merged.size() - 1;
+
+                if (last > 0 && range[0] <= merged.get(last) + 1) {
+                    merged.set(last, Math.max(merged.get(last), range[1]));
+                } else {
+                    merged.add(range[0]);
+                    merged.add(range[1]);
+                }
+            }
+
+            return merged.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static int[] negate(int[] set) {
+            ArrayList<Integer> result = new ArrayList<Integer>();
+            int next = 0;
+
+            for (int i = 0; i < set.length; i += 2) {
+                if (set[i] > next) {
+                    result.add(next);
+                    result.add(set[i] - 1);
+                }
+
+                next = set[i + 1] + 1;
+            }
+
+            if (next <= Character.MAX_VALUE) {
+                result.add(next);
+                result.add((int) Character.MAX_VALUE);
+            }
+
+            return result.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
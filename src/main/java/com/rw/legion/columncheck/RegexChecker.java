@@ -23,11 +23,24 @@ import java.util.regex.Pattern;
 
 /**
  * A column checker that validates a string matches a given regex. Requires a
- * "pattern" parameter in the objective JSON.
+ * "regex" parameter in the objective JSON.
+ *
+ * Optionally, "engine" may be set to "linear" to match with
+ * <code>LinearPattern</code>, which can't be made to take more than linear
+ * time by unlucky input. Patterns it doesn't support are matched with
+ * <code>java.util.regex</code> as usual. "maxSteps" limits how many times
+ * <code>java.util.regex</code> may read characters of a single value, which
+ * bounds the time a backtracking pattern can take; values that exceed it
+ * fail validation. With either engine, values that don't start with the
+ * pattern's literal prefix are rejected before any matching.
  */
 
 public class RegexChecker implements ColumnChecker {
     private Pattern pattern;
+    private LinearPattern linearPattern;
+    private String literalPrefix = "";
+    private long maxSteps;
+    private BudgetedSequence budgeted;
     
     public RegexChecker(JsonObject json) throws JsonParseException {
         if (! (json.has("regex"))) {
@@ -36,14 +49,111 @@ public class RegexChecker implements ColumnChecker {
         
         String regex = json.get("regex").getAsString();
         pattern = Pattern.compile(regex);
+        
+        String engine = json.has("engine") ? json.get("engine").getAsString()
+                : "jdk";
+        
+        if (engine.equals("linear")) {
+            try {
+                linearPattern = LinearPattern.compile(regex);
+                literalPrefix = linearPattern.getLiteralPrefix();
+            } catch (LinearPattern.UnsupportedPatternException e) {
+                linearPattern = null;
+            }
+        } else if (engine.equals("jdk")) {
+            literalPrefix = LinearPattern.literalPrefix(regex);
+        } else {
+            throw new JsonParseException(engine + " is not a valid regex engine.");
+        }
+        
+        if (json.has("maxSteps")) {
+            maxSteps = json.get("maxSteps").getAsLong();
+            budgeted = new BudgetedSequence();
+        }
     }
     
     public boolean validates(String str) {
-        return pattern.matcher(str).matches();
+        if (! str.startsWith(literalPrefix)) {
+            return false;
+        }
+        
+        if (linearPattern != null) {
+            Boolean matches = linearPattern.matches(str);
+            
+            if (matches != null) {
+                return matches;
+            }
+        }
+        
+        if (budgeted == null) {
+            return pattern.matcher(str).matches();
+        }
+        
+        budgeted.reset(str, maxSteps);
+        
+        try {
+            return pattern.matcher(budgeted).matches();
+        } catch (BudgetExceededException e) {
+            return false;
+        }
     }
 
     public Pattern getPattern() {
         return pattern;
     }
 
+    /**
+     * @return  Whether values are matched by the linear engine.
+     */
+    public boolean isLinear() {
+        return linearPattern != null;
+    }
+
+    /**
+     * Thrown from deep inside <code>java.util.regex</code> when a value runs
+     * out of steps. It's only used to unwind, so it's shared and has no
+     * stack trace.
+     */
+    private static class BudgetExceededException extends RuntimeException {
+        static final BudgetExceededException INSTANCE =
+                new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A string that counts down a budget each time one of its characters is
+     * read.
+     */
+    private static class BudgetedSequence implements CharSequence {
+        private String str;
+        private long remaining;
+
+        void reset(String str, long budget) {
+            this.str = str;
+            this.remaining = budget;
+        }
+
+        public char charAt(int index) {
+            if (--remaining < 0) {
+                throw BudgetExceededException.INSTANCE;
+            }
+
+            return str.charAt(index);
+        }
+
+        public int length() {
+            return str.length();
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return str.subSequence(start, end);
+        }
+
+        public String toString() {
+            return str;
+        }
+    }
 }
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columncheck;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.rw.legion.CacheFiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A column checker that validates a string is one of a set of allowed
+ * values. The values are given either as a "values" array in the objective
+ * JSON, or as a "file" with one value per line (e.g., a file shipped to
+ * every task with the objective's "cacheFiles" and named by its fragment,
+ * which works outside of Hadoop too; see <code>CacheFiles</code>). If
+ * "ignoreCase" is true, values are compared as by
+ * <code>String.equalsIgnoreCase</code>.
+ *
+ * The values are stored in a perfect hash table, so checking a value takes
+ * one hash of the value and one comparison, however many values are allowed.
+ * Tables built from files are shared by every checker in the JVM that loads
+ * the same file.
+ */
+
+public class SetChecker implements ColumnChecker {
+    private static final HashMap<String, ValueSet> loadedFiles =
+            new HashMap<String, ValueSet>();
+
+    private ValueSet values;
+
+    public SetChecker(JsonObject json) throws JsonParseException {
+        boolean ignoreCase = json.has("ignoreCase")
+                && json.get("ignoreCase").getAsBoolean();
+
+        if (json.has("values")) {
+            ArrayList<String> list = new ArrayList<String>();
+
+            for (JsonElement value : json.getAsJsonArray("values")) {
+                list.add(value.getAsString());
+            }
+
+            values = new ValueSet(list, ignoreCase);
+        } else if (json.has("file")) {
+            values = load(CacheFiles.resolve(json.get("file").getAsString()),
+                    ignoreCase);
+        } else {
+            throw new JsonParseException("SetChecker requires values or file!");
+        }
+    }
+
+    private static ValueSet load(String file, boolean ignoreCase)
+            throws JsonParseException {
+        String cacheKey = ignoreCase + "|" + file;
+
+        synchronized (loadedFiles) {
+            ValueSet set = loadedFiles.get(cacheKey);
+
+            if (set == null) {
+                List<String> lines;
+
+                try {
+                    lines = Files.readAllLines(Paths.get(file),
+                            StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new JsonParseException("Couldn't read values from " +
+                            file, e);
+                }
+
+                ArrayList<String> list = new ArrayList<String>();
+
+                for (String line : lines) {
+                    if (! line.isEmpty()) {
+                        list.add(line);
+                    }
+                }
+
+                set = new ValueSet(list, ignoreCase);
+                loadedFiles.put(cacheKey, set);
+            }
+
+            return set;
+        }
+    }
+
+    public boolean validates(String str) {
+        return values.contains(str);
+    }
+
+    /**
+     * Checks a run of values against the table directly, rather than through
+     * the default's call to <code>validates</code> on whichever checker it's
+     * given.
+     */
+    @Override
+    public void validateAll(String[] values, int from, int to,
+            BitSet valid) {
+        this.values.containsAll(values, from, to, valid);
+    }
+
+    /**
+     * @return  The number of distinct allowed values.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * An immutable set of strings in a perfect hash table, built by hash and
+     * displace: values are grouped into small buckets by one part of their
+     * hash, and each bucket is given a displacement that sends all of its
+     * values to free slots of the table. Looking a value up only needs its
+     * bucket's displacement.
+     */
+    private static class ValueSet {
+        private static final int MAX_DISPLACEMENT = 1 << 20;
+
+        private boolean ignoreCase;
+        private int[] displacements;
+        private String[] slots;
+        private int size;
+
+        ValueSet(List<String> values, boolean ignoreCase) {
+            this.ignoreCase = ignoreCase;
+
+            // Drop duplicates, which can never be placed in separate slots.
+            HashMap<String, String> distinct = new HashMap<String, String>();
+
+            for (String value : values) {
+                String folded = ignoreCase ? fold(value) : value;
+
+                if (! distinct.containsKey(folded)) {
+                    distinct.put(folded, value);
+                }
+            }
+
+            size = distinct.size();
+            String[] keys = distinct.values().toArray(new String[size]);
+            int tableSize = size + size / 4 + 1;
+
+            while (! build(keys, tableSize)) {
+                tableSize += tableSize / 4 + 1;
+            }
+        }
+
+        private boolean build(String[] keys, int tableSize) {
+            int bucketCount = keys.length / 4 + 1;
+            long[] hashes = new long[keys.length];
+            ArrayList<List<Integer>> buckets = new ArrayList<List<Integer>>();
+
+            for (int i = 0; i < bucketCount; i++) {
+                buckets.add(new ArrayList<Integer>());
+            }
+
+            for (int i = 0; i < keys.length; i++) {
+                hashes[i] = hash(keys[i], ignoreCase);
+                buckets.get(bucketOf(hashes[i], bucketCount)).add(i);
+            }
+
+            // Place the largest buckets first, while the table is emptiest.
+            Integer[] order = new Integer[bucketCount];
+
+            for (int i = 0; i < bucketCount; i++) {
+                order[i] = i;
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return buckets.get(b).size() - buckets.get(a).size();
+                }
+            });
+
+            displacements = new int[bucketCount];
+            slots = new String[tableSize];
+            int[] placed = new int[4];
+
+            for (int bucket : order) {
+                List<Integer> members = buckets.get(bucket);
+
+                if (members.isEmpty()) {
+                    break;
+                }
+
+                if (placed.length < members.size()) {
+                    placed = new int[members.size()];
+                }
+
+                int displacement = 0;
+
+                while (! tryPlace(keys, hashes, members, displacement,
+                        placed)) {
+                    if (++displacement == MAX_DISPLACEMENT) {
+                        return false;
+                    }
+                }
+
+                displacements[bucket] = displacement;
+            }
+
+            return true;
+        }
+
+        private boolean tryPlace(String[] keys, long[] hashes,
+                List<Integer> members, int displacement, int[] placed) {
+            for (int i = 0; i < members.size(); i++) {
+                int slot = slotOf(hashes[members.get(i)], displacement,
+                        slots.length);
+
+                if (slots[slot] != null) {
+                    // Undo this attempt.
+                    for (int j = 0; j < i; j++) {
+                        slots[placed[j]] = null;
+                    }
+
+                    return false;
+                }
+
+                slots[slot] = keys[members.get(i)];
+                placed[i] = slot;
+            }
+
+            return true;
+        }
+
+        boolean contains(String str) {
+            if (size == 0) {
+                return false;
+            }
+
+            long hash = hash(str, ignoreCase);
+            int bucket = bucketOf(hash, displacements.length);
+            String candidate = slots[slotOf(hash, displacements[bucket],
+                    slots.length)];
+
+            if (candidate == null) {
+                return false;
+            }
+
+            return ignoreCase ? candidate.equalsIgnoreCase(str)
+                    : candidate.equals(str);
+        }
+
+        /**
+         * Set bit <code>i</code> of <code>valid</code> for each
+         * <code>values[i]</code> in the set, with the table's arrays loaded
+         * once for the whole run.
+         */
+        void containsAll(String[] values, int from, int to, BitSet valid) {
+            if (size == 0) {
+                return;
+            }
+
+            int[] displacements = this.displacements;
+            String[] slots = this.slots;
+            boolean ignoreCase = this.ignoreCase;
+
+            for (int i = from; i < to; i++) {
+                String str = values[i];
+                long hash = hash(str, ignoreCase);
+                int bucket = bucketOf(hash, displacements.length);
+                String candidate = slots[slotOf(hash, displacements[bucket],
+                        slots.length)];
+
+                if (candidate != null && (ignoreCase
+                        ? candidate.equalsIgnoreCase(str)
+                        : candidate.equals(str))) {
+                    valid.set(i);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /*
+         * Both map 32 bits of hash onto a range with a multiply and a shift,
+         * rather than a much slower 64-bit remainder.
+         */
+        private static int bucketOf(long hash, int bucketCount) {
+            return (int) (((hash >>> 32) * bucketCount) >>> 32);
+        }
+
+        private static int slotOf(long hash, int displacement, int tableSize) {
+            long mixed = hash + displacement * 0x9E3779B97F4A7C15L;
+            mixed ^= mixed >>> 33;
+            mixed *= 0xFF51AFD7ED558CCDL;
+            mixed ^= mixed >>> 33;
+            return (int) (((mixed >>> 32) * tableSize) >>> 32);
+        }
+
+        /**
+         * A 64-bit FNV-1a hash of a string's characters, folding case if
+         * needed.
+         */
+        private static long hash(String str, boolean ignoreCase) {
+            long hash = 0xCBF29CE484222325L;
+
+            for (int i = 0; i < str.length(); i++) {
+                char c = str.charAt(i);
+
+                if (ignoreCase) {
+                    c = foldChar(c);
+                }
+
+                hash = (hash ^ c) * 0x100000001B3L;
+            }
+
+            return hash;
+        }
+
+        /**
+         * Fold case the way <code>String.equalsIgnoreCase</code> compares
+         * characters, so strings it considers equal hash the same.
+         */
+        private static char foldChar(char c) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        private static String fold(String str) {
+            char[] chars = str.toCharArray();
+
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = foldChar(chars[i]);
+            }
+
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.rw.legion.columncheck.DateTimeFormats;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A <code>ColumnTransformer</code> which normalizes timestamps in any of a
+ * list of formats. Requires a "formats" array in the objective JSON, and
+ * accepts an optional "zone" (see <code>DateTimeFormats</code>). The optional
+ * property "output" may be "iso" (ISO-8601 in UTC, the default),
+ * "epochSeconds" or "epochMillis". Values that aren't in any of the formats
+ * are left as they are.
+ */
+
+public class DateTimeTransformer implements ColumnTransformer {
+    // Outputs.
+    private static final int ISO = 0;
+    private static final int EPOCH_SECONDS = 1;
+    private static final int EPOCH_MILLIS = 2;
+    
+    private DateTimeFormats formats;
+    private int output;
+    
+    public DateTimeTransformer(JsonObject json) throws JsonParseException {
+        formats = new DateTimeFormats(json);
+        String name = json.has("output") ? json.get("output").getAsString()
+                : "iso";
+        
+        if (name.equals("iso")) {
+            output = ISO;
+        } else if (name.equals("epochSeconds")) {
+            output = EPOCH_SECONDS;
+        } else if (name.equals("epochMillis")) {
+            output = EPOCH_MILLIS;
+        } else {
+            throw new JsonParseException(name + " is not a valid date/time " +
+                    "output.");
+        }
+    }
+    
+    public String transform(String str) {
+        Instant instant = formats.parse(str);
+        
+        if (instant == null) {
+            return str;
+        }
+        
+        switch (output) {
+            case EPOCH_SECONDS:
+                return Long.toString(instant.getEpochSecond());
+            case EPOCH_MILLIS:
+                return Long.toString(instant.toEpochMilli());
+            default:
+                return DateTimeFormatter.ISO_INSTANT.format(instant);
+        }
+    }
+}
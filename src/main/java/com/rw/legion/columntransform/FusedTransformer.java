@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A <code>ColumnTransformer</code> which applies a list of transformers in
+ * order. Built by <code>ObjectiveDeserializer</code> when a column's
+ * "transform" is an array.
+ *
+ * Consecutive character-level steps (<code>TrimTransformer</code>,
+ * <code>LowerCaseTransformer</code> and <code>StripControlTransformer</code>)
+ * are fused and run in a single pass over the string, using lookup tables for
+ * ASCII characters. A new string is only built if the steps actually change
+ * the value. Any other transformers run on their own, in their place in the
+ * list.
+ */
+
+public class FusedTransformer implements ColumnTransformer {
+    // Character maps.
+    private static final int NONE = 0;
+    private static final int LOWER_CASE = 1;
+    private static final int STRIP_CONTROL = 2;
+
+    private ColumnTransformer[] stages;
+
+    /**
+     * @param steps  The transformers to apply, in order.
+     */
+    public FusedTransformer(List<ColumnTransformer> steps) {
+        ArrayList<ColumnTransformer> list = new ArrayList<ColumnTransformer>();
+        CharPass pass = null;
+
+        for (ColumnTransformer step : steps) {
+            int map = mapFor(step);
+            boolean trim = step instanceof TrimTransformer;
+
+            if (map == NONE && ! trim) {
+                pass = null;
+                list.add(step);
+                continue;
+            }
+
+            // A pass can trim once; the steps after that map what's left.
+            if (pass == null || (trim && pass.trim)) {
+                pass = new CharPass();
+                list.add(pass);
+            }
+
+            if (trim) {
+                pass.trim = true;
+            } else if (pass.trim) {
+                pass.postMaps.add(map);
+            } else {
+                pass.preMaps.add(map);
+            }
+        }
+
+        for (ColumnTransformer stage : list) {
+            if (stage instanceof CharPass) {
+                ((CharPass) stage).compile();
+            }
+        }
+
+        stages = list.toArray(new ColumnTransformer[list.size()]);
+    }
+
+    public String transform(String str) {
+        for (ColumnTransformer stage : stages) {
+            str = stage.transform(str);
+        }
+
+        return str;
+    }
+
+    /**
+     * @return  The number of separate stages the steps were fused into.
+     */
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    private static int mapFor(ColumnTransformer step) {
+        if (step instanceof LowerCaseTransformer) {
+            return LOWER_CASE;
+        } else if (step instanceof StripControlTransformer) {
+            return STRIP_CONTROL;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Apply character maps in order.
+     *
+     * @return  The mapped character, or -1 if it's removed.
+     */
+    private static int map(List<Integer> maps, int c) {
+        for (int i = 0; i < maps.size() && c >= 0; i++) {
+            if (maps.get(i) == LOWER_CASE) {
+                c = Character.toLowerCase((char) c);
+            } else if (Character.isISOControl(c)) {
+                c = -1;
+            }
+        }
+
+        return c;
+    }
+
+    /**
+     * Fused character-level steps: maps applied before an optional trim,
+     * and maps applied after it. Trimming only looks at the characters the
+     * earlier maps leave, and the later maps only see what's left.
+     */
+    private static class CharPass implements ColumnTransformer {
+        boolean trim;
+        ArrayList<Integer> preMaps = new ArrayList<Integer>();
+        ArrayList<Integer> postMaps = new ArrayList<Integer>();
+        private ArrayList<Integer> allMaps = new ArrayList<Integer>();
+
+        // What each ASCII character becomes before the trim, and overall.
+        private int[] asciiPre = new int[128];
+        private int[] asciiAll = new int[128];
+
+        void compile() {
+            allMaps.addAll(preMaps);
+            allMaps.addAll(postMaps);
+
+            for (int c = 0; c < 128; c++) {
+                asciiPre[c] = map(preMaps, c);
+                asciiAll[c] = map(allMaps, c);
+            }
+        }
+
+        private boolean trimmed(char c) {
+            int mapped = c < 128 ? asciiPre[c] : map(preMaps, c);
+            return mapped <= ' ';
+        }
+
+        public String transform(String str) {
+            if (str == null) {
+                return null;
+            }
+
+            int start = 0;
+            int end = str.length();
+
+            if (trim) {
+                while (start < end && trimmed(str.charAt(start))) {
+                    start++;
+                }
+
+                while (end > start && trimmed(str.charAt(end - 1))) {
+                    end--;
+                }
+            }
+
+            StringBuilder out = null;
+
+            for (int i = start; i < end; i++) {
+                char c = str.charAt(i);
+                int mapped = c < 128 ? asciiAll[c] : map(allMaps, c);
+
+                if (out == null) {
+                    if (mapped == c) {
+                        continue;
+                    }
+
+                    // The first change: copy what's been passed over.
+                    out = new StringBuilder(end - start);
+                    out.append(str, start, i);
+                }
+
+                if (mapped >= 0) {
+                    out.append((char) mapped);
+                }
+            }
+
+            if (out != null) {
+                return out.toString();
+            }
+
+            return start == 0 && end == str.length() ? str
+                    : str.substring(start, end);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A <code>ColumnTransformer</code> which converts each character to lower
+ * case with <code>Character.toLowerCase</code>. Unlike
+ * <code>String.toLowerCase</code>, this never depends on the locale or
+ * changes the length of the string.
+ */
+
+public class LowerCaseTransformer implements ColumnTransformer {
+    
+    public LowerCaseTransformer(JsonObject json) {
+    }
+    
+    public String transform(String str) {
+        if (str == null) {
+            return null;
+        }
+        
+        char[] chars = str.toCharArray();
+        
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        
+        return new String(chars);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A <code>ColumnTransformer</code> which removes control characters (as
+ * defined by <code>Character.isISOControl</code>) from anywhere in a string.
+ */
+
+public class StripControlTransformer implements ColumnTransformer {
+    
+    public StripControlTransformer(JsonObject json) {
+    }
+    
+    public String transform(String str) {
+        if (str == null) {
+            return null;
+        }
+        
+        StringBuilder out = new StringBuilder(str.length());
+        
+        for (int i = 0; i < str.length(); i++) {
+            if (! Character.isISOControl(str.charAt(i))) {
+                out.append(str.charAt(i));
+            }
+        }
+        
+        return out.toString();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A <code>ColumnTransformer</code> which removes leading and trailing
+ * whitespace and control characters (everything up to and including the
+ * space character), as <code>String.trim</code> does.
+ */
+
+public class TrimTransformer implements ColumnTransformer {
+    
+    public TrimTransformer(JsonObject json) {
+    }
+    
+    public String transform(String str) {
+        return str == null ? null : str.trim();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompressed view of a gzip file, starting from a
+ * <code>GzipIndex.Checkpoint</code> rather than from the beginning of the
+ * file. Reads continue through any later gzip members until the end of the
+ * file.
+ */
+
+public class CheckpointInputStream extends InputStream {
+
+    /**
+     * Opens the compressed file positioned at a given byte offset.
+     */
+    public interface Opener {
+        InputStream open(long offset) throws IOException;
+    }
+
+    private Opener opener;
+    private long memberEnd;
+    private long fileLength;
+    private Inflater inflater;
+    private InputStream current;
+    private boolean continued;
+
+    /**
+     * @param opener  Opens the compressed file at a byte offset.
+     * @param fileLength  Length of the compressed file.
+     * @param checkpoint  Where to resume decompression.
+     */
+    public CheckpointInputStream(Opener opener, long fileLength,
+            GzipIndex.Checkpoint checkpoint) throws IOException {
+        this.opener = opener;
+        this.fileLength = fileLength;
+        this.memberEnd = checkpoint.getMemberEnd();
+
+        long bitOffset = checkpoint.getBitOffset();
+        InputStream raw = opener.open(bitOffset >>> 3);
+
+        if ((bitOffset & 7) != 0) {
+            raw = new BitShiftInputStream(raw, (int) (bitOffset & 7));
+        }
+
+        inflater = new Inflater(true);
+        byte[] window = expandWindow(checkpoint.getWindow());
+
+        if (window.length > 0) {
+            inflater.setDictionary(window);
+        }
+
+        current = new InflaterInputStream(raw, inflater, 65536);
+    }
+
+    /**
+     * Inflate a dictionary window stored in a <code>GzipIndex</code>.
+     */
+    private static byte[] expandWindow(byte[] stored) throws IOException {
+        Inflater windowInflater = new Inflater(true);
+        windowInflater.setInput(stored);
+        ByteArrayOutputStream window = new ByteArrayOutputStream(32768);
+        byte[] buffer = new byte[8192];
+
+        try {
+            while (! windowInflater.finished()) {
+                int n = windowInflater.inflate(buffer);
+
+                if (n == 0 && windowInflater.needsInput()) {
+                    break;
+                }
+
+                window.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt gzip index window.", e);
+        } finally {
+            windowInflater.end();
+        }
+
+        return window.toByteArray();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n <= 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (true) {
+            int n = current.read(b, off, len);
+
+            if (n >= 0 || continued) {
+                return n;
+            }
+
+            /*
+             * The member we started in has ended. Anything after it is a
+             * plain sequence of gzip members that GZIPInputStream can handle.
+             */
+            continued = true;
+
+            if (memberEnd <= 0 || memberEnd >= fileLength) {
+                return -1;
+            }
+
+            current.close();
+            current = new GZIPInputStream(opener.open(memberEnd), 65536);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            current.close();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Re-aligns a stream so that a deflate block starting part way through a
+     * byte can be fed to <code>Inflater</code>, which only accepts whole bytes.
+     */
+    private static class BitShiftInputStream extends InputStream {
+        private InputStream in;
+        private int shift;
+        private byte[] buffer = new byte[65536];
+        private int length;
+        private int pos;
+        private int carry;
+        private boolean eof;
+
+        BitShiftInputStream(InputStream in, int shift) throws IOException {
+            this.in = in;
+            this.shift = shift;
+            carry = in.read();
+
+            if (carry < 0) {
+                eof = true;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n <= 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+
+            if (pos == length) {
+                length = in.read(buffer, 0, buffer.length);
+                pos = 0;
+
+                if (length <= 0) {
+                    // Whatever is left of the last byte becomes one more byte.
+                    length = 0;
+                    eof = true;
+                    b[off] = (byte) (carry >>> shift);
+                    return 1;
+                }
+            }
+
+            int n = Math.min(len, length - pos);
+
+            for (int i = 0; i < n; i++) {
+                int next = buffer[pos++] & 0xff;
+                b[off + i] = (byte) ((carry >>> shift) | (next << (8 - shift)));
+                carry = next;
+            }
+
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package com.rw.legion.input;
 
 import com.rw.legion.LegionRecord;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -30,6 +31,7 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.*;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Input format that is a <code>CombineFileInputFormat</code>-equivalent for
@@ -49,6 +51,16 @@ public class CombineCsvInputFormat
                 LegionRecordReaderWrapper.class);
     }
     
+    /**
+     * When running incrementally, only the files chosen by
+     * <code>DefaultJob</code> are read.
+     */
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = FileManifest.listInput(job);
+        return files != null ? files : super.listStatus(job);
+    }
+    
     @Override
     protected boolean isSplitable(JobContext job, Path file) {
         // We should never split this, because we're already combining files.
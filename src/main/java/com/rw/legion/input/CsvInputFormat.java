@@ -24,6 +24,7 @@ import com.google.common.base.Charsets;
 import com.rw.legion.LegionRecord;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -32,6 +33,9 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
+import java.io.IOException;
+import java.util.List;
+
 /** 
  * An <code>InputFormat</code> for <code>CsvRecordReader</code>. Essentially,
  * the default Hadoop <code>TextInputFormat</code> modified to use the
@@ -58,12 +62,32 @@ public class CsvInputFormat
         return new CsvRecordReader(recordDelimiterBytes);
     }
 
+    /**
+     * Large gzip files that have been indexed with <code>GzipIndexer</code>
+     * are broken into several splits at the index's checkpoints.
+     */
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        return GzipIndexSplit.expand(job, super.getSplits(job));
+    }
+
+    /**
+     * When running incrementally, only the files chosen by
+     * <code>DefaultJob</code> are read.
+     */
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = FileManifest.listInput(job);
+        return files != null ? files : super.listStatus(job);
+    }
+
     @Override
     protected boolean isSplitable(JobContext context, Path file) {
         /*
          * Legion doesn't currently support splitting CSVs, because the header
          * would only be in the first split. A fix can be investigated for a
-         * future release, though.
+         * future release, though. (Indexed gzip files are the exception: see
+         * getSplits().)
          */
         return false;
     }
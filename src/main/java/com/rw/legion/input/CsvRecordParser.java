@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionRecord;
+
+/**
+ * Parses lines that each contain a CSV row. The first line of each file is
+ * taken to be the header, and within each <code>LegionRecord</code>, CSV
+ * column headers are mapped to the data found for that column on a specific
+ * row.
+ */
+
+public class CsvRecordParser implements RecordParser {
+    private String[] header;
+    private boolean malformed;
+    
+    /**
+     * Takes a line in CSV format, parses it, and builds a
+     * <code>LegionRecord</code> with CSV column headers mapped to the data
+     * found for that column on this row.
+     * 
+     * @return A legion record containing CSV column headers mapped to data
+     * found in that column on this row.
+     */
+    public LegionRecord parse(String line, String fileName, long lineNumber) {
+        malformed = false;
+        
+        if (lineNumber == 1) {
+            header = line.split(",");
+            return null;
+        }
+        
+        LegionRecord record = new LegionRecord();
+        record.setField("file_name", fileName);
+        record.setField("file_line", Long.toString(lineNumber));
+        
+        /*
+         *  Supply the header length to split() in case there are trailing null
+         *  fields.
+         */
+        String[] lineParts = line.split(",", header.length);
+        
+        if (header.length == lineParts.length) {
+            for (int i = 0; i < lineParts.length; i++) {
+                record.setField(header[i],  lineParts[i]);
+            }
+        } else {
+            malformed = true;
+        }
+        
+        return record;
+    }
+    
+    public boolean needsFirstLine() {
+        return true;
+    }
+    
+    /**
+     * @return  Whether the last line had a different number of fields than
+     *          the header. Such lines still produce a record, with only the
+     *          file name and line number.
+     */
+    public boolean lastLineMalformed() {
+        return malformed;
+    }
+}
@@ -28,14 +28,25 @@ import com.rw.legion.LegionRecord;
  * must contain a valid CSV row. Within the <code>LegionRecord</code>, CSV
  * column headers are mapped to the data found for that column on a specific
  * row.
+ *
+ * @see CsvRecordParser
  */
 public class CsvRecordReader extends LegionRecordReader {
-    private String[] header;
+    private CsvRecordParser parser = new CsvRecordParser();
     
     public CsvRecordReader(byte[] recordDelimiterBytes) {
         super(recordDelimiterBytes);
     }
     
+    /**
+     * The header row is needed to make sense of any other row, so splits that
+     * start part way through a file still need to read it.
+     */
+    @Override
+    protected boolean needsFirstLine() {
+        return true;
+    }
+    
     /**
      * Takes a line in CSV format, parses it, and builds a
      * <code>LegionRecord</code> with CSV column headers mapped to the data
@@ -45,29 +56,12 @@ public class CsvRecordReader extends LegionRecordReader {
      * found in that column on this row.
      */
     protected LegionRecord makeRecord() {
-        String lineString = currentLine.toString();
-        
-        if (currentLineNumber == 1) {
-            header = lineString.split(",");
-            return null;
-        }
-        
-        LegionRecord record = new LegionRecord();
-        record.setField("file_name", fileName);
-        record.setField("file_line", Long.toString(currentLineNumber));
-        
-        /*
-         *  Supply the header length to split() in case there are trailing null
-         *  fields.
-         */
-        String[] lineParts = lineString.split(",", header.length);
-        
-        if (header.length == lineParts.length) {
-            for (int i = 0; i < lineParts.length; i++) {
-                record.setField(header[i],  lineParts[i]);
-            }
-        }
-        
-        return record;
+        return parser.parse(currentLine.toString(), fileName,
+                currentLineNumber);
+    }
+    
+    @Override
+    protected boolean lastLineMalformed() {
+        return parser.lastLineMalformed();
     }
 }
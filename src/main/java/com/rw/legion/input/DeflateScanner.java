@@ -0,0 +1,595 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+/**
+ * Decompresses a gzip stream once, end to end, and records a
+ * <code>GzipIndex.Checkpoint</code> at the first deflate block boundary after
+ * every <code>span</code> bytes of uncompressed output.
+ *
+ * <code>java.util.zip.Inflater</code> doesn't report where deflate blocks
+ * begin, so this is a small self-contained inflater (along the lines of
+ * zlib's puff.c and zran.c) that does. It is only used to build indexes;
+ * actual reads from a checkpoint go through the JDK's native inflater.
+ */
+
+class DeflateScanner {
+    private static final int WINDOW_SIZE = 32768;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int FAST_BITS = 9;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11,
+        13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163,
+        195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1,
+        1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25,
+        33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+        4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4,
+        4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6,
+        10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        byte[] lengths = new byte[288];
+
+        for (int i = 0; i < 288; i++) {
+            if (i < 144) lengths[i] = 8;
+            else if (i < 256) lengths[i] = 9;
+            else if (i < 280) lengths[i] = 7;
+            else lengths[i] = 8;
+        }
+
+        byte[] distLengths = new byte[30];
+
+        for (int i = 0; i < 30; i++) {
+            distLengths[i] = 5;
+        }
+
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, 288);
+            FIXED_DISTANCES = new Huffman(distLengths, 0, 30);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final long span;
+
+    private InputStream in;
+    private byte[] buffer = new byte[65536];
+    private int bufferPos;
+    private int bufferLen;
+    private long bytesConsumed;
+    private long bitBuffer;
+    private int bitCount;
+
+    private byte[] window = new byte[WINDOW_SIZE];
+    private long out;
+    private long memberOut;
+    private long lines;
+    private byte lastByte;
+    private long lastCheckpoint;
+
+    private ArrayList<PendingCheckpoint> checkpoints;
+    private ArrayList<PendingCheckpoint> awaitingLine;
+    private ArrayList<PendingCheckpoint> awaitingMemberEnd;
+
+    /**
+     * @param span  Minimum number of uncompressed bytes between checkpoints.
+     */
+    DeflateScanner(long span) {
+        this.span = span;
+    }
+
+    /**
+     * Decompress an entire gzip stream and build an index for it.
+     *
+     * @param stream  A gzip stream, positioned at the very start of the file.
+     * @return  An index of resume points in the stream.
+     */
+    GzipIndex scan(InputStream stream) throws IOException {
+        in = stream;
+        bufferPos = bufferLen = 0;
+        bytesConsumed = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        out = 0;
+        lines = 0;
+        lastByte = '\n';
+        lastCheckpoint = -1;
+        checkpoints = new ArrayList<PendingCheckpoint>();
+        awaitingLine = new ArrayList<PendingCheckpoint>();
+        awaitingMemberEnd = new ArrayList<PendingCheckpoint>();
+
+        boolean firstMember = true;
+
+        while (firstMember || hasMoreInput()) {
+            if (! readHeader()) {
+                if (firstMember) {
+                    throw new IOException("Not in gzip format.");
+                }
+
+                // Trailing garbage after the last member is ignored, like
+                // GZIPInputStream does.
+                break;
+            }
+
+            firstMember = false;
+            memberOut = 0;
+            boolean lastBlock;
+
+            do {
+                checkpoint();
+                lastBlock = bits(1) == 1;
+                int type = bits(2);
+
+                if (type == 0) storedBlock();
+                else if (type == 1) huffmanBlock(FIXED_LITERALS,
+                        FIXED_DISTANCES);
+                else if (type == 2) dynamicBlock();
+                else throw new IOException("Invalid deflate block type.");
+            } while (! lastBlock);
+
+            // Skip the CRC and uncompressed size in the member trailer.
+            alignToByte();
+            bits(16);
+            bits(16);
+            bits(16);
+            bits(16);
+
+            long memberEnd = bytePosition();
+
+            for (PendingCheckpoint pending : awaitingMemberEnd) {
+                pending.memberEnd = memberEnd;
+            }
+
+            awaitingMemberEnd.clear();
+        }
+
+        // Checkpoints after the last line boundary lead to empty splits.
+        for (PendingCheckpoint pending : awaitingLine) {
+            pending.lineOffset = out;
+            pending.lineNumber = lines;
+        }
+
+        ArrayList<GzipIndex.Checkpoint> result =
+                new ArrayList<GzipIndex.Checkpoint>(checkpoints.size());
+
+        for (PendingCheckpoint pending : checkpoints) {
+            result.add(new GzipIndex.Checkpoint(pending.bitOffset,
+                    pending.uncompressedOffset, pending.lineOffset,
+                    pending.lineNumber, pending.memberEnd, pending.window));
+        }
+
+        return new GzipIndex(bytePosition(), out, result);
+    }
+
+    /**
+     * Record a checkpoint at the current block boundary if enough output has
+     * been produced since the last one.
+     */
+    private void checkpoint() {
+        if (lastCheckpoint >= 0 && out - lastCheckpoint < span) {
+            return;
+        }
+
+        lastCheckpoint = out;
+
+        PendingCheckpoint pending = new PendingCheckpoint();
+        pending.bitOffset = bitPosition();
+        pending.uncompressedOffset = out;
+        pending.window = snapshotWindow();
+
+        if (lastByte == '\n') {
+            pending.lineOffset = out;
+            pending.lineNumber = lines;
+        } else {
+            awaitingLine.add(pending);
+        }
+
+        checkpoints.add(pending);
+        awaitingMemberEnd.add(pending);
+    }
+
+    /**
+     * @return  The dictionary window for the current position, deflated.
+     */
+    private byte[] snapshotWindow() {
+        int length = (int) Math.min(memberOut, WINDOW_SIZE);
+        byte[] ordered = new byte[length];
+        int start = (int) ((memberOut - length) & WINDOW_MASK);
+        int firstPart = Math.min(length, WINDOW_SIZE - start);
+
+        System.arraycopy(window, start, ordered, 0, firstPart);
+        System.arraycopy(window, 0, ordered, firstPart, length - firstPart);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(ordered);
+        deflater.finish();
+
+        byte[] compressed = new byte[length + 64];
+        int compressedLength = 0;
+
+        while (! deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                byte[] bigger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, bigger, 0, compressedLength);
+                compressed = bigger;
+            }
+
+            compressedLength += deflater.deflate(compressed, compressedLength,
+                    compressed.length - compressedLength);
+        }
+
+        deflater.end();
+
+        byte[] result = new byte[compressedLength];
+        System.arraycopy(compressed, 0, result, 0, compressedLength);
+        return result;
+    }
+
+    /**
+     * Parse a gzip member header.
+     *
+     * @return  False if the next bytes aren't a gzip header.
+     */
+    private boolean readHeader() throws IOException {
+        if (bits(8) != 0x1f || bits(8) != 0x8b) {
+            return false;
+        }
+
+        if (bits(8) != 8) {
+            throw new IOException("Unsupported gzip compression method.");
+        }
+
+        int flags = bits(8);
+
+        // Modification time, extra flags and OS.
+        bits(16);
+        bits(16);
+        bits(16);
+
+        if ((flags & 4) != 0) {
+            int extraLength = bits(16);
+
+            for (int i = 0; i < extraLength; i++) {
+                bits(8);
+            }
+        }
+
+        if ((flags & 8) != 0) {
+            while (bits(8) != 0) { }
+        }
+
+        if ((flags & 16) != 0) {
+            while (bits(8) != 0) { }
+        }
+
+        if ((flags & 2) != 0) {
+            bits(16);
+        }
+
+        return true;
+    }
+
+    private void storedBlock() throws IOException {
+        alignToByte();
+        int length = bits(16);
+        int complement = bits(16);
+
+        if (length != (~complement & 0xffff)) {
+            throw new IOException("Stored block length mismatch.");
+        }
+
+        for (int i = 0; i < length; i++) {
+            emit((byte) bits(8));
+        }
+    }
+
+    private void dynamicBlock() throws IOException {
+        int literalCount = bits(5) + 257;
+        int distanceCount = bits(5) + 1;
+        int codeLengthCount = bits(4) + 4;
+
+        byte[] codeLengthLengths = new byte[19];
+
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = (byte) bits(3);
+        }
+
+        Huffman codeLengths = new Huffman(codeLengthLengths, 0, 19);
+        byte[] lengths = new byte[literalCount + distanceCount];
+        int index = 0;
+
+        while (index < lengths.length) {
+            int symbol = codeLengths.decode(this);
+
+            if (symbol < 16) {
+                lengths[index++] = (byte) symbol;
+                continue;
+            }
+
+            byte repeated = 0;
+            int times;
+
+            if (symbol == 16) {
+                if (index == 0) {
+                    throw new IOException("Repeat with no previous length.");
+                }
+
+                repeated = lengths[index - 1];
+                times = 3 + bits(2);
+            } else if (symbol == 17) {
+                times = 3 + bits(3);
+            } else {
+                times = 11 + bits(7);
+            }
+
+            if (index + times > lengths.length) {
+                throw new IOException("Too many code lengths.");
+            }
+
+            while (times-- > 0) {
+                lengths[index++] = repeated;
+            }
+        }
+
+        if (lengths[256] == 0) {
+            throw new IOException("Missing end-of-block code.");
+        }
+
+        huffmanBlock(new Huffman(lengths, 0, literalCount),
+                new Huffman(lengths, literalCount, distanceCount));
+    }
+
+    private void huffmanBlock(Huffman literals, Huffman distances)
+            throws IOException {
+        while (true) {
+            int symbol = literals.decode(this);
+
+            if (symbol < 256) {
+                emit((byte) symbol);
+            } else if (symbol == 256) {
+                return;
+            } else {
+                symbol -= 257;
+
+                if (symbol >= 29) {
+                    throw new IOException("Invalid length code.");
+                }
+
+                int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                int distSymbol = distances.decode(this);
+
+                if (distSymbol >= 30) {
+                    throw new IOException("Invalid distance code.");
+                }
+
+                int distance = DIST_BASE[distSymbol]
+                        + bits(DIST_EXTRA[distSymbol]);
+
+                if (distance > memberOut) {
+                    throw new IOException("Distance too far back.");
+                }
+
+                while (length-- > 0) {
+                    emit(window[(int) ((memberOut - distance) & WINDOW_MASK)]);
+                }
+            }
+        }
+    }
+
+    private void emit(byte b) {
+        window[(int) (memberOut & WINDOW_MASK)] = b;
+        memberOut++;
+        out++;
+        lastByte = b;
+
+        if (b == '\n') {
+            lines++;
+
+            if (! awaitingLine.isEmpty()) {
+                for (PendingCheckpoint pending : awaitingLine) {
+                    pending.lineOffset = out;
+                    pending.lineNumber = lines;
+                }
+
+                awaitingLine.clear();
+            }
+        }
+    }
+
+    /**
+     * Top up the bit buffer with as many whole bytes as will fit.
+     */
+    private void fill() throws IOException {
+        while (bitCount <= 56) {
+            if (bufferPos == bufferLen) {
+                bufferLen = in.read(buffer, 0, buffer.length);
+                bufferPos = 0;
+
+                if (bufferLen <= 0) {
+                    bufferLen = 0;
+                    return;
+                }
+            }
+
+            bitBuffer |= (long) (buffer[bufferPos++] & 0xff) << bitCount;
+            bitCount += 8;
+            bytesConsumed++;
+        }
+    }
+
+    private int bits(int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+
+        if (bitCount < count) {
+            fill();
+
+            if (bitCount < count) {
+                throw new EOFException("Unexpected end of gzip input.");
+            }
+        }
+
+        int value = (int) (bitBuffer & ((1L << count) - 1));
+        bitBuffer >>>= count;
+        bitCount -= count;
+        return value;
+    }
+
+    private void alignToByte() {
+        int drop = bitCount & 7;
+        bitBuffer >>>= drop;
+        bitCount -= drop;
+    }
+
+    private boolean hasMoreInput() throws IOException {
+        if (bitCount == 0) {
+            fill();
+        }
+
+        return bitCount > 0;
+    }
+
+    private long bitPosition() {
+        return bytesConsumed * 8 - bitCount;
+    }
+
+    private long bytePosition() {
+        return bytesConsumed - bitCount / 8;
+    }
+
+    /**
+     * A canonical Huffman code, with a lookup table for short codes and a
+     * bit-at-a-time fallback for long ones.
+     */
+    private static class Huffman {
+        private final short[] counts = new short[16];
+        private final short[] symbols;
+        private final int[] fast = new int[1 << FAST_BITS];
+
+        Huffman(byte[] lengths, int offset, int n) throws IOException {
+            symbols = new short[n];
+
+            for (int i = 0; i < n; i++) {
+                counts[lengths[offset + i]]++;
+            }
+
+            int left = 1;
+
+            for (int len = 1; len < 16; len++) {
+                left <<= 1;
+                left -= counts[len];
+
+                if (left < 0) {
+                    throw new IOException("Over-subscribed Huffman code.");
+                }
+            }
+
+            short[] offsets = new short[16];
+            int[] nextCode = new int[16];
+            int code = 0;
+
+            for (int len = 1; len < 16; len++) {
+                offsets[len] = (short) (offsets[len - 1] + counts[len - 1]);
+                code = (code + (len == 1 ? 0 : counts[len - 1])) << 1;
+                nextCode[len] = code;
+            }
+
+            // counts[0] is the number of unused symbols, so don't offset by it.
+            int base = counts[0];
+
+            for (int i = 0; i < n; i++) {
+                int len = lengths[offset + i];
+
+                if (len == 0) {
+                    continue;
+                }
+
+                symbols[offsets[len] - base] = (short) i;
+                offsets[len]++;
+
+                if (len <= FAST_BITS) {
+                    int reversed = Integer.reverse(nextCode[len]) >>> (32 - len);
+
+                    for (int j = reversed; j < fast.length; j += 1 << len) {
+                        fast[j] = (len << 16) | i;
+                    }
+                }
+
+                nextCode[len]++;
+            }
+        }
+
+        int decode(DeflateScanner s) throws IOException {
+            if (s.bitCount < 16) {
+                s.fill();
+            }
+
+            int entry = fast[(int) (s.bitBuffer & ((1 << FAST_BITS) - 1))];
+            int len = entry >>> 16;
+
+            if (entry != 0 && len <= s.bitCount) {
+                s.bitBuffer >>>= len;
+                s.bitCount -= len;
+                return entry & 0xffff;
+            }
+
+            int code = 0;
+            int first = 0;
+            int index = 0;
+
+            for (len = 1; len < 16; len++) {
+                code |= s.bits(1);
+                int count = counts[len];
+
+                if (code - count < first) {
+                    return symbols[index + (code - first)];
+                }
+
+                index += count;
+                first += count;
+                first <<= 1;
+                code <<= 1;
+            }
+
+            throw new IOException("Invalid Huffman code.");
+        }
+    }
+
+    private static class PendingCheckpoint {
+        long bitOffset;
+        long uncompressedOffset;
+        long lineOffset;
+        long lineNumber;
+        long memberEnd;
+        byte[] window;
+    }
+}
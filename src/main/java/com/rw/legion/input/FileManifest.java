@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.JobContext;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A record of the input files that have already been processed, for running
+ * Legion incrementally. Each file is recorded with its length, modification
+ * time and a hash of the objective it was processed with, so files that
+ * change, or that were processed with a different objective, are picked up
+ * again.
+ *
+ * Every directory is listed, and every file's length and modification time
+ * compared with the manifest's. Directories are recorded with their
+ * modification times as well: with <code>setTrustDirectoryTimes()</code>,
+ * directories whose time hasn't changed are not listed again, and their
+ * files are taken from the manifest without being checked. Adding, removing
+ * or replacing a file changes its directory's time, but appending to one
+ * doesn't, so only trust directory times for input whose files are complete
+ * when they appear. Directories with no modification time (e.g., on some
+ * object stores) are always listed.
+ *
+ * Manifests are stored as text, one file or directory per line.
+ */
+
+public class FileManifest {
+    /**
+     * Configuration key for the location of a manifest listing the files a
+     * job should read, in place of listing its input paths.
+     */
+    public static final String INPUT_LIST = "legion_input_list";
+
+    /**
+     * Configuration key which, if true, has <code>DefaultJob</code> skip
+     * listing directories whose modification times haven't changed.
+     */
+    public static final String TRUST_DIRECTORY_TIMES =
+            "legion.manifest.trust.directory.times";
+
+    private LinkedHashMap<String, Entry> files =
+            new LinkedHashMap<String, Entry>();
+    private LinkedHashMap<String, Long> dirs = new LinkedHashMap<String, Long>();
+    private HashMap<String, List<String>> childFiles;
+    private HashMap<String, List<String>> childDirs;
+    private boolean trustDirectoryTimes;
+
+    /**
+     * What's known about a file.
+     */
+    private static class Entry {
+        long length;
+        long modificationTime;
+        long blockSize;
+        String objectiveHash;
+
+        Entry(long length, long modificationTime, long blockSize,
+                String objectiveHash) {
+            this.length = length;
+            this.modificationTime = modificationTime;
+            this.blockSize = blockSize;
+            this.objectiveHash = objectiveHash;
+        }
+    }
+
+    /**
+     * Hash an objective, so that files are processed again when it changes.
+     *
+     * @param objectiveJson  JSON text of a Legion objective.
+     * @return  A hex-encoded SHA-256 hash of the objective.
+     */
+    public static String hash(String objectiveJson) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(objectiveJson.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read a manifest.
+     *
+     * @param fs  File system containing the manifest.
+     * @param path  Location of the manifest.
+     * @return  The manifest, or an empty manifest if there isn't one yet.
+     */
+    public static FileManifest read(FileSystem fs, Path path)
+            throws IOException {
+        FileManifest manifest = new FileManifest();
+
+        if (! fs.exists(path)) {
+            return manifest;
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                fs.open(path), StandardCharsets.UTF_8));
+
+        try {
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+
+                if (parts[0].equals("F") && parts.length == 6) {
+                    manifest.files.put(parts[5], new Entry(
+                            Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3]), parts[4]));
+                } else if (parts[0].equals("D") && parts.length == 3) {
+                    manifest.dirs.put(parts[2], Long.parseLong(parts[1]));
+                } else {
+                    throw new IOException("Bad line in manifest " + path +
+                            ": " + line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Write this manifest. It's written to a temporary file first and then
+     * renamed, so a failure part way through leaves the old manifest intact.
+     *
+     * @param fs  File system to write to.
+     * @param path  Location of the manifest.
+     */
+    public void write(FileSystem fs, Path path) throws IOException {
+        Path temporary = path.suffix(".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                fs.create(temporary, true), StandardCharsets.UTF_8));
+
+        try {
+            for (Map.Entry<String, Long> dir : dirs.entrySet()) {
+                out.write("D\t" + dir.getValue() + "\t" + dir.getKey() + "\n");
+            }
+
+            for (Map.Entry<String, Entry> file : files.entrySet()) {
+                Entry entry = file.getValue();
+
+                out.write("F\t" + entry.length + "\t" +
+                        entry.modificationTime + "\t" + entry.blockSize + "\t" +
+                        entry.objectiveHash + "\t" + file.getKey() + "\n");
+            }
+        } finally {
+            out.close();
+        }
+
+        fs.delete(path, false);
+
+        if (! fs.rename(temporary, path)) {
+            throw new IOException("Couldn't rename " + temporary + " to " +
+                    path);
+        }
+    }
+
+    /**
+     * Add a file to this manifest.
+     *
+     * @param status  The file's status.
+     * @param objectiveHash  Hash of the objective the file is processed with.
+     */
+    public void add(FileStatus status, String objectiveHash) {
+        files.put(status.getPath().toString(), new Entry(status.getLen(),
+                status.getModificationTime(), status.getBlockSize(),
+                objectiveHash));
+    }
+
+    /**
+     * @return  Statuses of all files in this manifest, as they were when the
+     *          files were added.
+     */
+    public List<FileStatus> getFiles() {
+        ArrayList<FileStatus> result = new ArrayList<FileStatus>();
+
+        for (Map.Entry<String, Entry> file : files.entrySet()) {
+            result.add(toStatus(file.getKey(), file.getValue()));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param trustDirectoryTimes  Whether <code>findChanges()</code> should
+     *                             skip listing directories whose modification
+     *                             times haven't changed, missing files that
+     *                             have been appended to since.
+     */
+    public void setTrustDirectoryTimes(boolean trustDirectoryTimes) {
+        this.trustDirectoryTimes = trustDirectoryTimes;
+    }
+
+    /**
+     * @return  Number of files in this manifest.
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * Find the files under an input path that are new, have changed, or were
+     * processed with a different objective.
+     *
+     * @param fs  File system containing the input.
+     * @param input  The input file or directory.
+     * @param objectiveHash  Hash of the current objective.
+     * @param next  Manifest to fill with every file and directory under the
+     *              input, for use on the next run once this one succeeds.
+     * @return  The files that need to be processed.
+     */
+    public List<FileStatus> findChanges(FileSystem fs, Path input,
+            String objectiveHash, FileManifest next) throws IOException {
+        indexChildren();
+
+        ArrayList<FileStatus> changes = new ArrayList<FileStatus>();
+        FileStatus root = fs.getFileStatus(input);
+
+        if (root.isDirectory()) {
+            scanDirectory(fs, root, objectiveHash, next, changes);
+        } else {
+            checkFile(root, objectiveHash, next, changes);
+        }
+
+        return changes;
+    }
+
+    private void scanDirectory(FileSystem fs, FileStatus dir,
+            String objectiveHash, FileManifest next,
+            List<FileStatus> changes) throws IOException {
+        String path = dir.getPath().toString();
+        Long oldTime = dirs.get(path);
+        next.dirs.put(path, dir.getModificationTime());
+
+        if (trustDirectoryTimes && oldTime != null
+                && dir.getModificationTime() > 0
+                && oldTime == dir.getModificationTime()) {
+
+            // Nothing has been added or removed here since the last run.
+            for (String file : children(childFiles, path)) {
+                Entry entry = files.get(file);
+
+                if (! entry.objectiveHash.equals(objectiveHash)) {
+                    changes.add(toStatus(file, entry));
+                    entry = new Entry(entry.length, entry.modificationTime,
+                            entry.blockSize, objectiveHash);
+                }
+
+                next.files.put(file, entry);
+            }
+
+            for (String subdirectory : children(childDirs, path)) {
+                try {
+                    scanDirectory(fs, fs.getFileStatus(new Path(subdirectory)),
+                            objectiveHash, next, changes);
+                } catch (FileNotFoundException e) {
+                    // Removed since the last run, despite the directory time.
+                }
+            }
+
+            return;
+        }
+
+        for (FileStatus child : fs.listStatus(dir.getPath())) {
+            String name = child.getPath().getName();
+
+            // Skip the same hidden files that FileInputFormat does.
+            if (name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+
+            if (child.isDirectory()) {
+                scanDirectory(fs, child, objectiveHash, next, changes);
+            } else {
+                checkFile(child, objectiveHash, next, changes);
+            }
+        }
+    }
+
+    private void checkFile(FileStatus status, String objectiveHash,
+            FileManifest next, List<FileStatus> changes) {
+        Entry entry = files.get(status.getPath().toString());
+
+        if (entry == null || entry.length != status.getLen()
+                || entry.modificationTime != status.getModificationTime()
+                || ! entry.objectiveHash.equals(objectiveHash)) {
+            changes.add(status);
+        }
+
+        next.add(status, objectiveHash);
+    }
+
+    /**
+     * Group files and directories by their parent directories.
+     */
+    private void indexChildren() {
+        if (childFiles != null) {
+            return;
+        }
+
+        childFiles = new HashMap<String, List<String>>();
+        childDirs = new HashMap<String, List<String>>();
+
+        for (String file : files.keySet()) {
+            addChild(childFiles, file);
+        }
+
+        for (String dir : dirs.keySet()) {
+            addChild(childDirs, dir);
+        }
+    }
+
+    private static void addChild(Map<String, List<String>> children,
+            String path) {
+        Path parent = new Path(path).getParent();
+
+        if (parent == null) {
+            return;
+        }
+
+        List<String> list = children.get(parent.toString());
+
+        if (list == null) {
+            list = new ArrayList<String>();
+            children.put(parent.toString(), list);
+        }
+
+        list.add(path);
+    }
+
+    private static List<String> children(Map<String, List<String>> children,
+            String path) {
+        List<String> list = children.get(path);
+        return list == null ? new ArrayList<String>() : list;
+    }
+
+    private static FileStatus toStatus(String path, Entry entry) {
+        return new FileStatus(entry.length, false, 0, entry.blockSize,
+                entry.modificationTime, new Path(path));
+    }
+
+    /**
+     * Used by Legion's input formats in place of listing their input paths.
+     *
+     * @param job  The job being run.
+     * @return  The files in the manifest at the location given by
+     *          <code>INPUT_LIST</code>, or null if there isn't one.
+     */
+    public static List<FileStatus> listInput(JobContext job)
+            throws IOException {
+        Configuration conf = job.getConfiguration();
+        String location = conf.get(INPUT_LIST);
+
+        if (location == null) {
+            return null;
+        }
+
+        Path path = new Path(location);
+        return read(path.getFileSystem(conf), path).getFiles();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of points in a gzip file where decompression can be resumed
+ * without reading everything that comes before them. Each
+ * <code>Checkpoint</code> records the bit offset of a deflate block in the
+ * compressed file, the uncompressed offset it corresponds to, and the last
+ * 32KB of uncompressed data before it (which later blocks may refer back
+ * to). Each checkpoint also records the first line boundary at or after it,
+ * so that splits built from the index always start on a whole line.
+ *
+ * Indexes are built with <code>GzipIndexer</code> and stored in a sidecar
+ * file next to the gzip file they describe, along with the file's length and
+ * modification time, so an index for a file that has since been replaced
+ * isn't used.
+ */
+
+public class GzipIndex {
+    private static final int MAGIC = 0x4c475a49; // "LGZI"
+    private static final int VERSION = 2;
+
+    private long compressedLength;
+    private long modificationTime;
+    private long uncompressedLength;
+    private ArrayList<Checkpoint> checkpoints;
+
+    public GzipIndex(long compressedLength, long uncompressedLength,
+            List<Checkpoint> checkpoints) {
+        this.compressedLength = compressedLength;
+        this.uncompressedLength = uncompressedLength;
+        this.checkpoints = new ArrayList<Checkpoint>(checkpoints);
+    }
+
+    /**
+     * @return  Size of the gzip file this index was built from, in bytes.
+     */
+    public long getCompressedLength() {
+        return compressedLength;
+    }
+
+    /**
+     * @return  Modification time of the gzip file this index was built from,
+     *          or 0 if it isn't known.
+     */
+    public long getModificationTime() {
+        return modificationTime;
+    }
+
+    /**
+     * @param modificationTime  Modification time of the gzip file this index
+     *                          was built from.
+     */
+    public void setModificationTime(long modificationTime) {
+        this.modificationTime = modificationTime;
+    }
+
+    /**
+     * @return  Size of the decompressed contents of the gzip file, in bytes.
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * @return  All checkpoints in this index, in file order.
+     */
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Write this index to a stream. The stream is not closed.
+     *
+     * @param stream  Where to write the index.
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(compressedLength);
+        out.writeLong(modificationTime);
+        out.writeLong(uncompressedLength);
+        out.writeInt(checkpoints.size());
+
+        for (Checkpoint checkpoint : checkpoints) {
+            out.writeLong(checkpoint.bitOffset);
+            out.writeLong(checkpoint.uncompressedOffset);
+            out.writeLong(checkpoint.lineOffset);
+            out.writeLong(checkpoint.lineNumber);
+            out.writeLong(checkpoint.memberEnd);
+            out.writeInt(checkpoint.window.length);
+            out.write(checkpoint.window);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Read an index previously written with <code>write</code>. The stream is
+     * not closed.
+     *
+     * @param stream  Where to read the index from.
+     * @return  The index.
+     */
+    public static GzipIndex read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a Legion gzip index.");
+        }
+
+        int version = in.readInt();
+
+        // Version 1 didn't record the modification time.
+        if (version != VERSION && version != 1) {
+            throw new IOException("Unsupported gzip index version " + version);
+        }
+
+        long compressedLength = in.readLong();
+        long modificationTime = version == 1 ? 0 : in.readLong();
+        long uncompressedLength = in.readLong();
+        int count = in.readInt();
+        ArrayList<Checkpoint> checkpoints = new ArrayList<Checkpoint>(count);
+
+        for (int i = 0; i < count; i++) {
+            long bitOffset = in.readLong();
+            long uncompressedOffset = in.readLong();
+            long lineOffset = in.readLong();
+            long lineNumber = in.readLong();
+            long memberEnd = in.readLong();
+            byte[] window = new byte[in.readInt()];
+            in.readFully(window);
+
+            checkpoints.add(new Checkpoint(bitOffset, uncompressedOffset,
+                    lineOffset, lineNumber, memberEnd, window));
+        }
+
+        GzipIndex index = new GzipIndex(compressedLength, uncompressedLength,
+                checkpoints);
+        index.setModificationTime(modificationTime);
+        return index;
+    }
+
+    /**
+     * A single point in a gzip file where decompression can be resumed.
+     */
+    public static class Checkpoint {
+        private long bitOffset;
+        private long uncompressedOffset;
+        private long lineOffset;
+        private long lineNumber;
+        private long memberEnd;
+        private byte[] window;
+
+        /**
+         * @param bitOffset  Offset, in bits, of the deflate block header in
+         *                   the compressed file.
+         * @param uncompressedOffset  Offset of the block's first byte in the
+         *                            uncompressed data.
+         * @param lineOffset  Uncompressed offset of the first line that starts
+         *                    at or after this checkpoint.
+         * @param lineNumber  Number of lines that come before
+         *                    <code>lineOffset</code>.
+         * @param memberEnd  Compressed offset just past the end of the gzip
+         *                   member containing this checkpoint.
+         * @param window  Up to 32KB of uncompressed data preceding this
+         *                checkpoint, deflated to save space.
+         */
+        public Checkpoint(long bitOffset, long uncompressedOffset,
+                long lineOffset, long lineNumber, long memberEnd,
+                byte[] window) {
+            this.bitOffset = bitOffset;
+            this.uncompressedOffset = uncompressedOffset;
+            this.lineOffset = lineOffset;
+            this.lineNumber = lineNumber;
+            this.memberEnd = memberEnd;
+            this.window = window;
+        }
+
+        public long getBitOffset() {
+            return bitOffset;
+        }
+
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        public long getLineOffset() {
+            return lineOffset;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public long getMemberEnd() {
+            return memberEnd;
+        }
+
+        /**
+         * @return  The deflated dictionary window for this checkpoint.
+         */
+        public byte[] getWindow() {
+            return window;
+        }
+    }
+}
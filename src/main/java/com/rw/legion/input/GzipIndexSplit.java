@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionObjective;
+import com.rw.legion.ObjectiveDeserializer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A <code>FileSplit</code> covering part of a gzip file, built from the
+ * file's <code>GzipIndex</code>. The start and length of the split are in
+ * compressed bytes (for locality and progress), while the lines it covers are
+ * given as uncompressed offsets that always fall on line boundaries, so no
+ * line is ever read by two splits.
+ */
+
+public class GzipIndexSplit extends FileSplit {
+    private static final Log LOG = LogFactory.getLog(GzipIndexSplit.class);
+
+    private long bitOffset;
+    private long uncompressedOffset;
+    private long lineStart;
+    private long lineEnd;
+    private long lineNumber;
+    private long memberEnd;
+    private byte[] window;
+
+    /**
+     * Constructor required for Hadoop de-serialization.
+     */
+    public GzipIndexSplit() {
+    }
+
+    public GzipIndexSplit(Path file, long start, long length, String[] hosts,
+            GzipIndex.Checkpoint checkpoint, long lineEnd) {
+        super(file, start, length, hosts);
+        this.bitOffset = checkpoint.getBitOffset();
+        this.uncompressedOffset = checkpoint.getUncompressedOffset();
+        this.lineStart = checkpoint.getLineOffset();
+        this.lineNumber = checkpoint.getLineNumber();
+        this.memberEnd = checkpoint.getMemberEnd();
+        this.window = checkpoint.getWindow();
+        this.lineEnd = lineEnd;
+    }
+
+    /**
+     * @return  Uncompressed offset of the first line in this split.
+     */
+    public long getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return  Uncompressed offset just past the last line in this split.
+     */
+    public long getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return  Number of lines in the file before this split.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Open a decompressed stream positioned at the first line of this split.
+     *
+     * @param fs  File system containing the split's file.
+     * @return  A stream of uncompressed data, starting at
+     *          <code>getLineStart()</code>.
+     */
+    public InputStream open(final FileSystem fs) throws IOException {
+        final Path file = getPath();
+        long fileLength = fs.getFileStatus(file).getLen();
+
+        GzipIndex.Checkpoint checkpoint = new GzipIndex.Checkpoint(bitOffset,
+                uncompressedOffset, lineStart, lineNumber, memberEnd, window);
+
+        InputStream in = new CheckpointInputStream(
+                new CheckpointInputStream.Opener() {
+                    public InputStream open(long offset) throws IOException {
+                        FSDataInputStream fileIn = fs.open(file);
+                        fileIn.seek(offset);
+                        return fileIn;
+                    }
+                }, fileLength, checkpoint);
+
+        long toSkip = lineStart - uncompressedOffset;
+
+        while (toSkip > 0) {
+            long skipped = in.skip(toSkip);
+
+            if (skipped <= 0) {
+                in.close();
+                throw new IOException("Gzip index doesn't match " + file);
+            }
+
+            toSkip -= skipped;
+        }
+
+        return in;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        out.writeLong(bitOffset);
+        out.writeLong(uncompressedOffset);
+        out.writeLong(lineStart);
+        out.writeLong(lineEnd);
+        out.writeLong(lineNumber);
+        out.writeLong(memberEnd);
+        out.writeInt(window.length);
+        out.write(window);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        super.readFields(in);
+        bitOffset = in.readLong();
+        uncompressedOffset = in.readLong();
+        lineStart = in.readLong();
+        lineEnd = in.readLong();
+        lineNumber = in.readLong();
+        memberEnd = in.readLong();
+        window = new byte[in.readInt()];
+        in.readFully(window);
+    }
+
+    /**
+     * Replace whole-file splits of large gzip files that have a sidecar
+     * <code>GzipIndex</code> with several <code>GzipIndexSplit</code>s. Other
+     * splits are returned unchanged.
+     *
+     * @param job  The job the splits are for.
+     * @param splits  Splits generated by <code>FileInputFormat</code>.
+     * @return  The splits to use.
+     */
+    public static List<InputSplit> expand(JobContext job,
+            List<InputSplit> splits) throws IOException {
+        Configuration conf = job.getConfiguration();
+        LegionObjective objective =
+                ObjectiveDeserializer.deserialize(conf.get("legion_objective"));
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        long maxSplitSize = FileInputFormat.getMaxSplitSize(job);
+        ArrayList<InputSplit> result = new ArrayList<InputSplit>();
+
+        for (InputSplit split : splits) {
+            if (! (split instanceof FileSplit)
+                    || ((FileSplit) split).getStart() != 0) {
+                result.add(split);
+                continue;
+            }
+
+            FileSplit fileSplit = (FileSplit) split;
+            Path file = fileSplit.getPath();
+            CompressionCodec codec;
+
+            if (objective.getCodecOverride() != null) {
+                codec = codecs.getCodecByClassName(
+                        objective.getCodecOverride());
+            } else {
+                codec = codecs.getCodec(file);
+            }
+
+            // Only gzip files are worth a trip to the file system.
+            if (! (codec instanceof GzipCodec)) {
+                result.add(split);
+                continue;
+            }
+
+            FileSystem fs = file.getFileSystem(conf);
+            FileStatus status = fs.getFileStatus(file);
+            long target = Math.min(maxSplitSize, status.getBlockSize());
+            Path indexPath = GzipIndexer.indexPath(file);
+
+            if (status.getLen() <= target || ! fs.exists(indexPath)) {
+                result.add(split);
+                continue;
+            }
+
+            GzipIndex index;
+            FSDataInputStream indexIn = fs.open(indexPath);
+
+            try {
+                index = GzipIndex.read(indexIn);
+            } finally {
+                indexIn.close();
+            }
+
+            if (index.getCompressedLength() != status.getLen()
+                    || index.getModificationTime()
+                            != status.getModificationTime()) {
+                LOG.warn("Ignoring stale gzip index for " + file);
+                result.add(split);
+                continue;
+            }
+
+            result.addAll(split(file, status.getLen(), target,
+                    fileSplit.getLocations(), index));
+        }
+
+        return result;
+    }
+
+    /**
+     * Group a file's checkpoints into splits of roughly <code>target</code>
+     * compressed bytes each.
+     */
+    private static List<GzipIndexSplit> split(Path file, long fileLength,
+            long target, String[] hosts, GzipIndex index) {
+        List<GzipIndex.Checkpoint> checkpoints = index.getCheckpoints();
+        ArrayList<GzipIndexSplit> result = new ArrayList<GzipIndexSplit>();
+        int first = 0;
+
+        for (int i = 1; i <= checkpoints.size(); i++) {
+            GzipIndex.Checkpoint start = checkpoints.get(first);
+            long lineEnd;
+            long compressedEnd;
+
+            if (i < checkpoints.size()) {
+                GzipIndex.Checkpoint next = checkpoints.get(i);
+                long compressedStart = start.getBitOffset() >>> 3;
+
+                /*
+                 * Keep adding checkpoints until the split is big enough. A
+                 * single long line can cover several checkpoints, in which case
+                 * they all resolve to the same line boundary and can't be used
+                 * to end a split.
+                 */
+                if ((next.getBitOffset() >>> 3) - compressedStart < target
+                        || next.getLineOffset() <= start.getLineOffset()) {
+                    continue;
+                }
+
+                lineEnd = next.getLineOffset();
+                compressedEnd = next.getBitOffset() >>> 3;
+            } else {
+                lineEnd = index.getUncompressedLength();
+                compressedEnd = fileLength;
+            }
+
+            if (lineEnd > start.getLineOffset()) {
+                long compressedStart = start.getBitOffset() >>> 3;
+
+                result.add(new GzipIndexSplit(file, compressedStart,
+                        compressedEnd - compressedStart, hosts, start,
+                        lineEnd));
+            }
+
+            first = i;
+        }
+
+        return result;
+    }
+}
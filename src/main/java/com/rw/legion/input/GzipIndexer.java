@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+
+/**
+ * Stand-alone tool that scans gzip files and writes a sidecar
+ * <code>GzipIndex</code> for each one. When an index is present,
+ * <code>JsonInputFormat</code> and <code>CsvInputFormat</code> will split the
+ * gzip file into several line-aligned splits instead of reading it with a
+ * single mapper.
+ *
+ * The sidecar for <code>/in/dump.gz</code> is <code>/in/.dump.gz.lidx</code>.
+ * The leading dot keeps Hadoop from treating it as an input file.
+ *
+ * Usage:
+ * <pre>
+ * hadoop jar legion.jar com.rw.legion.input.GzipIndexer [-span bytes] file...
+ * </pre>
+ */
+
+public class GzipIndexer {
+    /**
+     * Default number of uncompressed bytes between checkpoints.
+     */
+    public static final long DEFAULT_SPAN = 64L * 1024 * 1024;
+
+    /**
+     * Main method.
+     *
+     * @param args  Optionally <code>-span</code> followed by the number of
+     *              uncompressed bytes between checkpoints, then the gzip
+     *              files to index.
+     */
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        long span = DEFAULT_SPAN;
+        int i = 0;
+
+        if (args.length > 1 && args[0].equals("-span")) {
+            span = Long.parseLong(args[1]);
+            i = 2;
+        }
+
+        for (; i < args.length; i++) {
+            Path file = new Path(args[i]);
+            GzipIndex index = index(file, conf, span);
+
+            System.out.println(file + ": " +
+                    index.getCheckpoints().size() + " checkpoints");
+        }
+    }
+
+    /**
+     * Scan a gzip file and write its sidecar index.
+     *
+     * @param file  The gzip file to index.
+     * @param conf  Hadoop configuration used to access the file system.
+     * @param span  Minimum number of uncompressed bytes between checkpoints.
+     * @return  The index that was written.
+     */
+    public static GzipIndex index(Path file, Configuration conf, long span)
+            throws IOException {
+        FileSystem fs = file.getFileSystem(conf);
+        GzipIndex index;
+
+        // Taken first, so changes made while scanning make the index stale.
+        long modificationTime = fs.getFileStatus(file).getModificationTime();
+        FSDataInputStream in = fs.open(file);
+
+        try {
+            index = new DeflateScanner(span).scan(in);
+        } finally {
+            in.close();
+        }
+
+        index.setModificationTime(modificationTime);
+
+        FSDataOutputStream out = fs.create(indexPath(file), true);
+
+        try {
+            index.write(out);
+        } finally {
+            out.close();
+        }
+
+        return index;
+    }
+
+    /**
+     * @param file  A gzip file.
+     * @return  Location of the sidecar index for the file.
+     */
+    public static Path indexPath(Path file) {
+        return new Path(file.getParent(), "." + file.getName() + ".lidx");
+    }
+}
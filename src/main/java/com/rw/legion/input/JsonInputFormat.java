@@ -27,6 +27,7 @@ import com.rw.legion.ObjectiveDeserializer;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -38,6 +39,9 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
+import java.io.IOException;
+import java.util.List;
+
 /** 
  * An <code>InputFormat</code> for <code>JsonRecordReader</code>. Essentially,
  * the default Hadoop <code>TextInputFormat</code> modified to use the
@@ -65,6 +69,25 @@ public class JsonInputFormat
         return new JsonRecordReader(recordDelimiterBytes);
     }
 
+    /**
+     * Large gzip files that have been indexed with <code>GzipIndexer</code>
+     * are broken into several splits at the index's checkpoints.
+     */
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        return GzipIndexSplit.expand(job, super.getSplits(job));
+    }
+
+    /**
+     * When running incrementally, only the files chosen by
+     * <code>DefaultJob</code> are read.
+     */
+    @Override
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        List<FileStatus> files = FileManifest.listInput(job);
+        return files != null ? files : super.listStatus(job);
+    }
+
     @Override
     protected boolean isSplitable(JobContext context, Path file) {
             CompressionCodec codec;
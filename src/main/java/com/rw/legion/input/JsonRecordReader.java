@@ -20,24 +20,19 @@
 
 package com.rw.legion.input;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.stream.JsonReader;
 import com.rw.legion.LegionRecord;
 
-import java.io.StringReader;
-import java.util.Map;
-
 /**
  * Produces <code>NullWritable</code> keys and <code>LegionRecord</code> values.
  * There is one <code>LegionRecord</code> per line in a file, each of which
  * must contain a valid JSON object. Within the LegionRecord, JSON nodes are
  * represented using a simplified JSON path with dot notation (see 
  * http://goessner.net/articles/JsonPath/). Values are data stored at that path.
+ *
+ * @see JsonRecordParser
  */
 public class JsonRecordReader extends LegionRecordReader {
-    private LegionRecord record;
+    private JsonRecordParser parser = new JsonRecordParser();
     
     public JsonRecordReader(byte[] recordDelimiterBytes) {
         super(recordDelimiterBytes);
@@ -52,48 +47,12 @@ public class JsonRecordReader extends LegionRecordReader {
      *         at that path.
      */
     protected LegionRecord makeRecord() {
-        String lineString = currentLine.toString();
-        
-        record = new LegionRecord();
-        record.setField("file_name", fileName);
-        record.setField("file_line", Long.toString(currentLineNumber));
-        
-        try {
-            JsonReader jsonReader =
-                    new JsonReader(new StringReader(lineString));
-            jsonReader.setLenient(true);
-            JsonParser jsonParser = new JsonParser();
-            JsonElement mainElement = jsonParser.parse(jsonReader);
-            traverseJson("$", mainElement);
-        } catch(JsonSyntaxException e) {
-            return null;
-        }
-        
-        return record;
+        return parser.parse(currentLine.toString(), fileName,
+                currentLineNumber);
     }
     
-    /**
-     * Recursively traverses all levels of a JSON object and adds their contents
-     * to the <code>LegionRecord</code>.
-     * 
-     * @param location  The JSON path leading up to the current depth level.
-     * @param element  An element that appears at the current depth level.
-     */
-    private void traverseJson(String location, JsonElement element) {
-        if (element.isJsonNull()) {
-            record.setField(location, "");
-        } else if (element.isJsonPrimitive()) {
-            record.setField(location, element.getAsString());
-        } else if (element.isJsonObject()) {
-            for (Map.Entry<String, JsonElement> entry :
-                    element.getAsJsonObject().entrySet()) {
-                traverseJson(location + "." + entry.getKey(), entry.getValue());
-            }
-        } else if (element.isJsonArray()) {
-            for (int i = 0; i < element.getAsJsonArray().size(); i++ ) {
-                traverseJson(location + "[" + new Integer(i).toString() + "]",
-                    element.getAsJsonArray().get(i));
-            }
-        }
+    @Override
+    protected boolean lastLineMalformed() {
+        return parser.lastLineMalformed();
     }
 }
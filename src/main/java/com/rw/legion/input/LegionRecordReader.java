@@ -20,9 +20,12 @@
 
 package com.rw.legion.input;
 
+import com.rw.legion.LegionCounter;
 import com.rw.legion.LegionObjective;
 import com.rw.legion.LegionRecord;
 import com.rw.legion.ObjectiveDeserializer;
+import com.rw.legion.Timings;
+import com.rw.legion.jfr.LegionEvents;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -35,12 +38,15 @@ import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.*;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Abstract <code>RecordReader</code> that produces <code>NullWritable</code>
@@ -49,7 +55,11 @@ import java.io.IOException;
  * a line from the file using the appropriate format (e.g., CSV, JSON) and
  * returns a <code>LegionRecord</code>.
  * 
- * Produces one <code>LegionRecord</code> per line in a file.
+ * Produces one <code>LegionRecord</code> per line in a file. Broken files,
+ * lines that are too long and lines that can't be parsed are counted in the
+ * <code>LegionCounter</code> counters, and reported as flight recorder
+ * events (see <code>LegionEvents</code>) along with slow lines and each file
+ * read.
  * 
  * This is simply a modification of the default Hadoop
  * <code>LineRecordReader</code>.
@@ -76,9 +86,17 @@ public abstract class LegionRecordReader
     
     protected String fileName;
     private boolean fileBroken;
+    private boolean lineAligned;
     protected Text currentLine;
     protected long currentLineNumber;
     private LegionObjective legionObjective;
+    private LinePrefilter prefilter;
+    private Counter brokenFiles;
+    private Counter linesTooLong;
+    private Counter parseFailures;
+    private Timings timings;
+    private Object fileEvent;
+    private long recordCount;
 
     public LegionRecordReader() {
     }
@@ -105,23 +123,38 @@ public abstract class LegionRecordReader
             fileBroken = true;
         }
         
+        brokenFiles = context.getCounter(LegionCounter.BROKEN_FILES);
+        linesTooLong = context.getCounter(LegionCounter.LINES_TOO_LONG);
+        parseFailures = context.getCounter(LegionCounter.PARSE_FAILURES);
+        
         // Load the Legion Objective.
         Configuration job = context.getConfiguration();
         this.maxLineLength = job.getInt(MAX_LINE_LENGTH, Integer.MAX_VALUE);
         legionObjective =
                 ObjectiveDeserializer.deserialize(job.get("legion_objective"));
+        prefilter = LinePrefilter.forObjective(legionObjective);
+        
+        if (job.getBoolean(Timings.ENABLED, legionObjective.isTimed())) {
+            timings = Timings.forCurrentThread();
+        }
         
         start = split.getStart();
         end = start + split.getLength();
         final Path file = split.getPath();
 
-        // Open the file and seek to the start of the split
-        final FileSystem fs = file.getFileSystem(job);
-        fileIn = fs.open(file);
-        
         // Grab the file name to include with the data.
         fileName = file.toString();
         
+        final FileSystem fs = file.getFileSystem(job);
+        
+        if (split instanceof GzipIndexSplit) {
+            initializeIndexed((GzipIndexSplit) split, fs, job);
+            return;
+        }
+        
+        // Open the file and seek to the start of the split
+        fileIn = fs.open(file);
+        
         // Does the Legion Objective specify an input codec to use?
         if (legionObjective.getCodecOverride() != null) {
             isCompressedInput = true;
@@ -173,6 +206,44 @@ public abstract class LegionRecordReader
         }
         
         this.pos = start;
+        fileEvent = LegionEvents.fileOpened(fileName, start);
+    }
+    
+    /**
+     * Set up for reading a <code>GzipIndexSplit</code>. Positions are offsets
+     * in the uncompressed data, and the split already starts and ends on line
+     * boundaries, so there's no need to skip a partial first line or read
+     * past the end.
+     */
+    private void initializeIndexed(GzipIndexSplit split, FileSystem fs,
+            Configuration job) throws IOException {
+        lineAligned = true;
+        isCompressedInput = true;
+        filePosition = null;
+        start = split.getLineStart();
+        end = split.getLineEnd();
+        pos = start;
+        
+        if (split.getLineNumber() > 0 && needsFirstLine()) {
+            InputStream head = new GZIPInputStream(fs.open(split.getPath()));
+            SplitLineReader headReader = new SplitLineReader(head, job,
+                    this.recordDelimiterBytes);
+            
+            try {
+                headReader.readLine(currentLine, maxLineLength,
+                        Integer.MAX_VALUE);
+            } finally {
+                headReader.close();
+            }
+            
+            currentLineNumber = 1;
+            makeRecord();
+        }
+        
+        currentLineNumber = split.getLineNumber();
+        in = new SplitLineReader(split.open(fs), job,
+                this.recordDelimiterBytes);
+        fileEvent = LegionEvents.fileOpened(fileName, start);
     }
     
 
@@ -235,11 +306,21 @@ public abstract class LegionRecordReader
         
         // We always read one extra line, which lies outside the upper
         // split limit i.e. (end - 1)
-        while (getFilePosition() <= end ||
+        while ((lineAligned ? getFilePosition() < end
+                    : getFilePosition() <= end) ||
                 in.needAdditionalRecordAfterSplit()) {
             currentLineNumber ++;
             
+            /*
+             * Lines the prefilter skips, and lines that don't parse, leave no
+             * record, so the last line a split reads can't return a stale one.
+             */
+            value = null;
+            
             try {
+                long readStart = timings == null ? 0
+                        : timings.start(Timings.Stage.READ);
+                
                 if (pos == 0) {
                     newSize = skipUtfByteOrderMark();
                 } else {
@@ -247,22 +328,62 @@ public abstract class LegionRecordReader
                             maxBytesToConsume(pos));
                     pos += newSize;
                 }
+                
+                if (timings != null) {
+                    timings.stop(Timings.Stage.READ, readStart);
+                }
 
+                /*
+                 * Don't bother parsing lines that no output table wants. The
+                 * first line is always parsed, since it may be a CSV header.
+                 */
+                if (prefilter != null && newSize > 0 && currentLineNumber > 1
+                        && ! prefilter.mightMatch(currentLine.getBytes(),
+                                currentLine.getLength())) {
+                    continue;
+                }
+                
                 if ((newSize == 0) || (newSize < maxLineLength)) {
+                    long parseStart = timings == null ? 0
+                            : timings.start(Timings.Stage.PARSE);
+                    Object recordEvent = LegionEvents.recordStarted();
                     value = makeRecord();
                     
+                    if (timings != null) {
+                        timings.stop(Timings.Stage.PARSE, parseStart);
+                    }
+                    
+                    if (recordEvent != null) {
+                        LegionEvents.recordParsed(recordEvent, fileName,
+                                currentLineNumber, currentLine.getLength(),
+                                value == null ? 0 : value.size());
+                    }
+                    
+                    // At the end of the input there's no line to count.
+                    if (newSize > 0 && lastLineMalformed()) {
+                        count(parseFailures);
+                    }
+                    
                     if (value != null) {
+                        if (newSize > 0) {
+                            recordCount++;
+                        }
+                        
                         break;
                     }
+                } else {
+                    count(linesTooLong);
                 }
     
                 // Line too long, or didn't get turned into a record. Try again.
             } catch(IOException e) {
                 fileBroken = true;
+                count(brokenFiles);
+                LegionEvents.fileBroken(fileName, currentLineNumber, e);
             }
         }
         
-        if (newSize == 0 || fileBroken) {
+        if (newSize == 0 || value == null || fileBroken) {
             value = null;
             return false;
         } else {
@@ -295,6 +416,9 @@ public abstract class LegionRecordReader
     }
     
     public synchronized void close() throws IOException {
+        LegionEvents.fileClosed(fileEvent, pos - start, recordCount);
+        fileEvent = null;
+        
         try {
             if (in != null) {
                 in.close();
@@ -306,5 +430,33 @@ public abstract class LegionRecordReader
         }
     }
     
+    /**
+     * Whether <code>makeRecord</code> needs to see the first line of a file
+     * (e.g., a CSV header) even when reading a split that starts later in the
+     * file. If so, the first line is passed to <code>makeRecord</code> before
+     * the split's own lines.
+     */
+    protected boolean needsFirstLine() {
+        return false;
+    }
+    
+    /**
+     * Whether the line most recently passed to <code>makeRecord</code> was
+     * malformed, to be counted as a parse failure.
+     */
+    protected boolean lastLineMalformed() {
+        return false;
+    }
+    
+    /**
+     * Increment a counter, which may be missing if the context isn't backed
+     * by a real task (e.g., a bare <code>TaskAttemptContextImpl</code>).
+     */
+    private static void count(Counter counter) {
+        if (counter != null) {
+            counter.increment(1);
+        }
+    }
+    
     protected abstract LegionRecord makeRecord();
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionObjective;
+import com.rw.legion.OutputTable;
+import com.rw.legion.WhereCondition;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rejects raw input lines that can't produce a record any output table
+ * wants, before they're parsed. This works when every table has a "where"
+ * condition requiring a key to equal one of a set of values: unless a line
+ * contains at least one of those values somewhere in its bytes, no table can
+ * accept it.
+ *
+ * The check is only ever used to skip lines, never to accept them, and lines
+ * containing a backslash (which may hide a value behind a JSON escape
+ * sequence) are always passed through to be parsed.
+ */
+
+class LinePrefilter {
+    private byte[][] literals;
+
+    private LinePrefilter(List<byte[]> literals) {
+        this.literals = literals.toArray(new byte[literals.size()][]);
+    }
+
+    /**
+     * Build a prefilter for an objective.
+     *
+     * @param objective  The objective being run.
+     * @return  A prefilter, or null if the objective's tables don't allow
+     *          lines to be rejected before parsing.
+     */
+    static LinePrefilter forObjective(LegionObjective objective) {
+        ArrayList<byte[]> literals = new ArrayList<byte[]>();
+
+        for (OutputTable outputTable : objective.getOutputTables()) {
+            List<String> tableLiterals = null;
+
+            if (outputTable.getWhere() != null) {
+                for (WhereCondition condition : outputTable.getWhere()) {
+                    List<String> values = condition.getLiterals();
+
+                    // These keys are added by the record reader, not read.
+                    if (values == null
+                            || condition.getKey().equals("file_name")
+                            || condition.getKey().equals("file_line")) {
+                        continue;
+                    }
+
+                    // Use the most selective condition for this table.
+                    if (tableLiterals == null
+                            || values.size() < tableLiterals.size()) {
+                        tableLiterals = values;
+                    }
+                }
+            }
+
+            if (tableLiterals == null) {
+                return null;
+            }
+
+            for (String literal : tableLiterals) {
+                if (literal.isEmpty()) {
+                    return null;
+                }
+
+                literals.add(literal.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        return literals.isEmpty() ? null : new LinePrefilter(literals);
+    }
+
+    /**
+     * @param line  Buffer holding a raw line of input.
+     * @param length  Length of the line in the buffer.
+     * @return  False only if no output table can accept a record parsed from
+     *          the line.
+     */
+    boolean mightMatch(byte[] line, int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] == '\\') {
+                return true;
+            }
+        }
+
+        for (byte[] literal : literals) {
+            if (contains(line, length, literal)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean contains(byte[] line, int length, byte[] literal) {
+        byte first = literal[0];
+        int last = length - literal.length;
+
+        for (int i = 0; i <= last; i++) {
+            if (line[i] != first) {
+                continue;
+            }
+
+            int j = 1;
+
+            while (j < literal.length && line[i + j] == literal[j]) {
+                j++;
+            }
+
+            if (j == literal.length) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
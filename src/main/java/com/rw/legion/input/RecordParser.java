@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionRecord;
+
+/**
+ * Turns one line of input into a <code>LegionRecord</code>. Parsers don't
+ * depend on where lines come from, so the same parsing is used by the Hadoop
+ * record readers and by anything reading plain streams.
+ *
+ * Parsers may keep state between lines (e.g., a CSV header), so a parser
+ * should only be used for one file or stream at a time.
+ */
+
+public interface RecordParser {
+    /**
+     * Parse a line into a <code>LegionRecord</code>.
+     *
+     * @param line  The line to parse, without its line terminator.
+     * @param fileName  Name of the file or stream the line came from.
+     * @param lineNumber  Line number of the line, starting from 1.
+     * @return  A record, or null if the line doesn't produce one (e.g.,
+     *          because it is a header or couldn't be parsed).
+     */
+    LegionRecord parse(String line, String fileName, long lineNumber);
+
+    /**
+     * Whether the parser needs to see the first line of a file (e.g., a CSV
+     * header) before it can parse lines from later in the file.
+     */
+    default boolean needsFirstLine() {
+        return false;
+    }
+
+    /**
+     * @return  Whether the line most recently passed to <code>parse</code>
+     *          was malformed (e.g., invalid JSON).
+     */
+    default boolean lastLineMalformed() {
+        return false;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionRecord;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A <code>Spliterator</code> over the <code>LegionRecord</code>s in local
+ * files, for using Legion's parsing without Hadoop. It splits first between
+ * files and then, for uncompressed files, between byte ranges of a file, so
+ * parallel streams can spread even a single large file across cores.
+ *
+ * Byte ranges are handled the same way as Hadoop's file splits: a range skips
+ * the partial line it starts in and reads through the end of the line it
+ * ends in. Line numbers count from the start of a range, so they are only
+ * line numbers within the file for the first range. Files ending in ".gz" are
+ * decompressed and never split.
+ *
+ * Files are closed once they've been read. A stream that stops early (e.g.,
+ * with <code>findFirst()</code> or <code>limit()</code>) should be closed, to
+ * close the files it was reading.
+ */
+
+public class RecordSpliterator implements Spliterator<LegionRecord> {
+    public static final long DEFAULT_MIN_SPLIT_SIZE = 8 * 1024 * 1024;
+
+    private ArrayList<Range> ranges;
+    private Supplier<RecordParser> parsers;
+    private long minSplitSize = DEFAULT_MIN_SPLIT_SIZE;
+    private int maxLineLength = StreamRecordReader.DEFAULT_MAX_LINE_LENGTH;
+    private StreamRecordReader reader;
+
+    // Every spliterator split from the same stream, to close on the way out.
+    private List<RecordSpliterator> opened;
+
+    /**
+     * A byte range of a file.
+     */
+    private static class Range {
+        File file;
+        long start;
+        long end;
+
+        Range(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean isCompressed() {
+            return file.getName().endsWith(".gz");
+        }
+    }
+
+    /**
+     * @param files  Files to read.
+     * @param parsers  Creates a new parser for each range read (parsers can
+     *                 keep state, so they can't be shared).
+     */
+    public RecordSpliterator(List<File> files,
+            Supplier<RecordParser> parsers) {
+        this.ranges = new ArrayList<Range>();
+        this.parsers = parsers;
+
+        for (File file : files) {
+            ranges.add(new Range(file, 0, file.length()));
+        }
+    }
+
+    /**
+     * @param file  File to read.
+     * @param start  Offset in the file where the range starts.
+     * @param end  Offset in the file where the range ends.
+     * @param parsers  Creates a new parser for each range read.
+     */
+    public RecordSpliterator(File file, long start, long end,
+            Supplier<RecordParser> parsers) {
+        this.ranges = new ArrayList<Range>();
+        this.parsers = parsers;
+        ranges.add(new Range(file, start, end));
+    }
+
+    private RecordSpliterator(RecordSpliterator parent,
+            ArrayList<Range> ranges) {
+        this.ranges = ranges;
+        this.parsers = parent.parsers;
+        this.minSplitSize = parent.minSplitSize;
+        this.maxLineLength = parent.maxLineLength;
+        this.opened = parent.opened;
+
+        if (opened != null) {
+            synchronized (opened) {
+                opened.add(this);
+            }
+        }
+    }
+
+    /**
+     * Create a stream of the records in some files.
+     *
+     * @param files  Files to read.
+     * @param inputFormat  Canonical class name of the Legion input format for
+     *                     the files, as found in an objective.
+     * @param parallel  Whether the stream should be parallel.
+     * @return  A stream of records, which closes any file it's reading when
+     *          it's closed.
+     */
+    public static Stream<LegionRecord> stream(List<File> files,
+            final String inputFormat, boolean parallel) {
+        // Fail now, rather than when the stream is consumed.
+        StreamRecordReader.parserFor(inputFormat);
+
+        final ArrayList<RecordSpliterator> spliterators =
+                new ArrayList<RecordSpliterator>();
+        RecordSpliterator spliterator = new RecordSpliterator(files,
+                new Supplier<RecordParser>() {
+                    public RecordParser get() {
+                        return StreamRecordReader.parserFor(inputFormat);
+                    }
+                });
+        spliterator.opened = spliterators;
+        spliterators.add(spliterator);
+
+        return StreamSupport.stream(spliterator, parallel).onClose(
+                new Runnable() {
+                    public void run() {
+                        synchronized (spliterators) {
+                            for (RecordSpliterator split : spliterators) {
+                                split.closeReader();
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @param minSplitSize  Byte ranges smaller than twice this size aren't
+     *                      split further.
+     */
+    public void setMinSplitSize(long minSplitSize) {
+        this.minSplitSize = minSplitSize;
+    }
+
+    /**
+     * @param maxLineLength  Lines longer than this many bytes are skipped.
+     */
+    public void setMaxLineLength(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    public boolean tryAdvance(Consumer<? super LegionRecord> action) {
+        try {
+            while (reader != null || ! ranges.isEmpty()) {
+                if (reader == null) {
+                    reader = open(ranges.remove(0));
+                }
+
+                LegionRecord record = reader.next();
+
+                if (record != null) {
+                    action.accept(record);
+                    return true;
+                }
+
+                reader.close();
+                reader = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Close the file being read, if any.
+     */
+    void closeReader() {
+        StreamRecordReader open = reader;
+        reader = null;
+
+        if (open != null) {
+            try {
+                open.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Split off the first half of the remaining files or, with a single file
+     * left, the first half of its byte range. Nothing is split once reading
+     * has started.
+     */
+    public Spliterator<LegionRecord> trySplit() {
+        if (reader != null || ranges.isEmpty()) {
+            return null;
+        }
+
+        if (ranges.size() > 1) {
+            long half = estimateSize() / 2;
+            long size = 0;
+            int i = 0;
+
+            // Always leave at least one range in each half.
+            while (i < ranges.size() - 1 && (i == 0 || size < half)) {
+                size += ranges.get(i).end - ranges.get(i).start;
+                i++;
+            }
+
+            ArrayList<Range> prefix = new ArrayList<Range>(ranges.subList(0, i));
+            ranges = new ArrayList<Range>(ranges.subList(i, ranges.size()));
+            return new RecordSpliterator(this, prefix);
+        }
+
+        Range range = ranges.get(0);
+
+        if (range.isCompressed() || range.end - range.start < 2 * minSplitSize) {
+            return null;
+        }
+
+        long middle = range.start + (range.end - range.start) / 2;
+        ArrayList<Range> prefix = new ArrayList<Range>();
+        prefix.add(new Range(range.file, range.start, middle));
+        range.start = middle;
+
+        return new RecordSpliterator(this, prefix);
+    }
+
+    /**
+     * @return  Number of bytes left to read, which is as close as we can get
+     *          to a number of records without reading them.
+     */
+    public long estimateSize() {
+        long size = 0;
+
+        for (Range range : ranges) {
+            size += range.end - range.start;
+        }
+
+        return size;
+    }
+
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Open a reader positioned at the first whole line of a range.
+     */
+    private StreamRecordReader open(Range range) throws IOException {
+        RecordParser parser = parsers.get();
+        String name = range.file.getPath();
+        InputStream in = new FileInputStream(range.file);
+
+        if (range.isCompressed()) {
+            return new StreamRecordReader(new GZIPInputStream(in, 65536),
+                    parser, name, maxLineLength);
+        }
+
+        if (range.start > 0 && parser.needsFirstLine()) {
+            parser.parse(readFirstLine(range.file), name, 1);
+        }
+
+        long toSkip = range.start;
+
+        while (toSkip > 0) {
+            long skipped = in.skip(toSkip);
+
+            if (skipped <= 0) {
+                in.close();
+                throw new IOException("Couldn't seek to " + range.start +
+                        " in " + name);
+            }
+
+            toSkip -= skipped;
+        }
+
+        StreamRecordReader reader =
+                new StreamRecordReader(in, parser, name, maxLineLength);
+
+        /*
+         * Like a Hadoop split, read every line that starts in the range. A
+         * range that doesn't start at the beginning of the file leaves its
+         * first line to the range before it.
+         */
+        reader.setLimit(range.end - range.start);
+
+        // As with an empty Hadoop split, an empty range has no lines at all.
+        if (range.end <= range.start) {
+            reader.setLimit(-1);
+        }
+
+        if (range.start > 0) {
+            reader.skipLine();
+
+            if (parser.needsFirstLine()) {
+                reader.setLineNumber(1);
+            }
+        }
+
+        return reader;
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8));
+
+        try {
+            String line = in.readLine();
+
+            if (line != null && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+
+            return line == null ? "" : line;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads <code>LegionRecord</code>s from any <code>InputStream</code>, one per
+ * line, using a <code>RecordParser</code>. Unlike the Hadoop record readers,
+ * this needs no splits or task context, which makes it suitable for reading
+ * from pipes.
+ *
+ * Memory use is bounded: lines longer than the maximum line length are
+ * skipped without being held in memory, like
+ * <code>LegionRecordReader</code> does.
+ */
+
+public class StreamRecordReader implements Closeable {
+    public static final int DEFAULT_MAX_LINE_LENGTH = 16 * 1024 * 1024;
+
+    private InputStream in;
+    private RecordParser parser;
+    private String name;
+    private int maxLineLength;
+
+    private byte[] buffer = new byte[65536];
+    private int bufferPos;
+    private int bufferLen;
+    private byte[] line = new byte[1024];
+    private int lineLength;
+    private boolean lineTooLong;
+    private boolean skipLineFeed;
+    private long position;
+    private long lineNumber;
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * @param in  The stream to read.
+     * @param parser  Parser for the stream's format.
+     * @param name  Name to record as the "file_name" of each record.
+     * @param maxLineLength  Lines longer than this many bytes are skipped.
+     */
+    public StreamRecordReader(InputStream in, RecordParser parser, String name,
+            int maxLineLength) {
+        this.in = in;
+        this.parser = parser;
+        this.name = name;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Get the parser for one of Legion's input formats.
+     *
+     * @param inputFormat  Canonical class name of a Legion input format, as
+     *                     found in an objective.
+     * @return  A new parser for the same format the input format reads.
+     */
+    public static RecordParser parserFor(String inputFormat) {
+        if (inputFormat.equals(CsvInputFormat.class.getName()) ||
+                inputFormat.equals(CombineCsvInputFormat.class.getName())) {
+            return new CsvRecordParser();
+        } else if (inputFormat.equals(JsonInputFormat.class.getName()) ||
+                inputFormat.equals(CombineJsonInputFormat.class.getName())) {
+            return new JsonRecordParser();
+        }
+
+        throw new IllegalArgumentException("No record parser for input " +
+                "format '" + inputFormat + "'");
+    }
+
+    /**
+     * Read the next record from the stream.
+     *
+     * @return  The next record, or null at the end of the stream.
+     */
+    public LegionRecord next() throws IOException {
+        while (true) {
+            consumeLineFeed();
+
+            if (position > limit || ! readLine()) {
+                return null;
+            }
+
+
+            lineNumber++;
+
+            if (lineTooLong) {
+                continue;
+            }
+
+            int offset = 0;
+
+            // Strip a UTF-8 byte order mark from the start of the stream.
+            if (lineNumber == 1 && lineLength >= 3 && line[0] == (byte) 0xEF
+                    && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+                offset = 3;
+            }
+
+            LegionRecord record = parser.parse(new String(line, offset,
+                    lineLength - offset, StandardCharsets.UTF_8), name,
+                    lineNumber);
+
+            if (record != null) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Read and discard a line, e.g. the partial line at the start of a byte
+     * range. The line isn't counted in line numbers.
+     *
+     * @return  False if the stream had no more lines.
+     */
+    public boolean skipLine() throws IOException {
+        boolean skipped = readLine();
+        consumeLineFeed();
+        return skipped;
+    }
+
+    /**
+     * Stop returning records once the stream position passes a limit. Lines
+     * that start at or before the limit are still read in full, as with
+     * Hadoop's <code>LineRecordReader</code>.
+     *
+     * @param limit  Position (in bytes consumed from the stream) after which
+     *               no new lines are started.
+     */
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @param lineNumber  Number of lines before the next one to be read.
+     */
+    public void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return  Number of bytes consumed from the stream so far.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * If the last line ended with a CR, consume the LF that may follow it, so
+     * that <code>position</code> is the start of the next line.
+     */
+    private void consumeLineFeed() throws IOException {
+        if (! skipLineFeed) {
+            return;
+        }
+
+        if (bufferPos == bufferLen) {
+            bufferLen = Math.max(0, in.read(buffer, 0, buffer.length));
+            bufferPos = 0;
+        }
+
+        if (bufferPos < bufferLen) {
+            skipLineFeed = false;
+
+            if (buffer[bufferPos] == '\n') {
+                bufferPos++;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Read the next line into <code>line</code>. Lines end with LF, CR or
+     * CR LF, as in Hadoop's <code>LineReader</code>.
+     *
+     * @return  False if the stream had no more lines.
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        lineTooLong = false;
+        boolean sawData = false;
+
+        while (true) {
+            if (bufferPos == bufferLen) {
+                bufferLen = in.read(buffer, 0, buffer.length);
+                bufferPos = 0;
+
+                if (bufferLen <= 0) {
+                    bufferLen = 0;
+                    return sawData;
+                }
+            }
+
+            byte b = buffer[bufferPos++];
+            position++;
+
+            if (skipLineFeed) {
+                skipLineFeed = false;
+
+                if (b == '\n') {
+                    continue;
+                }
+            }
+
+            if (b == '\n') {
+                return true;
+            } else if (b == '\r') {
+                skipLineFeed = true;
+                return true;
+            }
+
+            sawData = true;
+
+            if (lineTooLong) {
+                continue;
+            }
+
+            if (lineLength == maxLineLength) {
+                lineTooLong = true;
+                continue;
+            }
+
+            if (lineLength == line.length) {
+                byte[] bigger = new byte[(int) Math.min(maxLineLength,
+                        2L * line.length)];
+                System.arraycopy(line, 0, bigger, 0, lineLength);
+                line = bigger;
+            }
+
+            line[lineLength++] = b;
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
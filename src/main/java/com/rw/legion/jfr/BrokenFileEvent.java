@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A file that stopped being read because of an exception.
+ */
+@Name("com.rw.legion.BrokenFile")
+@Label("Broken File")
+@Category("Legion")
+@Description("A file that stopped being read because of an exception.")
+class BrokenFileEvent extends Event {
+    @Label("Path")
+    @Description("The file being read.")
+    String path;
+    
+    @Label("Line")
+    @Description("The line being read.")
+    long line;
+    
+    @Label("Cause")
+    @Description("The exception.")
+    String cause;
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Reading a file, or part of one, from opening it to closing it.
+ */
+@Name("com.rw.legion.FileRead")
+@Label("File Read")
+@Category("Legion")
+@Description("Reading a file, or part of one, from opening it to closing it.")
+@StackTrace(false)
+@Threshold("0 ms")
+class FileReadEvent extends Event {
+    @Label("Path")
+    @Description("The file read.")
+    String path;
+    
+    @Label("Start")
+    @Description("Offset of the part of the file read.")
+    long start;
+    
+    @Label("Bytes")
+    @Description("Bytes read, uncompressed.")
+    long bytes;
+    
+    @Label("Records")
+    @Description("Records read.")
+    long records;
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+/**
+ * Emits JDK Flight Recorder events for Legion's stages: reading each file,
+ * files that break, slow records, and the rows each batch of records produces
+ * for a table. Recordings of a task then show Legion's work alongside GC and
+ * I/O events.
+ *
+ * JFR is only available on JDK 8u262 or later, so the event classes are only
+ * touched once it's known to be there. Events are only created while a
+ * recording is running; otherwise every method here returns after reading a
+ * single flag. Methods that start an event return a handle (or null) to pass
+ * to the matching method that finishes it.
+ */
+
+public final class LegionEvents {
+    private static final boolean AVAILABLE = checkAvailable();
+    
+    // Kept up to date by a listener on the flight recorder.
+    static volatile boolean recording;
+    
+    private LegionEvents() {
+        
+    }
+    
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorderListener", false,
+                    LegionEvents.class.getClassLoader());
+            Recorder.listen();
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return  Whether a flight recording is running.
+     */
+    public static boolean isRecording() {
+        return AVAILABLE && recording;
+    }
+    
+    /**
+     * Start timing the reading of a file (or part of one).
+     * 
+     * @param path  The file.
+     * @param start  Offset of the part being read.
+     * @return  A handle for <code>fileClosed</code>, or null.
+     */
+    public static Object fileOpened(String path, long start) {
+        return isRecording() ? Recorder.fileOpened(path, start) : null;
+    }
+    
+    /**
+     * Finish timing the reading of a file.
+     * 
+     * @param handle  What <code>fileOpened</code> returned.
+     * @param bytes  Bytes read, uncompressed.
+     * @param records  Records read.
+     */
+    public static void fileClosed(Object handle, long bytes, long records) {
+        if (handle != null) {
+            Recorder.fileClosed(handle, bytes, records);
+        }
+    }
+    
+    /**
+     * Note that a file stopped being read because of an exception.
+     * 
+     * @param path  The file.
+     * @param line  The line being read.
+     * @param cause  The exception.
+     */
+    public static void fileBroken(String path, long line, Throwable cause) {
+        if (isRecording()) {
+            Recorder.fileBroken(path, line, cause);
+        }
+    }
+    
+    /**
+     * Start timing the parsing of a record.
+     * 
+     * @return  A handle for <code>recordParsed</code>, or null.
+     */
+    public static Object recordStarted() {
+        return isRecording() ? Recorder.recordStarted() : null;
+    }
+    
+    /**
+     * Finish timing the parsing of a record. Only records slower than the
+     * event's threshold are kept.
+     * 
+     * @param handle  What <code>recordStarted</code> returned.
+     * @param path  The file.
+     * @param line  The record's line number.
+     * @param bytes  The size of the line.
+     * @param keys  The number of keys in the record, or 0 if there's none.
+     */
+    public static void recordParsed(Object handle, String path, long line,
+            int bytes, int keys) {
+        if (handle != null) {
+            Recorder.recordParsed(handle, path, line, bytes, keys);
+        }
+    }
+    
+    /**
+     * Start timing the processing of a batch of records for a table.
+     * 
+     * @return  A handle for <code>tableBatchFlushed</code>, or null.
+     */
+    public static Object tableBatchStarted() {
+        return isRecording() ? Recorder.tableBatchStarted() : null;
+    }
+    
+    /**
+     * Finish timing the processing of a batch of records for a table.
+     * 
+     * @param handle  What <code>tableBatchStarted</code> returned.
+     * @param table  The table's title.
+     * @param records  Records in the batch that visited the table.
+     * @param written  Rows written to the table.
+     * @param skipped  Records rejected for the table.
+     */
+    public static void tableBatchFlushed(Object handle, String table,
+            int records, long written, long skipped) {
+        if (handle != null) {
+            Recorder.tableBatchFlushed(handle, table, records, written,
+                    skipped);
+        }
+    }
+}
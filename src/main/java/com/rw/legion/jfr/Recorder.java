@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * The part of <code>LegionEvents</code> that uses the JFR API, only loaded
+ * once JFR is known to be available.
+ */
+
+final class Recorder {
+    private Recorder() {
+        
+    }
+    
+    /**
+     * Keep <code>LegionEvents.recording</code> in step with the flight
+     * recorder.
+     */
+    static void listen() {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            public void recorderInitialized(FlightRecorder recorder) {
+                update(recorder);
+            }
+            
+            public void recordingStateChanged(Recording changed) {
+                update(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+    
+    private static void update(FlightRecorder recorder) {
+        boolean running = false;
+        
+        for (Recording recording : recorder.getRecordings()) {
+            if (recording.getState() == RecordingState.RUNNING) {
+                running = true;
+            }
+        }
+        
+        LegionEvents.recording = running;
+    }
+    
+    static Object fileOpened(String path, long start) {
+        FileReadEvent event = new FileReadEvent();
+        
+        if (! event.isEnabled()) {
+            return null;
+        }
+        
+        event.path = path;
+        event.start = start;
+        event.begin();
+        return event;
+    }
+    
+    static void fileClosed(Object handle, long bytes, long records) {
+        FileReadEvent event = (FileReadEvent) handle;
+        event.end();
+        event.bytes = bytes;
+        event.records = records;
+        event.commit();
+    }
+    
+    static void fileBroken(String path, long line, Throwable cause) {
+        BrokenFileEvent event = new BrokenFileEvent();
+        
+        if (event.isEnabled()) {
+            event.path = path;
+            event.line = line;
+            event.cause = cause.toString();
+            event.commit();
+        }
+    }
+    
+    static Object recordStarted() {
+        SlowRecordEvent event = new SlowRecordEvent();
+        
+        if (! event.isEnabled()) {
+            return null;
+        }
+        
+        event.begin();
+        return event;
+    }
+    
+    static void recordParsed(Object handle, String path, long line,
+            int bytes, int keys) {
+        SlowRecordEvent event = (SlowRecordEvent) handle;
+        event.end();
+        
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.line = line;
+            event.bytes = bytes;
+            event.keys = keys;
+            event.commit();
+        }
+    }
+    
+    static Object tableBatchStarted() {
+        TableBatchEvent event = new TableBatchEvent();
+        
+        if (! event.isEnabled()) {
+            return null;
+        }
+        
+        event.begin();
+        return event;
+    }
+    
+    static void tableBatchFlushed(Object handle, String table, int records,
+            long written, long skipped) {
+        TableBatchEvent event = (TableBatchEvent) handle;
+        event.end();
+        
+        if (event.shouldCommit()) {
+            event.table = table;
+            event.records = records;
+            event.written = written;
+            event.skipped = skipped;
+            event.commit();
+        }
+    }
+}
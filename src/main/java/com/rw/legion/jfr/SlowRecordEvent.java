@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A line that took a long time to parse into a record.
+ */
+@Name("com.rw.legion.SlowRecord")
+@Label("Slow Record")
+@Category("Legion")
+@Description("A line that took a long time to parse into a record.")
+@StackTrace(false)
+@Threshold("10 ms")
+class SlowRecordEvent extends Event {
+    @Label("Path")
+    @Description("The file the line came from.")
+    String path;
+    
+    @Label("Line")
+    @Description("The line number.")
+    long line;
+    
+    @Label("Bytes")
+    @Description("The size of the line.")
+    int bytes;
+    
+    @Label("Keys")
+    @Description("The number of keys in the record.")
+    int keys;
+}
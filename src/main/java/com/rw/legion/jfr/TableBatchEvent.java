@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Validating and writing a batch of records for an output table.
+ */
+@Name("com.rw.legion.TableBatch")
+@Label("Table Batch Flushed")
+@Category("Legion")
+@Description("Validating and writing a batch of records for an output table.")
+@StackTrace(false)
+@Threshold("1 ms")
+class TableBatchEvent extends Event {
+    @Label("Table")
+    @Description("The output table.")
+    String table;
+    
+    @Label("Records")
+    @Description("Records in the batch that visited the table.")
+    int records;
+    
+    @Label("Rows Written")
+    @Description("Rows written to the table.")
+    long written;
+    
+    @Label("Rows Skipped")
+    @Description("Records rejected for the table.")
+    long skipped;
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes lines to named outputs on background threads, so compressing and
+ * writing them overlaps with the caller's parsing and validation.
+ *
+ * The caller's thread encodes lines into a block for each output; full
+ * blocks go to the writer thread that owns the output. Outputs are shared
+ * out among the writers as they're first used, so each output's stream is
+ * only ever opened, written and closed by one thread, in order. Each writer
+ * has a bounded queue of blocks, and the caller waits when it's full, so a
+ * slow file system holds the caller back rather than filling memory. Written
+ * blocks are reused.
+ *
+ * If a writer fails, the next <code>write()</code> or <code>close()</code>
+ * throws an <code>IOException</code> with the writer's failure as its cause.
+ * Only one thread may call <code>write()</code> and <code>close()</code>.
+ */
+
+public class AsyncWriters {
+    private static final long POLL_MILLIS = 100;
+    
+    /**
+     * Opens the stream for an output. Called from writer threads.
+     */
+    public interface StreamFactory {
+        /**
+         * @param name  The output's name.
+         * @return  The stream to write the output's lines to, which is
+         *          closed once everything has been written.
+         */
+        OutputStream open(String name) throws IOException;
+    }
+    
+    private StreamFactory factory;
+    private int blockSize;
+    private Writer[] writers;
+    private HashMap<String, Buffer> buffers = new HashMap<String, Buffer>();
+    private ArrayBlockingQueue<byte[]> freeBlocks;
+    private volatile Throwable failure;
+    private boolean closed;
+    
+    /**
+     * @param factory  Opens the stream for each output.
+     * @param threads  The number of writer threads.
+     * @param blockSize  The size in bytes of the blocks handed to writers.
+     * @param queuedBlocks  The most blocks each writer holds before
+     *                      <code>write()</code> waits.
+     */
+    public AsyncWriters(StreamFactory factory, int threads, int blockSize,
+            int queuedBlocks) {
+        this.factory = factory;
+        this.blockSize = blockSize;
+        writers = new Writer[threads];
+        freeBlocks = new ArrayBlockingQueue<byte[]>(threads * queuedBlocks);
+        
+        for (int i = 0; i < threads; i++) {
+            writers[i] = new Writer(i, queuedBlocks);
+            writers[i].start();
+        }
+    }
+    
+    /**
+     * Write a line, followed by a newline.
+     * 
+     * @param name  The output to write to.
+     * @param line  The line.
+     * @throws IOException  If a writer has failed.
+     */
+    public void write(String name, String line)
+            throws IOException, InterruptedException {
+        checkFailure();
+        Buffer buffer = buffers.get(name);
+        
+        if (buffer == null) {
+            buffer = new Buffer(name, writers[buffers.size() % writers.length]);
+            buffer.block = newBlock();
+            buffers.put(name, buffer);
+        }
+        
+        int length = line.length();
+        
+        // ASCII is copied straight in; anything else is encoded first.
+        if (buffer.length + length < blockSize) {
+            byte[] block = buffer.block;
+            int start = buffer.length;
+            int i = 0;
+            
+            while (i < length) {
+                char c = line.charAt(i);
+                
+                if (c >= 0x80) {
+                    break;
+                }
+                
+                block[start + i++] = (byte) c;
+            }
+            
+            if (i == length) {
+                block[start + length] = '\n';
+                buffer.length += length + 1;
+                return;
+            }
+        }
+        
+        append(buffer, line.getBytes(StandardCharsets.UTF_8));
+        append(buffer, new byte[] {'\n'});
+    }
+    
+    private void append(Buffer buffer, byte[] bytes)
+            throws IOException, InterruptedException {
+        int offset = 0;
+        
+        while (offset < bytes.length) {
+            int count = Math.min(bytes.length - offset,
+                    blockSize - buffer.length);
+            System.arraycopy(bytes, offset, buffer.block, buffer.length,
+                    count);
+            buffer.length += count;
+            offset += count;
+            
+            if (buffer.length == blockSize) {
+                handOff(buffer);
+            }
+        }
+    }
+    
+    /**
+     * Queue a buffer's block for its writer, and start a new one.
+     */
+    private void handOff(Buffer buffer)
+            throws IOException, InterruptedException {
+        Chunk chunk = new Chunk(buffer, buffer.block, buffer.length);
+        
+        while (! buffer.writer.queue.offer(chunk, POLL_MILLIS,
+                TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+        
+        buffer.block = newBlock();
+        buffer.length = 0;
+    }
+    
+    private byte[] newBlock() {
+        byte[] block = freeBlocks.poll();
+        return block == null ? new byte[blockSize] : block;
+    }
+    
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Writing output failed", failure);
+        }
+    }
+    
+    /**
+     * Write everything still buffered, close every output's stream, and stop
+     * the writers.
+     * 
+     * @throws IOException  If a writer has failed.
+     */
+    public void close() throws IOException, InterruptedException {
+        if (closed) {
+            return;
+        }
+        
+        closed = true;
+        
+        try {
+            if (failure == null) {
+                for (Buffer buffer : buffers.values()) {
+                    if (buffer.length > 0) {
+                        handOff(buffer);
+                    }
+                }
+            }
+        } finally {
+            // A writer that's failed has already stopped.
+            for (Writer writer : writers) {
+                while (writer.isAlive() && ! writer.queue.offer(Chunk.STOP,
+                        POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // Still writing what's queued, or failed meanwhile.
+                }
+            }
+            
+            for (Writer writer : writers) {
+                writer.join();
+            }
+        }
+        
+        checkFailure();
+    }
+    
+    private void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+    
+    /**
+     * The block being filled for an output, and the output's stream (only
+     * touched by its writer).
+     */
+    private static class Buffer {
+        private String name;
+        private Writer writer;
+        private byte[] block;
+        private int length;
+        private OutputStream stream;
+        
+        Buffer(String name, Writer writer) {
+            this.name = name;
+            this.writer = writer;
+        }
+    }
+    
+    /**
+     * A block of bytes to write to an output.
+     */
+    private static class Chunk {
+        static final Chunk STOP = new Chunk(null, null, 0);
+        
+        private Buffer buffer;
+        private byte[] block;
+        private int length;
+        
+        Chunk(Buffer buffer, byte[] block, int length) {
+            this.buffer = buffer;
+            this.block = block;
+            this.length = length;
+        }
+    }
+    
+    /**
+     * A thread that writes the blocks queued for the outputs it owns.
+     */
+    private class Writer extends Thread {
+        private ArrayBlockingQueue<Chunk> queue;
+        private ArrayList<Buffer> opened = new ArrayList<Buffer>();
+        
+        Writer(int id, int queuedBlocks) {
+            super("Legion output writer " + id);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<Chunk>(queuedBlocks);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                
+                while ((chunk = queue.take()) != Chunk.STOP) {
+                    Buffer buffer = chunk.buffer;
+                    
+                    if (buffer.stream == null) {
+                        buffer.stream = factory.open(buffer.name);
+                        opened.add(buffer);
+                    }
+                    
+                    buffer.stream.write(chunk.block, 0, chunk.length);
+                    
+                    if (chunk.block.length == blockSize) {
+                        freeBlocks.offer(chunk.block);
+                    }
+                }
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                for (Buffer buffer : opened) {
+                    try {
+                        buffer.stream.close();
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.output;
+
+import com.rw.legion.OutputCompression;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.bzip2.Bzip2Factory;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Opens output streams compressed as an <code>OutputCompression</code> says.
+ *
+ * Gzip is written with the JDK's own zlib, at any level, rather than through
+ * Hadoop's <code>GzipCodec</code>, which without its native library ignores
+ * the level. Other codecs come from Hadoop, with their compressors borrowed
+ * from <code>CodecPool</code> and returned when the stream is closed. The
+ * JDK's deflaters are pooled the same way, by level, since each holds a few
+ * hundred KB of native memory.
+ */
+
+public class CompressedStreams {
+    private static final int BUFFER_SIZE = 65536;
+    
+    // Deflaters by level, with -1 (the default) at the end.
+    private static final List<ConcurrentLinkedQueue<Deflater>> deflaters =
+            new ArrayList<ConcurrentLinkedQueue<Deflater>>();
+    
+    static {
+        for (int i = 0; i < 11; i++) {
+            deflaters.add(new ConcurrentLinkedQueue<Deflater>());
+        }
+    }
+    
+    /**
+     * @param compression  How to compress.
+     * @param conf  Hadoop configuration, for creating codecs.
+     * @return  The file name extension for the compression (e.g., ".gz").
+     */
+    public static String getExtension(OutputCompression compression,
+            Configuration conf) {
+        if (! compression.isCompressed()) {
+            return "";
+        } else if (compression.isGzip()) {
+            return ".gz";
+        }
+        
+        return ReflectionUtils.newInstance(compression.getCodecClass(), conf)
+                .getDefaultExtension();
+    }
+    
+    /**
+     * Compress a stream.
+     * 
+     * @param out  The stream to write the compressed data to, which is closed
+     *             with the returned stream.
+     * @param compression  How to compress.
+     * @param conf  Hadoop configuration, for creating codecs.
+     * @return  A buffered stream to write uncompressed data to.
+     */
+    public static OutputStream open(OutputStream out,
+            OutputCompression compression, Configuration conf)
+            throws IOException {
+        if (! compression.isCompressed()) {
+            return new BufferedOutputStream(out, BUFFER_SIZE);
+        } else if (compression.isGzip()) {
+            return new BufferedOutputStream(new GzipStream(out,
+                    compression.getLevel()), BUFFER_SIZE);
+        }
+        
+        Configuration codecConf = new Configuration(conf);
+        Integer level = compression.getLevel();
+        
+        if (level != null) {
+            Bzip2Factory.setBlockSize(codecConf, level);
+            codecConf.setBoolean(
+                    CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_KEY,
+                    level > 1);
+            codecConf.setInt("io.compression.codec.zstd.level", level);
+        }
+        
+        CompressionCodec codec = ReflectionUtils.newInstance(
+                compression.getCodecClass(), codecConf);
+        Compressor compressor = CodecPool.getCompressor(codec, codecConf);
+        
+        return new BufferedOutputStream(new PooledCodecStream(
+                codec.createOutputStream(out, compressor), compressor),
+                BUFFER_SIZE);
+    }
+    
+    /**
+     * A codec's stream, which gives its compressor back to the pool once
+     * it's closed.
+     */
+    private static class PooledCodecStream extends FilterOutputStream {
+        private Compressor compressor;
+        
+        PooledCodecStream(CompressionOutputStream out, Compressor compressor) {
+            super(out);
+            this.compressor = compressor;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                if (compressor != null) {
+                    CodecPool.returnCompressor(compressor);
+                    compressor = null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * A gzip stream like <code>GZIPOutputStream</code>, but at any level and
+     * with a deflater borrowed from the pool.
+     */
+    private static class GzipStream extends DeflaterOutputStream {
+        private static final byte[] HEADER = {
+                0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+        
+        private int pool;
+        private CRC32 crc = new CRC32();
+        private boolean finished;
+        private boolean closed;
+        
+        GzipStream(OutputStream out, Integer level) throws IOException {
+            this(out, level == null ? Deflater.DEFAULT_COMPRESSION : level,
+                    level == null ? deflaters.size() - 1 : level);
+        }
+        
+        private GzipStream(OutputStream out, int level, int pool)
+                throws IOException {
+            super(out, borrow(level, pool), BUFFER_SIZE);
+            this.pool = pool;
+            out.write(HEADER);
+        }
+        
+        private static Deflater borrow(int level, int pool) {
+            // The last pool is for the default level, not level 10.
+            boolean isDefault = level == Deflater.DEFAULT_COMPRESSION
+                    && pool == deflaters.size() - 1;
+            
+            if (! isDefault && (level < 0
+                    || level > Deflater.BEST_COMPRESSION)) {
+                throw new IllegalArgumentException("Invalid gzip level: " +
+                        level);
+            }
+            
+            Deflater deflater = deflaters.get(pool).poll();
+            return deflater == null ? new Deflater(level, true) : deflater;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            crc.update(b, off, len);
+        }
+        
+        @Override
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            
+            super.finish();
+            writeInt((int) crc.getValue());
+            writeInt((int) def.getBytesRead());
+            finished = true;
+        }
+        
+        private void writeInt(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >>> 8) & 0xff);
+            out.write((value >>> 16) & 0xff);
+            out.write((value >>> 24) & 0xff);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            
+            closed = true;
+            
+            try {
+                super.close();
+            } finally {
+                def.reset();
+                deflaters.get(pool).offer(def);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.output;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.rw.legion.OutputCompression;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes lines of text, like <code>TextOutputFormat</code>, compressed as
+ * set for each named output with <code>setCompression()</code>.
+ * <code>MultipleOutputs</code> gives each file's base name (e.g., "calls" or
+ * "skipped/calls") as "mapreduce.output.basename", and the compression is
+ * looked up by the part of that before any "/", falling back to the
+ * default set with <code>setDefaultCompression()</code>, and then gzip.
+ */
+
+public class LegionTextOutputFormat
+        extends FileOutputFormat<NullWritable, Text> {
+    public static final String COMPRESSION = "legion.output.compression";
+    
+    /**
+     * Set how to compress one named output's files.
+     * 
+     * @param job  The job.
+     * @param name  The named output (e.g., a table's title).
+     * @param compression  How to compress it.
+     */
+    public static void setCompression(Job job, String name,
+            OutputCompression compression) {
+        validate(compression);
+        job.getConfiguration().set(COMPRESSION + "." + name,
+                new Gson().toJson(compression));
+    }
+    
+    /**
+     * Set how to compress files for named outputs without their own
+     * compression.
+     */
+    public static void setDefaultCompression(Job job,
+            OutputCompression compression) {
+        validate(compression);
+        job.getConfiguration().set(COMPRESSION,
+                new Gson().toJson(compression));
+    }
+    
+    /**
+     * @param conf  The job's configuration.
+     * @param baseName  The base name of a file.
+     * @return  How to compress the file.
+     */
+    public static OutputCompression getCompression(Configuration conf,
+            String baseName) {
+        int slash = baseName.indexOf('/');
+        String name = slash < 0 ? baseName : baseName.substring(0, slash);
+        String json = conf.get(COMPRESSION + "." + name, conf.get(COMPRESSION));
+        
+        return json == null ? new OutputCompression()
+                : new Gson().fromJson(json, OutputCompression.class);
+    }
+    
+    private static void validate(OutputCompression compression)
+            throws JsonParseException {
+        Integer level = compression.getLevel();
+        
+        // Fail when the job's set up, rather than in every task.
+        if (compression.isGzip()) {
+            if (level != null && (level < 0 || level > 9)) {
+                throw new JsonParseException("Invalid gzip level: " + level);
+            }
+        } else if (compression.isCompressed()) {
+            compression.getCodecClass();
+        }
+    }
+    
+    @Override
+    public RecordWriter<NullWritable, Text> getRecordWriter(
+            TaskAttemptContext job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        OutputCompression compression = getCompression(conf,
+                getOutputName(job));
+        Path file = getDefaultWorkFile(job,
+                CompressedStreams.getExtension(compression, conf));
+        FileSystem fs = file.getFileSystem(conf);
+        
+        return new LineWriter(CompressedStreams.open(fs.create(file, false),
+                compression, conf));
+    }
+    
+    /**
+     * Writes each value on its own line.
+     */
+    private static class LineWriter extends RecordWriter<NullWritable, Text> {
+        private OutputStream out;
+        
+        LineWriter(OutputStream out) {
+            this.out = out;
+        }
+        
+        @Override
+        public void write(NullWritable key, Text value) throws IOException {
+            out.write(value.getBytes(), 0, value.getLength());
+            out.write('\n');
+        }
+        
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnCacheTest {
+
+    /**
+     * Look up a value, and cache it on a miss, as RecordProcessor does.
+     */
+    private boolean lookUp(ColumnCache cache, String raw) {
+        if (cache.get(raw) != null) {
+            return true;
+        }
+
+        cache.put(raw, true, raw, raw, null);
+        return false;
+    }
+
+    @Test
+    void keepsLowCardinalityValues() {
+        ColumnCache cache = new ColumnCache(100);
+        int hits = 0;
+
+        for (int i = 0; i < ColumnCache.WINDOW * 10; i++) {
+            hits += lookUp(cache, "v" + (i % 20)) ? 1 : 0;
+        }
+
+        assertFalse(cache.isDormant());
+        assertEquals(20, cache.size());
+        assertEquals(ColumnCache.WINDOW * 10 - 20, hits);
+    }
+
+    @Test
+    void goesDormantForHighCardinalityValues() {
+        ColumnCache cache = new ColumnCache(100);
+
+        for (int i = 0; i < ColumnCache.WINDOW * 2; i++) {
+            lookUp(cache, "v" + i);
+        }
+
+        assertTrue(cache.isDormant());
+        assertEquals(0, cache.size());
+
+        // It tries again once it's been dormant for long enough.
+        for (int i = 0; i < ColumnCache.WINDOW * ColumnCache.DORMANT_WINDOWS;
+                i++) {
+            assertFalse(lookUp(cache, "x"));
+        }
+
+        assertFalse(cache.isDormant());
+        assertFalse(lookUp(cache, "y"));
+        assertTrue(lookUp(cache, "y"));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectiveFunctionTest {
+    @Test
+    void samplesRejectionsAcrossRecords() {
+        ObjectiveFunction function = new ObjectiveFunction(
+                "{\"inputFormat\": \"x\", \"skipped\": " +
+                "{\"firstPerColumn\": 2, \"reservoir\": 3}, " +
+                "\"outputTables\": [{\"title\": \"calls\", \"columns\": [" +
+                "{\"key\": \"$.id\", \"validate\": {\"class\": " +
+                "\"com.rw.legion.columncheck.IntegerChecker\", " +
+                "\"options\": {\"intType\": \"INT\"}}}]}]}");
+        int skipped = 0;
+
+        for (int i = 0; i < 100; i++) {
+            LegionRecord record = new LegionRecord();
+            record.setField("$.id", i % 2 == 0 ? "x" + i : "" + i);
+            List<String> rows = function.apply(record).get("skipped");
+            skipped += rows == null ? 0 : rows.size();
+        }
+
+        // The first two straight away, and the sample of the rest at the end.
+        assertEquals(2, skipped);
+        Map<String, List<String>> held = function.finish();
+        assertEquals(3, held.get("skipped").size());
+        assertTrue(function.finish().isEmpty());
+    }
+
+    @Test
+    void findsCacheFilesByTheirFragments() throws Exception {
+        File file = File.createTempFile("legion", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList("sprint", "verizon"),
+                StandardCharsets.UTF_8);
+        // A name that can't already be in the working directory.
+        String name = "carriers-" + file.getName();
+
+        ObjectiveFunction function = new ObjectiveFunction(
+                "{\"inputFormat\": \"x\", \"cacheFiles\": [\"" +
+                file.toURI() + "#" + name + "\"], " +
+                "\"outputTables\": [{\"title\": \"calls\", \"columns\": [" +
+                "{\"key\": \"$.carrier\", \"validate\": {\"class\": " +
+                "\"com.rw.legion.columncheck.SetChecker\", " +
+                "\"options\": {\"file\": \"" + name + "\"}}}]}]}");
+
+        LegionRecord record = new LegionRecord();
+        record.setField("$.carrier", "verizon");
+        assertEquals(Arrays.asList("verizon"),
+                function.apply(record).get("calls"));
+
+        record = new LegionRecord();
+        record.setField("$.carrier", "att");
+        assertNull(function.apply(record).get("calls"));
+        assertFalse(new File(name).exists());
+    }
+}
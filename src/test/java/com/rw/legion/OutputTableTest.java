@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputTableTest {
+
+    private OutputTable buildTable(String where) {
+        String json = "{\"inputFormat\": \"x\", \"outputTables\": [" +
+                "{\"title\": \"t\", \"where\": " + where + ", " +
+                "\"columns\": [{\"key\": \"$.id\"}]}]}";
+
+        return ObjectiveDeserializer.deserialize(json).getOutputTables()
+                .get(0);
+    }
+
+    private LegionRecord buildRecord(String... fields) {
+        LegionRecord record = new LegionRecord();
+
+        for (int i = 0; i < fields.length; i += 2) {
+            record.setField(fields[i], fields[i + 1]);
+        }
+
+        return record;
+    }
+
+    @Test
+    void acceptsEverythingWithoutWhere() {
+        OutputTable table = buildTable("null");
+        assertTrue(table.accepts(buildRecord()));
+    }
+
+    @Test
+    void testsEachCondition() {
+        OutputTable equals = buildTable(
+                "[{\"key\": \"$.event\", \"equals\": \"call_end\"}]");
+        assertTrue(equals.accepts(buildRecord("$.event", "call_end")));
+        assertFalse(equals.accepts(buildRecord("$.event", "call_start")));
+        assertFalse(equals.accepts(buildRecord()));
+
+        OutputTable in = buildTable(
+                "[{\"key\": \"$.event\", \"in\": [\"a\", \"b\"]}]");
+        assertTrue(in.accepts(buildRecord("$.event", "b")));
+        assertFalse(in.accepts(buildRecord("$.event", "c")));
+
+        OutputTable exists = buildTable(
+                "[{\"key\": \"$.x\", \"exists\": true}]");
+        assertTrue(exists.accepts(buildRecord("$.x", "")));
+        assertFalse(exists.accepts(buildRecord()));
+
+        OutputTable absent = buildTable(
+                "[{\"key\": \"$.x\", \"exists\": false}]");
+        assertTrue(absent.accepts(buildRecord()));
+
+        OutputTable regex = buildTable(
+                "[{\"key\": \"$.n\", \"regex\": \"[0-9]+\"}]");
+        assertTrue(regex.accepts(buildRecord("$.n", "123")));
+        assertFalse(regex.accepts(buildRecord("$.n", "12a")));
+    }
+
+    @Test
+    void requiresAllConditions() {
+        OutputTable table = buildTable(
+                "[{\"key\": \"$.a\", \"equals\": \"1\"}, " +
+                "{\"key\": \"$.b\", \"equals\": \"2\"}]");
+        assertTrue(table.accepts(buildRecord("$.a", "1", "$.b", "2")));
+        assertFalse(table.accepts(buildRecord("$.a", "1", "$.b", "3")));
+    }
+
+    @Test
+    void rejectsBadConditions() {
+        assertThrows(JsonParseException.class,
+                () -> buildTable("[{\"equals\": \"1\"}]"));
+        assertThrows(JsonParseException.class,
+                () -> buildTable("[{\"key\": \"$.a\"}]"));
+        assertThrows(JsonParseException.class, () -> buildTable(
+                "[{\"key\": \"$.a\", \"equals\": \"1\", \"exists\": true}]"));
+    }
+}
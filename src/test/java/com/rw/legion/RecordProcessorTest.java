@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import com.google.gson.JsonObject;
+import com.rw.legion.columncheck.ColumnChecker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordProcessorTest {
+    private List<String> written = new ArrayList<>();
+
+    // Collects rows as "table:row", and skipped rows as "skipped:row".
+    private RecordProcessor.Output collect = new RecordProcessor.Output() {
+        public void write(OutputTable table, String row) {
+            written.add(table.getTitle() + ":" + row);
+        }
+
+        public void skip(OutputTable table, OutputColumn column, String row) {
+            written.add("skipped:" + row);
+        }
+    };
+
+    static class CountingChecker implements ColumnChecker {
+        static int calls;
+
+        CountingChecker(JsonObject json) {
+        }
+
+        public boolean validates(String str) {
+            calls++;
+            return ! str.equals("bad");
+        }
+    }
+
+    private RecordProcessor buildProcessor(String routingKey) {
+        String json = "{\"inputFormat\": \"x\", " +
+                (routingKey == null ? "" :
+                        "\"routingKey\": \"" + routingKey + "\", ") +
+                "\"outputTables\": [" +
+                "{\"title\": \"calls\", \"where\": [{\"key\": \"$.type\", " +
+                "\"equals\": \"call\"}], \"columns\": [{\"key\": \"$.id\"}]}, " +
+                "{\"title\": \"all\", \"columns\": [{\"key\": \"$.id\"}]}, " +
+                "{\"title\": \"messages\", \"where\": [{\"key\": \"$.type\", " +
+                "\"in\": [\"sms\", \"mms\"]}, {\"key\": \"$.id\", " +
+                "\"regex\": \"[0-9]+\"}], \"columns\": [{\"key\": \"$.id\"}]}" +
+                "]}";
+
+        return build(json);
+    }
+
+    private RecordProcessor build(String json) {
+        return new RecordProcessor(ObjectiveDeserializer.deserialize(json),
+                collect);
+    }
+
+    private List<String> process(RecordProcessor processor, String type,
+            String id) throws Exception {
+        LegionRecord record = new LegionRecord();
+        record.setField("$.id", id);
+
+        if (type != null) {
+            record.setField("$.type", type);
+        }
+
+        written.clear();
+        processor.process(record);
+        return new ArrayList<>(written);
+    }
+
+    @Test
+    void routesSameAsWhere() throws Exception {
+        RecordProcessor routed = buildProcessor("$.type");
+        RecordProcessor unrouted = buildProcessor(null);
+
+        for (String type : Arrays.asList("call", "sms", "mms", "x", null)) {
+            for (String id : Arrays.asList("1", "a")) {
+                assertEquals(process(unrouted, type, id),
+                        process(routed, type, id), type + " " + id);
+            }
+        }
+
+        assertEquals(Arrays.asList("calls:1", "all:1"),
+                process(routed, "call", "1"));
+        assertEquals(Arrays.asList("all:a"), process(routed, "mms", "a"));
+        assertEquals(Arrays.asList("all:1", "messages:1"),
+                process(routed, "sms", "1"));
+        assertEquals(Arrays.asList("all:1"), process(routed, null, "1"));
+    }
+
+    @Test
+    void evaluatesSharedColumnsOnce() throws Exception {
+        String column = "{\"key\": \"$.id\", \"validate\": {\"class\": " +
+                "\"com.rw.legion.RecordProcessorTest$CountingChecker\"}}";
+        String json = "{\"inputFormat\": \"x\", \"outputTables\": [" +
+                "{\"title\": \"a\", \"columns\": [" + column + "]}, " +
+                "{\"title\": \"b\", \"columns\": [{\"key\": \"$.x\"}, " +
+                column + "]}, " +
+                "{\"title\": \"c\", \"columns\": [{\"key\": \"$.id\", " +
+                "\"failOnNull\": true, \"validate\": {\"class\": " +
+                "\"com.rw.legion.RecordProcessorTest$CountingChecker\"}}]}]}";
+
+        RecordProcessor processor = build(json);
+
+        CountingChecker.calls = 0;
+        assertEquals(Arrays.asList("a:1", "b:,1", "c:1"),
+                process(processor, null, "1"));
+
+        // The third table's column has different settings.
+        assertEquals(2, CountingChecker.calls);
+
+        CountingChecker.calls = 0;
+        assertEquals(Arrays.asList("skipped:,,$.id,data validation failed",
+                "skipped:,,$.id,data validation failed",
+                "skipped:,,$.id,data validation failed"),
+                process(processor, null, "bad"));
+        assertEquals(2, CountingChecker.calls);
+    }
+
+    @Test
+    void reevaluatesSharedColumnsAfterTransforms() throws Exception {
+        String column = "{\"key\": \"$.id\", \"validate\": {\"class\": " +
+                "\"com.rw.legion.RecordProcessorTest$CountingChecker\"}, " +
+                "\"transform\": {\"class\": " +
+                "\"com.rw.legion.columntransform.NullReplaceTransformer\", " +
+                "\"options\": {\"replacement\": \"bad\"}}}";
+        String json = "{\"inputFormat\": \"x\", \"outputTables\": [" +
+                "{\"title\": \"a\", \"columns\": [" + column + "]}, " +
+                "{\"title\": \"b\", \"columns\": [" + column + "]}]}";
+
+        RecordProcessor processor = build(json);
+
+        CountingChecker.calls = 0;
+        assertEquals(Arrays.asList("a:1", "b:1"),
+                process(processor, null, "1"));
+        assertEquals(1, CountingChecker.calls);
+
+        // The second table sees the first table's replacement, and rejects it.
+        assertEquals(Arrays.asList("a:bad",
+                "skipped:,,$.id,data validation failed"),
+                process(processor, null, ""));
+    }
+
+    @Test
+    void cachesRepeatedValues() throws Exception {
+        String json = "{\"inputFormat\": \"x\", \"outputTables\": [" +
+                "{\"title\": \"a\", \"columns\": [{\"key\": \"$.id\", " +
+                "\"cacheSize\": 10, \"validate\": {\"class\": " +
+                "\"com.rw.legion.RecordProcessorTest$CountingChecker\"}, " +
+                "\"transform\": {\"class\": " +
+                "\"com.rw.legion.columntransform.NullReplaceTransformer\", " +
+                "\"options\": {\"replacement\": \"none\"}}}, " +
+                "{\"key\": \"$.id\"}]}]}";
+
+        RecordProcessor processor = build(json);
+
+        CountingChecker.calls = 0;
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Arrays.asList("a:1,1"), process(processor, null, "1"));
+            assertEquals(Arrays.asList("a:\"x,y\",\"x,y\""),
+                    process(processor, null, "x,y"));
+            assertEquals(Arrays.asList("a:none,none"),
+                    process(processor, null, ""));
+            assertEquals(Arrays.asList("skipped:,,$.id,data validation failed"),
+                    process(processor, null, "bad"));
+        }
+
+        assertEquals(3, CountingChecker.calls);
+    }
+
+    @Test
+    void batchesMatchSingleRecords() throws Exception {
+        String json = "{\"inputFormat\": \"x\", \"batchSize\": 4, " +
+                "\"outputTables\": [" +
+                "{\"title\": \"a\", \"columns\": [{\"key\": \"$.id\", " +
+                "\"validate\": {\"class\": " +
+                "\"com.rw.legion.columncheck.IntegerChecker\"}}, " +
+                "{\"key\": \"$.type\", \"failOnAbsent\": true}]}, " +
+                "{\"title\": \"b\", \"columns\": [{\"key\": \"$.id\", " +
+                "\"failOnValidation\": false, \"validate\": {\"class\": " +
+                "\"com.rw.legion.columncheck.IntegerChecker\"}}]}]}";
+
+        RecordProcessor processor = build(json);
+        written.clear();
+
+        String[][] records = {{"1", "call"}, {"x", "sms"}, {"2", null},
+                {"3", "mms"}, {"4", "call"}};
+
+        for (String[] fields : records) {
+            LegionRecord record = new LegionRecord();
+            record.setField("$.id", fields[0]);
+
+            if (fields[1] != null) {
+                record.setField("$.type", fields[1]);
+            }
+
+            processor.process(record);
+        }
+
+        // The last record waits for the batch to fill up.
+        assertEquals(Arrays.asList("a:1,call", "skipped:,,$.id,data " +
+                "validation failed", "skipped:,,$.type,key absent",
+                "a:3,mms", "b:1", "b:", "b:2", "b:3"), written);
+
+        processor.flush();
+        assertEquals(Arrays.asList("a:4,call", "b:4"),
+                written.subList(8, written.size()));
+    }
+
+    @Test
+    void talliesRowsAndRejections() throws Exception {
+        String json = "{\"inputFormat\": \"x\", \"batchSize\": 3, " +
+                "\"outputTables\": [" +
+                "{\"title\": \"a\", \"columns\": [{\"key\": \"$.id\", " +
+                "\"failOnAbsent\": true}, {\"key\": \"$.n\", " +
+                "\"failOnNull\": true, \"validate\": {\"class\": " +
+                "\"com.rw.legion.columncheck.IntegerChecker\", " +
+                "\"options\": {\"intType\": \"INT\"}}}]}, " +
+                "{\"title\": \"b\", \"columns\": [{\"key\": \"$.id\"}]}]}";
+        List<String> tallies = new ArrayList<>();
+
+        RecordProcessor processor = build(json);
+
+        processor.setTally(new RecordProcessor.Tally() {
+            public void written(int table) {
+                tallies.add(table + " written");
+            }
+
+            public void rejected(int table, int column, FailureReason reason) {
+                tallies.add(table + " " + column + " " + reason);
+            }
+        });
+
+        String[][] records = {{"1", "5"}, {null, "5"}, {"2", ""}, {"3", "x"}};
+
+        for (String[] fields : records) {
+            LegionRecord record = new LegionRecord();
+
+            if (fields[0] != null) {
+                record.setField("$.id", fields[0]);
+            }
+
+            record.setField("$.n", fields[1]);
+            processor.process(record);
+        }
+
+        processor.flush();
+        assertEquals(Arrays.asList("0 written", "0 0 ABSENT", "0 1 NULL",
+                "1 written", "1 written", "1 written", "0 1 VALIDATION",
+                "1 written"), tallies);
+    }
+
+    @Test
+    void samplesRejections() throws Exception {
+        String json = "{\"inputFormat\": \"x\", \"skipped\": " +
+                "{\"firstPerColumn\": 2, \"reservoir\": 3, " +
+                "\"reasonCodes\": true}, \"outputTables\": [" +
+                "{\"title\": \"calls\", \"columns\": [{\"key\": \"$.id\", " +
+                "\"validate\": {\"class\": " +
+                "\"com.rw.legion.columncheck.IntegerChecker\", " +
+                "\"options\": {\"intType\": \"INT\"}}}]}]}";
+        List<String> tallies = new ArrayList<>();
+
+        RecordProcessor processor = build(json);
+
+        processor.setTally(new RecordProcessor.Tally() {
+            public void written(int table) {
+            }
+
+            public void rejected(int table, int column, FailureReason reason) {
+                tallies.add(reason.name());
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            LegionRecord record = new LegionRecord();
+            record.setField("file_name", "in, 1.json");
+            record.setField("file_line", Integer.toString(i));
+            record.setField("$.id", i % 2 == 0 ? "x" + i : "" + i);
+            processor.process(record);
+        }
+
+        processor.flush();
+
+        // Every rejection is counted, but only the first two are written.
+        assertEquals(50, tallies.size());
+        assertEquals(52, written.size());
+        assertEquals("skipped:\"in, 1.json\",0,calls,$.id,VALIDATION",
+                written.get(0));
+
+        processor.finish();
+        assertEquals(55, written.size());
+    }
+}
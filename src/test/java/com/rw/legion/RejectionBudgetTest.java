@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RejectionBudgetTest {
+    private static final String JSON = "{\"inputFormat\": \"x\", " +
+            "\"rejectionBudget\": {\"maxRejectedFraction\": 0.1, " +
+            "\"minRows\": 100, \"maxBrokenFiles\": 0}, " +
+            "\"outputTables\": [{\"title\": \"calls\", \"columns\": [" +
+            "{\"key\": \"$.id\"}, {\"key\": \"$.ts\"}]}]}";
+
+    @Test
+    void checksCountsAndFractions() {
+        RejectionBudget budget = new RejectionBudget();
+        budget.maxRejectedRows = 10L;
+        budget.maxRejectedFraction = 0.5;
+
+        assertNull(budget.checkTable("t", 0, 10));
+        assertNotNull(budget.checkTable("t", 0, 11));
+
+        budget.maxRejectedRows = null;
+
+        // Too few rows to judge by fraction.
+        assertNull(budget.checkTable("t", 1, 998));
+        assertNull(budget.checkTable("t", 500, 500));
+        assertNotNull(budget.checkTable("t", 499, 501));
+        assertNull(budget.checkBrokenFiles(100));
+    }
+
+    @Test
+    void failsTasksAndJobsOverBudget() throws Exception {
+        LegionObjective objective = ObjectiveDeserializer.deserialize(JSON);
+        Counters counters = new Counters();
+        TaskCounters tally = new TaskCounters(new TaskAttemptContextImpl(
+                new Configuration(), new TaskAttemptID(),
+                reporter(counters)), objective);
+
+        for (int i = 0; i < 90; i++) {
+            tally.written(0);
+        }
+
+        for (int i = 0; i < 12; i++) {
+            tally.rejected(0, i % 3 == 0 ? 0 : 1, FailureReason.VALIDATION);
+        }
+
+        // Over a tenth, but only once there are a hundred rows.
+        assertNotNull(objective.getRejectionBudget().check(counters,
+                objective));
+        RejectionBudgetException e = assertThrows(
+                RejectionBudgetException.class, () -> tally.checkBudget());
+        assertTrue(e.getMessage().contains("11 of 101"));
+
+        String top = RejectionBudget.topRejections(counters, 1,
+                objective);
+        assertEquals("\n    calls: $.ts (data validation failed): 8", top);
+    }
+
+    @Test
+    void capsColumnCounters() throws Exception {
+        StringBuilder json = new StringBuilder("{\"inputFormat\": \"x\", " +
+                "\"outputTables\": [");
+
+        for (int t = 0; t < 3; t++) {
+            json.append(t == 0 ? "" : ", ").append("{\"title\": \"table")
+                    .append(t).append("\", \"columns\": [");
+
+            for (int c = 0; c < 60; c++) {
+                json.append(c == 0 ? "" : ", ").append("{\"key\": " +
+                        "\"$.payload.device.carrier_network_name_")
+                        .append(c).append("\"}");
+            }
+
+            json.append("]}");
+        }
+
+        LegionObjective objective = ObjectiveDeserializer.deserialize(
+                json.append("]}").toString());
+        Configuration conf = new Configuration();
+        conf.setInt(TaskCounters.MAX_COLUMNS, 70);
+
+        // More than Hadoop's 120 counters, if every column had its own.
+        Counters counters = new Counters();
+        TaskCounters tally = new TaskCounters(new TaskAttemptContextImpl(
+                conf, new TaskAttemptID(), reporter(counters)), objective);
+
+        for (int t = 0; t < 3; t++) {
+            for (int c = 0; c < 60; c++) {
+                tally.rejected(t, c, FailureReason.VALIDATION);
+            }
+        }
+
+        // The first table's columns, ten of the next, and one "other" each.
+        assertEquals(72, counters.getGroup(TaskCounters.REJECTED_GROUP)
+                .size());
+        assertEquals(50, counters.findCounter(TaskCounters.REJECTED_GROUP,
+                "t1.other").getValue());
+        assertEquals(60, counters.findCounter(TaskCounters.REJECTED_ROWS_GROUP,
+                "table2").getValue());
+        assertEquals("table1: $.payload.device.carrier_network_name_9 " +
+                "(data validation failed)", TaskCounters.describe(objective,
+                        "t1.c9.VALIDATION"));
+        assertEquals("table2: other columns",
+                TaskCounters.describe(objective, "t2.other"));
+        assertTrue(TaskCounters.legend(objective, conf).contains(
+                "t1.c9 = table1: $.payload.device.carrier_network_name_9\n"));
+        assertFalse(TaskCounters.legend(objective, conf).contains("t1.c10"));
+    }
+
+    @Test
+    void capsTableCounters() throws Exception {
+        StringBuilder json = new StringBuilder("{\"inputFormat\": \"x\", " +
+                "\"rejectionBudget\": {\"maxRejectedRows\": 100}, " +
+                "\"outputTables\": [");
+
+        for (int t = 0; t < 55; t++) {
+            json.append(t == 0 ? "" : ", ").append("{\"title\": \"table")
+                    .append(t).append("\", \"columns\": [{\"key\": " +
+                    "\"$.id\"}, {\"key\": \"$.ts\"}]}");
+        }
+
+        LegionObjective objective = ObjectiveDeserializer.deserialize(
+                json.append("]}").toString());
+        Configuration conf = new Configuration();
+
+        // Counters enforces Hadoop's limit, as a task would.
+        Counters counters = new Counters();
+        TaskCounters tally = new TaskCounters(new TaskAttemptContextImpl(
+                conf, new TaskAttemptID(), reporter(counters)), objective);
+
+        for (int t = 0; t < 55; t++) {
+            tally.written(t);
+
+            for (int c = 0; c < 2; c++) {
+                for (FailureReason reason : FailureReason.values()) {
+                    tally.rejected(t, c, reason);
+                }
+            }
+        }
+
+        assertEquals(21, counters.getGroup(TaskCounters.WRITTEN_GROUP)
+                .size());
+        assertEquals(35, counters.findCounter(TaskCounters.WRITTEN_GROUP,
+                TaskCounters.OTHER_TABLES).getValue());
+        assertEquals(35 * 6, counters.findCounter(
+                TaskCounters.REJECTED_ROWS_GROUP,
+                TaskCounters.OTHER_TABLES).getValue());
+
+        // Ten columns' reasons, "other" for the rest of the first tables,
+        // and one "other" for the tables without counters.
+        assertEquals(30 + 15 + 1, counters.getGroup(
+                TaskCounters.REJECTED_GROUP).size());
+        assertEquals(TaskCounters.OTHER_TABLES,
+                TaskCounters.describe(objective, "other"));
+        assertTrue(TaskCounters.legend(objective, conf).contains(
+                "other = (other tables): table20 table21 "));
+
+        // The job judges the tables that share counters as one.
+        String breach = objective.getRejectionBudget().check(counters,
+                objective);
+        assertNotNull(breach);
+        assertTrue(breach.contains(TaskCounters.OTHER_TABLES), breach);
+    }
+
+    @Test
+    void checksBrokenFilesAtTheEnd() throws Exception {
+        LegionObjective objective = ObjectiveDeserializer.deserialize(JSON);
+        Counters counters = new Counters();
+        TaskCounters tally = new TaskCounters(new TaskAttemptContextImpl(
+                new Configuration(), new TaskAttemptID(),
+                reporter(counters)), objective);
+
+        tally.checkFinalBudget();
+        counters.findCounter(LegionCounter.BROKEN_FILES).increment(1);
+        tally.checkBudget();
+        assertThrows(RejectionBudgetException.class,
+                () -> tally.checkFinalBudget());
+    }
+
+    private static StatusReporter reporter(Counters counters) {
+        return new StatusReporter() {
+            public Counter getCounter(Enum<?> name) {
+                return counters.findCounter(name);
+            }
+
+            public Counter getCounter(String group, String name) {
+                return counters.findCounter(group, name);
+            }
+
+            public void progress() {
+            }
+
+            public float getProgress() {
+                return 0;
+            }
+
+            public void setStatus(String status) {
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamRunnerTest {
+    @Test
+    void writesOneTableWithoutChangingTheObjective() throws Exception {
+        LegionObjective objective = ObjectiveDeserializer.deserialize(
+                "{\"inputFormat\": \"com.rw.legion.input.JsonInputFormat\", " +
+                "\"outputTables\": [" +
+                "{\"title\": \"ids\", \"columns\": [{\"key\": \"$.id\"}]}, " +
+                "{\"title\": \"names\", \"columns\": [{\"key\": \"$.name\"}]}" +
+                "]}");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream skipped = new ByteArrayOutputStream();
+
+        long count = StreamRunner.run(objective, "names",
+                new ByteArrayInputStream("{\"id\": 1, \"name\": \"a\"}\n"
+                        .getBytes(StandardCharsets.UTF_8)), out, skipped);
+
+        assertEquals(1, count);
+        assertEquals("a\n", new String(out.toByteArray(),
+                StandardCharsets.UTF_8));
+        assertEquals(2, objective.getOutputTables().size());
+    }
+}
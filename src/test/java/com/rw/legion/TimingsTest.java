@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingsTest {
+    @Test
+    void bucketsByPowerOfTwo() {
+        assertEquals(0, Timings.bucketOf(0));
+        assertEquals(0, Timings.bucketOf(1));
+        assertEquals(1, Timings.bucketOf(2));
+        assertEquals(1, Timings.bucketOf(3));
+        assertEquals(10, Timings.bucketOf(1024));
+        assertEquals(62, Timings.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void samplesCalls() {
+        Timings timings = new Timings();
+
+        for (int i = 0; i < Timings.SAMPLE_EVERY * 10; i++) {
+            long start = timings.start(Timings.Stage.PARSE);
+            timings.stop(Timings.Stage.PARSE, start);
+        }
+
+        assertEquals(Timings.SAMPLE_EVERY * 10,
+                timings.getCalls(Timings.Stage.PARSE));
+        assertEquals(10, timings.getSamples(Timings.Stage.PARSE));
+        assertEquals(0, timings.getCalls(Timings.Stage.READ));
+        assertTrue(timings.percentile(Timings.Stage.PARSE, 0.5) > 0);
+        assertEquals(0, timings.percentile(Timings.Stage.READ, 0.5));
+    }
+
+    @Test
+    void mergesWrittenTimings() throws Exception {
+        Timings a = new Timings();
+        Timings b = new Timings();
+
+        for (int i = 0; i < 1000; i++) {
+            a.stop(Timings.Stage.WRITE, a.start(Timings.Stage.WRITE));
+            b.stop(Timings.Stage.VALIDATE, b.start(Timings.Stage.VALIDATE));
+        }
+
+        StringWriter out = new StringWriter();
+        a.write(out);
+        b.write(out);
+
+        Timings read = new Timings();
+        read.read(new BufferedReader(new StringReader(out.toString())));
+
+        a.merge(b);
+        StringWriter merged = new StringWriter();
+        a.write(merged);
+        StringWriter reread = new StringWriter();
+        read.write(reread);
+
+        assertEquals(merged.toString(), reread.toString());
+        assertEquals(1000, read.getCalls(Timings.Stage.VALIDATE));
+        assertEquals(2 * ((1000 + Timings.SAMPLE_EVERY - 1)
+                / Timings.SAMPLE_EVERY), read.getSamples(Timings.Stage.WRITE)
+                + read.getSamples(Timings.Stage.VALIDATE));
+        assertTrue(read.report().contains("validate"));
+    }
+}
@@ -20,6 +20,8 @@ import com.google.gson.JsonObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.BitSet;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class BooleanCheckerTest {
@@ -59,4 +61,18 @@ class BooleanCheckerTest {
         assertEquals(false, bc.validates("4"));
     }
 
+    @Test
+    void validatesAll() {
+        String[] values = {"x", "TrUe", "t", "0", "", "2", "falsE", "tru",
+                "F", "ff"};
+        BitSet valid = new BitSet();
+        bc.validateAll(values, 1, values.length, valid);
+
+        assertEquals(false, valid.get(0));
+
+        for (int i = 1; i < values.length; i++) {
+            assertEquals(bc.validates(values[i]), valid.get(i), values[i]);
+        }
+    }
+
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columncheck;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateTimeCheckerTest {
+
+    private JsonObject buildJson(String zone, String... formats) {
+        JsonObject json = new JsonObject();
+        JsonArray array = new JsonArray();
+
+        for (String format : formats) {
+            array.add(new JsonPrimitive(format));
+        }
+
+        json.add("formats", array);
+
+        if (zone != null) {
+            json.addProperty("zone", zone);
+        }
+
+        return json;
+    }
+
+    @Test
+    void validatesFormats() {
+        DateTimeChecker dc = new DateTimeChecker(buildJson(null,
+                "yyyy-MM-dd HH:mm:ss", "yyyyMMdd", "dd MMM yyyy",
+                "yyyy-MM-dd'T'HH:mm:ssXXX", "epochMillis"));
+
+        assertTrue(dc.validates("2017-03-04 05:06:07"));
+        assertTrue(dc.validates("20170304"));
+        assertTrue(dc.validates("04 Mar 2017"));
+        assertTrue(dc.validates("2017-03-04T05:06:07-05:00"));
+        assertTrue(dc.validates("1488603967000"));
+        assertTrue(dc.validates("2016-02-29 00:00:00"));
+        assertFalse(dc.validates("2017-02-29 00:00:00"));
+        assertFalse(dc.validates("2017-03-04 24:00:00"));
+        assertFalse(dc.validates("2017-3-04 05:06:07"));
+        assertFalse(dc.validates("2017-13-04 05:06:07"));
+        assertFalse(dc.validates("31 Apr 2017"));
+        assertFalse(dc.validates("yesterday"));
+        assertFalse(dc.validates(""));
+    }
+
+    @Test
+    void parsesInZone() {
+        DateTimeFormats formats = new DateTimeFormats(buildJson(
+                "America/Chicago", "yyyy-MM-dd HH:mm:ss.SSS",
+                "yyyy-MM-dd HH:mm:ssXXX", "yyyy-MM-dd", "epochSeconds"));
+
+        assertEquals(Instant.parse("2017-07-01T17:00:00.250Z"),
+                formats.parse("2017-07-01 12:00:00.250"));
+        assertEquals(Instant.parse("2017-07-01T12:00:00Z"),
+                formats.parse("2017-07-01 12:00:00Z"));
+        assertEquals(Instant.parse("2017-01-01T06:00:00Z"),
+                formats.parse("2017-01-01"));
+        assertEquals(Instant.parse("2017-01-01T00:00:00Z"),
+                formats.parse("1483228800"));
+        assertNull(formats.parse("2017-07-01 12:00:00"));
+    }
+
+    /**
+     * Fixed-width layouts are matched by hand, so compare them with the
+     * general parser (which an empty optional section forces).
+     */
+    @Test
+    void fixedWidthMatchesFormatter() {
+        DateTimeFormats fixed = new DateTimeFormats(buildJson(null,
+                "yyyy-MM-dd HH:mm:ss.SS"));
+        DateTimeFormats general = new DateTimeFormats(buildJson(null,
+                "yyyy-MM-dd HH:mm:ss.SS[]"));
+        Random random = new Random(1);
+        String template = "yyyy-MM-dd HH:mm:ss.SS";
+
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder str = new StringBuilder();
+
+            for (int i = 0; i < template.length(); i++) {
+                char c = template.charAt(i);
+
+                if (Character.isLetter(c)) {
+                    // Mostly plausible digits, with the odd stray character.
+                    int r = random.nextInt(40);
+                    str.append(r == 0 ? 'x' : (char) ('0' + (i == 5 || i == 8
+                            || i == 11 ? r % 4 : r % 10)));
+                } else {
+                    str.append(c);
+                }
+            }
+
+            String value = str.toString();
+            assertEquals(general.parse(value), fixed.parse(value), value);
+        }
+    }
+
+    @Test
+    void validatesMissing() {
+        assertThrows(JsonParseException.class,
+                () -> new DateTimeChecker(new JsonObject()));
+        assertThrows(JsonParseException.class,
+                () -> new DateTimeChecker(buildJson(null, "yyyy-MM-dd qq{")));
+        assertThrows(JsonParseException.class,
+                () -> new DateTimeChecker(buildJson("Nowhere/City", "yyyy")));
+    }
+}
@@ -21,6 +21,8 @@ import com.google.gson.JsonParser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class FloatCheckerTest {
@@ -104,4 +106,87 @@ class FloatCheckerTest {
         assertEquals(floatTypeDouble, fcUnspecified.getFloatType());
     }
 
+    /**
+     * What validates() used to do: parse the string and catch exceptions.
+     */
+    private static boolean parses(String str, boolean isFloat) {
+        try {
+            if (isFloat) {
+                return ! Float.isInfinite(Float.parseFloat(str));
+            } else {
+                return ! Double.isInfinite(Double.parseDouble(str));
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void assertMatchesParse(String str) {
+        assertEquals(parses(str, false), fcDouble.validates(str), str);
+        assertEquals(parses(str, true), fcFloat.validates(str), str);
+    }
+
+    @Test
+    void matchesParsingAtRangeEdges() {
+        String[] edges = {
+            "1.7976931348623157E308", "1.7976931348623158E308",
+            "1.797693134862315807937289714053034150799341327100378269" +
+                    "36173778980444968292764750946649017977587207096330286" +
+                    "41669288791094655554785194040263065748867150582068190" +
+                    "89020007083836762738548458177115317644757302700698555" +
+                    "71366959622842914819860834936475292719074168444365510" +
+                    "7043427115596995080930428801779041744977919e308",
+            "1.797693134862315807937289714053034150799341327100378269" +
+                    "36173778980444968292764750946649017977587207096330286" +
+                    "41669288791094655554785194040263065748867150582068190" +
+                    "89020007083836762738548458177115317644757302700698555" +
+                    "71366959622842914819860834936475292719074168444365510" +
+                    "7043427115596995080930428801779041744977920e308",
+            "1.797693134862315807937289714053034150799341327100378269" +
+                    "36173778980444968292764750946649017977587207096330286" +
+                    "41669288791094655554785194040263065748867150582068190" +
+                    "89020007083836762738548458177115317644757302700698555" +
+                    "71366959622842914819860834936475292719074168444365510" +
+                    "704342711559699508093042880177904174497792000001e308",
+            "3.4028235E38", "3.40282356E38", "3.4028235677973366E38",
+            "3.4028235677973366163753939545814256844799e38",
+            "340282356779733661637539395458142568448",
+            "340282356779733661637539395458142568447.9",
+            "0.000340282356779733661637539395458142568448e42",
+            "1e-400", "1e99999999999", "-1e309", "0e99999", "000.000e5",
+            "0x1.fffffeP127", "0x1.ffffffP127", "0x1.fffffffffffffP1023",
+            "0x1.fffffffffffff8P1023", "0x1p", "0x.p1", "0xp1", "0x1P-2f",
+            "NaN", "-NaN", "NaNd", "Infinity", "-Infinity", "Inf",
+            " 1.5 ", "\t2\n", "1.", ".5", ".", "-", "+", "", " ", "1e",
+            "1e+", "1.5f", "1.5D", "1.5fd", "1..5", "1.5.", "1e5.5",
+            "\uFF11", "0x\uFF11p1", "1_000"
+        };
+
+        for (String edge : edges) {
+            assertMatchesParse(edge);
+        }
+    }
+
+    @Test
+    void matchesParsingOnRandomStrings() {
+        Random random = new Random(1);
+        String alphabet = "0123456789012345678901234567890123456789" +
+                ".eE+-fFdDxXpPaNI ";
+
+        for (int n = 0; n < 200000; n++) {
+            StringBuilder str = new StringBuilder();
+            int length = random.nextInt(12);
+
+            for (int i = 0; i < length; i++) {
+                str.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            // Sometimes push the exponent towards the edges of the range.
+            if (random.nextInt(4) == 0) {
+                str.append("e").append(random.nextInt(700) - 350);
+            }
+
+            assertMatchesParse(str.toString());
+        }
+    }
 }
@@ -21,6 +21,9 @@ import com.google.gson.JsonParser;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.BitSet;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class IntegerCheckerTest {
@@ -174,4 +177,79 @@ class IntegerCheckerTest {
         assertEquals(safeLengthInt, icInt.getSafeLength());
     }
 
+    @Test
+    void validatesBounds() {
+        assertEquals(true, icShort.validates("32767"));
+        assertEquals(false, icShort.validates("32768"));
+        assertEquals(true, icShort.validates("-32768"));
+        assertEquals(false, icShort.validates("-32769"));
+        assertEquals(true, icInt.validates("+2147483647"));
+        assertEquals(false, icInt.validates("2147483648"));
+        assertEquals(true, icInt.validates("-2147483648"));
+        assertEquals(true, icLong.validates("9223372036854775807"));
+        assertEquals(false, icLong.validates("9223372036854775808"));
+        assertEquals(true, icLong.validates("-9223372036854775808"));
+        assertEquals(false, icLong.validates("-9223372036854775809"));
+        assertEquals(true, icInt.validates("-0000000000000000000001"));
+        assertEquals(false, icInt.validates("+"));
+        assertEquals(false, icInt.validates("--1"));
+        assertEquals(false, icInt.validates("1 "));
+    }
+
+    @Test
+    void matchesParsing() {
+        Random random = new Random(1);
+        String alphabet = "0000123456789+- ";
+
+        for (int n = 0; n < 100000; n++) {
+            StringBuilder str = new StringBuilder();
+            int length = random.nextInt(22);
+
+            for (int i = 0; i < length; i++) {
+                str.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            String value = str.toString();
+            boolean isShort = true;
+            boolean isInt = true;
+            boolean isLong = true;
+
+            try {
+                Short.parseShort(value);
+            } catch (NumberFormatException e) {
+                isShort = false;
+            }
+
+            try {
+                Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                isInt = false;
+            }
+
+            try {
+                Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                isLong = false;
+            }
+
+            assertEquals(isShort, icShort.validates(value), value);
+            assertEquals(isInt, icInt.validates(value), value);
+            assertEquals(isLong, icLong.validates(value), value);
+        }
+    }
+
+    @Test
+    void validatesAll() {
+        String[] values = {"1", "32767", "-32768", "32768", "-32769", "1.0",
+                "+", "007", "-0", ""};
+        BitSet valid = new BitSet();
+        icShort.validateAll(values, 1, values.length, valid);
+
+        assertEquals(false, valid.get(0));
+
+        for (int i = 1; i < values.length; i++) {
+            assertEquals(icShort.validates(values[i]), valid.get(i), values[i]);
+        }
+    }
+
 }
@@ -20,6 +20,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
+import java.util.Random;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import org.junit.jupiter.api.Test;
@@ -73,4 +74,188 @@ class RegexCheckerTest {
         assertThrows(JsonParseException.class, () -> new RegexChecker(buildJson(null)));
     }
 
+    private RegexChecker linear(String regex) {
+        JsonObject json = new JsonObject();
+        json.addProperty("regex", regex);
+        json.addProperty("engine", "linear");
+        return new RegexChecker(json);
+    }
+
+    @Test
+    void linearMatchesJdk() {
+        String[] regexes = {
+                "(1?)(-?)([0-9]{3})(-?)([0-9]{3})(-?)([0-9]{4})",
+                "^ab*c$", "(a|b)*abb", "a{2,3}b?", "[^a-c]+", "[a-]x",
+                "\\d+\\.\\d*", "\\w\\s\\W\\S", "(?:ab|a)*b+?",
+                "a.c", "", "|a", "(a*)*", "[]a]b", "ab\\$", "x{0}y"
+        };
+        Random random = new Random(1);
+        String alphabet = "abcx1-.$] \n";
+
+        for (String regex : regexes) {
+            RegexChecker rc = linear(regex);
+            Pattern pattern = Pattern.compile(regex);
+            assertTrue(rc.isLinear(), regex);
+
+            for (int n = 0; n < 2000; n++) {
+                StringBuilder str = new StringBuilder();
+                int length = random.nextInt(8);
+
+                for (int i = 0; i < length; i++) {
+                    str.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+
+                String value = str.toString();
+                assertEquals(pattern.matcher(value).matches(),
+                        rc.validates(value), regex + " on " + value);
+            }
+        }
+    }
+
+    /**
+     * Append a random regex to <code>regex</code>, and a value it matches to
+     * <code>sample</code>.
+     */
+    private void randomRegex(Random random, int depth, StringBuilder regex,
+            StringBuilder sample) {
+        int choice = depth == 0 ? random.nextInt(2) : random.nextInt(6);
+
+        switch (choice) {
+            case 0:
+                char c = "abc".charAt(random.nextInt(3));
+                regex.append(c);
+                sample.append(c);
+                break;
+            case 1:
+                regex.append("[ab]");
+                sample.append(random.nextBoolean() ? 'a' : 'b');
+                break;
+            case 2:
+            case 3:
+                int parts = 2 + random.nextInt(6);
+
+                for (int i = 0; i < parts; i++) {
+                    randomRegex(random, depth - 1, regex, sample);
+                }
+
+                break;
+            case 4:
+                // Only one of the branches goes into the sample.
+                StringBuilder unused = new StringBuilder();
+                boolean left = random.nextBoolean();
+                regex.append("(?:");
+                randomRegex(random, depth - 1, regex, left ? sample : unused);
+                regex.append('|');
+                randomRegex(random, depth - 1, regex, left ? unused : sample);
+                regex.append(')');
+                break;
+            default:
+                StringBuilder body = new StringBuilder();
+                regex.append("(?:");
+                randomRegex(random, depth - 1, regex, body);
+                String[] quantifiers = {"*", "+", "?", "{1,3}", "{2}"};
+                int[] times = {2, 3, 1, 2, 2};
+                int q = random.nextInt(quantifiers.length);
+                regex.append(')').append(quantifiers[q]);
+
+                for (int i = 0; i < times[q]; i++) {
+                    sample.append(body);
+                }
+        }
+    }
+
+    @Test
+    void linearMatchesJdkOnLargePatterns() {
+        Random random = new Random(7);
+        String[] fixed = {"(?:abcdefghijklmnopq)*",
+                "(?:abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyz)+c"};
+
+        for (String regex : fixed) {
+            String body = regex.substring(3, regex.indexOf(')'));
+
+            for (String value : new String[] {body, body + body,
+                    body + body + "c", body + "c"}) {
+                assertEquals(Pattern.matches(regex, value),
+                        linear(regex).validates(value), regex + " on " + value);
+            }
+        }
+
+        for (int n = 0; n < 300; n++) {
+            StringBuilder regexBuilder = new StringBuilder();
+            StringBuilder sampleBuilder = new StringBuilder();
+            randomRegex(random, 4, regexBuilder, sampleBuilder);
+            String regex = regexBuilder.toString();
+            String sample = sampleBuilder.toString();
+            RegexChecker rc = linear(regex);
+            Pattern pattern = Pattern.compile(regex);
+            assertTrue(rc.isLinear(), regex);
+
+            String[] values = {sample, sample + "a", "b" + sample,
+                    sample + sample, sample.length() > 0
+                            ? sample.substring(1) : "c"};
+
+            for (String value : values) {
+                assertEquals(pattern.matcher(value).matches(),
+                        rc.validates(value), regex + " on " + value);
+            }
+
+            assertTrue(rc.validates(sample), regex + " on " + sample);
+        }
+    }
+
+    @Test
+    void linearHandlesPathologicalPatterns() {
+        StringBuilder value = new StringBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+            value.append('a');
+        }
+
+        RegexChecker rc = linear("(a+)+b");
+        assertFalse(rc.validates(value.toString()));
+        assertTrue(rc.validates(value + "b"));
+    }
+
+    @Test
+    void fallsBackForUnsupportedPatterns() {
+        RegexChecker rc = linear("(a)\\1");
+        assertFalse(rc.isLinear());
+        assertTrue(rc.validates("aa"));
+        assertFalse(rc.validates("ab"));
+
+        assertTrue(linear("\uD83D\uDE00|.").validates("\uD83D\uDE00"));
+    }
+
+    @Test
+    void jdkChecksLiteralPrefix() {
+        String[] regexes = {"ab\\$x*", "^abc?", "ab(c|x)", "(?i)ab",
+                "ab(?=c).", "(a)\\1b", "a|ab"};
+        String[] values = {"", "a", "ab", "AB", "abc", "abx", "ab$", "ab$xx",
+                "aab", "abd"};
+        assertEquals("ab$", LinearPattern.literalPrefix("ab\\$x*"));
+        assertEquals("", LinearPattern.literalPrefix("(?i)ab"));
+
+        for (String regex : regexes) {
+            JsonObject json = new JsonObject();
+            json.addProperty("regex", regex);
+            RegexChecker rc = new RegexChecker(json);
+            Pattern pattern = Pattern.compile(regex);
+
+            for (String value : values) {
+                assertEquals(pattern.matcher(value).matches(),
+                        rc.validates(value), regex + " on " + value);
+            }
+        }
+    }
+
+    @Test
+    void enforcesStepBudget() {
+        JsonObject json = new JsonObject();
+        json.addProperty("regex", "(a|aa)+b");
+        json.addProperty("maxSteps", 100000);
+        RegexChecker rc = new RegexChecker(json);
+
+        assertTrue(rc.validates("aaaab"));
+        assertFalse(rc.validates("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaac"));
+    }
 }
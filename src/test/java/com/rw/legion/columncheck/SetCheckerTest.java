@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columncheck;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SetCheckerTest {
+
+    private JsonObject buildJson(List<String> values, boolean ignoreCase) {
+        JsonObject json = new JsonObject();
+        JsonArray array = new JsonArray();
+        values.forEach(v -> array.add(new JsonPrimitive(v)));
+        json.add("values", array);
+        json.addProperty("ignoreCase", ignoreCase);
+        return json;
+    }
+
+    @Test
+    void validatesValues() {
+        SetChecker sc = new SetChecker(buildJson(
+                Arrays.asList("active", "suspended", "closed", "active"), false));
+
+        assertEquals(3, sc.size());
+        assertTrue(sc.validates("active"));
+        assertTrue(sc.validates("closed"));
+        assertFalse(sc.validates("Active"));
+        assertFalse(sc.validates("open"));
+        assertFalse(sc.validates(""));
+    }
+
+    @Test
+    void validatesIgnoringCase() {
+        SetChecker sc = new SetChecker(buildJson(
+                Arrays.asList("Sprint", "T-Mobile", "SPRINT"), true));
+
+        assertEquals(2, sc.size());
+        assertTrue(sc.validates("sprint"));
+        assertTrue(sc.validates("t-MOBILE"));
+        assertFalse(sc.validates("t-mobil"));
+    }
+
+    @Test
+    void validatesLargeSets() {
+        Random random = new Random(1);
+        HashSet<String> allowed = new HashSet<>();
+
+        while (allowed.size() < 20000) {
+            allowed.add(Long.toString(random.nextLong() % 1000000, 36));
+        }
+
+        SetChecker sc = new SetChecker(buildJson(
+                Arrays.asList(allowed.toArray(new String[0])), false));
+
+        for (String value : allowed) {
+            assertTrue(sc.validates(value), value);
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            String value = Long.toString(random.nextLong() % 2000000, 36);
+            assertEquals(allowed.contains(value), sc.validates(value), value);
+        }
+    }
+
+    @Test
+    void validatesFile() throws IOException {
+        File file = File.createTempFile("legion", ".txt");
+
+        try {
+            Files.write(file.toPath(), "a\r\nb\n\nc\n".getBytes(
+                    StandardCharsets.UTF_8));
+            JsonObject json = new JsonObject();
+            json.addProperty("file", file.getPath());
+            SetChecker sc = new SetChecker(json);
+
+            assertEquals(3, sc.size());
+            assertTrue(sc.validates("a"));
+            assertTrue(sc.validates("c"));
+            assertFalse(sc.validates("d"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void validatesMissing() {
+        assertThrows(JsonParseException.class,
+                () -> new SetChecker(new JsonObject()));
+
+        JsonObject json = new JsonObject();
+        json.addProperty("file", "/no/such/file");
+        assertThrows(JsonParseException.class, () -> new SetChecker(json));
+    }
+
+    @Test
+    void validatesAll() {
+        String[] values = {"sprint", "SPRINT", "t-mobile", "", "Verizon",
+                "t-mobil"};
+
+        for (boolean ignoreCase : new boolean[] {false, true}) {
+            SetChecker sc = new SetChecker(buildJson(
+                    Arrays.asList("Sprint", "T-Mobile", "SPRINT"), ignoreCase));
+            BitSet valid = new BitSet();
+            sc.validateAll(values, 1, values.length, valid);
+
+            assertFalse(valid.get(0));
+
+            for (int i = 1; i < values.length; i++) {
+                assertEquals(sc.validates(values[i]), valid.get(i), values[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateTimeTransformerTest {
+
+    private JsonObject buildJson(String output) {
+        String json = "{\"formats\": [\"yyyy-MM-dd HH:mm:ss\", " +
+                "\"MM/dd/yyyy h:mm a\"], \"zone\": \"-05:00\"" +
+                (output == null ? "" : ", \"output\": \"" + output + "\"") +
+                "}";
+
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+
+    @Test
+    void transformToIso() {
+        DateTimeTransformer dt = new DateTimeTransformer(buildJson(null));
+
+        assertEquals("2017-03-04T10:06:07Z", dt.transform("2017-03-04 05:06:07"));
+        assertEquals("2017-03-04T17:30:00Z", dt.transform("03/04/2017 12:30 PM"));
+        assertEquals("2017-03-04T10:06:07Z", dt.transform("2017-03-04 05:06:07"));
+    }
+
+    @Test
+    void transformToEpoch() {
+        assertEquals("1488621967", new DateTimeTransformer(
+                buildJson("epochSeconds")).transform("2017-03-04 05:06:07"));
+        assertEquals("1488621967000", new DateTimeTransformer(
+                buildJson("epochMillis")).transform("2017-03-04 05:06:07"));
+    }
+
+    @Test
+    void transformNoMatch() {
+        DateTimeTransformer dt = new DateTimeTransformer(buildJson(null));
+
+        assertEquals("soon", dt.transform("soon"));
+        assertEquals("", dt.transform(""));
+        assertNull(dt.transform(null));
+    }
+
+    @Test
+    void validatesOutput() {
+        assertThrows(JsonParseException.class,
+                () -> new DateTimeTransformer(buildJson("julian")));
+    }
+}
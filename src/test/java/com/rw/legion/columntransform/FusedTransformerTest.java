@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.columntransform;
+
+import com.google.gson.JsonObject;
+import com.rw.legion.LegionRecord;
+import com.rw.legion.ObjectiveFunction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FusedTransformerTest {
+
+    private static ColumnTransformer step(int kind) {
+        JsonObject json = new JsonObject();
+
+        switch (kind) {
+            case 0:
+                return new TrimTransformer(json);
+            case 1:
+                return new LowerCaseTransformer(json);
+            case 2:
+                return new StripControlTransformer(json);
+            default:
+                json.addProperty("replacement", "none");
+                return new NullReplaceTransformer(json);
+        }
+    }
+
+    @Test
+    void fusesCharacterSteps() {
+        FusedTransformer ft = new FusedTransformer(Arrays.asList(step(2),
+                step(0), step(1), step(3)));
+
+        assertEquals(2, ft.getStageCount());
+        assertEquals("hello world", ft.transform(" \tHello\u0000 World\u0085 "));
+        assertEquals("none", ft.transform(" \u0001 "));
+        assertEquals("none", ft.transform(null));
+        assertEquals("\u00e9t\u00e9", ft.transform("\u00c9T\u00c9"));
+    }
+
+    @Test
+    void onlyAllocatesOnChange() {
+        FusedTransformer ft = new FusedTransformer(Arrays.asList(step(0),
+                step(1), step(2)));
+        String clean = "already clean";
+
+        assertSame(clean, ft.transform(clean));
+        assertEquals("already clean", ft.transform("  already clean"));
+    }
+
+    @Test
+    void matchesStepsInSequence() {
+        Random random = new Random(1);
+        String alphabet = "aZ \t\u0001\u007f\u0085\u00c0\u0130\u2028x";
+
+        for (int n = 0; n < 20000; n++) {
+            List<ColumnTransformer> steps = new ArrayList<>();
+
+            for (int i = random.nextInt(5); i > 0; i--) {
+                steps.add(step(random.nextInt(4)));
+            }
+
+            StringBuilder str = new StringBuilder();
+
+            for (int i = random.nextInt(8); i > 0; i--) {
+                str.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            String value = random.nextInt(50) == 0 ? null : str.toString();
+            String expected = value;
+
+            for (ColumnTransformer step : steps) {
+                expected = step.transform(expected);
+            }
+
+            assertEquals(expected, new FusedTransformer(steps).transform(value),
+                    steps + " on " + value);
+        }
+    }
+
+    @Test
+    void deserializesTransformLists() {
+        String json = "{\"inputFormat\": \"x\", \"outputTables\": [{" +
+                "\"title\": \"a\", \"columns\": [{\"key\": \"$.s\", " +
+                "\"transform\": [" +
+                "{\"class\": \"com.rw.legion.columntransform.TrimTransformer\"}, " +
+                "{\"class\": \"com.rw.legion.columntransform.LowerCaseTransformer\"}, " +
+                "{\"class\": \"com.rw.legion.columntransform.NullReplaceTransformer\", " +
+                "\"options\": {\"replacement\": \"unknown\"}}]}]}]}";
+
+        ObjectiveFunction function = new ObjectiveFunction(json);
+        LegionRecord record = new LegionRecord();
+        record.setField("$.s", "  OK ");
+        assertEquals(Collections.singletonList("ok"),
+                function.apply(record).get("a"));
+
+        record = new LegionRecord();
+        assertEquals(Collections.singletonList("unknown"),
+                function.apply(record).get("a"));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeflateScannerTest {
+    private byte[] plain;
+    private byte[] compressed;
+
+    /**
+     * Builds a three-member gzip file, with the middle member stored rather
+     * than compressed.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        Random random = new Random(1);
+        ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream gzipOut = new ByteArrayOutputStream();
+
+        for (int member = 0; member < 3; member++) {
+            ByteArrayOutputStream part = new ByteArrayOutputStream();
+
+            for (int i = 0; i < 5000; i++) {
+                String line = "{\"id\":" + random.nextInt(1000) +
+                        ",\"name\":\"" + Long.toHexString(random.nextLong()) +
+                        "\"}\n";
+                part.write(line.getBytes("UTF-8"));
+            }
+
+            final int level = member == 1 ? 0 : 6;
+            GZIPOutputStream gzip = new GZIPOutputStream(gzipOut) {
+                {
+                    def.setLevel(level);
+                }
+            };
+
+            gzip.write(part.toByteArray());
+            gzip.finish();
+            plainOut.write(part.toByteArray());
+        }
+
+        plain = plainOut.toByteArray();
+        compressed = gzipOut.toByteArray();
+    }
+
+    private GzipIndex roundTrip(GzipIndex index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        return GzipIndex.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private byte[] readFrom(GzipIndex.Checkpoint checkpoint)
+            throws IOException {
+        InputStream in = new CheckpointInputStream(
+                new CheckpointInputStream.Opener() {
+                    public InputStream open(long offset) throws IOException {
+                        InputStream stream =
+                                new ByteArrayInputStream(compressed);
+                        stream.skip(offset);
+                        return stream;
+                    }
+                }, compressed.length, checkpoint);
+
+        long toSkip = checkpoint.getLineOffset()
+                - checkpoint.getUncompressedOffset();
+
+        while (toSkip > 0) {
+            toSkip -= in.skip(toSkip);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    void scansWholeFile() throws IOException {
+        GzipIndex index = new DeflateScanner(20000)
+                .scan(new ByteArrayInputStream(compressed));
+
+        assertEquals(compressed.length, index.getCompressedLength());
+        assertEquals(plain.length, index.getUncompressedLength());
+        assertTrue(index.getCheckpoints().size() > 3);
+    }
+
+    @Test
+    void resumesFromEveryCheckpoint() throws IOException {
+        GzipIndex index = roundTrip(new DeflateScanner(20000)
+                .scan(new ByteArrayInputStream(compressed)));
+
+        for (GzipIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+            int lineOffset = (int) checkpoint.getLineOffset();
+            int lines = 0;
+
+            for (int i = 0; i < lineOffset; i++) {
+                if (plain[i] == '\n') lines++;
+            }
+
+            assertTrue(lineOffset == 0 || plain[lineOffset - 1] == '\n',
+                    "Checkpoint line offset is at a line boundary");
+            assertEquals(lines, checkpoint.getLineNumber());
+            assertArrayEquals(Arrays.copyOfRange(plain, lineOffset,
+                    plain.length), readFrom(checkpoint));
+        }
+    }
+
+    @Test
+    void rejectsNonGzip() {
+        assertThrows(IOException.class, () -> new DeflateScanner(20000)
+                .scan(new ByteArrayInputStream(plain)));
+    }
+
+    @Test
+    void ignoresIndexesOfReplacedFiles() throws Exception {
+        Configuration conf = new Configuration();
+        FileSystem fs = FileSystem.getLocal(conf);
+        Path dir = fs.makeQualified(new Path(
+                Files.createTempDirectory("legion").toString()));
+        Path file = new Path(dir, "in.json.gz");
+
+        try {
+            FSDataOutputStream out = fs.create(file, true);
+            out.write(compressed);
+            out.close();
+            GzipIndexer.index(file, conf, 20000);
+
+            Job job = Job.getInstance(conf);
+            job.getConfiguration().set("legion_objective",
+                    "{\"inputFormat\": " +
+                    "\"com.rw.legion.input.JsonInputFormat\", " +
+                    "\"outputTables\": []}");
+            FileInputFormat.addInputPath(job, dir);
+            FileInputFormat.setMaxInputSplitSize(job, 20000);
+            assertTrue(new JsonInputFormat().getSplits(job).size() > 1);
+
+            // Rewritten in place with the same length.
+            fs.setTimes(file, fs.getFileStatus(file).getModificationTime()
+                    + 5000, -1);
+            assertEquals(1, new JsonInputFormat().getSplits(job).size());
+        } finally {
+            fs.delete(dir, true);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileManifestTest {
+    private FileSystem fs;
+    private Path root;
+    private Path input;
+    private Path manifestPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fs = FileSystem.getLocal(new Configuration());
+        root = fs.makeQualified(new Path(
+                Files.createTempDirectory("legion").toString()));
+        input = new Path(root, "in");
+        manifestPath = new Path(root, "manifest");
+
+        write(new Path(input, "a.json"), "a");
+        write(new Path(input, "2017/01/b.json"), "b");
+        write(new Path(input, "2017/02/c.json"), "c");
+        write(new Path(input, "2017/02/_SUCCESS"), "");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        fs.delete(root, true);
+    }
+
+    private void write(Path file, String data) throws IOException {
+        FSDataOutputStream out = fs.create(file, true);
+        out.write(data.getBytes("UTF-8"));
+        out.close();
+    }
+
+    /**
+     * Run against the manifest and save the result, as a successful job
+     * would.
+     */
+    private Set<String> run(String objectiveHash) throws IOException {
+        return run(objectiveHash, false);
+    }
+
+    private Set<String> run(String objectiveHash, boolean trustDirectoryTimes)
+            throws IOException {
+        FileManifest next = new FileManifest();
+        FileManifest manifest = FileManifest.read(fs, manifestPath);
+        manifest.setTrustDirectoryTimes(trustDirectoryTimes);
+        List<FileStatus> changes = manifest.findChanges(fs, input,
+                objectiveHash, next);
+        next.write(fs, manifestPath);
+
+        TreeSet<String> names = new TreeSet<>();
+        changes.forEach(s -> names.add(s.getPath().getName()));
+        return names;
+    }
+
+    /**
+     * Directory times only have second resolution on some local file
+     * systems, so move them on by hand.
+     */
+    private void touch(Path dir) throws IOException {
+        fs.setTimes(dir, fs.getFileStatus(dir).getModificationTime() + 5000,
+                -1);
+    }
+
+    @Test
+    void findsOnlyNewFiles() throws IOException {
+        assertEquals(new TreeSet<>(Arrays.asList(
+                "a.json", "b.json", "c.json")), run("x"));
+        assertTrue(run("x").isEmpty());
+
+        write(new Path(input, "2017/02/d.json"), "d");
+        touch(new Path(input, "2017/02"));
+        assertEquals(new TreeSet<>(Arrays.asList("d.json")),
+                run("x"));
+        assertTrue(run("x").isEmpty());
+    }
+
+    @Test
+    void findsChangedFiles() throws IOException {
+        run("x");
+
+        write(new Path(input, "a.json"), "changed");
+        touch(input);
+        assertEquals(new TreeSet<>(Arrays.asList("a.json")),
+                run("x"));
+    }
+
+    @Test
+    void findsFilesAppendedInPlace() throws IOException {
+        run("x");
+
+        // Still being uploaded last time: the directory's time stays put.
+        Path dir = new Path(input, "2017/01");
+        long dirTime = fs.getFileStatus(dir).getModificationTime();
+        write(new Path(dir, "b.json"), "bigger");
+        fs.setTimes(new Path(dir, "b.json"), dirTime + 5000, -1);
+        fs.setTimes(dir, dirTime, -1);
+
+        assertTrue(run("x", true).isEmpty());
+        assertEquals(new TreeSet<>(Arrays.asList("b.json")), run("x"));
+        assertTrue(run("x").isEmpty());
+    }
+
+    @Test
+    void reprocessesForNewObjective() throws IOException {
+        run("x");
+
+        assertEquals(new TreeSet<>(Arrays.asList(
+                "a.json", "b.json", "c.json")), run("y"));
+        assertTrue(run("y").isEmpty());
+    }
+
+    @Test
+    void roundTripsInputList() throws IOException {
+        FileManifest list = new FileManifest();
+        list.add(fs.getFileStatus(new Path(input, "a.json")), "x");
+        list.write(fs, manifestPath);
+
+        List<FileStatus> files = FileManifest.read(fs, manifestPath).getFiles();
+        assertEquals(1, files.size());
+        assertEquals(new Path(input, "a.json"), files.get(0).getPath());
+        assertEquals(1, files.get(0).getLen());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionCounter;
+import com.rw.legion.LegionRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegionRecordReaderTest {
+    private Configuration conf;
+    private FileSystem fs;
+    private Path dir;
+    private Counters counters;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        conf = new Configuration();
+        fs = FileSystem.getLocal(conf);
+        dir = fs.makeQualified(new Path(
+                Files.createTempDirectory("legion").toString()));
+        counters = new Counters();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        fs.delete(dir, true);
+    }
+
+    private Path write(String name, String contents) throws IOException {
+        Path file = new Path(dir, name);
+        FSDataOutputStream out = fs.create(file, true);
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    private void setObjective(String inputFormat, String tables) {
+        conf.set("legion_objective", "{\"inputFormat\": \"" + inputFormat +
+                "\", \"outputTables\": [" + tables + "]}");
+    }
+
+    /**
+     * Read every record from each split in turn.
+     */
+    private List<LegionRecord> read(
+            InputFormat<NullWritable, LegionRecord> format,
+            List<? extends InputSplit> splits) throws Exception {
+        List<LegionRecord> records = new ArrayList<>();
+
+        for (InputSplit split : splits) {
+            TaskAttemptContext context = new TaskAttemptContextImpl(conf,
+                    new TaskAttemptID(), reporter(counters));
+            RecordReader<NullWritable, LegionRecord> reader =
+                    format.createRecordReader(split, context);
+            reader.initialize(split, context);
+
+            while (reader.nextKeyValue()) {
+                records.add(reader.getCurrentValue());
+            }
+
+            reader.close();
+        }
+
+        return records;
+    }
+
+    private List<String> values(List<LegionRecord> records, String key) {
+        List<String> values = new ArrayList<>();
+
+        for (LegionRecord record : records) {
+            values.add(record.getData(key));
+        }
+
+        return values;
+    }
+
+    @Test
+    void doesNotCountTheEndOfTheSplitAsAParseFailure() throws Exception {
+        Path file = write("in.csv", "id,name\n1,a\n2\n3,c\n");
+        setObjective("com.rw.legion.input.CsvInputFormat", "");
+
+        List<LegionRecord> records = read(new CsvInputFormat(),
+                Arrays.asList(new FileSplit(file, 0,
+                        fs.getFileStatus(file).getLen(), null)));
+
+        // Only the line with a missing field.
+        assertEquals(1, counters.findCounter(
+                LegionCounter.PARSE_FAILURES).getValue());
+        assertEquals(3, records.size());
+    }
+
+    @Test
+    void doesNotRepeatARecordWhenTheLastLineIsFiltered() throws Exception {
+        Path file = write("in.json", "{\"event\": \"keep\", \"id\": 1}\n" +
+                "{\"event\": \"drop\", \"id\": 2}\n" +
+                "{\"event\": \"keep\", \"id\": 3}\n");
+        setObjective("com.rw.legion.input.JsonInputFormat",
+                "{\"title\": \"t\", \"where\": [{\"key\": \"$.event\", " +
+                "\"equals\": \"keep\"}], \"columns\": [{\"key\": \"$.id\"}]}");
+        long length = fs.getFileStatus(file).getLen();
+
+        // The first split's last line, read past its end, is filtered out.
+        List<LegionRecord> records = read(new JsonInputFormat(),
+                Arrays.asList(new FileSplit(file, 0, 30, null),
+                        new FileSplit(file, 30, length - 30, null)));
+
+        assertEquals(Arrays.asList("1", "3"), values(records, "$.id"));
+    }
+
+    /**
+     * Write a gzip file of the given lines and index it with checkpoints
+     * close enough together that it's read in several splits.
+     */
+    private Path writeIndexed(String name, List<String> lines)
+            throws IOException {
+        Path file = new Path(dir, name);
+        Writer out = new OutputStreamWriter(new GZIPOutputStream(
+                fs.create(file, true)), "UTF-8");
+
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+
+        out.close();
+        GzipIndexer.index(file, conf, 20000);
+        return file;
+    }
+
+    private List<InputSplit> indexedSplits(
+            FileInputFormat<NullWritable, LegionRecord> format)
+            throws IOException {
+        Job job = Job.getInstance(conf);
+        FileInputFormat.addInputPath(job, dir);
+        FileInputFormat.setMaxInputSplitSize(job, 20000);
+        List<InputSplit> splits = format.getSplits(job);
+
+        assertTrue(splits.size() > 1);
+
+        for (InputSplit split : splits) {
+            assertTrue(split instanceof GzipIndexSplit);
+        }
+
+        return splits;
+    }
+
+    @Test
+    void readsIndexedGzipJson() throws Exception {
+        List<String> lines = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        Random random = new Random(1);
+
+        // Every other line is broken, so some splits end on one.
+        for (int i = 0; i < 20000; i++) {
+            if (i % 2 == 0) {
+                lines.add("{\"id\": " + i + ", \"name\": \"" +
+                        Long.toHexString(random.nextLong()) + "\"}");
+                ids.add(Integer.toString(i));
+            } else {
+                lines.add("{\"id\": " + i + ", ");
+            }
+        }
+
+        writeIndexed("in.json.gz", lines);
+        setObjective("com.rw.legion.input.JsonInputFormat", "");
+        JsonInputFormat format = new JsonInputFormat();
+
+        assertEquals(ids, values(read(format, indexedSplits(format)), "$.id"));
+    }
+
+    @Test
+    void readsIndexedGzipCsv() throws Exception {
+        List<String> lines = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        Random random = new Random(1);
+        lines.add("id,name");
+
+        for (int i = 0; i < 10000; i++) {
+            lines.add(i + "," + Long.toHexString(random.nextLong()));
+            ids.add(Integer.toString(i));
+        }
+
+        writeIndexed("in.csv.gz", lines);
+        setObjective("com.rw.legion.input.CsvInputFormat", "");
+        CsvInputFormat format = new CsvInputFormat();
+        List<LegionRecord> records = read(format, indexedSplits(format));
+
+        // Later splits read the header from the start of the file.
+        assertEquals(ids, values(records, "id"));
+        assertEquals(0, counters.findCounter(
+                LegionCounter.PARSE_FAILURES).getValue());
+    }
+
+    private static StatusReporter reporter(Counters counters) {
+        return new StatusReporter() {
+            public Counter getCounter(Enum<?> name) {
+                return counters.findCounter(name);
+            }
+
+            public Counter getCounter(String group, String name) {
+                return counters.findCounter(group, name);
+            }
+
+            public void progress() {
+            }
+
+            public float getProgress() {
+                return 0;
+            }
+
+            public void setStatus(String status) {
+            }
+        };
+    }
+}
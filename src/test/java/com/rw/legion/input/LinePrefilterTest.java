@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.ObjectiveDeserializer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinePrefilterTest {
+
+    private LinePrefilter buildPrefilter(String... wheres) {
+        StringBuilder json = new StringBuilder(
+                "{\"inputFormat\": \"x\", \"outputTables\": [");
+
+        for (int i = 0; i < wheres.length; i++) {
+            json.append(i > 0 ? ", " : "").append("{\"title\": \"t").append(i)
+                    .append("\", \"where\": ").append(wheres[i])
+                    .append(", \"columns\": [{\"key\": \"$.id\"}]}");
+        }
+
+        json.append("]}");
+
+        return LinePrefilter.forObjective(
+                ObjectiveDeserializer.deserialize(json.toString()));
+    }
+
+    private boolean mightMatch(LinePrefilter prefilter, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return prefilter.mightMatch(bytes, bytes.length);
+    }
+
+    @Test
+    void filtersOnLiterals() {
+        LinePrefilter prefilter = buildPrefilter(
+                "[{\"key\": \"$.event\", \"equals\": \"call_end\"}]",
+                "[{\"key\": \"$.x\", \"exists\": true}, " +
+                "{\"key\": \"$.type\", \"in\": [\"sms\", \"mms\"]}]");
+
+        assertTrue(mightMatch(prefilter, "{\"event\": \"call_end\"}"));
+        assertTrue(mightMatch(prefilter, "{\"type\": \"mms\"}"));
+        assertFalse(mightMatch(prefilter, "{\"event\": \"call_start\"}"));
+        assertFalse(mightMatch(prefilter, "{\"event\": \"call_en"));
+    }
+
+    @Test
+    void passesEscapedLines() {
+        LinePrefilter prefilter = buildPrefilter(
+                "[{\"key\": \"$.event\", \"equals\": \"call_end\"}]");
+
+        assertTrue(mightMatch(prefilter,
+                "{\"event\": \"call\\u005fend\"}"));
+    }
+
+    @Test
+    void disabledWhenAnyTableTakesEverything() {
+        assertNull(buildPrefilter(
+                "[{\"key\": \"$.event\", \"equals\": \"call_end\"}]", "null"));
+        assertNull(buildPrefilter("[{\"key\": \"$.n\", \"regex\": \"1\"}]"));
+        assertNull(buildPrefilter(
+                "[{\"key\": \"file_name\", \"equals\": \"a\"}]"));
+    }
+}
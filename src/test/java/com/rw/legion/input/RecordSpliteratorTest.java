@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordSpliteratorTest {
+    private List<File> files = new ArrayList<>();
+
+    private File write(String suffix, String data) throws IOException {
+        File file = File.createTempFile("legion", suffix);
+        Files.write(file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+        files.add(file);
+        return file;
+    }
+
+    @AfterEach
+    void tearDown() {
+        files.forEach(File::delete);
+    }
+
+    @Test
+    void readsEveryLineOnceAcrossRanges() throws IOException {
+        StringBuilder data = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            data.append("{\"id\": ").append(i).append(i % 7 == 0 ? "}\r\n" : "}\n");
+            expected.add(Integer.toString(i));
+        }
+
+        File file = write(".json", data.toString());
+
+        // Try every way of cutting the file in two.
+        for (long cut = 0; cut <= file.length(); cut++) {
+            List<String> ids = new ArrayList<>();
+
+            new RecordSpliterator(file, 0, cut, JsonRecordParser::new)
+                    .forEachRemaining(r -> ids.add(r.getData("$.id")));
+            new RecordSpliterator(file, cut, file.length(),
+                    JsonRecordParser::new)
+                    .forEachRemaining(r -> ids.add(r.getData("$.id")));
+
+            assertEquals(expected, ids, "Cut at " + cut);
+        }
+    }
+
+    @Test
+    void splitsCsvWithHeader() throws IOException {
+        StringBuilder data = new StringBuilder("a,b\n");
+
+        for (int i = 0; i < 10000; i++) {
+            data.append(i).append(",x\n");
+        }
+
+        File file = write(".csv", data.toString());
+        RecordSpliterator spliterator = new RecordSpliterator(
+                Collections.singletonList(file), CsvRecordParser::new);
+        spliterator.setMinSplitSize(1000);
+
+        List<LegionRecord> records = StreamSupport.stream(spliterator, true)
+                .collect(Collectors.toList());
+
+        assertEquals(10000, records.size());
+
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(Integer.toString(i), records.get(i).getData("a"));
+            assertEquals("x", records.get(i).getData("b"));
+        }
+    }
+
+    @Test
+    void splitsBetweenFiles() throws IOException {
+        List<File> inputs = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            inputs.add(write(".json", "{\"f\": " + i + "}\n{\"f\": " + i + "}\n"));
+        }
+
+        RecordSpliterator spliterator =
+                new RecordSpliterator(inputs, JsonRecordParser::new);
+        RecordSpliterator prefix = (RecordSpliterator) spliterator.trySplit();
+
+        List<String> values = new ArrayList<>();
+        prefix.forEachRemaining(r -> values.add(r.getData("$.f")));
+        assertEquals(4, values.size());
+        spliterator.forEachRemaining(r -> values.add(r.getData("$.f")));
+        assertEquals(8, values.size());
+        assertEquals(8, RecordSpliterator.stream(inputs,
+                JsonInputFormat.class.getName(), true).count());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.input;
+
+import com.rw.legion.LegionRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamRecordReaderTest {
+
+    private StreamRecordReader reader(String data, RecordParser parser,
+            int maxLineLength) {
+        return new StreamRecordReader(new ByteArrayInputStream(
+                data.getBytes(StandardCharsets.UTF_8)), parser, "test",
+                maxLineLength);
+    }
+
+    @Test
+    void readsJsonLines() throws IOException {
+        StreamRecordReader reader = reader("\uFEFF{\"a\": 1}\n" +
+                "{\"b\": {\"c\": [true, null]}}\r\n{\"a\": 3}",
+                new JsonRecordParser(), 1000);
+
+        LegionRecord record = reader.next();
+        assertEquals("1", record.getData("$.a"));
+        assertEquals("test", record.getData("file_name"));
+        assertEquals("1", record.getData("file_line"));
+
+        record = reader.next();
+        assertEquals("true", record.getData("$.b.c[0]"));
+        assertEquals("", record.getData("$.b.c[1]"));
+        assertEquals("2", record.getData("file_line"));
+
+        record = reader.next();
+        assertEquals("3", record.getData("$.a"));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void readsCsv() throws IOException {
+        StreamRecordReader reader = reader("x,y\r1,2\n3,\n",
+                new CsvRecordParser(), 1000);
+
+        LegionRecord record = reader.next();
+        assertEquals("1", record.getData("x"));
+        assertEquals("2", record.getData("y"));
+        assertEquals("2", record.getData("file_line"));
+
+        record = reader.next();
+        assertEquals("3", record.getData("x"));
+        assertEquals("", record.getData("y"));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void skipsLongLines() throws IOException {
+        StreamRecordReader reader = reader("{\"a\": \"too long\"}\n{\"a\": 2}\n",
+                new JsonRecordParser(), 10);
+
+        LegionRecord record = reader.next();
+        assertEquals("2", record.getData("$.a"));
+        assertEquals("2", record.getData("file_line"));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void findsParsers() {
+        assertTrue(StreamRecordReader.parserFor(
+                "com.rw.legion.input.CombineCsvInputFormat")
+                instanceof CsvRecordParser);
+        assertTrue(StreamRecordReader.parserFor(
+                "com.rw.legion.input.JsonInputFormat")
+                instanceof JsonRecordParser);
+        assertThrows(IllegalArgumentException.class,
+                () -> StreamRecordReader.parserFor("foo.Bar"));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegionEventsTest {
+    @Test
+    void doesNothingWithoutRecording() {
+        assertFalse(LegionEvents.isRecording());
+        assertNull(LegionEvents.fileOpened("a", 0));
+        assertNull(LegionEvents.recordStarted());
+        assertNull(LegionEvents.tableBatchStarted());
+        LegionEvents.fileClosed(null, 1, 1);
+    }
+
+    @Test
+    void recordsEvents() throws IOException {
+        File file = File.createTempFile("legion", ".jfr");
+        Recording recording = new Recording();
+        recording.enable("com.rw.legion.FileRead");
+        recording.enable("com.rw.legion.BrokenFile");
+        recording.enable("com.rw.legion.TableBatch").withoutThreshold();
+
+        try {
+            recording.start();
+            assertTrue(LegionEvents.isRecording());
+
+            Object handle = LegionEvents.fileOpened("in.json", 10);
+            LegionEvents.fileBroken("in.json", 3, new IOException("bad"));
+            LegionEvents.fileClosed(handle, 100, 2);
+            LegionEvents.tableBatchFlushed(LegionEvents.tableBatchStarted(),
+                    "calls", 5, 3, 2);
+
+            recording.stop();
+            assertFalse(LegionEvents.isRecording());
+            recording.dump(file.toPath());
+        } finally {
+            recording.close();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        file.delete();
+        assertEquals(3, events.size());
+
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+
+            if (name.equals("com.rw.legion.FileRead")) {
+                assertEquals("in.json", event.getString("path"));
+                assertEquals(10, event.getLong("start"));
+                assertEquals(100, event.getLong("bytes"));
+                assertEquals(2, event.getLong("records"));
+            } else if (name.equals("com.rw.legion.BrokenFile")) {
+                assertEquals(3, event.getLong("line"));
+                assertEquals("java.io.IOException: bad",
+                        event.getString("cause"));
+            } else {
+                assertEquals("com.rw.legion.TableBatch", name);
+                assertEquals("calls", event.getString("table"));
+                assertEquals(5, event.getInt("records"));
+                assertEquals(3, event.getLong("written"));
+                assertEquals(2, event.getLong("skipped"));
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncWritersTest {
+    private final Map<String, ByteArrayOutputStream> streams =
+            new ConcurrentHashMap<>();
+
+    private final AsyncWriters.StreamFactory memory = name -> {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertNull(streams.put(name, out), "opened " + name + " twice");
+        return out;
+    };
+
+    private String written(String name) {
+        return new String(streams.get(name).toByteArray(),
+                StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesLinesInOrderAcrossBlocks() throws Exception {
+        // Blocks smaller than some lines, so lines span them.
+        AsyncWriters writers = new AsyncWriters(memory, 2, 16, 2);
+        StringBuilder calls = new StringBuilder();
+        StringBuilder texts = new StringBuilder();
+
+        for (int i = 0; i < 5000; i++) {
+            String call = i + ",call,ok";
+            String text = i + ",caf\u00e9,\u00fcber-long message " + i;
+            writers.write("calls", call);
+            writers.write("skipped/texts", text);
+            calls.append(call).append('\n');
+            texts.append(text).append('\n');
+        }
+
+        writers.close();
+
+        assertEquals(calls.toString(), written("calls"));
+        assertEquals(texts.toString(), written("skipped/texts"));
+    }
+
+    @Test
+    void writerFailuresReachTheCaller() throws Exception {
+        AsyncWriters writers = new AsyncWriters(name -> new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        }, 1, 8, 1);
+
+        IOException e = assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 100000; i++) {
+                writers.write("calls", "1,call,ok");
+            }
+
+            writers.close();
+        });
+
+        assertEquals("disk full", e.getCause().getMessage());
+    }
+}
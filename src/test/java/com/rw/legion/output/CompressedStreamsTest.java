@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2017 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.legion.output;
+
+import com.google.gson.JsonParseException;
+import com.rw.legion.OutputCompression;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedStreamsTest {
+    private static final String TEXT;
+
+    static {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 10000; i++) {
+            text.append(i).append(",call,ok\n");
+        }
+
+        TEXT = text.toString();
+    }
+
+    private final Configuration conf = new Configuration();
+
+    private byte[] write(OutputCompression compression) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = CompressedStreams.open(bytes, compression, conf);
+        out.write(TEXT.getBytes(StandardCharsets.UTF_8));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void gzipsAtEachLevel() throws Exception {
+        int fastest = write(new OutputCompression("gzip", 1)).length;
+        int smallest = write(new OutputCompression("gzip", 9)).length;
+        assertTrue(smallest < fastest);
+
+        // Deflaters come back from the pool, so write each level twice.
+        for (Integer level : new Integer[] {null, 0, 1, 9, 1, 9, null}) {
+            byte[] gzipped = write(new OutputCompression("gzip", level));
+            assertEquals(TEXT, read(new GZIPInputStream(
+                    new ByteArrayInputStream(gzipped))));
+            assertEquals(".gz", CompressedStreams.getExtension(
+                    new OutputCompression("gzip", level), conf));
+        }
+    }
+
+    @Test
+    void usesHadoopCodecs() throws Exception {
+        OutputCompression bzip2 = new OutputCompression("bzip2", 9);
+        BZip2Codec codec = ReflectionUtils.newInstance(BZip2Codec.class, conf);
+
+        assertEquals(".bz2", CompressedStreams.getExtension(bzip2, conf));
+        assertEquals(TEXT, read(codec.createInputStream(
+                new ByteArrayInputStream(write(bzip2)))));
+
+        OutputCompression none = new OutputCompression("none", null);
+        assertEquals("", CompressedStreams.getExtension(none, conf));
+        assertEquals(TEXT, new String(write(none), StandardCharsets.UTF_8));
+
+        assertThrows(JsonParseException.class,
+                () -> new OutputCompression("nope", null).getCodecClass());
+    }
+
+    @Test
+    void rejectsGzipLevelsOutOfRange() throws Exception {
+        Job job = Job.getInstance(conf);
+
+        for (int level : new int[] {-1, 10, 11}) {
+            assertThrows(JsonParseException.class, () ->
+                    LegionTextOutputFormat.setCompression(job, "calls",
+                            new OutputCompression("gzip", level)));
+            assertThrows(IllegalArgumentException.class,
+                    () -> write(new OutputCompression("gzip", level)));
+        }
+
+        LegionTextOutputFormat.setCompression(job, "calls",
+                new OutputCompression("gzip", 9));
+    }
+
+    @Test
+    void looksUpCompressionByBaseName() {
+        conf.set(LegionTextOutputFormat.COMPRESSION,
+                "{\"codec\": \"gzip\", \"level\": 9}");
+        conf.set(LegionTextOutputFormat.COMPRESSION + ".calls",
+                "{\"codec\": \"bzip2\"}");
+
+        assertEquals("bzip2", LegionTextOutputFormat.getCompression(conf,
+                "calls").getCodec());
+        assertEquals(9, (int) LegionTextOutputFormat.getCompression(conf,
+                "skipped/calls").getLevel());
+        assertEquals("gzip", LegionTextOutputFormat.getCompression(
+                new Configuration(), "calls").getCodec());
+    }
+}